@@ -25,6 +25,7 @@ import android.os.Process;
 import android.os.RemoteException;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -98,6 +99,46 @@ public class RangingManager extends android.uwb.IUwbRangingCallbacks.Stub {
         }
     }
 
+    /**
+     * Start ranging for a group of sessions
+     *
+     * @param sessions the sessions to start, which must all be idle
+     * @param params configuration parameters for starting the sessions
+     */
+    public void startSessions(@NonNull List<RangingSession> sessions,
+            @NonNull PersistableBundle params) {
+        List<SessionHandle> sessionHandles = new ArrayList<>(sessions.size());
+        for (RangingSession session : sessions) {
+            session.checkCanStart();
+            sessionHandles.add(session.getSessionHandle());
+        }
+        Log.v(mTag, "startSessions - sessionHandles: " + sessionHandles);
+        try {
+            mAdapter.startRangingGroup(sessionHandles, params);
+        } catch (RemoteException e) {
+            throw e.rethrowFromSystemServer();
+        }
+    }
+
+    /**
+     * Stop ranging for a group of sessions
+     *
+     * @param sessions the sessions to stop, which must all be active
+     */
+    public void stopSessions(@NonNull List<RangingSession> sessions) {
+        List<SessionHandle> sessionHandles = new ArrayList<>(sessions.size());
+        for (RangingSession session : sessions) {
+            session.checkCanStop();
+            sessionHandles.add(session.getSessionHandle());
+        }
+        Log.v(mTag, "stopSessions - sessionHandles: " + sessionHandles);
+        try {
+            mAdapter.stopRangingGroup(sessionHandles);
+        } catch (RemoteException e) {
+            throw e.rethrowFromSystemServer();
+        }
+    }
+
     private boolean hasSession(SessionHandle sessionHandle) {
         return mRangingSessionTable.containsKey(sessionHandle);
     }
@@ -253,6 +294,22 @@ public class RangingManager extends android.uwb.IUwbRangingCallbacks.Stub {
         }
     }
 
+    @Override
+    public void onRangingResults(SessionHandle sessionHandle, List<RangingReport> results) {
+        synchronized (this) {
+            if (!hasSession(sessionHandle)) {
+                Log.w(mTag, "onRangingResults - received unexpected SessionHandle: "
+                        + sessionHandle);
+                return;
+            }
+
+            RangingSession session = mRangingSessionTable.get(sessionHandle);
+            for (RangingReport result : results) {
+                session.onRangingResult(result);
+            }
+        }
+    }
+
     @Override
     public void onControleeAdded(SessionHandle sessionHandle, PersistableBundle parameters) {
         synchronized (this) {
@@ -497,6 +497,28 @@ public final class RangingSession implements AutoCloseable {
         return mState == State.IDLE || mState == State.ACTIVE;
     }
 
+    SessionHandle getSessionHandle() {
+        return mSessionHandle;
+    }
+
+    /**
+     * Checks that the session may be started, as {@link #start(PersistableBundle)} would.
+     */
+    void checkCanStart() {
+        if (mState != State.IDLE) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Checks that the session may be stopped, as {@link #stop()} would.
+     */
+    void checkCanStop() {
+        if (mState != State.ACTIVE) {
+            throw new IllegalStateException();
+        }
+    }
+
     /**
      * If the session uses custom profile,
      *    Begins ranging for the session.
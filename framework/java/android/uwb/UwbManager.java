@@ -690,6 +690,47 @@ public final class UwbManager {
                 mContext.getAttributionSource(), parameters, executor, callbacks, chipId);
     }
 
+    /**
+     * Begins ranging for a group of {@link RangingSession}s.
+     *
+     * <p>This is equivalent to calling {@link RangingSession#start(PersistableBundle)} on each of
+     * the sessions, but the start requests of all the sessions are issued together instead of
+     * one at a time. {@link RangingSession.Callback#onStarted(PersistableBundle)} or
+     * {@link RangingSession.Callback#onStartFailed(int, PersistableBundle)} is still invoked for
+     * each of the sessions.
+     *
+     * @param sessions the sessions to start, which must all be opened and not ranging
+     * @param params configuration parameters for starting the sessions, applied to each of them
+     * @throws IllegalStateException if any of the sessions can't be started
+     */
+    @RequiresPermission(permission.UWB_PRIVILEGED)
+    @FlaggedApi("com.android.uwb.flags.grouped_session_start_stop")
+    public void startRangingSessions(@NonNull List<RangingSession> sessions,
+            @NonNull PersistableBundle params) {
+        checkNotNull(sessions);
+        checkNotNull(params);
+        mRangingManager.startSessions(sessions, params);
+    }
+
+    /**
+     * Stops ranging for a group of {@link RangingSession}s.
+     *
+     * <p>This is equivalent to calling {@link RangingSession#stop()} on each of the sessions, but
+     * the stop requests of all the sessions are issued together instead of one at a time.
+     * {@link RangingSession.Callback#onStopped(int, PersistableBundle)} or
+     * {@link RangingSession.Callback#onStopFailed(int, PersistableBundle)} is still invoked for
+     * each of the sessions.
+     *
+     * @param sessions the sessions to stop, which must all be ranging
+     * @throws IllegalStateException if any of the sessions can't be stopped
+     */
+    @RequiresPermission(permission.UWB_PRIVILEGED)
+    @FlaggedApi("com.android.uwb.flags.grouped_session_start_stop")
+    public void stopRangingSessions(@NonNull List<RangingSession> sessions) {
+        checkNotNull(sessions);
+        mRangingManager.stopSessions(sessions);
+    }
+
     /**
      * Returns the current enabled/disabled state for UWB.
      *
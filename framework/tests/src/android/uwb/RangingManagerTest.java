@@ -40,6 +40,7 @@ import com.android.modules.utils.build.SdkLevel;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.util.List;
@@ -119,6 +120,50 @@ public class RangingManagerTest {
                 .openRanging(eq(ATTRIBUTION_SOURCE), any(), any(), any(), eq(invalidChipId));
     }
 
+    @Test
+    public void testStartSessions_StartRangingGroupInvoked() throws RemoteException {
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        RangingManager rangingManager = new RangingManager(adapter);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+        ArgumentCaptor<SessionHandle> sessionHandleCaptor =
+                ArgumentCaptor.forClass(SessionHandle.class);
+        ArgumentCaptor<RangingSession> sessionCaptor =
+                ArgumentCaptor.forClass(RangingSession.class);
+
+        rangingManager.openSession(
+                ATTRIBUTION_SOURCE, PARAMS, EXECUTOR, callback, /* chipIds= */ null);
+        rangingManager.openSession(
+                ATTRIBUTION_SOURCE, PARAMS, EXECUTOR, callback, /* chipIds= */ null);
+        verify(adapter, times(2))
+                .openRanging(eq(ATTRIBUTION_SOURCE), sessionHandleCaptor.capture(), any(), any(),
+                        eq(/* chipId= */ null));
+        List<SessionHandle> sessionHandles = sessionHandleCaptor.getAllValues();
+        for (SessionHandle sessionHandle : sessionHandles) {
+            rangingManager.onRangingOpened(sessionHandle);
+        }
+        verify(callback, times(2)).onOpened(sessionCaptor.capture());
+
+        rangingManager.startSessions(sessionCaptor.getAllValues(), PARAMS);
+        verify(adapter, times(1)).startRangingGroup(eq(sessionHandles), eq(PARAMS));
+    }
+
+    @Test
+    public void testStartSessions_SessionNotOpened_IllegalStateException()
+            throws RemoteException {
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        RangingManager rangingManager = new RangingManager(adapter);
+        RangingSession session = new RangingSession(EXECUTOR,
+                mock(RangingSession.Callback.class), adapter,
+                new SessionHandle(HANDLE_ID, ATTRIBUTION_SOURCE, PID), /* chipId= */ null);
+
+        assertThrows(IllegalStateException.class,
+                () -> rangingManager.startSessions(List.of(session), PARAMS));
+        assertThrows(IllegalStateException.class,
+                () -> rangingManager.stopSessions(List.of(session)));
+        verify(adapter, never()).startRangingGroup(any(), any());
+        verify(adapter, never()).stopRangingGroup(any());
+    }
+
     @Test
     public void testOnRangingOpened_InvalidSessionHandle() throws RemoteException {
         IUwbAdapter adapter = mock(IUwbAdapter.class);
@@ -464,6 +509,36 @@ public class RangingManagerTest {
         verify(callback2, times(1)).onReportReceived(any());
     }
 
+    @Test
+    public void testOnRangingResults_deliversEachReportInOrder() throws RemoteException {
+        IUwbAdapter adapter = mock(IUwbAdapter.class);
+        RangingSession.Callback callback = mock(RangingSession.Callback.class);
+
+        ArgumentCaptor<SessionHandle> sessionHandleCaptor =
+                ArgumentCaptor.forClass(SessionHandle.class);
+
+        RangingManager rangingManager = new RangingManager(adapter);
+        rangingManager.openSession(
+                ATTRIBUTION_SOURCE, PARAMS, EXECUTOR, callback, /* chipIds= */ null);
+        verify(adapter, times(1))
+                .openRanging(
+                        eq(ATTRIBUTION_SOURCE),
+                        sessionHandleCaptor.capture(),
+                        any(),
+                        any(),
+                        eq(/* chipId= */ null));
+        SessionHandle handle = sessionHandleCaptor.getValue();
+        rangingManager.onRangingStarted(handle, PARAMS);
+
+        RangingReport report1 = UwbTestUtils.getRangingReports(1);
+        RangingReport report2 = UwbTestUtils.getRangingReports(2);
+        rangingManager.onRangingResults(handle, List.of(report1, report2));
+
+        InOrder inOrder = Mockito.inOrder(callback);
+        inOrder.verify(callback).onReportReceived(eq(report1));
+        inOrder.verify(callback).onReportReceived(eq(report2));
+    }
+
     @Test
     public void testReasons() throws RemoteException {
         runReason(RangingChangeReason.LOCAL_API, RangingSession.Callback.REASON_LOCAL_REQUEST);
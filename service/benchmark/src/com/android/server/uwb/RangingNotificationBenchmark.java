@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb;
+
+import static com.android.server.uwb.data.UwbUciConstants.MAC_ADDRESSING_MODE_SHORT;
+import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_DL_TDOA;
+import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_OWR_AOA;
+import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY;
+import static com.android.server.uwb.util.UwbUtil.convertFloatToQFormat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import android.app.ActivityManager;
+import android.app.AlarmManager;
+import android.content.AttributionSource;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.HandlerThread;
+import android.os.PersistableBundle;
+import android.uwb.IUwbRangingCallbacks;
+import android.uwb.RangingReport;
+import android.uwb.SessionHandle;
+import android.uwb.UwbAddress;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.server.uwb.UwbSessionManager.UwbSession;
+import com.android.server.uwb.advertisement.UwbAdvertiseManager;
+import com.android.server.uwb.data.UwbDlTDoAMeasurement;
+import com.android.server.uwb.data.UwbOwrAoaMeasurement;
+import com.android.server.uwb.data.UwbRangingData;
+import com.android.server.uwb.data.UwbTwoWayMeasurement;
+import com.android.server.uwb.data.UwbUciConstants;
+import com.android.server.uwb.jni.NativeUwbManager;
+
+import com.google.uwb.support.fira.FiraOpenSessionParams;
+import com.google.uwb.support.fira.FiraParams;
+import com.google.uwb.support.fira.FiraProtocolVersion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks the path a RANGE_DATA_NTF takes through the service: session lookup, ranging
+ * report generation, per-controlee filtering, metrics and delivery to a no-op
+ * {@link IUwbRangingCallbacks}.
+ *
+ * <p>Time and allocation count per notification are reported by {@link BenchmarkRule}. Bytes
+ * allocated per notification are measured separately and reported through the instrumentation
+ * status as {@code <test name>_bytesAllocatedPerOp}.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class RangingNotificationBenchmark {
+    private static final int SESSION_ID = 7;
+    private static final String CHIP_ID = "defaultChipId";
+    private static final AttributionSource ATTRIBUTION_SOURCE =
+            new AttributionSource.Builder(10005).setPackageName("com.android.uwb.test").build();
+    private static final SessionHandle SESSION_HANDLE =
+            new SessionHandle(SESSION_ID, ATTRIBUTION_SOURCE, 1);
+
+    // Notifications are cycled through a pool generated up front, so that the benchmark loop
+    // doesn't allocate on its own and the filters see varying input.
+    private static final int RANGING_DATA_POOL_SIZE = 64;
+    private static final int ALLOCATION_ITERATIONS = 1000;
+
+    @Parameterized.Parameter(0)
+    public String mName;
+
+    @Parameterized.Parameter(1)
+    public int mRangingMeasuresType;
+
+    @Parameterized.Parameter(2)
+    public int mNoOfRangingMeasures;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {"twoWay_1", RANGING_MEASUREMENT_TYPE_TWO_WAY, 1},
+                {"twoWay_8", RANGING_MEASUREMENT_TYPE_TWO_WAY, 8},
+                {"twoWay_32", RANGING_MEASUREMENT_TYPE_TWO_WAY, 32},
+                // An OWR-AoA notification always carries a single measurement.
+                {"owrAoa_1", RANGING_MEASUREMENT_TYPE_OWR_AOA, 1},
+                {"dlTdoa_1", RANGING_MEASUREMENT_TYPE_DL_TDOA, 1},
+                {"dlTdoa_8", RANGING_MEASUREMENT_TYPE_DL_TDOA, 8},
+        });
+    }
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private HandlerThread mHandlerThread;
+    private UwbSessionManager mUwbSessionManager;
+    private UwbRangingData[] mRangingData;
+
+    @Before
+    public void setUp() throws Exception {
+        mHandlerThread = new HandlerThread("RangingNotificationBenchmark");
+        mHandlerThread.start();
+
+        // Stub-only mocks don't record invocations, so they don't grow while benchmarking.
+        DeviceConfigFacade deviceConfigFacade = stubOnlyMock(DeviceConfigFacade.class);
+        when(deviceConfigFacade.getRangingResultLogIntervalMs())
+                .thenReturn(DeviceConfigFacade.DEFAULT_RANGING_RESULT_LOG_INTERVAL_MS);
+        // Filter and advertise settings match the defaults from ServiceUwbResources.
+        when(deviceConfigFacade.isEnableFilters()).thenReturn(true);
+        when(deviceConfigFacade.getFilterDistanceInliersPercent()).thenReturn(0);
+        when(deviceConfigFacade.getFilterDistanceWindow()).thenReturn(3);
+        when(deviceConfigFacade.getFilterAngleInliersPercent()).thenReturn(50);
+        when(deviceConfigFacade.getFilterAngleWindow()).thenReturn(5);
+        when(deviceConfigFacade.isEnablePrimerAoA()).thenReturn(true);
+        when(deviceConfigFacade.isEnablePrimerFov()).thenReturn(true);
+        when(deviceConfigFacade.getPrimerFovDegree()).thenReturn(60);
+        when(deviceConfigFacade.getPredictionTimeoutSeconds()).thenReturn(3);
+        when(deviceConfigFacade.getAdvertiseAoaCriteriaAngle()).thenReturn(10);
+        when(deviceConfigFacade.getAdvertiseTimeThresholdMillis()).thenReturn(5000);
+        when(deviceConfigFacade.getAdvertiseArraySizeToCheck()).thenReturn(10);
+        when(deviceConfigFacade.getAdvertiseArrayStartIndexToCalVariance()).thenReturn(2);
+        when(deviceConfigFacade.getAdvertiseArrayEndIndexToCalVariance()).thenReturn(8);
+        when(deviceConfigFacade.getAdvertiseTrustedVarianceValue()).thenReturn(5);
+
+        UwbInjector uwbInjector = stubOnlyMock(UwbInjector.class);
+        UwbMetrics uwbMetrics = new UwbMetrics(uwbInjector);
+        when(uwbInjector.getDeviceConfigFacade()).thenReturn(deviceConfigFacade);
+        when(uwbInjector.getUwbMetrics()).thenReturn(uwbMetrics);
+        when(uwbInjector.getUwbServiceCore()).thenReturn(stubOnlyMock(UwbServiceCore.class));
+        when(uwbInjector.createFilterEngine(any())).thenCallRealMethod();
+        when(uwbInjector.checkUwbRangingPermissionForStartDataDelivery(any(), anyString()))
+                .thenReturn(true);
+
+        mUwbSessionManager = new UwbSessionManager(
+                stubOnlyMock(UwbConfigurationManager.class),
+                stubOnlyMock(NativeUwbManager.class),
+                uwbMetrics,
+                new UwbAdvertiseManager(uwbInjector, deviceConfigFacade),
+                new UwbSessionNotificationManager(uwbInjector),
+                uwbInjector,
+                stubOnlyMock(AlarmManager.class),
+                stubOnlyMock(ActivityManager.class),
+                mHandlerThread.getLooper());
+
+        UwbSession uwbSession = mUwbSessionManager.new UwbSession(ATTRIBUTION_SOURCE,
+                SESSION_HANDLE, SESSION_ID, FiraParams.SESSION_TYPE_RANGING,
+                FiraParams.PROTOCOL_NAME, createParams(), new NoOpRangingCallbacks(), CHIP_ID);
+        uwbSession.setSessionState(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        mUwbSessionManager.putSession(SESSION_HANDLE, uwbSession);
+        uwbMetrics.logRangingInitEvent(uwbSession, UwbUciConstants.STATUS_CODE_OK);
+
+        Random random = new Random(SESSION_ID);
+        mRangingData = new UwbRangingData[RANGING_DATA_POOL_SIZE];
+        for (int i = 0; i < RANGING_DATA_POOL_SIZE; i++) {
+            mRangingData[i] = createRangingData(i, random);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mUwbSessionManager.removeSession(mUwbSessionManager.getUwbSession(SESSION_ID));
+        mHandlerThread.quitSafely();
+    }
+
+    @Test
+    public void onRangeDataNotificationReceived() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int index = 0;
+        while (state.keepRunning()) {
+            mUwbSessionManager.onRangeDataNotificationReceived(mRangingData[index]);
+            index = (index + 1) % RANGING_DATA_POOL_SIZE;
+        }
+        reportBytesAllocatedPerOp();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void reportBytesAllocatedPerOp() {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            mUwbSessionManager.onRangeDataNotificationReceived(
+                    mRangingData[i % RANGING_DATA_POOL_SIZE]);
+        }
+        long bytesAllocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Bundle status = new Bundle();
+        status.putLong(mName + "_bytesAllocatedPerOp", bytesAllocated / ALLOCATION_ITERATIONS);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    private FiraOpenSessionParams createParams() {
+        List<UwbAddress> destAddressList = new ArrayList<>();
+        for (int i = 0; i < mNoOfRangingMeasures; i++) {
+            destAddressList.add(UwbAddress.fromBytes(getMacAddress(i)));
+        }
+        FiraOpenSessionParams.Builder builder = new FiraOpenSessionParams.Builder()
+                .setProtocolVersion(new FiraProtocolVersion(1, 1))
+                .setSessionId(SESSION_ID)
+                .setSessionType(FiraParams.SESSION_TYPE_RANGING)
+                .setDeviceAddress(UwbAddress.fromBytes(new byte[] {0x01, 0x02}))
+                .setDestAddressList(destAddressList)
+                .setMultiNodeMode(mNoOfRangingMeasures > 1
+                        ? FiraParams.MULTI_NODE_MODE_ONE_TO_MANY
+                        : FiraParams.MULTI_NODE_MODE_UNICAST)
+                .setFilterType(FiraParams.FILTER_TYPE_DEFAULT);
+        switch (mRangingMeasuresType) {
+            case RANGING_MEASUREMENT_TYPE_OWR_AOA:
+                builder.setDeviceType(FiraParams.RANGING_DEVICE_TYPE_CONTROLEE)
+                        .setDeviceRole(FiraParams.RANGING_DEVICE_ROLE_OBSERVER)
+                        .setRangingRoundUsage(FiraParams.RANGING_ROUND_USAGE_OWR_AOA_MEASUREMENT);
+                break;
+            case RANGING_MEASUREMENT_TYPE_DL_TDOA:
+                builder.setDeviceType(FiraParams.RANGING_DEVICE_TYPE_CONTROLEE)
+                        .setDeviceRole(FiraParams.RANGING_DEVICE_DT_TAG)
+                        .setRangingRoundUsage(FiraParams.RANGING_ROUND_USAGE_DL_TDOA);
+                break;
+            default:
+                builder.setDeviceType(FiraParams.RANGING_DEVICE_TYPE_CONTROLLER)
+                        .setDeviceRole(FiraParams.RANGING_DEVICE_ROLE_INITIATOR);
+                break;
+        }
+        return builder.build();
+    }
+
+    private UwbRangingData createRangingData(long seqCounter, Random random) {
+        switch (mRangingMeasuresType) {
+            case RANGING_MEASUREMENT_TYPE_OWR_AOA:
+                UwbOwrAoaMeasurement owrAoaMeasurement = new UwbOwrAoaMeasurement(
+                        getMacAddress(0), UwbUciConstants.STATUS_CODE_OK, 0,
+                        (int) seqCounter, (int) seqCounter,
+                        convertFloatToQFormat(randomAngle(random), 9, 7), 100,
+                        convertFloatToQFormat(randomAngle(random), 9, 7), 100);
+                return new UwbRangingData(seqCounter, SESSION_ID, 0, 200,
+                        mRangingMeasuresType, MAC_ADDRESSING_MODE_SHORT, 1,
+                        owrAoaMeasurement, new byte[0]);
+            case RANGING_MEASUREMENT_TYPE_DL_TDOA:
+                UwbDlTDoAMeasurement[] dlTDoAMeasurements =
+                        new UwbDlTDoAMeasurement[mNoOfRangingMeasures];
+                for (int i = 0; i < mNoOfRangingMeasures; i++) {
+                    dlTDoAMeasurements[i] = new UwbDlTDoAMeasurement(getMacAddress(i),
+                            UwbUciConstants.STATUS_CODE_OK, 1, 1331, (int) seqCounter, 1, 0,
+                            convertFloatToQFormat(randomAngle(random), 9, 7), 100,
+                            convertFloatToQFormat(randomAngle(random), 9, 7), 100,
+                            150, 500_000L, 600_000L, convertFloatToQFormat(12.5f, 6, 10),
+                            convertFloatToQFormat(15.5f, 6, 10), 500_000L, 300_000L, 500,
+                            new byte[0], new byte[] {0x02, 0x08});
+                }
+                return new UwbRangingData(seqCounter, SESSION_ID, 0, 200,
+                        mRangingMeasuresType, MAC_ADDRESSING_MODE_SHORT, mNoOfRangingMeasures,
+                        dlTDoAMeasurements, new byte[0]);
+            default:
+                UwbTwoWayMeasurement[] twoWayMeasurements =
+                        new UwbTwoWayMeasurement[mNoOfRangingMeasures];
+                for (int i = 0; i < mNoOfRangingMeasures; i++) {
+                    twoWayMeasurements[i] = new UwbTwoWayMeasurement(getMacAddress(i),
+                            UwbUciConstants.STATUS_CODE_OK, 0, 100 + random.nextInt(20),
+                            convertFloatToQFormat(randomAngle(random), 9, 7), 50,
+                            convertFloatToQFormat(randomAngle(random), 9, 7), 90,
+                            convertFloatToQFormat(randomAngle(random), 9, 7), 50,
+                            convertFloatToQFormat(randomAngle(random), 9, 7), 90, i, 150);
+                }
+                return new UwbRangingData(seqCounter, SESSION_ID, 0, 200,
+                        mRangingMeasuresType, MAC_ADDRESSING_MODE_SHORT, mNoOfRangingMeasures,
+                        twoWayMeasurements, new byte[0]);
+        }
+    }
+
+    private static byte[] getMacAddress(int index) {
+        return new byte[] {(byte) index, 0x37};
+    }
+
+    /** Returns an angle in degrees, jittering around a fixed direction. */
+    private static float randomAngle(Random random) {
+        return 30f + (float) random.nextGaussian() * 5f;
+    }
+
+    private static <T> T stubOnlyMock(Class<T> classToMock) {
+        return mock(classToMock, withSettings().stubOnly());
+    }
+
+    /** Callbacks which drop everything, standing in for the app binder. */
+    private static final class NoOpRangingCallbacks extends IUwbRangingCallbacks.Stub {
+        @Override
+        public void onRangingOpened(SessionHandle sessionHandle) {}
+
+        @Override
+        public void onRangingOpenFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingStarted(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onRangingStartFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingReconfigured(SessionHandle sessionHandle,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingReconfigureFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingStopped(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingStopFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingClosed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingResult(SessionHandle sessionHandle, RangingReport rangingReport) {}
+
+        @Override
+        public void onRangingResults(SessionHandle sessionHandle,
+                List<RangingReport> rangingReports) {}
+
+        @Override
+        public void onControleeAdded(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onControleeAddFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onControleeRemoved(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onControleeRemoveFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingPaused(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onRangingPauseFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onRangingResumed(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onRangingResumeFailed(SessionHandle sessionHandle, int reason,
+                PersistableBundle params) {}
+
+        @Override
+        public void onDataSent(SessionHandle sessionHandle, UwbAddress uwbAddress,
+                PersistableBundle params) {}
+
+        @Override
+        public void onDataSendFailed(SessionHandle sessionHandle, UwbAddress uwbAddress,
+                int reason, PersistableBundle params) {}
+
+        @Override
+        public void onDataTransferPhaseConfigured(SessionHandle sessionHandle,
+                PersistableBundle params) {}
+
+        @Override
+        public void onDataTransferPhaseConfigFailed(SessionHandle sessionHandle,
+                PersistableBundle params) {}
+
+        @Override
+        public void onDataReceived(SessionHandle sessionHandle, UwbAddress uwbAddress,
+                PersistableBundle params, byte[] data) {}
+
+        @Override
+        public void onDataReceiveFailed(SessionHandle sessionHandle, UwbAddress uwbAddress,
+                int reason, PersistableBundle params) {}
+
+        @Override
+        public void onServiceDiscovered(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onServiceConnected(SessionHandle sessionHandle, PersistableBundle params) {}
+
+        @Override
+        public void onRangingRoundsUpdateDtTagStatus(SessionHandle sessionHandle,
+                PersistableBundle params) {}
+    }
+}
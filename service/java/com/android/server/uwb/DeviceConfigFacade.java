@@ -16,6 +16,7 @@
 
 package com.android.server.uwb;
 
+import android.annotation.Nullable;
 import android.content.Context;
 import android.os.Handler;
 import android.provider.DeviceConfig;
@@ -23,6 +24,8 @@ import android.util.Log;
 
 import com.android.uwb.resources.R;
 
+import java.util.function.IntConsumer;
+
 /**
  * This class allows getting all configurable flags from DeviceConfig.
  */
@@ -36,6 +39,14 @@ public class DeviceConfigFacade {
     public static final int DEFAULT_RANGING_RESULT_LOG_INTERVAL_MS = 5_000;
     private static final int MS_IN_HOUR = 60 * 60 * 1000;
     public static final int DEFAULT_BUG_REPORT_MIN_INTERVAL_MS = 24 * MS_IN_HOUR;
+    public static final int DEFAULT_RANGE_DATA_NTF_BATCH_SIZE = 0;
+    public static final boolean DEFAULT_SESSION_COMMAND_PIPELINE_ENABLED = false;
+    public static final int DEFAULT_FILTER_OVERSAMPLING_INTERVAL_MS = 0;
+    public static final int DEFAULT_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE = 4096;
+    // Bounds of the FiRa Connector max message buffer size: the FiRa OOB 1.0 minimum, and the
+    // largest value of its 2 octet field in the FiRa Connector Capabilities.
+    private static final int MIN_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE = 263;
+    private static final int MAX_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE = 0xFFFF;
     private static final String TAG = "DeviceConfigFacadeUwb";
 
     public enum PoseSourceType {
@@ -101,6 +112,15 @@ public class DeviceConfigFacade {
     private boolean mCccSupportedRangeDataNtfConfig;
     private boolean mPersistentCacheUseForCountryCodeEnabled;
     private boolean mHwIdleTurnOffEnabled;
+    // Maximum number of range data notifications delivered per upcall from the native layer.
+    private int mRangeDataNtfBatchSize;
+    @Nullable private IntConsumer mRangeDataNtfBatchSizeListener;
+    // Flag to run the session commands of independent sessions concurrently.
+    private boolean mSessionCommandPipelineEnabled;
+    // Minimum interval between pose-driven predictions delivered between ranging rounds.
+    private int mFilterOversamplingIntervalMs;
+    // Maximum size of a FiRa Connector Message reassembled by the FiRa GATT server.
+    private int mFiraConnectorMaxMessageBufferSize;
 
     public DeviceConfigFacade(Handler handler, Context context) {
         mContext = context;
@@ -314,6 +334,27 @@ public class DeviceConfigFacade {
                 mContext.getResources().getBoolean(R.bool.hw_idle_turn_off_enabled)
         );
 
+        int rangeDataNtfBatchSize = Math.max(0, DeviceConfig.getInt(DeviceConfig.NAMESPACE_UWB,
+                "range_data_ntf_batch_size", DEFAULT_RANGE_DATA_NTF_BATCH_SIZE));
+        if (rangeDataNtfBatchSize != mRangeDataNtfBatchSize) {
+            mRangeDataNtfBatchSize = rangeDataNtfBatchSize;
+            if (mRangeDataNtfBatchSizeListener != null) {
+                mRangeDataNtfBatchSizeListener.accept(rangeDataNtfBatchSize);
+            }
+        }
+
+        mSessionCommandPipelineEnabled = DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_UWB,
+                "session_command_pipeline_enabled", DEFAULT_SESSION_COMMAND_PIPELINE_ENABLED);
+
+        mFilterOversamplingIntervalMs = Math.max(0, DeviceConfig.getInt(
+                DeviceConfig.NAMESPACE_UWB, "filter_oversampling_interval_ms",
+                DEFAULT_FILTER_OVERSAMPLING_INTERVAL_MS));
+
+        mFiraConnectorMaxMessageBufferSize = Math.min(MAX_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE,
+                Math.max(MIN_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE, DeviceConfig.getInt(
+                        DeviceConfig.NAMESPACE_UWB, "fira_connector_max_message_buffer_size",
+                        DEFAULT_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE)));
+
         // A little parsing and cleanup:
         mFrontAzimuthRadiansPerSecond = (float) Math.toRadians(frontAzimuthDegreesPerSecond);
         mBackAzimuthRadiansPerSecond = (float) Math.toRadians(backAzimuthDegreesPerSecond);
@@ -618,4 +659,44 @@ public class DeviceConfigFacade {
     public boolean isHwIdleTurnOffEnabled() {
         return mHwIdleTurnOffEnabled;
     }
+
+    /**
+     * Gets the maximum number of range data notifications the native layer delivers per upcall.
+     * 0 delivers each notification as its own {@code UwbRangingData} object.
+     */
+    public int getRangeDataNtfBatchSize() {
+        return mRangeDataNtfBatchSize;
+    }
+
+    /**
+     * Sets the listener notified when the range data notification batch size changes, so the new
+     * size can be applied to the native layer without waiting for the next UWB enable.
+     */
+    public void setRangeDataNtfBatchSizeListener(@Nullable IntConsumer listener) {
+        mRangeDataNtfBatchSizeListener = listener;
+    }
+
+    /**
+     * Returns whether the commands of different sessions may be in flight concurrently, instead
+     * of being serialized on the session manager looper.
+     */
+    public boolean isSessionCommandPipelineEnabled() {
+        return mSessionCommandPipelineEnabled;
+    }
+
+    /**
+     * Gets the minimum interval between the measurements predicted by the filter engine as the
+     * pose changes between ranging rounds. 0 disables these predictions.
+     */
+    public int getFilterOversamplingIntervalMs() {
+        return mFilterOversamplingIntervalMs;
+    }
+
+    /**
+     * Gets the maximum size of a FiRa Connector Message the FiRa GATT server reassembles, which it
+     * advertises in its FiRa Connector Capabilities.
+     */
+    public int getFiraConnectorMaxMessageBufferSize() {
+        return mFiraConnectorMaxMessageBufferSize;
+    }
 }
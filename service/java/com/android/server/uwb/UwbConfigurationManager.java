@@ -18,6 +18,7 @@ package com.android.server.uwb;
 import android.util.Log;
 import android.util.Pair;
 
+import com.android.server.uwb.config.ConfigParam;
 import com.android.server.uwb.data.UwbConfigStatusData;
 import com.android.server.uwb.data.UwbTlvData;
 import com.android.server.uwb.data.UwbUciConstants;
@@ -31,11 +32,21 @@ import com.google.uwb.support.base.Params;
 import com.google.uwb.support.base.ProtocolVersion;
 import com.google.uwb.support.radar.RadarParams;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class UwbConfigurationManager {
     private static final String TAG = "UwbConfManager";
 
+    private static final ThreadLocal<byte[]> sAppConfigBuffer =
+            ThreadLocal.withInitial(() -> new byte[TlvBuffer.MAX_BUFFER_SIZE]);
+
     private final NativeUwbManager mNativeUwbManager;
     private final UwbInjector mUwbInjector;
+    // App configurations last accepted by the UWBS, keyed by chip ID and session ID.
+    private final Map<Pair<String, Integer>, AppConfigSnapshot> mAppConfigSnapshots =
+            new ConcurrentHashMap<>();
 
     public UwbConfigurationManager(NativeUwbManager nativeUwbManager, UwbInjector uwbInjector) {
         mNativeUwbManager = nativeUwbManager;
@@ -44,6 +55,9 @@ public class UwbConfigurationManager {
 
     /**
      * Set app configurations.
+     *
+     * <p>Only the app configurations which differ from the ones last accepted by the UWBS for the
+     * session are sent. If none of them changed, no command is sent at all.
      */
     public int setAppConfigurations(int sessionId, Params params, String chipId,
                                     ProtocolVersion protocolVersion) {
@@ -57,19 +71,30 @@ public class UwbConfigurationManager {
             return status;
         }
 
-        tlvBuffer = encoder.getTlvBuffer(params, protocolVersion);
+        // The native call consumes the TLVs before returning, so encode them straight into this
+        // thread's reusable buffer rather than allocating a new array for every configuration.
+        tlvBuffer = encoder.getTlvBuffer(params, protocolVersion, sAppConfigBuffer.get());
+
+        Pair<String, Integer> snapshotKey = Pair.create(chipId, sessionId);
+        AppConfigSnapshot snapshot = mAppConfigSnapshots.get(snapshotKey);
+        if (snapshot != null) {
+            int noOfParams = tlvBuffer.getNoOfParams();
+            tlvBuffer = snapshot.removeUnchanged(tlvBuffer);
+            Log.d(TAG, "setAppConfigurations sending " + tlvBuffer.getNoOfParams() + " of "
+                    + noOfParams + " params");
+        }
 
         if (tlvBuffer.getNoOfParams() != 0) {
-            byte[] tlvByteArray = tlvBuffer.getByteArray();
+            byte[] tlvByteArray = tlvBuffer.getArray();
             UwbConfigStatusData appConfig;
             if (params.getProtocolName().equals(RadarParams.PROTOCOL_NAME)) {
                 appConfig = mNativeUwbManager.setRadarAppConfigurations(sessionId,
                     tlvBuffer.getNoOfParams(),
-                    tlvByteArray.length, tlvByteArray, chipId);
+                    tlvBuffer.getLength(), tlvByteArray, chipId);
             } else {
                 appConfig = mNativeUwbManager.setAppConfigurations(sessionId,
                     tlvBuffer.getNoOfParams(),
-                    tlvByteArray.length, tlvByteArray, chipId);
+                    tlvBuffer.getLength(), tlvByteArray, chipId);
             }
             if (appConfig != null) {
                 Log.i(TAG, "setAppConfigurations respData: " + appConfig);
@@ -78,6 +103,16 @@ public class UwbConfigurationManager {
                 Log.e(TAG, "appConfigList is null or size of appConfigList is zero");
                 status = UwbUciConstants.STATUS_CODE_FAILED;
             }
+            if (status == UwbUciConstants.STATUS_CODE_OK) {
+                if (snapshot == null) {
+                    snapshot = new AppConfigSnapshot();
+                    mAppConfigSnapshots.put(snapshotKey, snapshot);
+                }
+                snapshot.update(tlvBuffer);
+            } else {
+                // Some of the configurations may have been applied, send all of them next time.
+                mAppConfigSnapshots.remove(snapshotKey);
+            }
         } else {
             // Number of reconfig params FiraRangingReconfigureParams can be null
             status = UwbUciConstants.STATUS_CODE_OK;
@@ -85,6 +120,27 @@ public class UwbConfigurationManager {
         return status;
     }
 
+    /**
+     * Forgets the app configurations of a session, which must be called once the session is
+     * deinitialized so that the next session with the same ID is configured from scratch.
+     */
+    public void clearAppConfigurations(int sessionId, String chipId) {
+        mAppConfigSnapshots.remove(Pair.create(chipId, sessionId));
+    }
+
+    /**
+     * Forgets the app configurations describing the controlees of a session, which must be called
+     * on a controller multicast list update. The UWBS updates them itself, so they are sent again
+     * the next time the session is configured.
+     */
+    public void clearControleeConfigurations(int sessionId, String chipId) {
+        AppConfigSnapshot snapshot = mAppConfigSnapshots.get(Pair.create(chipId, sessionId));
+        if (snapshot != null) {
+            snapshot.clear(ConfigParam.NUMBER_OF_CONTROLEES);
+            snapshot.clear(ConfigParam.DST_MAC_ADDRESS);
+        }
+    }
+
     /**
      * Retrieve app configurations from UWBS.
      */
@@ -149,4 +205,89 @@ public class UwbConfigurationManager {
         }
         return Pair.create(UwbUciConstants.STATUS_CODE_OK, params);
     }
+
+    /**
+     * Values of the app configurations last accepted by the UWBS for one session, indexed by tag.
+     */
+    private static class AppConfigSnapshot {
+        private final byte[][] mValues = new byte[256][];
+
+        /**
+         * Returns whether the TLV must be sent even if its value did not change, as the UWBS
+         * updates the value itself while ranging.
+         */
+        private static boolean isAlwaysSent(int tag) {
+            return tag == ConfigParam.STS_INDEX;
+        }
+
+        /**
+         * Drops the TLVs whose value is the one already accepted by the UWBS. The remaining TLVs
+         * are compacted in place, in the backing array of {@code tlvBuffer}.
+         */
+        TlvBuffer removeUnchanged(TlvBuffer tlvBuffer) {
+            byte[] array = tlvBuffer.getArray();
+            int length = tlvBuffer.getLength();
+            int readPosition = 0;
+            int writePosition = 0;
+            int readParams = 0;
+            int noOfParams = 0;
+            while (readPosition + 2 <= length) {
+                int tag = array[readPosition] & 0xFF;
+                int valueLength = array[readPosition + 1] & 0xFF;
+                int tlvLength = 2 + valueLength;
+                if (readPosition + tlvLength > length) {
+                    // Malformed, leave the rest to the UWBS.
+                    break;
+                }
+                if (isAlwaysSent(tag)
+                        || !valueEquals(mValues[tag], array, readPosition + 2, valueLength)) {
+                    System.arraycopy(array, readPosition, array, writePosition, tlvLength);
+                    writePosition += tlvLength;
+                    noOfParams++;
+                }
+                readPosition += tlvLength;
+                readParams++;
+            }
+            if (readPosition < length) {
+                int remaining = length - readPosition;
+                System.arraycopy(array, readPosition, array, writePosition, remaining);
+                writePosition += remaining;
+                noOfParams += tlvBuffer.getNoOfParams() - readParams;
+            }
+            return new TlvBuffer(array, writePosition, noOfParams);
+        }
+
+        private static boolean valueEquals(byte[] value, byte[] array, int offset, int length) {
+            if (value == null || value.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (value[i] != array[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Forgets the value of a TLV, which is then sent whatever its value. */
+        void clear(int tag) {
+            mValues[tag] = null;
+        }
+
+        /** Records the values of the TLVs accepted by the UWBS. */
+        void update(TlvBuffer tlvBuffer) {
+            byte[] array = tlvBuffer.getArray();
+            int length = tlvBuffer.getLength();
+            int position = 0;
+            while (position + 2 <= length) {
+                int tag = array[position] & 0xFF;
+                int valueLength = array[position + 1] & 0xFF;
+                if (position + 2 + valueLength > length) {
+                    break;
+                }
+                mValues[tag] = Arrays.copyOfRange(array, position + 2, position + 2 + valueLength);
+                position += 2 + valueLength;
+            }
+        }
+    }
 }
@@ -27,6 +27,8 @@ import android.uwb.UwbAddress;
 import com.android.server.uwb.correction.UwbFilterEngine;
 import com.android.server.uwb.correction.math.SphericalVector;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Represents a remote controlee that is involved in a session.
  */
@@ -37,9 +39,23 @@ public class UwbControlee implements AutoCloseable {
     private final UwbFilterEngine mEngine;
     /** Error value to use when the engine produces a result that wasn't in the original reading. */
     private static final double DEFAULT_ERROR_DISTANCE = 0.0;
-    private long mLastMeasurementInstant;
+    // Also read by pose-driven predictions, which run on the pose source's thread.
+    private volatile long mLastMeasurementInstant;
+    private volatile RangingMeasurement mLastRawMeasurement;
     private long mPredictionTimeoutMilli = 3000;
 
+    /**
+     * Receives the measurements predicted from pose changes between ranging rounds.
+     */
+    public interface PredictedMeasurementListener {
+        /**
+         * Called when a pose change produced a new measurement for the controlee.
+         *
+         * @param measurement The predicted measurement.
+         */
+        void onPredictedMeasurement(@NonNull RangingMeasurement measurement);
+    }
+
     /**
      * Creates a new UwbControlee.
      *
@@ -70,6 +86,41 @@ public class UwbControlee implements AutoCloseable {
         return mUwbAddress;
     }
 
+    /**
+     * Reports measurements predicted from pose changes between ranging rounds, at most once
+     * every {@code minIntervalMs}. This has no effect if the filter engine is not configured.
+     *
+     * @param minIntervalMs The minimum time between two measurements, including the measured ones.
+     * @param listener Receives the predicted measurements.
+     */
+    public void enablePredictions(
+            long minIntervalMs, @NonNull PredictedMeasurementListener listener) {
+        if (mEngine == null || minIntervalMs <= 0) {
+            return;
+        }
+        mEngine.setPredictionListener(
+                (prediction, timeMs) -> onPrediction(prediction, timeMs, listener),
+                minIntervalMs,
+                this::getTime);
+    }
+
+    private void onPrediction(SphericalVector.Annotated prediction, long timeMs,
+            PredictedMeasurementListener listener) {
+        RangingMeasurement rawMeasurement = mLastRawMeasurement;
+        if (rawMeasurement == null
+                || timeMs - mPredictionTimeoutMilli > mLastMeasurementInstant) {
+            // Don't extrapolate from a measurement that is too old.
+            return;
+        }
+        RangingMeasurement.Builder rmBuilder = new RangingMeasurement.Builder()
+                .setRemoteDeviceAddress(rawMeasurement.getRemoteDeviceAddress())
+                .setElapsedRealtimeNanos(TimeUnit.MILLISECONDS.toNanos(timeMs))
+                .setLineOfSight(rawMeasurement.getLineOfSight())
+                .setMeasurementFocus(rawMeasurement.getMeasurementFocus());
+        updateBuilder(rmBuilder, rawMeasurement, prediction);
+        listener.onPredictedMeasurement(rmBuilder.build());
+    }
+
     /** Shuts down any controlee-specific work. */
     @Override
     public void close() {
@@ -97,6 +148,7 @@ public class UwbControlee implements AutoCloseable {
             }
         } else {
             mLastMeasurementInstant = getTime();
+            mLastRawMeasurement = rawMeasurement;
         }
 
         // Gather az/el/dist
@@ -64,17 +64,18 @@ import com.android.server.uwb.data.ServiceProfileData;
 import com.android.server.uwb.jni.NativeUwbManager;
 import com.android.server.uwb.multchip.UwbMultichipData;
 import com.android.server.uwb.pm.ProfileManager;
+import com.android.server.uwb.secure.SecureSessionCache;
+import com.android.server.uwb.util.UwbCommandExecutor;
 import com.android.uwb.flags.FeatureFlags;
 
 import java.io.File;
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -112,9 +113,12 @@ public class UwbInjector {
     private final UwbMultichipData mUwbMultichipData;
     private final SystemBuildProperties mSystemBuildProperties;
     private final UwbDiagnostics mUwbDiagnostics;
+    private final SecureSessionCache mSecureSessionCache;
     private IPoseSource mDefaultPoseSource;
     private final ReentrantLock mPoseLock = new ReentrantLock();
     private int mPoseSourceRefCount = 0;
+    // UCI command executors, keyed by chip ID.
+    private final Map<String, UwbCommandExecutor> mCommandExecutors = new ConcurrentHashMap<>();
 
     private final UwbSessionManager mUwbSessionManager;
     private final FeatureFlags mFeatureFlags;
@@ -143,6 +147,8 @@ public class UwbInjector {
                 new UwbCountryCode(mContext, mNativeUwbManager, new Handler(mLooper), this);
         mUwbMetrics = new UwbMetrics(this);
         mDeviceConfigFacade = new DeviceConfigFacade(new Handler(mLooper), mContext);
+        mDeviceConfigFacade.setRangeDataNtfBatchSizeListener(
+                mNativeUwbManager::setRangeDataNtfBatchSize);
         UwbConfigurationManager uwbConfigurationManager =
                 new UwbConfigurationManager(mNativeUwbManager, this);
         UwbSessionNotificationManager uwbSessionNotificationManager =
@@ -159,6 +165,8 @@ public class UwbInjector {
                 mUwbCountryCode, mUwbSessionManager, uwbConfigurationManager, this, mLooper);
         mSystemBuildProperties = new SystemBuildProperties();
         mUwbDiagnostics = new UwbDiagnostics(mContext, this, mSystemBuildProperties);
+        mSecureSessionCache = new SecureSessionCache(SecureSessionCache.DEFAULT_MAX_ENTRIES,
+                SecureSessionCache.DEFAULT_TIME_TO_LIVE_MILLIS, this::getElapsedSinceBootMillis);
         mFeatureFlags = new com.android.uwb.flags.FeatureFlagsImpl();
     }
 
@@ -225,6 +233,10 @@ public class UwbInjector {
         return mUwbDiagnostics;
     }
 
+    public SecureSessionCache getSecureSessionCache() {
+        return mSecureSessionCache;
+    }
+
     public UwbSessionManager getUwbSessionManager() {
         return mUwbSessionManager;
     }
@@ -485,17 +497,43 @@ public class UwbInjector {
         }
     }
 
-    /* Helps to mock the executor for tests */
-    public int runTaskOnSingleThreadExecutor(FutureTask<Integer> task, int timeoutMs)
+    /**
+     * Runs the task on the command executor of the given UWBS and waits up to {@code timeoutMs}
+     * for its result. Helps to mock the executor for tests.
+     */
+    public <T> T runTaskOnCommandExecutor(FutureTask<T> task, int timeoutMs, String chipId)
             throws InterruptedException, TimeoutException, ExecutionException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.submit(task);
-        try {
-            return task.get(timeoutMs, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            executor.shutdownNow();
-            throw e;
+        return getCommandExecutor(chipId).execute(task, timeoutMs);
+    }
+
+    private UwbCommandExecutor getCommandExecutor(String chipId) {
+        if (chipId == null) {
+            chipId = getMultichipData().getDefaultChipId();
+        }
+        return mCommandExecutors.computeIfAbsent(chipId,
+                id -> new UwbCommandExecutor("UwbCommand-" + id));
+    }
+
+    /**
+     * Shuts down the per-chip command executors once the UWB stack is turned off, cancelling any
+     * queued command. New executors are created on demand when the stack is turned on again.
+     */
+    public void shutdownCommandExecutors() {
+        for (String chipId : mCommandExecutors.keySet()) {
+            UwbCommandExecutor executor = mCommandExecutors.remove(chipId);
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /** Dumps the statistics of the per-chip command executors. */
+    public void dumpCommandExecutors(PrintWriter pw) {
+        pw.println("---- Dump of UwbCommandExecutors ----");
+        for (UwbCommandExecutor executor : mCommandExecutors.values()) {
+            executor.dump(pw);
         }
+        pw.println("---- Dump of UwbCommandExecutors ----");
     }
 
     /**
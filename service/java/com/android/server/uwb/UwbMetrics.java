@@ -37,8 +37,13 @@ import com.google.uwb.support.fira.FiraParams;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class to collect and report UWB metrics.
@@ -49,6 +54,7 @@ public class UwbMetrics {
     private static final int MAX_STATE_CHANGES = 20;
     private static final int MAX_RANGING_SESSIONS = 128;
     private static final int MAX_RANGING_REPORTS = 1024;
+    private static final int MAX_RANGING_REPORTS_PER_SESSION = 256;
     public static final int INVALID_DISTANCE = 0xFFFF;
     private static final int ONE_SECOND_IN_MS = 1000;
     private static final int TEN_SECOND_IN_MS = 10 * 1000;
@@ -63,9 +69,14 @@ public class UwbMetrics {
     private final Deque<UwbStateChangeInfo> mUwbStateChangeInfoList = new ArrayDeque<>();
     private final Deque<RangingSessionStats> mRangingSessionList = new ArrayDeque<>();
     private final SparseArray<RangingSessionStats> mOpenedSessionMap = new SparseArray<>();
-    private final Deque<RangingReportEvent> mRangingReportList = new ArrayDeque<>();
+    // Ranging reports of open sessions, replaced rather than modified so that ranging results
+    // can be logged without holding mLock.
+    private volatile SparseArray<RangingReportBuffer> mOpenedSessionReports = new SparseArray<>();
+    // Ranging reports of closed sessions.
+    private final RangingReportBuffer mClosedSessionReports =
+            new RangingReportBuffer(MAX_RANGING_REPORTS, null);
     private int mNumApps = 0;
-    private long mLastRangingDataLogTimeMs;
+    private final AtomicLong mLastRangingDataLogTimeMs = new AtomicLong();
     private final Object mLock = new Object();
 
     public class UwbStateChangeInfo {
@@ -102,14 +113,14 @@ public class UwbMetrics {
         private int mSessionId;
         private int mChannel = 9;
         private long mInitTimeWallClockMs;
-        private long mStartTimeSinceBootMs;
+        private volatile long mStartTimeSinceBootMs;
         private int mInitLatencyMs;
         private int mInitStatus;
         private int mRangingStatus;
         private int mActiveDuration;
-        private int mRangingCount;
-        private int mValidRangingCount;
-        private boolean mHasValidRangingSinceStart;
+        private final AtomicInteger mRangingCount = new AtomicInteger();
+        private final AtomicInteger mValidRangingCount = new AtomicInteger();
+        private final AtomicBoolean mHasValidRangingSinceStart = new AtomicBoolean();
         private int mStartCount;
         private int mStartFailureCount;
         private int mStartNoValidReportCount;
@@ -125,7 +136,7 @@ public class UwbMetrics {
         private int mRxErrorCount;
         private int mTxErrorCount;
         private int mRxToUpperLayerCount;
-        private int mRangingType = UwbStatsLog
+        private volatile int mRangingType = UwbStatsLog
                 .UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__TYPE_UNKNOWN;
         private int mFilterConfigValue = composeFilterConfigValue();
         private AttributionSource mAttributionSource;
@@ -254,8 +265,8 @@ public class UwbMetrics {
                 sb.append(", sessionId=").append(mSessionId);
                 sb.append(", initLatencyMs=").append(mInitLatencyMs);
                 sb.append(", activeDurationMs=").append(mActiveDuration);
-                sb.append(", rangingCount=").append(mRangingCount);
-                sb.append(", validRangingCount=").append(mValidRangingCount);
+                sb.append(", rangingCount=").append(mRangingCount.get());
+                sb.append(", validRangingCount=").append(mValidRangingCount.get());
                 sb.append(", startCount=").append(mStartCount);
                 sb.append(", startFailureCount=").append(mStartFailureCount);
                 sb.append(", startNoValidReportCount=").append(mStartNoValidReportCount);
@@ -279,104 +290,135 @@ public class UwbMetrics {
         }
     }
 
-    private class RangingReportEvent {
-        private int mSessionId;
-        private int mNlos;
-        private int mDistanceCm = INVALID_DISTANCE;
-        private int mAzimuthDegree;
-        private int mAzimuthFom;
-        private int mElevationDegree;
-        private int mElevationFom;
-        private int mRssiDbm = RangingMeasurement.RSSI_UNKNOWN;
-        private int mRangingType;
-        private int mFilteredDistanceCm = INVALID_DISTANCE;
-        private int mFilteredAzimuthDegree;
-        private int mFilteredAzimuthFom;
-        private int mFilteredElevationDegree;
-        private int mFilteredElevationFom;
-        private long mWallClockMillis = mUwbInjector.getWallClockMillis();;
-        private boolean mIsStatusOk;
-
-        RangingReportEvent(UwbTwoWayMeasurement measurement) {
-            mNlos = convertNlos(measurement.getNLoS());
-            mDistanceCm = measurement.getDistance();
-            mAzimuthDegree = (int) measurement.getAoaAzimuth();
-            mAzimuthFom = measurement.getAoaAzimuthFom();
-            mElevationDegree = (int) measurement.getAoaElevation();
-            mElevationFom = measurement.getAoaElevationFom();
-            mRssiDbm = measurement.getRssi();
-            mRangingType = UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__TWO_WAY;
-            mIsStatusOk = measurement.isStatusCodeOk();
-        }
-
-        RangingReportEvent(UwbDlTDoAMeasurement measurement) {
-            mNlos = convertNlos(measurement.getNLoS());
-            mAzimuthDegree = (int) measurement.getAoaAzimuth();
-            mAzimuthFom = measurement.getAoaAzimuthFom();
-            mElevationDegree = (int) measurement.getAoaElevation();
-            mElevationFom = measurement.getAoaElevationFom();
-            mRssiDbm = measurement.getRssi();
-            mRangingType = UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__DL_TDOA;
-            mIsStatusOk = measurement.getStatus() == UwbUciConstants.STATUS_CODE_OK;
-        }
-
-        RangingReportEvent(UwbOwrAoaMeasurement measurement) {
-            mNlos = convertNlos(measurement.getNLoS());
-            mAzimuthDegree = (int) measurement.getAoaAzimuth();
-            mAzimuthFom = measurement.getAoaAzimuthFom();
-            mElevationDegree = (int) measurement.getAoaElevation();
-            mElevationFom = measurement.getAoaElevationFom();
-            mRangingType = UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__OWR_AOA;
-            mIsStatusOk = measurement.getRangingStatus() == UwbUciConstants.STATUS_CODE_OK;
-        }
-
-        private void addFilteredResults(RangingMeasurement filteredRangingMeasurement) {
-            if (filteredRangingMeasurement == null) {
-                return;
-            }
-            if (filteredRangingMeasurement.getDistanceMeasurement() != null) {
-                mFilteredDistanceCm = (int) (filteredRangingMeasurement
-                        .getDistanceMeasurement().getMeters() * 100);
-            }
-            if (filteredRangingMeasurement.getAngleOfArrivalMeasurement() != null) {
-                mFilteredAzimuthDegree = (int) Math.toDegrees(filteredRangingMeasurement
-                        .getAngleOfArrivalMeasurement().getAzimuth().getRadians());
-                mFilteredAzimuthFom = (int) (filteredRangingMeasurement
-                        .getAngleOfArrivalMeasurement().getAzimuth()
-                        .getConfidenceLevel() * 100);
-                mFilteredElevationDegree = (int) Math.toDegrees(filteredRangingMeasurement
-                        .getAngleOfArrivalMeasurement().getAltitude().getRadians());
-                mFilteredElevationFom = (int) (filteredRangingMeasurement
-                        .getAngleOfArrivalMeasurement().getAltitude()
-                        .getConfidenceLevel() * 100);
-            }
-        }
-
-        @Override
-        public String toString() {
+    /**
+     * A fixed-capacity ring of ranging reports stored as primitive records.
+     *
+     * <p>Reports of a session are only written by the thread delivering its ranging
+     * notifications, so the writer does not lock: it fills the next slot and then publishes it
+     * by advancing the write count. Readers copy the published slots and then re-read the count
+     * to drop any slot the writer may have overwritten in the meantime.
+     */
+    private static class RangingReportBuffer {
+        private static final int SESSION_ID = 0;
+        private static final int NLOS = 1;
+        private static final int DISTANCE_CM = 2;
+        private static final int AZIMUTH_DEGREE = 3;
+        private static final int AZIMUTH_FOM = 4;
+        private static final int ELEVATION_DEGREE = 5;
+        private static final int ELEVATION_FOM = 6;
+        private static final int RSSI_DBM = 7;
+        private static final int RANGING_TYPE = 8;
+        private static final int FILTERED_DISTANCE_CM = 9;
+        private static final int FILTERED_AZIMUTH_DEGREE = 10;
+        private static final int FILTERED_AZIMUTH_FOM = 11;
+        private static final int FILTERED_ELEVATION_DEGREE = 12;
+        private static final int FILTERED_ELEVATION_FOM = 13;
+        private static final int FIELD_COUNT = 14;
+
+        private final int mCapacity;
+        private final int[] mFields;
+        private final long[] mWallClockMillis;
+        private final AtomicLong mWriteCount = new AtomicLong();
+        // Stats of the session owning the reports, null if the reports are from closed sessions.
+        private final RangingSessionStats mSession;
+        private int mPendingSlot;
+
+        RangingReportBuffer(int capacity, RangingSessionStats session) {
+            mCapacity = capacity;
+            mFields = new int[capacity * FIELD_COUNT];
+            mWallClockMillis = new long[capacity];
+            mSession = session;
+        }
+
+        /** Starts writing a report in the next slot, without publishing it yet. */
+        void begin(long wallClockMillis) {
+            mPendingSlot = (int) (mWriteCount.get() % mCapacity);
+            int base = mPendingSlot * FIELD_COUNT;
+            Arrays.fill(mFields, base, base + FIELD_COUNT, 0);
+            mFields[base + DISTANCE_CM] = INVALID_DISTANCE;
+            mFields[base + RSSI_DBM] = RangingMeasurement.RSSI_UNKNOWN;
+            mFields[base + FILTERED_DISTANCE_CM] = INVALID_DISTANCE;
+            mWallClockMillis[mPendingSlot] = wallClockMillis;
+        }
+
+        void set(int field, int value) {
+            mFields[mPendingSlot * FIELD_COUNT + field] = value;
+        }
+
+        int get(int field) {
+            return mFields[mPendingSlot * FIELD_COUNT + field];
+        }
+
+        /** Publishes the report started by {@link #begin(long)}. */
+        void commit() {
+            mWriteCount.lazySet(mWriteCount.get() + 1);
+        }
+
+        /** Returns the number of published reports still held. */
+        int size() {
+            return (int) Math.min(mWriteCount.get(), mCapacity);
+        }
+
+        /** Appends a consistent snapshot of the published reports to {@code dst}. */
+        void copyTo(RangingReportBuffer dst) {
+            long end = mWriteCount.get();
+            long start = Math.max(0, end - mCapacity);
+            int count = (int) (end - start);
+            int[] fields = new int[count * FIELD_COUNT];
+            long[] wallClockMillis = new long[count];
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((start + i) % mCapacity);
+                System.arraycopy(mFields, slot * FIELD_COUNT, fields, i * FIELD_COUNT,
+                        FIELD_COUNT);
+                wallClockMillis[i] = mWallClockMillis[slot];
+            }
+            // Slots of reports older than this may have been reused while copying.
+            long firstValid = Math.max(start, mWriteCount.get() + 1 - mCapacity);
+            for (int i = (int) (firstValid - start); i < count; i++) {
+                dst.begin(wallClockMillis[i]);
+                System.arraycopy(fields, i * FIELD_COUNT, dst.mFields,
+                        dst.mPendingSlot * FIELD_COUNT, FIELD_COUNT);
+                dst.commit();
+            }
+        }
+
+        /** Returns the slots of the held reports, oldest first by wall clock time. */
+        Integer[] getSlotsByTime() {
+            int size = size();
+            long end = mWriteCount.get();
+            Integer[] slots = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = (int) ((end - size + i) % mCapacity);
+            }
+            Arrays.sort(slots, Comparator.comparingLong(slot -> mWallClockMillis[slot]));
+            return slots;
+        }
+
+        String toString(int slot) {
+            int base = slot * FIELD_COUNT;
             StringBuilder sb = new StringBuilder();
             sb.append("time=");
             Calendar c = Calendar.getInstance();
-            synchronized (mLock) {
-                c.setTimeInMillis(mWallClockMillis);
-                sb.append(mWallClockMillis == 0 ? "            <null>" :
-                        String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c));
-                sb.append(", sessionId=").append(mSessionId);
-                sb.append(", Nlos=").append(mNlos);
-                sb.append(", DistanceCm=").append(mDistanceCm);
-                sb.append(", AzimuthDegree=").append(mAzimuthDegree);
-                sb.append(", AzimuthFom=").append(mAzimuthFom);
-                sb.append(", ElevationDegree=").append(mElevationDegree);
-                sb.append(", ElevationFom=").append(mElevationFom);
-                sb.append(", RssiDbm=").append(mRssiDbm);
-                sb.append(", FilteredDistanceCm=").append(mFilteredDistanceCm);
-                sb.append(", FilteredAzimuthDegree=").append(mFilteredAzimuthDegree);
-                sb.append(", FilteredAzimuthFom=").append(mFilteredAzimuthFom);
-                sb.append(", FilteredElevationDegree=").append(mFilteredElevationDegree);
-                sb.append(", FilteredElevationFom=").append(mFilteredElevationFom);
-                sb.append(", RangingType=").append(mRangingType);
-                return sb.toString();
-            }
+            c.setTimeInMillis(mWallClockMillis[slot]);
+            sb.append(mWallClockMillis[slot] == 0 ? "            <null>" :
+                    String.format("%tm-%td %tH:%tM:%tS.%tL", c, c, c, c, c, c));
+            sb.append(", sessionId=").append(mFields[base + SESSION_ID]);
+            sb.append(", Nlos=").append(mFields[base + NLOS]);
+            sb.append(", DistanceCm=").append(mFields[base + DISTANCE_CM]);
+            sb.append(", AzimuthDegree=").append(mFields[base + AZIMUTH_DEGREE]);
+            sb.append(", AzimuthFom=").append(mFields[base + AZIMUTH_FOM]);
+            sb.append(", ElevationDegree=").append(mFields[base + ELEVATION_DEGREE]);
+            sb.append(", ElevationFom=").append(mFields[base + ELEVATION_FOM]);
+            sb.append(", RssiDbm=").append(mFields[base + RSSI_DBM]);
+            sb.append(", FilteredDistanceCm=").append(mFields[base + FILTERED_DISTANCE_CM]);
+            sb.append(", FilteredAzimuthDegree=")
+                    .append(mFields[base + FILTERED_AZIMUTH_DEGREE]);
+            sb.append(", FilteredAzimuthFom=").append(mFields[base + FILTERED_AZIMUTH_FOM]);
+            sb.append(", FilteredElevationDegree=")
+                    .append(mFields[base + FILTERED_ELEVATION_DEGREE]);
+            sb.append(", FilteredElevationFom=").append(mFields[base + FILTERED_ELEVATION_FOM]);
+            sb.append(", RangingType=").append(mFields[base + RANGING_TYPE]);
+            return sb.toString();
         }
     }
 
@@ -421,6 +463,11 @@ public class UwbMetrics {
             session.convertInitStatus(status);
             mRangingSessionList.add(session);
             mOpenedSessionMap.put(uwbSession.getSessionId(), session);
+            closeSessionReports(uwbSession.getSessionId());
+            SparseArray<RangingReportBuffer> reports = mOpenedSessionReports.clone();
+            reports.put(uwbSession.getSessionId(),
+                    new RangingReportBuffer(MAX_RANGING_REPORTS_PER_SESSION, session));
+            mOpenedSessionReports = reports;
             if (status != UwbUciConstants.STATUS_CODE_OK) {
                 takBugReportSessionInitError("UWB Bugreport: session init failed reason " + status);
             }
@@ -453,7 +500,7 @@ public class UwbMetrics {
             if (status != UwbUciConstants.STATUS_CODE_OK) {
                 session.mStartFailureCount++;
                 session.mStartTimeSinceBootMs = 0;
-                session.mHasValidRangingSinceStart = false;
+                session.mHasValidRangingSinceStart.set(false);
                 return;
             }
             session.mStartTimeSinceBootMs = mUwbInjector.getElapsedSinceBootMillis();
@@ -478,10 +525,9 @@ public class UwbMetrics {
             if (session.mStartTimeSinceBootMs == 0) {
                 return;
             }
-            if (!session.mHasValidRangingSinceStart) {
+            if (!session.mHasValidRangingSinceStart.getAndSet(false)) {
                 session.mStartNoValidReportCount++;
             }
-            session.mHasValidRangingSinceStart = false;
             session.mActiveDuration += (int) (mUwbInjector.getElapsedSinceBootMillis()
                     - session.mStartTimeSinceBootMs);
             session.mStartTimeSinceBootMs = 0;
@@ -504,29 +550,41 @@ public class UwbMetrics {
             if (session.mStartTimeSinceBootMs != 0) {
                 session.mActiveDuration += (int) (mUwbInjector.getElapsedSinceBootMillis()
                         - session.mStartTimeSinceBootMs);
-                if (!session.mHasValidRangingSinceStart) {
+                if (!session.mHasValidRangingSinceStart.getAndSet(false)) {
                     session.mStartNoValidReportCount++;
                 }
                 session.mStartTimeSinceBootMs = 0;
-                session.mHasValidRangingSinceStart = false;
             }
 
             UwbStatsLog.write(UwbStatsLog.UWB_SESSION_CLOSED, uwbSession.getProfileType(),
                     session.mStsType, session.mIsInitiator,
                     session.mIsController, session.mIsDiscoveredByFramework, session.mIsOutOfBand,
                     session.mActiveDuration, getDurationBucket(session.mActiveDuration),
-                    session.mRangingCount, session.mValidRangingCount,
-                    getCountBucket(session.mRangingCount),
-                    getCountBucket(session.mValidRangingCount),
+                    session.mRangingCount.get(), session.mValidRangingCount.get(),
+                    getCountBucket(session.mRangingCount.get()),
+                    getCountBucket(session.mValidRangingCount.get()),
                     session.mStartCount,
                     session.mStartFailureCount,
                     session.mStartNoValidReportCount,
                     session.mRxPacketCount, session.mTxPacketCount, session.mRxErrorCount,
                     session.mTxErrorCount, session.mRxToUpperLayerCount, session.mRangingType);
             mOpenedSessionMap.delete(uwbSession.getSessionId());
+            closeSessionReports(uwbSession.getSessionId());
         }
     }
 
+    /** Moves the ranging reports of a session to the closed session reports. */
+    private void closeSessionReports(int sessionId) {
+        RangingReportBuffer sessionReports = mOpenedSessionReports.get(sessionId);
+        if (sessionReports == null) {
+            return;
+        }
+        SparseArray<RangingReportBuffer> reports = mOpenedSessionReports.clone();
+        reports.delete(sessionId);
+        mOpenedSessionReports = reports;
+        sessionReports.copyTo(mClosedSessionReports);
+    }
+
     private int getDurationBucket(int durationMs) {
         if (durationMs <= ONE_SECOND_IN_MS) {
             return UwbStatsLog.UWB_SESSION_CLOSED__DURATION_BUCKET__WITHIN_ONE_SEC;
@@ -571,68 +629,74 @@ public class UwbMetrics {
 
     /**
      * Log the ranging measurement result
+     *
+     * <p>This is called for every ranging notification, so it does not take {@code mLock}: the
+     * report is written into the preallocated buffer of its session and only merged with the
+     * other reports when dumped.
      */
     public void logRangingResult(int profileType, UwbRangingData rawRangingData,
             RangingMeasurement filteredRangingMeasurement) {
-        synchronized (mLock) {
-            int rangingMeasuresType = rawRangingData.getRangingMeasuresType();
-            if (!SUPPORTED_RANGING_MEASUREMENT_TYPES.contains(rangingMeasuresType)
-                    || rawRangingData.getNoOfRangingMeasures() < 1) {
-                return;
-            }
-
-            int sessionId = (int) rawRangingData.getSessionId();
-            RangingSessionStats session = mOpenedSessionMap.get(sessionId);
-            if (session == null) {
-                return;
-            }
-            session.mRangingCount++;
-
-            RangingReportEvent report = getRangingReport(rangingMeasuresType, rawRangingData);
-            if (report == null) {
-                return;
-            }
-            report.mSessionId = sessionId;
-            session.mRangingType = report.mRangingType;
-
-            if (!report.mIsStatusOk) {
-                return;
-            }
-            report.addFilteredResults(filteredRangingMeasurement);
-
-            session.mValidRangingCount++;
-            if (!session.mHasValidRangingSinceStart) {
-                session.mHasValidRangingSinceStart = true;
-                writeFirstValidRangingResultSinceStart(profileType, session);
-            }
-
-            while (mRangingReportList.size() >= MAX_RANGING_REPORTS) {
-                mRangingReportList.removeFirst();
-            }
-            mRangingReportList.add(report);
-
-            long currTimeMs = mUwbInjector.getElapsedSinceBootMillis();
-            if ((currTimeMs - mLastRangingDataLogTimeMs) < mUwbInjector.getDeviceConfigFacade()
-                    .getRangingResultLogIntervalMs()) {
-                return;
-            }
-            mLastRangingDataLogTimeMs = currTimeMs;
-
-            boolean isDistanceValid = report.mDistanceCm != INVALID_DISTANCE;
-            boolean isAzimuthValid = report.mAzimuthFom > 0;
-            boolean isElevationValid = report.mElevationFom > 0;
-            int distance50Cm = isDistanceValid ? report.mDistanceCm / 50 : 0;
-            int azimuth10Degree = isAzimuthValid ? report.mAzimuthDegree / 10 : 0;
-            int elevation10Degree = isElevationValid ? report.mElevationDegree / 10 : 0;
-            UwbStatsLog.write(UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED,
-                    profileType, report.mNlos,
-                    isDistanceValid, report.mDistanceCm, distance50Cm, report.mRssiDbm,
-                    isAzimuthValid, report.mAzimuthDegree, azimuth10Degree, report.mAzimuthFom,
-                    isElevationValid, report.mElevationDegree, elevation10Degree,
-                    report.mElevationFom, session.mRangingType, report.mFilteredDistanceCm,
-                    report.mFilteredAzimuthDegree, report.mFilteredAzimuthFom,
-                    report.mFilteredElevationDegree, report.mFilteredElevationFom);
-        }
+        int rangingMeasuresType = rawRangingData.getRangingMeasuresType();
+        if (!SUPPORTED_RANGING_MEASUREMENT_TYPES.contains(rangingMeasuresType)
+                || rawRangingData.getNoOfRangingMeasures() < 1) {
+            return;
+        }
+
+        int sessionId = (int) rawRangingData.getSessionId();
+        RangingReportBuffer report = mOpenedSessionReports.get(sessionId);
+        if (report == null) {
+            return;
+        }
+        RangingSessionStats session = report.mSession;
+        session.mRangingCount.incrementAndGet();
+
+        report.begin(mUwbInjector.getWallClockMillis());
+        report.set(RangingReportBuffer.SESSION_ID, sessionId);
+        boolean isStatusOk = setRangingReport(report, rangingMeasuresType, rawRangingData);
+        session.mRangingType = report.get(RangingReportBuffer.RANGING_TYPE);
+        if (!isStatusOk) {
+            return;
+        }
+        setFilteredResults(report, filteredRangingMeasurement);
+
+        session.mValidRangingCount.incrementAndGet();
+        if (session.mHasValidRangingSinceStart.compareAndSet(false, true)) {
+            writeFirstValidRangingResultSinceStart(profileType, session);
+        }
+
+        report.commit();
+
+        long currTimeMs = mUwbInjector.getElapsedSinceBootMillis();
+        long lastLogTimeMs = mLastRangingDataLogTimeMs.get();
+        if ((currTimeMs - lastLogTimeMs) < mUwbInjector.getDeviceConfigFacade()
+                .getRangingResultLogIntervalMs()
+                || !mLastRangingDataLogTimeMs.compareAndSet(lastLogTimeMs, currTimeMs)) {
+            return;
+        }
+
+        int distanceCm = report.get(RangingReportBuffer.DISTANCE_CM);
+        int azimuthDegree = report.get(RangingReportBuffer.AZIMUTH_DEGREE);
+        int azimuthFom = report.get(RangingReportBuffer.AZIMUTH_FOM);
+        int elevationDegree = report.get(RangingReportBuffer.ELEVATION_DEGREE);
+        int elevationFom = report.get(RangingReportBuffer.ELEVATION_FOM);
+        boolean isDistanceValid = distanceCm != INVALID_DISTANCE;
+        boolean isAzimuthValid = azimuthFom > 0;
+        boolean isElevationValid = elevationFom > 0;
+        int distance50Cm = isDistanceValid ? distanceCm / 50 : 0;
+        int azimuth10Degree = isAzimuthValid ? azimuthDegree / 10 : 0;
+        int elevation10Degree = isElevationValid ? elevationDegree / 10 : 0;
+        UwbStatsLog.write(UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED,
+                profileType, report.get(RangingReportBuffer.NLOS),
+                isDistanceValid, distanceCm, distance50Cm,
+                report.get(RangingReportBuffer.RSSI_DBM),
+                isAzimuthValid, azimuthDegree, azimuth10Degree, azimuthFom,
+                isElevationValid, elevationDegree, elevation10Degree,
+                elevationFom, session.mRangingType,
+                report.get(RangingReportBuffer.FILTERED_DISTANCE_CM),
+                report.get(RangingReportBuffer.FILTERED_AZIMUTH_DEGREE),
+                report.get(RangingReportBuffer.FILTERED_AZIMUTH_FOM),
+                report.get(RangingReportBuffer.FILTERED_ELEVATION_DEGREE),
+                report.get(RangingReportBuffer.FILTERED_ELEVATION_FOM));
     }
 
     private void writeFirstValidRangingResultSinceStart(int profileType,
@@ -653,20 +717,79 @@ public class UwbMetrics {
         }
     }
 
-    private RangingReportEvent getRangingReport(int rangingType, UwbRangingData rangingData) {
+    /**
+     * Fills the pending report from the first measurement.
+     *
+     * @return whether the measurement status is OK
+     */
+    private boolean setRangingReport(RangingReportBuffer report, int rangingType,
+            UwbRangingData rangingData) {
         switch (rangingType) {
             case UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY:
-                UwbTwoWayMeasurement[] uwbTwoWayMeasurements =
-                        rangingData.getRangingTwoWayMeasures();
-                return new RangingReportEvent(uwbTwoWayMeasurements[0]);
+                UwbTwoWayMeasurement twoWayMeasurement = rangingData.getRangingTwoWayMeasures()[0];
+                setAngles(report, convertNlos(twoWayMeasurement.getNLoS()),
+                        twoWayMeasurement.getAoaAzimuth(), twoWayMeasurement.getAoaAzimuthFom(),
+                        twoWayMeasurement.getAoaElevation(),
+                        twoWayMeasurement.getAoaElevationFom());
+                report.set(RangingReportBuffer.DISTANCE_CM, twoWayMeasurement.getDistance());
+                report.set(RangingReportBuffer.RSSI_DBM, twoWayMeasurement.getRssi());
+                report.set(RangingReportBuffer.RANGING_TYPE,
+                        UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__TWO_WAY);
+                return twoWayMeasurement.isStatusCodeOk();
             case UwbUciConstants.RANGING_MEASUREMENT_TYPE_DL_TDOA:
-                UwbDlTDoAMeasurement[] uwbDlTDoAMeasurements =
-                        rangingData.getUwbDlTDoAMeasurements();
-                return new RangingReportEvent(uwbDlTDoAMeasurements[0]);
+                UwbDlTDoAMeasurement dlTDoAMeasurement = rangingData.getUwbDlTDoAMeasurements()[0];
+                setAngles(report, convertNlos(dlTDoAMeasurement.getNLoS()),
+                        dlTDoAMeasurement.getAoaAzimuth(), dlTDoAMeasurement.getAoaAzimuthFom(),
+                        dlTDoAMeasurement.getAoaElevation(),
+                        dlTDoAMeasurement.getAoaElevationFom());
+                report.set(RangingReportBuffer.RSSI_DBM, dlTDoAMeasurement.getRssi());
+                report.set(RangingReportBuffer.RANGING_TYPE,
+                        UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__DL_TDOA);
+                return dlTDoAMeasurement.getStatus() == UwbUciConstants.STATUS_CODE_OK;
             case UwbUciConstants.RANGING_MEASUREMENT_TYPE_OWR_AOA:
-                return new RangingReportEvent(rangingData.getRangingOwrAoaMeasure());
+                UwbOwrAoaMeasurement owrAoaMeasurement = rangingData.getRangingOwrAoaMeasure();
+                setAngles(report, convertNlos(owrAoaMeasurement.getNLoS()),
+                        owrAoaMeasurement.getAoaAzimuth(), owrAoaMeasurement.getAoaAzimuthFom(),
+                        owrAoaMeasurement.getAoaElevation(),
+                        owrAoaMeasurement.getAoaElevationFom());
+                report.set(RangingReportBuffer.RANGING_TYPE,
+                        UwbStatsLog.UWB_RANGING_MEASUREMENT_RECEIVED__RANGING_TYPE__OWR_AOA);
+                return owrAoaMeasurement.getRangingStatus() == UwbUciConstants.STATUS_CODE_OK;
             default:
-                return null;
+                return false;
+        }
+    }
+
+    private static void setAngles(RangingReportBuffer report, int nlos, float azimuth,
+            int azimuthFom, float elevation, int elevationFom) {
+        report.set(RangingReportBuffer.NLOS, nlos);
+        report.set(RangingReportBuffer.AZIMUTH_DEGREE, (int) azimuth);
+        report.set(RangingReportBuffer.AZIMUTH_FOM, azimuthFom);
+        report.set(RangingReportBuffer.ELEVATION_DEGREE, (int) elevation);
+        report.set(RangingReportBuffer.ELEVATION_FOM, elevationFom);
+    }
+
+    private static void setFilteredResults(RangingReportBuffer report,
+            RangingMeasurement filteredRangingMeasurement) {
+        if (filteredRangingMeasurement == null) {
+            return;
+        }
+        if (filteredRangingMeasurement.getDistanceMeasurement() != null) {
+            report.set(RangingReportBuffer.FILTERED_DISTANCE_CM, (int) (filteredRangingMeasurement
+                    .getDistanceMeasurement().getMeters() * 100));
+        }
+        if (filteredRangingMeasurement.getAngleOfArrivalMeasurement() != null) {
+            report.set(RangingReportBuffer.FILTERED_AZIMUTH_DEGREE, (int) Math.toDegrees(
+                    filteredRangingMeasurement.getAngleOfArrivalMeasurement().getAzimuth()
+                            .getRadians()));
+            report.set(RangingReportBuffer.FILTERED_AZIMUTH_FOM, (int) (filteredRangingMeasurement
+                    .getAngleOfArrivalMeasurement().getAzimuth().getConfidenceLevel() * 100));
+            report.set(RangingReportBuffer.FILTERED_ELEVATION_DEGREE, (int) Math.toDegrees(
+                    filteredRangingMeasurement.getAngleOfArrivalMeasurement().getAltitude()
+                            .getRadians()));
+            report.set(RangingReportBuffer.FILTERED_ELEVATION_FOM,
+                    (int) (filteredRangingMeasurement.getAngleOfArrivalMeasurement()
+                            .getAltitude().getConfidenceLevel() * 100));
         }
     }
 
@@ -780,9 +903,7 @@ public class UwbMetrics {
                 pw.println(mOpenedSessionMap.valueAt(i).toString());
             }
             pw.println("-- mRangingReportList --");
-            for (RangingReportEvent event: mRangingReportList) {
-                pw.println(event.toString());
-            }
+            dumpRangingReports(pw);
             pw.println("mNumApps=" + mNumApps);
             pw.println("-- Device operation success/error count --");
             pw.println("mNumDeviceInitSuccess = " + mNumDeviceInitSuccess);
@@ -793,4 +914,21 @@ public class UwbMetrics {
             pw.println("---- Dump of UwbMetrics ----");
         }
     }
+
+    private void dumpRangingReports(PrintWriter pw) {
+        SparseArray<RangingReportBuffer> openedSessionReports = mOpenedSessionReports;
+        int size = mClosedSessionReports.size();
+        for (int i = 0; i < openedSessionReports.size(); i++) {
+            size += openedSessionReports.valueAt(i).size();
+        }
+        RangingReportBuffer merged = new RangingReportBuffer(Math.max(size, 1), null);
+        mClosedSessionReports.copyTo(merged);
+        for (int i = 0; i < openedSessionReports.size(); i++) {
+            openedSessionReports.valueAt(i).copyTo(merged);
+        }
+        Integer[] slots = merged.getSlotsByTime();
+        for (int i = Math.max(0, slots.length - MAX_RANGING_REPORTS); i < slots.length; i++) {
+            pw.println(merged.toString(slots[i]));
+        }
+    }
 }
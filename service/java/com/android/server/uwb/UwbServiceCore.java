@@ -62,11 +62,13 @@ import com.android.server.uwb.jni.NativeUwbManager;
 import com.google.uwb.support.aliro.AliroOpenRangingParams;
 import com.google.uwb.support.aliro.AliroParams;
 import com.google.uwb.support.aliro.AliroRangingReconfiguredParams;
+import com.google.uwb.support.aliro.AliroSpecificationParams;
 import com.google.uwb.support.aliro.AliroStartRangingParams;
 import com.google.uwb.support.base.Params;
 import com.google.uwb.support.ccc.CccOpenRangingParams;
 import com.google.uwb.support.ccc.CccParams;
 import com.google.uwb.support.ccc.CccRangingReconfiguredParams;
+import com.google.uwb.support.ccc.CccSpecificationParams;
 import com.google.uwb.support.ccc.CccStartRangingParams;
 import com.google.uwb.support.fira.FiraControleeParams;
 import com.google.uwb.support.fira.FiraOpenSessionParams;
@@ -83,12 +85,15 @@ import com.google.uwb.support.radar.RadarParams;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeoutException;
@@ -142,10 +147,35 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
     private  IUwbVendorUciCallback mCallBack = null;
     private IUwbOemExtensionCallback mOemExtensionCallback = null;
     private final Handler mHandler;
-    private GenericSpecificationParams mCachedSpecificationParams;
-    private boolean mNeedCachedSpecParamsUpdate = true;
+    // Keyed by chip ID, the default chip is used for a null chip ID.
+    private final Map<String, CachedSpecification> mChipIdToCachedSpecificationMap =
+            new ConcurrentHashMap<>();
     private final Set<InitializationFailureListener> mListeners = new ArraySet<>();
 
+    /**
+     * Specification params of a UWB chip, with the values derived from them on every session open.
+     */
+    private static class CachedSpecification {
+        final GenericSpecificationParams mParams;
+        final long mMaxFiraSessionsNumber;
+        final long mMaxCccSessionsNumber;
+        final long mMaxAliroSessionsNumber;
+
+        CachedSpecification(GenericSpecificationParams params) {
+            mParams = params;
+            // Use the default max sessions values if the chip does not report them.
+            mMaxFiraSessionsNumber = params.getFiraSpecificationParams() != null
+                    ? params.getFiraSpecificationParams().getMaxRangingSessionNumber()
+                    : FiraSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
+            mMaxCccSessionsNumber = params.getCccSpecificationParams() != null
+                    ? params.getCccSpecificationParams().getMaxRangingSessionNumber()
+                    : CccSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
+            mMaxAliroSessionsNumber = params.getAliroSpecificationParams() != null
+                    ? params.getAliroSpecificationParams().getMaxRangingSessionNumber()
+                    : AliroSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
+        }
+    }
+
     /**
      * Wrapper class to hold {@link AttributionSource} and override it's equals
      * to remove the check for token since we want to uniquely identify client (not different binder
@@ -399,6 +429,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                 Log.e(TAG, "Error device status received. Restarting...");
                 mUwbMetrics.incrementDeviceStatusErrorCount();
                 takBugReportAfterDeviceError("UWB Bugreport: restarting UWB due to device error");
+                invalidateCachedSpecification(chipId);
                 mUwbTask.execute(TASK_RESTART);
                 oemExtensionDeviceStatusUpdate(deviceState, chipId);
                 return;
@@ -419,6 +450,10 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         Log.i(TAG, "updateDeviceState(): deviceState = " + getDeviceStateString(deviceState)
                 + ", current internal adapter state = " + getInternalAdapterState());
 
+        if (deviceState == UwbUciConstants.DEVICE_STATE_OFF) {
+            // The chip may come back with different capabilities, e.g. after a firmware update.
+            invalidateCachedSpecification(chipId);
+        }
         updateState(getAdapterStateFromDeviceState(deviceState), chipId);
         oemExtensionDeviceStatusUpdate(deviceState, chipId);
     }
@@ -517,7 +552,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                 countryCode,
                 Optional.of(setCountryCodeStatus));
         Log.d(TAG, "Resetting cached specifications");
-        mNeedCachedSpecParamsUpdate = true;
+        mChipIdToCachedSpecificationMap.clear();
     }
 
     public void registerAdapterStateCallbacks(IUwbAdapterStateCallbacks adapterStateCallbacks)
@@ -564,16 +599,53 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
     }
 
     /**
-     * Get cached specification params
+     * Get cached specification params of the given chip
      */
+    @Nullable
     public GenericSpecificationParams getCachedSpecificationParams(String chipId) {
-        if (mCachedSpecificationParams != null && !mNeedCachedSpecParamsUpdate) {
-            return mCachedSpecificationParams;
+        CachedSpecification cachedSpecification = getCachedSpecification(chipId);
+        return cachedSpecification != null ? cachedSpecification.mParams : null;
+    }
+
+    /** Returns max number of FIRA sessions possible on given chip. */
+    public long getMaxFiraSessionsNumber(String chipId) {
+        CachedSpecification cachedSpecification = getCachedSpecification(chipId);
+        return cachedSpecification != null ? cachedSpecification.mMaxFiraSessionsNumber
+                : FiraSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
+    }
+
+    /** Returns max number of CCC sessions possible on given chip. */
+    public long getMaxCccSessionsNumber(String chipId) {
+        CachedSpecification cachedSpecification = getCachedSpecification(chipId);
+        return cachedSpecification != null ? cachedSpecification.mMaxCccSessionsNumber
+                : CccSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
+    }
+
+    /** Returns max number of ALIRO sessions possible on given chip. */
+    public long getMaxAliroSessionsNumber(String chipId) {
+        CachedSpecification cachedSpecification = getCachedSpecification(chipId);
+        return cachedSpecification != null ? cachedSpecification.mMaxAliroSessionsNumber
+                : AliroSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
+    }
+
+    @Nullable
+    private CachedSpecification getCachedSpecification(String chipId) {
+        CachedSpecification cachedSpecification =
+                mChipIdToCachedSpecificationMap.get(getCachedSpecificationKey(chipId));
+        if (cachedSpecification != null) {
+            return cachedSpecification;
         }
         // If nothing in cache, populate it.
         getSpecificationInfo(chipId);
-        mNeedCachedSpecParamsUpdate = false;
-        return mCachedSpecificationParams;
+        return mChipIdToCachedSpecificationMap.get(getCachedSpecificationKey(chipId));
+    }
+
+    private void invalidateCachedSpecification(String chipId) {
+        mChipIdToCachedSpecificationMap.remove(getCachedSpecificationKey(chipId));
+    }
+
+    private String getCachedSpecificationKey(String chipId) {
+        return chipId != null ? chipId : mUwbInjector.getMultichipData().getDefaultChipId();
     }
 
     /**
@@ -612,7 +684,8 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                             .build();
             specificationParams.second.setFiraSpecificationParams(firaSpecificationParams);
         }
-        mCachedSpecificationParams = specificationParams.second;
+        mChipIdToCachedSpecificationMap.put(getCachedSpecificationKey(chipId),
+                new CachedSpecification(specificationParams.second));
         return specificationParams.second.toBundle();
     }
 
@@ -712,12 +785,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         if (!isUwbEnabled()) {
             throw new IllegalStateException("Uwb is not enabled");
         }
-        Params startRangingParams = null;
-        if (CccParams.isCorrectProtocol(params)) {
-            startRangingParams = CccStartRangingParams.fromBundle(params);
-        } else if (AliroParams.isCorrectProtocol(params)) {
-            startRangingParams = AliroStartRangingParams.fromBundle(params);
-        }
+        Params startRangingParams = getStartRangingParams(params);
 
         if (mUwbInjector.getProfileManager().hasSession(sessionHandle)) {
             mUwbInjector.getProfileManager().startRanging(sessionHandle);
@@ -726,6 +794,51 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         }
     }
 
+    /**
+     * Starts ranging for a group of sessions. The start requests of the sessions not managed by
+     * the profile manager are validated as a whole and issued together, then the sessions managed
+     * by the profile manager are started one by one.
+     *
+     * @throws IllegalArgumentException if the start parameters are CCC or ALIRO ones, which are
+     *                                  specific to each session.
+     */
+    public void startRangingGroup(List<SessionHandle> sessionHandles, PersistableBundle params)
+            throws IllegalStateException {
+        if (!isUwbEnabled()) {
+            throw new IllegalStateException("Uwb is not enabled");
+        }
+        if (getStartRangingParams(params) != null) {
+            // The STS index and RAN multiplier differ from one session to the other.
+            throw new IllegalArgumentException(
+                    "CCC and ALIRO start parameters are per session, start the sessions "
+                            + "one by one");
+        }
+
+        List<SessionHandle> sessionManagerHandles = new ArrayList<>(sessionHandles.size());
+        List<SessionHandle> profileManagerHandles = new ArrayList<>();
+        for (SessionHandle sessionHandle : sessionHandles) {
+            if (mUwbInjector.getProfileManager().hasSession(sessionHandle)) {
+                profileManagerHandles.add(sessionHandle);
+            } else {
+                sessionManagerHandles.add(sessionHandle);
+            }
+        }
+        mSessionManager.startRangingGroup(sessionManagerHandles);
+        for (SessionHandle sessionHandle : profileManagerHandles) {
+            mUwbInjector.getProfileManager().startRanging(sessionHandle);
+        }
+    }
+
+    @Nullable
+    private static Params getStartRangingParams(PersistableBundle params) {
+        if (CccParams.isCorrectProtocol(params)) {
+            return CccStartRangingParams.fromBundle(params);
+        } else if (AliroParams.isCorrectProtocol(params)) {
+            return AliroStartRangingParams.fromBundle(params);
+        }
+        return null;
+    }
+
     public void reconfigureRanging(SessionHandle sessionHandle, PersistableBundle params) {
         if (!isUwbEnabled()) {
             throw new IllegalStateException("Uwb is not enabled");
@@ -753,6 +866,30 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
         }
     }
 
+    /**
+     * Stops ranging for a group of sessions. The stop requests of the sessions not managed by the
+     * profile manager are validated as a whole and issued together, then the sessions managed by
+     * the profile manager are stopped one by one.
+     */
+    public void stopRangingGroup(List<SessionHandle> sessionHandles) {
+        if (!isUwbEnabled()) {
+            throw new IllegalStateException("Uwb is not enabled");
+        }
+        List<SessionHandle> sessionManagerHandles = new ArrayList<>(sessionHandles.size());
+        List<SessionHandle> profileManagerHandles = new ArrayList<>();
+        for (SessionHandle sessionHandle : sessionHandles) {
+            if (mUwbInjector.getProfileManager().hasSession(sessionHandle)) {
+                profileManagerHandles.add(sessionHandle);
+            } else {
+                sessionManagerHandles.add(sessionHandle);
+            }
+        }
+        mSessionManager.stopRangingGroup(sessionManagerHandles);
+        for (SessionHandle sessionHandle : profileManagerHandles) {
+            mUwbInjector.getProfileManager().stopRanging(sessionHandle);
+        }
+    }
+
     public void closeRanging(SessionHandle sessionHandle) {
         if (!isUwbEnabled()) {
             throw new IllegalStateException("Uwb is not enabled");
@@ -1009,8 +1146,8 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                 });
         int status = UwbUciConstants.STATUS_CODE_FAILED;
         try {
-            status = mUwbInjector.runTaskOnSingleThreadExecutor(sendVendorCmdTask,
-                    SEND_VENDOR_CMD_TIMEOUT_MS);
+            status = mUwbInjector.runTaskOnCommandExecutor(sendVendorCmdTask,
+                    SEND_VENDOR_CMD_TIMEOUT_MS, chipId);
         } catch (TimeoutException e) {
             Log.i(TAG, "Failed to send vendor command - status : TIMEOUT");
         } catch (InterruptedException e) {
@@ -1214,6 +1351,7 @@ public class UwbServiceCore implements INativeUwbManager.DeviceNotification,
                     Log.i(TAG, "Deinitialization success");
                     mUwbMetrics.logUwbStateChangeEvent(false, true, false);
                 }
+                mUwbInjector.shutdownCommandExecutors();
                 /* UWBS_STATUS_OFF is not the valid state. so handle device state directly */
                 for (String chipId : mUwbInjector.getMultichipData().getChipIds()) {
                     updateDeviceState(UwbUciConstants.DEVICE_STATE_OFF, chipId);
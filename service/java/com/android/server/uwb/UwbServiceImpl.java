@@ -158,6 +158,8 @@ public class UwbServiceImpl extends IUwbAdapter.Stub {
         pw.println();
         mUwbInjector.getUwbSessionManager().dump(fd, pw, args);
         pw.println();
+        mUwbInjector.dumpCommandExecutors(pw);
+        pw.println();
         mUwbInjector.getUwbCountryCode().dump(fd, pw, args);
         pw.println();
         mUwbInjector.getUwbConfigStore().dump(fd, pw, args);
@@ -311,6 +313,16 @@ public class UwbServiceImpl extends IUwbAdapter.Stub {
         mUwbServiceCore.startRanging(sessionHandle, parameters);
     }
 
+    @Override
+    public void startRangingGroup(List<SessionHandle> sessionHandles, PersistableBundle parameters)
+            throws RemoteException {
+        if (!SdkLevel.isAtLeastV() || !mUwbInjector.getFeatureFlags().groupedSessionStartStop()) {
+            throw new UnsupportedOperationException();
+        }
+        enforceUwbPrivilegedPermission();
+        mUwbServiceCore.startRangingGroup(sessionHandles, parameters);
+    }
+
     @Override
     public void reconfigureRanging(SessionHandle sessionHandle, PersistableBundle parameters)
             throws RemoteException {
@@ -324,6 +336,15 @@ public class UwbServiceImpl extends IUwbAdapter.Stub {
         mUwbServiceCore.stopRanging(sessionHandle);
     }
 
+    @Override
+    public void stopRangingGroup(List<SessionHandle> sessionHandles) throws RemoteException {
+        if (!SdkLevel.isAtLeastV() || !mUwbInjector.getFeatureFlags().groupedSessionStartStop()) {
+            throw new UnsupportedOperationException();
+        }
+        enforceUwbPrivilegedPermission();
+        mUwbServiceCore.stopRangingGroup(sessionHandles);
+    }
+
     @Override
     public void closeRanging(SessionHandle sessionHandle) throws RemoteException {
         enforceUwbPrivilegedPermission();
@@ -43,6 +43,7 @@ import android.app.ActivityManager;
 import android.app.AlarmManager;
 import android.content.AttributionSource;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
@@ -51,9 +52,12 @@ import android.os.RemoteException;
 import android.os.Trace;
 import android.util.Log;
 import android.util.Pair;
+import android.util.SparseArray;
 import android.uwb.IUwbAdapter;
 import android.uwb.IUwbRangingCallbacks;
 import android.uwb.RangingChangeReason;
+import android.uwb.RangingMeasurement;
+import android.uwb.RangingReport;
 import android.uwb.SessionHandle;
 import android.uwb.UwbAddress;
 
@@ -80,20 +84,19 @@ import com.android.server.uwb.proto.UwbStatsLog;
 import com.android.server.uwb.util.ArrayUtils;
 import com.android.server.uwb.util.DataTypeConversionUtil;
 import com.android.server.uwb.util.LruList;
+import com.android.server.uwb.util.UwbSessionCommandPipeline;
 import com.android.server.uwb.util.UwbUtil;
 
 import com.google.uwb.support.aliro.AliroOpenRangingParams;
 import com.google.uwb.support.aliro.AliroParams;
 import com.google.uwb.support.aliro.AliroRangingStartedParams;
 import com.google.uwb.support.aliro.AliroRangingStoppedParams;
-import com.google.uwb.support.aliro.AliroSpecificationParams;
 import com.google.uwb.support.aliro.AliroStartRangingParams;
 import com.google.uwb.support.base.Params;
 import com.google.uwb.support.ccc.CccOpenRangingParams;
 import com.google.uwb.support.ccc.CccParams;
 import com.google.uwb.support.ccc.CccRangingStartedParams;
 import com.google.uwb.support.ccc.CccRangingStoppedParams;
-import com.google.uwb.support.ccc.CccSpecificationParams;
 import com.google.uwb.support.ccc.CccStartRangingParams;
 import com.google.uwb.support.dltdoa.DlTDoARangingRoundsUpdate;
 import com.google.uwb.support.dltdoa.DlTDoARangingRoundsUpdateStatus;
@@ -106,8 +109,6 @@ import com.google.uwb.support.fira.FiraParams;
 import com.google.uwb.support.fira.FiraPoseUpdateParams;
 import com.google.uwb.support.fira.FiraProtocolVersion;
 import com.google.uwb.support.fira.FiraRangingReconfigureParams;
-import com.google.uwb.support.fira.FiraSpecificationParams;
-import com.google.uwb.support.generic.GenericSpecificationParams;
 import com.google.uwb.support.oemextension.AdvertisePointedTarget;
 import com.google.uwb.support.oemextension.SessionConfigParams;
 import com.google.uwb.support.oemextension.SessionStatus;
@@ -118,10 +119,15 @@ import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
@@ -129,11 +135,9 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
@@ -162,11 +166,18 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
     public static final int SESSION_UPDATE_DT_TAG_RANGING_ROUNDS = 8;
     @VisibleForTesting
     public static final int SESSION_DATA_TRANSFER_PHASE_CONFIG = 11;
+    @VisibleForTesting
+    public static final int SESSION_START_RANGING_GROUP = 12;
+    @VisibleForTesting
+    public static final int SESSION_STOP_RANGING_GROUP = 13;
 
     // TODO: don't expose the internal field for testing.
     @VisibleForTesting
     final ConcurrentHashMap<SessionHandle, UwbSession> mSessionTable = new ConcurrentHashMap();
-    // Used for storing recently closed sessions for debugging purposes.
+    // Secondary index of mSessionTable keyed by UWB session ID, used to look up sessions from
+    // UCI notifications. Only modified together with mSessionTable, guarded by itself.
+    private final SparseArray<UwbSession> mSessionIdTable = new SparseArray<>();
+    // Used for storing recently closed sessions for debugging purposes, guarded by itself.
     final LruList<UwbSession> mDbgRecentlyClosedSessions = new LruList<>(5);
     final ConcurrentHashMap<Integer, List<UwbSession>> mNonPrivilegedUidToFiraSessionsTable =
             new ConcurrentHashMap();
@@ -181,6 +192,10 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
     private final AlarmManager mAlarmManager;
     private final Looper mLooper;
     private final EventTask mEventTask;
+    // Runs the session commands off the looper when the session command pipeline is enabled.
+    private final UwbSessionCommandPipeline mSessionCommandPipeline;
+    // Flushes the batched ranging reports, the event task may be blocked on the UWBS for a while.
+    private final Handler mRangingReportHandler;
 
     public UwbSessionManager(
             UwbConfigurationManager uwbConfigurationManager,
@@ -189,6 +204,27 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             UwbSessionNotificationManager uwbSessionNotificationManager,
             UwbInjector uwbInjector, AlarmManager alarmManager, ActivityManager activityManager,
             Looper serviceLooper) {
+        this(uwbConfigurationManager, nativeUwbManager, uwbMetrics, uwbAdvertiseManager,
+                uwbSessionNotificationManager, uwbInjector, alarmManager, activityManager,
+                serviceLooper, new UwbSessionCommandPipeline("UwbSessionCommand"),
+                createRangingReportLooper());
+    }
+
+    private static Looper createRangingReportLooper() {
+        HandlerThread rangingReportThread = new HandlerThread("UwbRangingReport");
+        rangingReportThread.start();
+        return rangingReportThread.getLooper();
+    }
+
+    @VisibleForTesting
+    UwbSessionManager(
+            UwbConfigurationManager uwbConfigurationManager,
+            NativeUwbManager nativeUwbManager, UwbMetrics uwbMetrics,
+            UwbAdvertiseManager uwbAdvertiseManager,
+            UwbSessionNotificationManager uwbSessionNotificationManager,
+            UwbInjector uwbInjector, AlarmManager alarmManager, ActivityManager activityManager,
+            Looper serviceLooper, UwbSessionCommandPipeline sessionCommandPipeline,
+            Looper rangingReportLooper) {
         mNativeUwbManager = nativeUwbManager;
         mNativeUwbManager.setSessionListener(this);
         mUwbMetrics = uwbMetrics;
@@ -200,6 +236,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         mActivityManager = activityManager;
         mLooper = serviceLooper;
         mEventTask = new EventTask(serviceLooper);
+        mSessionCommandPipeline = sessionCommandPipeline;
+        mRangingReportHandler = new Handler(rangingReportLooper);
         registerUidImportanceTransitions();
     }
 
@@ -653,7 +691,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             return;
         }
 
-        mSessionTable.put(sessionHandle, uwbSession);
+        putSession(sessionHandle, uwbSession);
         addToNonPrivilegedUidToFiraSessionTableIfNecessary(uwbSession);
         mEventTask.execute(SESSION_OPEN_RANGING, uwbSession);
         return;
@@ -763,6 +801,109 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         }
     }
 
+    /**
+     * Starts ranging for a group of sessions. The whole group is validated first: no session is
+     * started unless all of them are idle and the chips can range with all of them at once. The
+     * start commands are then sent as one batch per chip, the sessions with the highest priority
+     * first. If the UWBS rejects one of them, the sessions of the batch already started are
+     * stopped again.
+     *
+     * @throws IllegalStateException if any of the sessions doesn't exist or isn't idle.
+     */
+    public synchronized void startRangingGroup(List<SessionHandle> sessionHandles) {
+        Log.i(TAG, "startRangingGroup() - sessionHandles: " + sessionHandles);
+        Set<SessionHandle> uniqueSessionHandles = new LinkedHashSet<>(sessionHandles);
+        checkSessionGroupState(uniqueSessionHandles, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        List<UwbSession> uwbSessions = new ArrayList<>(uniqueSessionHandles.size());
+        for (SessionHandle sessionHandle : uniqueSessionHandles) {
+            UwbSession uwbSession = getUwbSession(getSessionId(sessionHandle));
+            if (uwbSession.getProtocolName().equals(FiraParams.PROTOCOL_NAME)) {
+                // Need to update session priority if it changed.
+                uwbSession.updateFiraParamsOnStartIfChanged();
+            }
+            uwbSessions.add(uwbSession);
+        }
+        if (!canRangeWithSessionGroup(uwbSessions)) {
+            for (UwbSession uwbSession : uwbSessions) {
+                mSessionNotificationManager.onRangingStartFailed(uwbSession,
+                        UwbUciConstants.STATUS_CODE_ERROR_MAX_SESSIONS_EXCEEDED);
+                mUwbMetrics.longRangingStartEvent(uwbSession,
+                        UwbUciConstants.STATUS_CODE_ERROR_MAX_SESSIONS_EXCEEDED);
+            }
+            return;
+        }
+        for (List<UwbSession> chipSessions : groupByChipId(uwbSessions).values()) {
+            chipSessions.sort(Comparator.comparingInt(UwbSession::getStackSessionPriority)
+                    .reversed());
+            mEventTask.execute(SESSION_START_RANGING_GROUP, chipSessions);
+        }
+    }
+
+    /**
+     * Checks the max-session limit of each chip and protocol once for the whole group, counting
+     * the sessions already ranging on the chip together with the ones of the group.
+     */
+    private boolean canRangeWithSessionGroup(List<UwbSession> uwbSessions) {
+        Map<Pair<String, String>, Long> rangingSessionCounts = new HashMap<>();
+        for (UwbSession uwbSession : uwbSessions) {
+            rangingSessionCounts.merge(
+                    Pair.create(uwbSession.getChipId(), uwbSession.getProtocolName()), 1L,
+                    Long::sum);
+        }
+        for (UwbSession uwbSession : mSessionTable.values()) {
+            Pair<String, String> key =
+                    Pair.create(uwbSession.getChipId(), uwbSession.getProtocolName());
+            if (!uwbSessions.contains(uwbSession) && rangingSessionCounts.containsKey(key)
+                    && uwbSession.getSessionState() == UwbUciConstants.UWB_SESSION_STATE_ACTIVE) {
+                rangingSessionCounts.merge(key, 1L, Long::sum);
+            }
+        }
+        for (Map.Entry<Pair<String, String>, Long> entry : rangingSessionCounts.entrySet()) {
+            String chipId = entry.getKey().first;
+            String protocolName = entry.getKey().second;
+            long maxSessionsNumber;
+            if (protocolName.equals(AliroParams.PROTOCOL_NAME)) {
+                maxSessionsNumber = getMaxAliroSessionsNumber(chipId);
+            } else if (protocolName.equals(CccParams.PROTOCOL_NAME)) {
+                maxSessionsNumber = getMaxCccSessionsNumber(chipId);
+            } else {
+                maxSessionsNumber = getMaxFiraSessionsNumber(chipId);
+            }
+            if (entry.getValue() > maxSessionsNumber) {
+                Log.i(TAG, "Max " + protocolName + " sessions exceeded on chip " + chipId
+                        + " by the session group");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, List<UwbSession>> groupByChipId(List<UwbSession> uwbSessions) {
+        Map<String, List<UwbSession>> chipSessions = new LinkedHashMap<>();
+        for (UwbSession uwbSession : uwbSessions) {
+            chipSessions.computeIfAbsent(uwbSession.getChipId(), id -> new ArrayList<>())
+                    .add(uwbSession);
+        }
+        return chipSessions;
+    }
+
+    /**
+     * Throws if any of the sessions doesn't exist or isn't in one of the given states, so that a
+     * group operation is applied to all of its sessions or to none of them.
+     */
+    private void checkSessionGroupState(Set<SessionHandle> sessionHandles, int... sessionStates) {
+        for (SessionHandle sessionHandle : sessionHandles) {
+            if (!isExistedSession(sessionHandle)) {
+                throw new IllegalStateException("Session not initialized: " + sessionHandle);
+            }
+            int sessionState = getCurrentSessionState(getSessionId(sessionHandle));
+            if (Arrays.stream(sessionStates).noneMatch(state -> state == sessionState)) {
+                throw new IllegalStateException("Session " + sessionHandle
+                        + " is in unexpected state " + sessionState);
+            }
+        }
+    }
+
     private synchronized void stopRangingInternal(SessionHandle sessionHandle,
             boolean triggeredBySystemPolicy) {
         if (!isExistedSession(sessionHandle)) {
@@ -794,17 +935,45 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         stopRangingInternal(sessionHandle, false /* triggeredBySystemPolicy */);
     }
 
+    /**
+     * Stops ranging for a group of sessions. The whole group is validated first, then the stop
+     * commands of the active sessions are sent as one batch per chip.
+     *
+     * @throws IllegalStateException if any of the sessions doesn't exist or is neither active nor
+     *                               idle.
+     */
+    public synchronized void stopRangingGroup(List<SessionHandle> sessionHandles) {
+        Log.i(TAG, "stopRangingGroup() - sessionHandles: " + sessionHandles);
+        Set<SessionHandle> uniqueSessionHandles = new LinkedHashSet<>(sessionHandles);
+        checkSessionGroupState(uniqueSessionHandles, UwbUciConstants.UWB_SESSION_STATE_ACTIVE,
+                UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        List<UwbSession> activeSessions = new ArrayList<>(uniqueSessionHandles.size());
+        for (SessionHandle sessionHandle : uniqueSessionHandles) {
+            int sessionId = getSessionId(sessionHandle);
+            UwbSession uwbSession = getUwbSession(sessionId);
+            if (getCurrentSessionState(sessionId) == UwbUciConstants.UWB_SESSION_STATE_ACTIVE) {
+                activeSessions.add(uwbSession);
+            } else {
+                Log.i(TAG, "session is already idle state");
+                mSessionNotificationManager.onRangingStopped(uwbSession,
+                        UwbUciConstants.STATUS_CODE_OK);
+                mUwbMetrics.longRangingStopEvent(uwbSession);
+            }
+        }
+        for (List<UwbSession> chipSessions : groupByChipId(activeSessions).values()) {
+            mEventTask.execute(SESSION_STOP_RANGING_GROUP, chipSessions);
+        }
+    }
+
     /**
      * Get the UwbSession corresponding to the given UWB Session ID. This API returns {@code null}
      * when the UWB session is not found.
      */
     @Nullable
     public UwbSession getUwbSession(int sessionId) {
-        return mSessionTable.values()
-                .stream()
-                .filter(v -> v.getSessionId() == sessionId)
-                .findAny()
-                .orElse(null);
+        synchronized (mSessionIdTable) {
+            return mSessionIdTable.get(sessionId);
+        }
     }
 
     /**
@@ -997,38 +1166,17 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
     /** Returns max number of ALIRO sessions possible on given chip. */
     public long getMaxAliroSessionsNumber(String chipId) {
-        GenericSpecificationParams params =
-                mUwbInjector.getUwbServiceCore().getCachedSpecificationParams(chipId);
-        if (params != null && params.getAliroSpecificationParams() != null) {
-            return params.getAliroSpecificationParams().getMaxRangingSessionNumber();
-        } else {
-            // Specification params are empty, return the default ALIRO max sessions value
-            return AliroSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
-        }
+        return mUwbInjector.getUwbServiceCore().getMaxAliroSessionsNumber(chipId);
     }
 
     /** Returns max number of CCC sessions possible on given chip. */
     public long getMaxCccSessionsNumber(String chipId) {
-        GenericSpecificationParams params =
-                mUwbInjector.getUwbServiceCore().getCachedSpecificationParams(chipId);
-        if (params != null && params.getCccSpecificationParams() != null) {
-            return params.getCccSpecificationParams().getMaxRangingSessionNumber();
-        } else {
-            // specification params are empty, return the default CCC max sessions value
-            return CccSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
-        }
+        return mUwbInjector.getUwbServiceCore().getMaxCccSessionsNumber(chipId);
     }
 
     /** Returns max number of Fira sessions possible on given chip. */
     public long getMaxFiraSessionsNumber(String chipId) {
-        GenericSpecificationParams params =
-                mUwbInjector.getUwbServiceCore().getCachedSpecificationParams(chipId);
-        if (params != null && params.getFiraSpecificationParams() != null) {
-            return params.getFiraSpecificationParams().getMaxRangingSessionNumber();
-        } else {
-            // specification params are empty, return the default Fira max sessions value
-            return FiraSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER;
-        }
+        return mUwbInjector.getUwbServiceCore().getMaxFiraSessionsNumber(chipId);
     }
 
     /** Gets the session with the lowest session priority among all sessions with given protocol. */
@@ -1290,14 +1438,11 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         );
 
         DtTagUpdateRangingRoundsStatus status = null;
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.submit(rangingRoundsUpdateTask);
         try {
-            status = rangingRoundsUpdateTask.get(IUwbAdapter
-                    .RANGING_ROUNDS_UPDATE_DT_TAG_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+            status = mUwbInjector.runTaskOnCommandExecutor(rangingRoundsUpdateTask,
+                    IUwbAdapter.RANGING_ROUNDS_UPDATE_DT_TAG_THRESHOLD_MS, uwbSession.getChipId());
         } catch (TimeoutException e) {
             Log.i(TAG, "Failed to update ranging rounds for Dt tag - status : TIMEOUT");
-            executor.shutdownNow();
         } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
         }
@@ -1393,8 +1538,9 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         // execute task
         int status = UwbUciConstants.STATUS_CODE_FAILED;
         try {
-            status = mUwbInjector.runTaskOnSingleThreadExecutor(sessionDataTransferPhaseConfigTask,
-                    IUwbAdapter.SESSION_DATA_TRANSFER_PHASE_CONFIG_THRESHOLD_MS);
+            status = mUwbInjector.runTaskOnCommandExecutor(sessionDataTransferPhaseConfigTask,
+                    IUwbAdapter.SESSION_DATA_TRANSFER_PHASE_CONFIG_THRESHOLD_MS,
+                    uwbSession.getChipId());
         } catch (TimeoutException e) {
             Log.i(TAG, "Failed to set session data transfer phase config : TIMEOUT");
             mSessionNotificationManager.onDataTransferPhaseConfigFailed(
@@ -1411,6 +1557,15 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         }
     }
 
+    /** Adds the session to the session table and its session ID index. */
+    @VisibleForTesting
+    void putSession(SessionHandle sessionHandle, UwbSession uwbSession) {
+        synchronized (mSessionIdTable) {
+            mSessionTable.put(sessionHandle, uwbSession);
+            mSessionIdTable.put(uwbSession.getSessionId(), uwbSession);
+        }
+    }
+
     void removeSession(UwbSession uwbSession) {
         if (uwbSession != null) {
             try {
@@ -1426,8 +1581,18 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                         uwbSession.getAttributionSource());
             }
             mSessionTokenMap.remove(uwbSession.getSessionId());
-            mSessionTable.remove(uwbSession.getSessionHandle());
-            mDbgRecentlyClosedSessions.add(uwbSession);
+            mConfigurationManager.clearAppConfigurations(
+                    uwbSession.getSessionId(), uwbSession.getChipId());
+            synchronized (mSessionIdTable) {
+                mSessionTable.remove(uwbSession.getSessionHandle());
+                // The session may not have been added yet (e.g. linkToDeath failure).
+                if (mSessionIdTable.get(uwbSession.getSessionId()) == uwbSession) {
+                    mSessionIdTable.remove(uwbSession.getSessionId());
+                }
+            }
+            synchronized (mDbgRecentlyClosedSessions) {
+                mDbgRecentlyClosedSessions.add(uwbSession);
+            }
         }
     }
 
@@ -1445,7 +1610,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                 Log.d(TAG, "Detected start of non privileged FIRA session from "
                         + nonPrivilegedAppAttrSource);
                 List<UwbSession> sessions = mNonPrivilegedUidToFiraSessionsTable.computeIfAbsent(
-                        nonPrivilegedAppAttrSource.getUid(), v -> new ArrayList<>());
+                        nonPrivilegedAppAttrSource.getUid(), v -> new CopyOnWriteArrayList<>());
                 sessions.add(uwbSession);
             }
         }
@@ -1474,6 +1639,19 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         }
     }
 
+    /**
+     * Runs a task touching the session which is not an {@link EventTask} command, e.g. delivering
+     * ranging results, in order with the commands of the session. The task is queued in the
+     * pipeline of the session when session commands are pipelined, or run right away otherwise.
+     */
+    private void runInSessionOrder(SessionHandle sessionHandle, Runnable task) {
+        if (mUwbInjector.getDeviceConfigFacade().isSessionCommandPipelineEnabled()) {
+            mSessionCommandPipeline.submit(sessionHandle, task);
+        } else {
+            task.run();
+        }
+    }
+
     private static class ReconfigureEventParams {
         public final UwbSession uwbSession;
         public final Params params;
@@ -1496,64 +1674,117 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         @Override
         public void handleMessage(Message msg) {
             int type = msg.what;
+            Object obj = msg.obj;
+            int arg1 = msg.arg1;
+            List<SessionHandle> sessionHandles = getSessionHandles(obj);
+            if (!sessionHandles.isEmpty()
+                    && mUwbInjector.getDeviceConfigFacade().isSessionCommandPipelineEnabled()) {
+                // The handlers block until the UWBS has processed the command. Run them in a
+                // pipeline per session instead, so that the commands of a session stay ordered
+                // without delaying the commands of the other sessions. Group commands are
+                // ordered with the commands of each of their sessions.
+                mSessionCommandPipeline.submit(sessionHandles, () -> handleEvent(type, obj, arg1));
+                return;
+            }
+            handleEvent(type, obj, arg1);
+        }
+
+        @NonNull
+        private List<SessionHandle> getSessionHandles(Object obj) {
+            if (obj instanceof UwbSession) {
+                return List.of(((UwbSession) obj).getSessionHandle());
+            } else if (obj instanceof ReconfigureEventParams) {
+                return List.of(((ReconfigureEventParams) obj).uwbSession.getSessionHandle());
+            } else if (obj instanceof SessionHandle) {
+                return List.of((SessionHandle) obj);
+            } else if (obj instanceof SendDataInfo) {
+                return List.of(((SendDataInfo) obj).sessionHandle);
+            } else if (obj instanceof RangingRoundsUpdateDtTagInfo) {
+                return List.of(((RangingRoundsUpdateDtTagInfo) obj).sessionHandle);
+            } else if (obj instanceof UpdateSessionInfo) {
+                return List.of(((UpdateSessionInfo) obj).sessionHandle);
+            } else if (obj instanceof List) {
+                // SESSION_START_RANGING_GROUP and SESSION_STOP_RANGING_GROUP.
+                List<SessionHandle> sessionHandles = new ArrayList<>();
+                for (Object uwbSession : (List<?>) obj) {
+                    sessionHandles.add(((UwbSession) uwbSession).getSessionHandle());
+                }
+                return sessionHandles;
+            }
+            return List.of();
+        }
+
+        private void handleEvent(int type, Object obj, int arg1) {
             switch (type) {
                 case SESSION_OPEN_RANGING: {
-                    UwbSession uwbSession = (UwbSession) msg.obj;
+                    UwbSession uwbSession = (UwbSession) obj;
                     handleOpenRanging(uwbSession);
                     break;
                 }
 
                 case SESSION_START_RANGING: {
-                    UwbSession uwbSession = (UwbSession) msg.obj;
+                    UwbSession uwbSession = (UwbSession) obj;
                     handleStartRanging(uwbSession);
                     break;
                 }
 
                 case SESSION_STOP_RANGING: {
-                    UwbSession uwbSession = (UwbSession) msg.obj;
-                    boolean triggeredBySystemPolicy = msg.arg1 == 1;
+                    UwbSession uwbSession = (UwbSession) obj;
+                    boolean triggeredBySystemPolicy = arg1 == 1;
                     handleStopRanging(uwbSession, triggeredBySystemPolicy);
                     break;
                 }
 
+                case SESSION_START_RANGING_GROUP: {
+                    List<UwbSession> uwbSessions = (List<UwbSession>) obj;
+                    handleStartRangingGroup(uwbSessions);
+                    break;
+                }
+
+                case SESSION_STOP_RANGING_GROUP: {
+                    List<UwbSession> uwbSessions = (List<UwbSession>) obj;
+                    handleStopRangingGroup(uwbSessions);
+                    break;
+                }
+
                 case SESSION_RECONFIG_RANGING: {
                     Log.d(TAG, "SESSION_RECONFIG_RANGING");
-                    ReconfigureEventParams params = (ReconfigureEventParams) msg.obj;
+                    ReconfigureEventParams params = (ReconfigureEventParams) obj;
                     handleReconfigure(
                             params.uwbSession, params.params, params.triggeredByFgStateChange);
                     break;
                 }
 
                 case SESSION_DEINIT: {
-                    SessionHandle sessionHandle = (SessionHandle) msg.obj;
-                    int reason = msg.arg1;
+                    SessionHandle sessionHandle = (SessionHandle) obj;
+                    int reason = arg1;
                     handleDeInitWithReason(sessionHandle, reason);
                     break;
                 }
 
                 case SESSION_ON_DEINIT: {
-                    UwbSession uwbSession = (UwbSession) msg.obj;
+                    UwbSession uwbSession = (UwbSession) obj;
                     handleOnDeInit(uwbSession);
                     break;
                 }
 
                 case SESSION_SEND_DATA: {
                     Log.d(TAG, "SESSION_SEND_DATA");
-                    SendDataInfo info = (SendDataInfo) msg.obj;
+                    SendDataInfo info = (SendDataInfo) obj;
                     handleSendData(info);
                     break;
                 }
 
                 case SESSION_UPDATE_DT_TAG_RANGING_ROUNDS: {
                     Log.d(TAG, "SESSION_UPDATE_DT_TAG_RANGING_ROUNDS");
-                    RangingRoundsUpdateDtTagInfo info = (RangingRoundsUpdateDtTagInfo) msg.obj;
+                    RangingRoundsUpdateDtTagInfo info = (RangingRoundsUpdateDtTagInfo) obj;
                     handleRangingRoundsUpdateDtTag(info);
                     break;
                 }
 
                 case SESSION_DATA_TRANSFER_PHASE_CONFIG: {
                     Log.d(TAG, "SESSION_DATA_TRANSFER_PHASE_CONFIG");
-                    UpdateSessionInfo info = (UpdateSessionInfo) msg.obj;
+                    UpdateSessionInfo info = (UpdateSessionInfo) obj;
                     handleSetDataTransferPhaseConfig(info);
                     break;
                 }
@@ -1628,8 +1859,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(initSessionTask,
-                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS);
+                status = mUwbInjector.runTaskOnCommandExecutor(initSessionTask,
+                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to initialize session - status : TIMEOUT");
             } catch (InterruptedException e) {
@@ -1654,95 +1885,11 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             Trace.beginSection("UWB#handleStartRanging");
             // TODO(b/211445008): Consolidate to a single uwb thread.
             FutureTask<Integer> startRangingTask = new FutureTask<>(
-                    () -> {
-                        int status = UwbUciConstants.STATUS_CODE_FAILED;
-                        synchronized (uwbSession.getWaitObj()) {
-                            uwbSession.setAbsoluteInitiationTimeIfNeeded();
-                            if (uwbSession.getNeedsAppConfigUpdate()) {
-                                uwbSession.resetNeedsAppConfigUpdate();
-                                status = mConfigurationManager.setAppConfigurations(
-                                        uwbSession.getSessionId(),
-                                        uwbSession.getParams(), uwbSession.getChipId(),
-                                        getUwbsFiraProtocolVersion(uwbSession.getChipId()));
-                                uwbSession.resetAbsoluteInitiationTime();
-                                if (status != UwbUciConstants.STATUS_CODE_OK) {
-                                    mSessionNotificationManager.onRangingStartFailed(
-                                            uwbSession, status);
-                                    return status;
-                                }
-                            }
-
-                            uwbSession.setOperationType(SESSION_START_RANGING);
-                            status = mNativeUwbManager.startRanging(uwbSession.getSessionId(),
-                                    uwbSession.getChipId());
-                            if (status != UwbUciConstants.STATUS_CODE_OK) {
-                                mSessionNotificationManager.onRangingStartFailed(
-                                        uwbSession, status);
-                                return status;
-                            }
-                            uwbSession.getWaitObj().blockingWait();
-                            if (uwbSession.getSessionState()
-                                    == UwbUciConstants.UWB_SESSION_STATE_ACTIVE) {
-                                // TODO: Ensure |rangingStartedParams| is valid for FIRA sessions
-                                // as well.
-                                Params rangingStartedParams = uwbSession.getParams();
-
-                                // For ALIRO sessions, retrieve the app configs
-                                if (uwbSession.getProtocolName().equals(
-                                        AliroParams.PROTOCOL_NAME)) {
-                                    Pair<Integer, AliroRangingStartedParams> statusAndParams  =
-                                            mConfigurationManager.getAppConfigurations(
-                                                    uwbSession.getSessionId(),
-                                                    AliroParams.PROTOCOL_NAME,
-                                                    new byte[0],
-                                                    AliroRangingStartedParams.class,
-                                                    uwbSession.getChipId(),
-                                                    AliroParams.PROTOCOL_VERSION_1_0);
-                                    if (statusAndParams.first != UwbUciConstants.STATUS_CODE_OK) {
-                                        Log.e(TAG, "Failed to get ALIRO ranging started params");
-                                    }
-                                    rangingStartedParams = statusAndParams.second;
-                                }
-
-                                // For CCC sessions, retrieve the app configs
-                                if (uwbSession.getProtocolName().equals(CccParams.PROTOCOL_NAME)) {
-                                    Pair<Integer, CccRangingStartedParams> statusAndParams  =
-                                            mConfigurationManager.getAppConfigurations(
-                                                    uwbSession.getSessionId(),
-                                                    CccParams.PROTOCOL_NAME,
-                                                    new byte[0],
-                                                    CccRangingStartedParams.class,
-                                                    uwbSession.getChipId(),
-                                                    CccParams.PROTOCOL_VERSION_1_0);
-                                    if (statusAndParams.first != UwbUciConstants.STATUS_CODE_OK) {
-                                        Log.e(TAG, "Failed to get CCC ranging started params");
-                                    }
-                                    rangingStartedParams = statusAndParams.second;
-                                }
-
-                                mSessionNotificationManager.onRangingStarted(
-                                        uwbSession, rangingStartedParams);
-                                if (uwbSession.hasNonPrivilegedApp()
-                                        && !uwbSession.hasNonPrivilegedFgAppOrService()) {
-                                    Log.i(TAG, "Session " + uwbSession.getSessionId()
-                                            + " reconfiguring ntf control due to app state change");
-                                    uwbSession.reconfigureFiraSessionOnFgStateChange();
-                                }
-                            } else {
-                                int reasonCode = uwbSession.getLastSessionStatusNtfReasonCode();
-                                status =
-                                        UwbSessionNotificationHelper.convertUciReasonCodeToUciStatusCode(
-                                               reasonCode);
-                                mSessionNotificationManager.onRangingStartFailedWithUciReasonCode(
-                                        uwbSession, reasonCode);
-                            }
-                        }
-                        return status;
-                    });
+                    () -> startRangingOnUwbs(uwbSession));
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(startRangingTask,
-                        IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS);
+                status = mUwbInjector.runTaskOnCommandExecutor(startRangingTask,
+                        IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Start Ranging - status : TIMEOUT");
                 mSessionNotificationManager.onRangingStartFailed(
@@ -1760,44 +1907,15 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             Trace.beginSection("UWB#handleStopRanging");
             // TODO(b/211445008): Consolidate to a single uwb thread.
             FutureTask<Integer> stopRangingTask = new FutureTask<>(
-                    () -> {
-                        int status = UwbUciConstants.STATUS_CODE_FAILED;
-                        synchronized (uwbSession.getWaitObj()) {
-                            uwbSession.setOperationType(SESSION_STOP_RANGING);
-                            status = mNativeUwbManager.stopRanging(uwbSession.getSessionId(),
-                                    uwbSession.getChipId());
-                            if (status != UwbUciConstants.STATUS_CODE_OK) {
-                                if (uwbSession.getSessionState()
-                                        == UwbUciConstants.UWB_SESSION_STATE_IDLE) {
-                                    handleStopRangingParams(uwbSession, true /*systemPolicy*/);
-                                    return UwbUciConstants.STATUS_CODE_OK;
-                                }
-                                mSessionNotificationManager.onRangingStopFailed(uwbSession, status);
-                                return status;
-                            }
-                            uwbSession.getWaitObj().blockingWait();
-                            if (uwbSession.getSessionState()
-                                    == UwbUciConstants.UWB_SESSION_STATE_IDLE) {
-                                handleStopRangingParams(uwbSession, triggeredBySystemPolicy);
-                            } else {
-                                status = UwbUciConstants.STATUS_CODE_FAILED;
-                                mSessionNotificationManager.onRangingStopFailed(uwbSession,
-                                        status);
-                            }
-                        }
-                        return status;
-                    });
+                    () -> stopRangingOnUwbs(uwbSession, triggeredBySystemPolicy));
 
 
             int status = UwbUciConstants.STATUS_CODE_FAILED;
-            int timeoutMs = IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS;
-            if (uwbSession.getProtocolName().equals(PROTOCOL_NAME)) {
-                int minTimeoutNecessary = uwbSession.getCurrentFiraRangingIntervalMs() * 4;
-                timeoutMs = timeoutMs > minTimeoutNecessary ? timeoutMs : minTimeoutNecessary;
-            }
+            int timeoutMs = getStopRangingTimeoutMs(uwbSession);
             Log.v(TAG, "Stop timeout: " + timeoutMs);
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(stopRangingTask, timeoutMs);
+                status = mUwbInjector.runTaskOnCommandExecutor(stopRangingTask, timeoutMs,
+                        uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Stop Ranging - status : TIMEOUT");
                 mSessionNotificationManager.onRangingStopFailed(
@@ -1807,15 +1925,252 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             } catch (ExecutionException e) {
                 e.printStackTrace();
             }
+            onStopRangingHandled(uwbSession, status);
+            Trace.endSection();
+        }
+
+        private int getStopRangingTimeoutMs(UwbSession uwbSession) {
+            int timeoutMs = IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS;
+            if (uwbSession.getProtocolName().equals(PROTOCOL_NAME)) {
+                int minTimeoutNecessary = uwbSession.getCurrentFiraRangingIntervalMs() * 4;
+                timeoutMs = timeoutMs > minTimeoutNecessary ? timeoutMs : minTimeoutNecessary;
+            }
+            return timeoutMs;
+        }
+
+        private void onStopRangingHandled(UwbSession uwbSession, int status) {
             if (status != UwbUciConstants.STATUS_CODE_FAILED) {
                 mUwbMetrics.longRangingStopEvent(uwbSession);
             }
             // Reset all UWB session timers when the session is stopped.
             uwbSession.stopTimers();
             removeAdvertiserData(uwbSession);
+        }
+
+        /**
+         * Starts the sessions of a group on one chip with a single command executor task. The
+         * group fails as a whole: once a session fails to start, the following ones are not
+         * started and the ones already started are stopped again.
+         */
+        private void handleStartRangingGroup(List<UwbSession> uwbSessions) {
+            Trace.beginSection("UWB#handleStartRangingGroup");
+            String chipId = uwbSessions.get(0).getChipId();
+            List<UwbSession> attemptedSessions = new CopyOnWriteArrayList<>();
+            List<UwbSession> startedSessions = new CopyOnWriteArrayList<>();
+            FutureTask<Integer> startRangingGroupTask = new FutureTask<>(
+                    () -> {
+                        for (UwbSession uwbSession : uwbSessions) {
+                            attemptedSessions.add(uwbSession);
+                            int status = startRangingOnUwbs(uwbSession);
+                            mUwbMetrics.longRangingStartEvent(uwbSession, status);
+                            if (status != UwbUciConstants.STATUS_CODE_OK) {
+                                return status;
+                            }
+                            startedSessions.add(uwbSession);
+                        }
+                        return UwbUciConstants.STATUS_CODE_OK;
+                    });
+            int status = UwbUciConstants.STATUS_CODE_FAILED;
+            // Whether the failure of the last attempted session was already reported.
+            boolean failureReported = false;
+            try {
+                status = mUwbInjector.runTaskOnCommandExecutor(startRangingGroupTask,
+                        IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS * uwbSessions.size(),
+                        chipId);
+                failureReported = true;
+            } catch (TimeoutException e) {
+                Log.i(TAG, "Failed to Start Ranging group - status : TIMEOUT");
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+            if (status != UwbUciConstants.STATUS_CODE_OK) {
+                Log.i(TAG, "Failed to Start Ranging group - status : " + status);
+                for (UwbSession uwbSession : uwbSessions) {
+                    if (startedSessions.contains(uwbSession)) {
+                        handleStopRanging(uwbSession, false /* triggeredBySystemPolicy */);
+                    } else if (!attemptedSessions.contains(uwbSession)) {
+                        mSessionNotificationManager.onRangingStartFailed(
+                                uwbSession, UwbUciConstants.STATUS_CODE_REJECTED);
+                        mUwbMetrics.longRangingStartEvent(
+                                uwbSession, UwbUciConstants.STATUS_CODE_REJECTED);
+                    } else if (!failureReported) {
+                        mSessionNotificationManager.onRangingStartFailed(
+                                uwbSession, UwbUciConstants.STATUS_CODE_FAILED);
+                    }
+                }
+            }
+            Trace.endSection();
+        }
+
+        /** Stops the sessions of a group on one chip with a single command executor task. */
+        private void handleStopRangingGroup(List<UwbSession> uwbSessions) {
+            Trace.beginSection("UWB#handleStopRangingGroup");
+            String chipId = uwbSessions.get(0).getChipId();
+            Map<UwbSession, Integer> statuses = new ConcurrentHashMap<>();
+            FutureTask<Integer> stopRangingGroupTask = new FutureTask<>(
+                    () -> {
+                        int groupStatus = UwbUciConstants.STATUS_CODE_OK;
+                        for (UwbSession uwbSession : uwbSessions) {
+                            // Stopping is best effort, a failure doesn't keep the other sessions
+                            // ranging.
+                            int status = stopRangingOnUwbs(
+                                    uwbSession, false /* triggeredBySystemPolicy */);
+                            statuses.put(uwbSession, status);
+                            if (status != UwbUciConstants.STATUS_CODE_OK) {
+                                groupStatus = status;
+                            }
+                        }
+                        return groupStatus;
+                    });
+            int timeoutMs = 0;
+            for (UwbSession uwbSession : uwbSessions) {
+                timeoutMs += getStopRangingTimeoutMs(uwbSession);
+            }
+            try {
+                mUwbInjector.runTaskOnCommandExecutor(stopRangingGroupTask, timeoutMs, chipId);
+            } catch (TimeoutException e) {
+                Log.i(TAG, "Failed to Stop Ranging group - status : TIMEOUT");
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+            for (UwbSession uwbSession : uwbSessions) {
+                Integer status = statuses.get(uwbSession);
+                if (status == null) {
+                    mSessionNotificationManager.onRangingStopFailed(
+                            uwbSession, UwbUciConstants.STATUS_CODE_FAILED);
+                }
+                onStopRangingHandled(uwbSession,
+                        status == null ? UwbUciConstants.STATUS_CODE_FAILED : status);
+            }
             Trace.endSection();
         }
 
+        /**
+         * Sends the start command of the session and waits for the session to be active. Must run
+         * on the command executor of the chip.
+         */
+        private int startRangingOnUwbs(UwbSession uwbSession) {
+            int status = UwbUciConstants.STATUS_CODE_FAILED;
+            synchronized (uwbSession.getWaitObj()) {
+                uwbSession.setAbsoluteInitiationTimeIfNeeded();
+                if (uwbSession.getNeedsAppConfigUpdate()) {
+                    uwbSession.resetNeedsAppConfigUpdate();
+                    status = mConfigurationManager.setAppConfigurations(
+                            uwbSession.getSessionId(),
+                            uwbSession.getParams(), uwbSession.getChipId(),
+                            getUwbsFiraProtocolVersion(uwbSession.getChipId()));
+                    uwbSession.resetAbsoluteInitiationTime();
+                    if (status != UwbUciConstants.STATUS_CODE_OK) {
+                        mSessionNotificationManager.onRangingStartFailed(
+                                uwbSession, status);
+                        return status;
+                    }
+                }
+
+                uwbSession.setOperationType(SESSION_START_RANGING);
+                status = mNativeUwbManager.startRanging(uwbSession.getSessionId(),
+                        uwbSession.getChipId());
+                if (status != UwbUciConstants.STATUS_CODE_OK) {
+                    mSessionNotificationManager.onRangingStartFailed(
+                            uwbSession, status);
+                    return status;
+                }
+                uwbSession.getWaitObj().blockingWait();
+                if (uwbSession.getSessionState()
+                        == UwbUciConstants.UWB_SESSION_STATE_ACTIVE) {
+                    // TODO: Ensure |rangingStartedParams| is valid for FIRA sessions
+                    // as well.
+                    Params rangingStartedParams = uwbSession.getParams();
+
+                    // For ALIRO sessions, retrieve the app configs
+                    if (uwbSession.getProtocolName().equals(
+                            AliroParams.PROTOCOL_NAME)) {
+                        Pair<Integer, AliroRangingStartedParams> statusAndParams  =
+                                mConfigurationManager.getAppConfigurations(
+                                        uwbSession.getSessionId(),
+                                        AliroParams.PROTOCOL_NAME,
+                                        new byte[0],
+                                        AliroRangingStartedParams.class,
+                                        uwbSession.getChipId(),
+                                        AliroParams.PROTOCOL_VERSION_1_0);
+                        if (statusAndParams.first != UwbUciConstants.STATUS_CODE_OK) {
+                            Log.e(TAG, "Failed to get ALIRO ranging started params");
+                        }
+                        rangingStartedParams = statusAndParams.second;
+                    }
+
+                    // For CCC sessions, retrieve the app configs
+                    if (uwbSession.getProtocolName().equals(CccParams.PROTOCOL_NAME)) {
+                        Pair<Integer, CccRangingStartedParams> statusAndParams  =
+                                mConfigurationManager.getAppConfigurations(
+                                        uwbSession.getSessionId(),
+                                        CccParams.PROTOCOL_NAME,
+                                        new byte[0],
+                                        CccRangingStartedParams.class,
+                                        uwbSession.getChipId(),
+                                        CccParams.PROTOCOL_VERSION_1_0);
+                        if (statusAndParams.first != UwbUciConstants.STATUS_CODE_OK) {
+                            Log.e(TAG, "Failed to get CCC ranging started params");
+                        }
+                        rangingStartedParams = statusAndParams.second;
+                    }
+
+                    mSessionNotificationManager.onRangingStarted(
+                            uwbSession, rangingStartedParams);
+                    if (uwbSession.hasNonPrivilegedApp()
+                            && !uwbSession.hasNonPrivilegedFgAppOrService()) {
+                        Log.i(TAG, "Session " + uwbSession.getSessionId()
+                                + " reconfiguring ntf control due to app state change");
+                        uwbSession.reconfigureFiraSessionOnFgStateChange();
+                    }
+                } else {
+                    int reasonCode = uwbSession.getLastSessionStatusNtfReasonCode();
+                    status =
+                            UwbSessionNotificationHelper.convertUciReasonCodeToUciStatusCode(
+                                   reasonCode);
+                    mSessionNotificationManager.onRangingStartFailedWithUciReasonCode(
+                            uwbSession, reasonCode);
+                }
+            }
+            return status;
+        }
+
+        /**
+         * Sends the stop command of the session and waits for the session to be idle. Must run on
+         * the command executor of the chip.
+         */
+        private int stopRangingOnUwbs(UwbSession uwbSession, boolean triggeredBySystemPolicy) {
+            int status = UwbUciConstants.STATUS_CODE_FAILED;
+            synchronized (uwbSession.getWaitObj()) {
+                uwbSession.setOperationType(SESSION_STOP_RANGING);
+                status = mNativeUwbManager.stopRanging(uwbSession.getSessionId(),
+                        uwbSession.getChipId());
+                if (status != UwbUciConstants.STATUS_CODE_OK) {
+                    if (uwbSession.getSessionState()
+                            == UwbUciConstants.UWB_SESSION_STATE_IDLE) {
+                        handleStopRangingParams(uwbSession, true /*systemPolicy*/);
+                        return UwbUciConstants.STATUS_CODE_OK;
+                    }
+                    mSessionNotificationManager.onRangingStopFailed(uwbSession, status);
+                    return status;
+                }
+                uwbSession.getWaitObj().blockingWait();
+                if (uwbSession.getSessionState()
+                        == UwbUciConstants.UWB_SESSION_STATE_IDLE) {
+                    handleStopRangingParams(uwbSession, triggeredBySystemPolicy);
+                } else {
+                    status = UwbUciConstants.STATUS_CODE_FAILED;
+                    mSessionNotificationManager.onRangingStopFailed(uwbSession,
+                            status);
+                }
+            }
+            return status;
+        }
+
         private void handleStopRangingParams(UwbSession uwbSession,
                 boolean triggeredBySystemPolicy) {
             PersistableBundle rangingStoppedParamsBundle = new PersistableBundle();
@@ -1921,6 +2276,9 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                                     // Set to 0's for the UCI stack.
                                     subSessionIdList = new int[dstAddressListSize];
                                 }
+                                // The UWBS updates the controlee list configurations itself.
+                                mConfigurationManager.clearControleeConfigurations(
+                                        uwbSession.getSessionId(), uwbSession.getChipId());
                                 boolean isV2 = action
                                         == P_STS_MULTICAST_LIST_UPDATE_ACTION_ADD_16_BYTE
                                         || action
@@ -2009,8 +2367,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                     });
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(cmdTask,
-                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS);
+                status = mUwbInjector.runTaskOnCommandExecutor(cmdTask,
+                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Reconfigure - status : TIMEOUT");
             } catch (InterruptedException e) {
@@ -2059,8 +2417,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
             int status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(deInitTask,
-                        IUwbAdapter.RANGING_SESSION_CLOSE_THRESHOLD_MS);
+                status = mUwbInjector.runTaskOnCommandExecutor(deInitTask,
+                        IUwbAdapter.RANGING_SESSION_CLOSE_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Stop Ranging - status : TIMEOUT");
             } catch (InterruptedException | ExecutionException e) {
@@ -2155,8 +2513,8 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
             status = UwbUciConstants.STATUS_CODE_FAILED;
             try {
-                status = mUwbInjector.runTaskOnSingleThreadExecutor(sendDataTask,
-                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS);
+                status = mUwbInjector.runTaskOnCommandExecutor(sendDataTask,
+                        IUwbAdapter.RANGING_SESSION_OPEN_THRESHOLD_MS, uwbSession.getChipId());
             } catch (TimeoutException e) {
                 Log.i(TAG, "Failed to Send data - status : TIMEOUT");
                 mSessionNotificationManager.onDataSendFailed(uwbSession,
@@ -2291,6 +2649,9 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         // Store a Map<SequenceNumber, SendDataInfo>, for every Data packet (sent to UWBS). It's
         // used when the corresponding DataTransferStatusNtf is received (from UWBS).
         private final ConcurrentHashMap<Long, SendDataInfo> mSendDataInfoMap;
+        // Latest prediction of each controlee which is not delivered yet.
+        private final ConcurrentHashMap<UwbAddress, RangingMeasurement> mPendingPredictions =
+                new ConcurrentHashMap<>();
 
         // Whether data delivery permission check is needed for the ranging session.
         private boolean mDataDeliveryPermissionCheckNeeded = true;
@@ -2298,8 +2659,24 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
         // reasonCode from the last received SESSION_STATUS_NTF for this session.
         private int mLastSessionStatusNtfReasonCode = -1;
 
+        // Written under mControleeMap's lock; copy-on-write so readers never see a list in the
+        // middle of an update.
         @VisibleForTesting
         public List<UwbControlee> mControleeList;
+        // Index of mControleeList by address, so that ranging reports don't need to scan the list
+        // for every measurement.
+        private final Map<UwbAddress, UwbControlee> mControleeMap = new ConcurrentHashMap<>();
+
+        // Ranging reports held back for batched delivery to the application, guarded by itself.
+        private final List<RangingReport> mPendingRangingReports = new ArrayList<>();
+        private int mRangingReportBatchSize = FiraParams.RANGING_REPORT_BATCH_SIZE_DEFAULT;
+        private int mRangingReportBatchMaxLatencyMs =
+                FiraParams.RANGING_REPORT_BATCH_MAX_LATENCY_MS_DEFAULT;
+        private final Runnable mFlushRangingReportsRunnable =
+                () -> runInSessionOrder(getSessionHandle(),
+                        () -> mSessionNotificationManager.flushRangingReports(this));
+        // Time of the last measured ranging report delivered one by one, guarded by the session.
+        private long mLastRangingReportElapsedNanos;
 
         UwbSession(AttributionSource attributionSource, SessionHandle sessionHandle, int sessionId,
                 byte sessionType, String protocolName, Params params,
@@ -2338,9 +2715,12 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
                 if (firaParams.getDestAddressList() != null) {
                     // Set up list of all controlees involved.
-                    mControleeList = firaParams.getDestAddressList().stream()
-                            .map(addr -> new UwbControlee(addr, createFilterEngine(), mUwbInjector))
-                            .collect(Collectors.toList());
+                    mControleeList = new CopyOnWriteArrayList<>();
+                    for (UwbAddress addr : firaParams.getDestAddressList()) {
+                        UwbControlee controlee = createControlee(addr);
+                        mControleeList.add(controlee);
+                        mControleeMap.putIfAbsent(addr, controlee);
+                    }
                 }
                 mRangingErrorStreakTimeoutMs = firaParams
                         .getRangingErrorStreakTimeoutMs();
@@ -2359,6 +2739,9 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                             mStackSessionPriority).build();
                 }
                 this.mDataRepetitionCount = firaParams.getDataRepetitionCount();
+                this.mRangingReportBatchSize = firaParams.getRangingReportBatchSize();
+                this.mRangingReportBatchMaxLatencyMs =
+                        firaParams.getRangingReportBatchMaxLatencyMs();
             } else {
                 this.mRangingRoundUsage = -1;
                 this.mDataRepetitionCount = 0;
@@ -2536,9 +2919,12 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          * @param address The UWB address of the Controlee to add.
          */
         public void addControlee(UwbAddress address) {
-            if (mControleeList != null
-                    && mControleeList.stream().noneMatch(e -> e.getUwbAddress().equals(address))) {
-                mControleeList.add(new UwbControlee(address, createFilterEngine(), mUwbInjector));
+            synchronized (mControleeMap) {
+                if (mControleeList != null && !mControleeMap.containsKey(address)) {
+                    UwbControlee controlee = createControlee(address);
+                    mControleeList.add(controlee);
+                    mControleeMap.put(address, controlee);
+                }
             }
         }
 
@@ -2548,20 +2934,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          * @return The matching {@link UwbControlee}, or null if not found.
          */
         public UwbControlee getControlee(UwbAddress address) {
-            UwbControlee result = null;
-            if (mControleeList != null) {
-               result = mControleeList
-                    .stream()
-                    .filter(e -> e.getUwbAddress().equals(address))
-                    .findFirst()
-                    .orElse(null);
-               if (result == null) {
-                    Log.d(TAG, "Failure to find controlee " + address);
-               }
-            } else {
-               Log.d(TAG, "Controlee list is empty");
-            }
-            return result;
+            return mControleeMap.get(address);
         }
 
         /**
@@ -2570,11 +2943,17 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          * @param address The UWB address of the Controlee to remove.
          */
         public void removeControlee(UwbAddress address) {
-            if (mControleeList != null) {
-                for (UwbControlee controlee : mControleeList) {
-                    if (controlee.getUwbAddress().equals(address)) {
-                        controlee.close();
-                        mControleeList.remove(controlee);
+            synchronized (mControleeMap) {
+                UwbControlee controlee = mControleeMap.remove(address);
+                if (controlee == null) {
+                    return;
+                }
+                controlee.close();
+                mControleeList.remove(controlee);
+                // The destination address list may have had the same address more than once.
+                for (UwbControlee other : mControleeList) {
+                    if (other.getUwbAddress().equals(address)) {
+                        mControleeMap.put(address, other);
                         break;
                     }
                 }
@@ -3081,6 +3460,35 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             return mUwbInjector.createFilterEngine(mPoseSource);
         }
 
+        private UwbControlee createControlee(UwbAddress address) {
+            UwbControlee controlee = new UwbControlee(address, createFilterEngine(), mUwbInjector);
+            int oversamplingIntervalMs =
+                    mUwbInjector.getDeviceConfigFacade().getFilterOversamplingIntervalMs();
+            if (oversamplingIntervalMs > 0) {
+                controlee.enablePredictions(oversamplingIntervalMs,
+                        measurement -> onPrediction(address, measurement));
+            }
+            return controlee;
+        }
+
+        /**
+         * Queues a prediction for delivery. Predictions come from the pose source's thread and
+         * are delivered from the event thread, in order with the commands of the session. Only
+         * the latest prediction of a controlee is delivered if pose changes outpace the delivery.
+         */
+        private void onPrediction(UwbAddress address, RangingMeasurement measurement) {
+            if (mPendingPredictions.put(address, measurement) != null) {
+                // Replaces a prediction whose delivery is already queued.
+                return;
+            }
+            mEventTask.post(() -> runInSessionOrder(getSessionHandle(), () -> {
+                RangingMeasurement latest = mPendingPredictions.remove(address);
+                if (latest != null) {
+                    mSessionNotificationManager.onPredictedRangingResult(this, latest);
+                }
+            }));
+        }
+
         /** Updates the pose information if an ApplicationPoseSource is being used. */
         public void updatePose(FiraPoseUpdateParams updateParams) {
             if (mPoseSource instanceof ApplicationPoseSource) {
@@ -3118,11 +3526,14 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
          */
         public void close() {
             if (this.mAcquiredDefaultPose) {
-                if (mControleeList != null) {
-                    for (UwbControlee controlee : mControleeList) {
-                        controlee.close();
+                synchronized (mControleeMap) {
+                    if (mControleeList != null) {
+                        for (UwbControlee controlee : mControleeList) {
+                            controlee.close();
+                        }
+                        mControleeList.clear();
                     }
-                    mControleeList.clear();
+                    mControleeMap.clear();
                 }
 
                 this.mAcquiredDefaultPose = false;
@@ -3131,6 +3542,59 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
 
             mSendDataInfoMap.clear();
             clearReceivedDataInfo();
+            // The pending ranging reports are still delivered before the closed callback.
+            mRangingReportHandler.removeCallbacks(mFlushRangingReportsRunnable);
+        }
+
+        /**
+         * Gets the time of the last measured ranging report delivered one by one. Must be called
+         * with the session locked.
+         */
+        public long getLastRangingReportElapsedNanos() {
+            return mLastRangingReportElapsedNanos;
+        }
+
+        /**
+         * Sets the time of the last measured ranging report delivered one by one. Must be called
+         * with the session locked.
+         */
+        public void setLastRangingReportElapsedNanos(long elapsedNanos) {
+            mLastRangingReportElapsedNanos = elapsedNanos;
+        }
+
+        /** Whether ranging reports are delivered to the application in batches. */
+        public boolean isRangingReportBatchingEnabled() {
+            return mRangingReportBatchSize > 1;
+        }
+
+        /**
+         * Holds back a ranging report for batched delivery. The pending reports are flushed
+         * through {@link UwbSessionNotificationManager#flushRangingReports} on a thread dedicated
+         * to it once the batch is complete, or if it is not complete within the configured
+         * latency, so that batches are always delivered to the application in order.
+         */
+        public void addPendingRangingReport(@NonNull RangingReport rangingReport) {
+            synchronized (mPendingRangingReports) {
+                mPendingRangingReports.add(rangingReport);
+                if (mPendingRangingReports.size() == mRangingReportBatchSize) {
+                    mRangingReportHandler.removeCallbacks(mFlushRangingReportsRunnable);
+                    mRangingReportHandler.post(mFlushRangingReportsRunnable);
+                } else if (mPendingRangingReports.size() == 1) {
+                    mRangingReportHandler.postDelayed(mFlushRangingReportsRunnable,
+                            mRangingReportBatchMaxLatencyMs);
+                }
+            }
+        }
+
+        /** Removes and returns the ranging reports held back for batched delivery. */
+        @NonNull
+        public List<RangingReport> takePendingRangingReports() {
+            synchronized (mPendingRangingReports) {
+                mRangingReportHandler.removeCallbacks(mFlushRangingReportsRunnable);
+                List<RangingReport> rangingReports = new ArrayList<>(mPendingRangingReports);
+                mPendingRangingReports.clear();
+                return rangingReports;
+            }
         }
 
         /**
@@ -3181,8 +3645,10 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
             pw.println(uwbSession);
         }
         pw.println("Recently closed sessions: ");
-        for (UwbSession uwbSession: mDbgRecentlyClosedSessions.getEntries()) {
-            pw.println(uwbSession);
+        synchronized (mDbgRecentlyClosedSessions) {
+            for (UwbSession uwbSession: mDbgRecentlyClosedSessions.getEntries()) {
+                pw.println(uwbSession);
+            }
         }
         List<Integer> nonPrivilegedSessionIds =
                 mNonPrivilegedUidToFiraSessionsTable.entrySet()
@@ -3194,6 +3660,7 @@ public class UwbSessionManager implements INativeUwbManager.SessionNotification,
                         .flatMap(Collection::stream)
                         .collect(Collectors.toList());
         pw.println("Non Privileged Fira Session Ids: " + nonPrivilegedSessionIds);
+        mSessionCommandPipeline.dump(pw);
         pw.println("---- Dump of UwbSessionManager ----");
     }
 
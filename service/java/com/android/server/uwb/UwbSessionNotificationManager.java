@@ -16,6 +16,7 @@
 package com.android.server.uwb;
 
 import android.annotation.NonNull;
+import android.os.Parcel;
 import android.os.PersistableBundle;
 import android.os.RemoteException;
 import android.util.Log;
@@ -60,6 +61,10 @@ import java.util.Objects;
 
 public class UwbSessionNotificationManager {
     private static final String TAG = "UwbSessionNotiManager";
+    // Bound of the parcelled size of the reports delivered by one onRangingResults() call. The
+    // callbacks are oneway, so the transactions share the async half of the binder buffer of the
+    // application.
+    static final int RANGING_RESULTS_TRANSACTION_SIZE_MAX = 64 * 1024;
     private final UwbInjector mUwbInjector;
 
     public UwbSessionNotificationManager(@NonNull UwbInjector uwbInjector) {
@@ -80,9 +85,10 @@ public class UwbSessionNotificationManager {
             uwbSession.setDataDeliveryPermissionCheckNeeded(false);
         }
         RangingReport rangingReport = null;
+        long elapsedNanos = mUwbInjector.getElapsedSinceBootNanos();
         try {
             rangingReport = getRangingReport(rangingData, uwbSession.getProtocolName(),
-                    uwbSession.getParams(), mUwbInjector.getElapsedSinceBootNanos(), uwbSession);
+                    uwbSession.getParams(), elapsedNanos, uwbSession);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "getRangingReport Failed.");
             e.printStackTrace();
@@ -110,11 +116,182 @@ public class UwbSessionNotificationManager {
                 e.printStackTrace();
             }
         }
+        if (uwbSession.isRangingReportBatchingEnabled()) {
+            uwbSession.addPendingRangingReport(rangingReport);
+            return;
+        }
+        // Serialized with the predicted results, so that none are delivered after this report.
+        synchronized (uwbSession) {
+            uwbSession.setLastRangingReportElapsedNanos(elapsedNanos);
+            try {
+                uwbRangingCallbacks.onRangingResult(sessionHandle, rangingReport);
+                Log.i(TAG, "IUwbRangingCallbacks - onRangingResult");
+            } catch (Exception e) {
+                Log.e(TAG, "IUwbRangingCallbacks - onRangingResult : Failed");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Delivers a measurement the filter engine predicted from pose changes between ranging
+     * rounds. Predictions are only delivered to active sessions whose ranging results are
+     * already being delivered one by one, subject to the range data notification control of the
+     * session, and they are not logged to the metrics. A prediction
+     * older than the last measured report is dropped. Predictions are marked as such in the
+     * {@link RangingReportMetadata}.
+     */
+    public void onPredictedRangingResult(
+            UwbSession uwbSession, RangingMeasurement rangingMeasurement) {
+        if (uwbSession.getSessionState() != UwbUciConstants.UWB_SESSION_STATE_ACTIVE
+                || uwbSession.isDataDeliveryPermissionCheckNeeded()
+                || uwbSession.isRangingReportBatchingEnabled()
+                || !isRangeDataNtfEnabled(uwbSession, rangingMeasurement)) {
+            return;
+        }
+        PersistableBundle rangingReportMetadata = new RangingReportMetadata.Builder()
+                .setSessionId(uwbSession.getSessionId())
+                .setRawNtfData(new byte[0])
+                .setPredicted(true)
+                .build()
+                .toBundle();
+        RangingReport rangingReport = new RangingReport.Builder()
+                .addRangingReportMetadata(rangingReportMetadata)
+                .addMeasurement(rangingMeasurement)
+                .build();
+        synchronized (uwbSession) {
+            if (rangingMeasurement.getElapsedRealtimeNanos()
+                    <= uwbSession.getLastRangingReportElapsedNanos()) {
+                // A measured report was delivered since the prediction was made.
+                return;
+            }
+            try {
+                uwbSession.getIUwbRangingCallbacks()
+                        .onRangingResult(uwbSession.getSessionHandle(), rangingReport);
+            } catch (Exception e) {
+                Log.e(TAG, "IUwbRangingCallbacks - onRangingResult (predicted) : Failed");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Applies the range data notification control of the session to a measurement the UWBS did
+     * not report, the way the UWBS filters the measured ones: nothing is reported to non
+     * privileged applications in the background, and the proximity and AoA bounds of level
+     * triggered configurations must be met. Edge triggered configurations only report the
+     * transitions seen by the UWBS.
+     */
+    private static boolean isRangeDataNtfEnabled(
+            UwbSession uwbSession, RangingMeasurement rangingMeasurement) {
+        if (uwbSession.hasNonPrivilegedApp() && !uwbSession.hasNonPrivilegedFgAppOrService()) {
+            return false;
+        }
+        if (!(uwbSession.getParams() instanceof FiraOpenSessionParams)) {
+            return true;
+        }
+        FiraOpenSessionParams params = (FiraOpenSessionParams) uwbSession.getParams();
+        boolean checkProximity;
+        boolean checkAoa;
+        switch (params.getRangeDataNtfConfig()) {
+            case FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE:
+                return true;
+            case FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_LEVEL_TRIG:
+                checkProximity = true;
+                checkAoa = false;
+                break;
+            case FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_AOA_LEVEL_TRIG:
+                checkProximity = false;
+                checkAoa = true;
+                break;
+            case FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG:
+                checkProximity = true;
+                checkAoa = true;
+                break;
+            default:
+                return false;
+        }
+        if (checkProximity) {
+            DistanceMeasurement distance = rangingMeasurement.getDistanceMeasurement();
+            if (distance == null) {
+                return false;
+            }
+            double distanceCm = distance.getMeters() * 100;
+            if (distanceCm < params.getRangeDataNtfProximityNear()
+                    || distanceCm > params.getRangeDataNtfProximityFar()) {
+                return false;
+            }
+        }
+        if (checkAoa) {
+            AngleOfArrivalMeasurement aoa = rangingMeasurement.getAngleOfArrivalMeasurement();
+            if (aoa == null) {
+                return false;
+            }
+            double azimuth = aoa.getAzimuth().getRadians();
+            if (azimuth < params.getRangeDataNtfAoaAzimuthLower()
+                    || azimuth > params.getRangeDataNtfAoaAzimuthUpper()) {
+                return false;
+            }
+            AngleMeasurement altitude = aoa.getAltitude();
+            if (altitude != null
+                    && (altitude.getRadians() < params.getRangeDataNtfAoaElevationLower()
+                    || altitude.getRadians() > params.getRangeDataNtfAoaElevationUpper())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delivers the ranging reports held back by a session using batched delivery, if any. This
+     * is invoked on the ranging report thread when the batch is complete or its latency expires,
+     * and before the session is stopped or closed.
+     */
+    public void flushRangingReports(UwbSession uwbSession) {
+        if (!uwbSession.isRangingReportBatchingEnabled()) {
+            return;
+        }
+        // Stop and close flush from another thread, the reports are taken and delivered under
+        // the lock of the session so that batches reach the application in order.
+        synchronized (uwbSession) {
+            List<RangingReport> rangingReports = uwbSession.takePendingRangingReports();
+            int start = 0;
+            int size = 0;
+            for (int i = 0; i < rangingReports.size(); i++) {
+                int reportSize = getParcelledSize(rangingReports.get(i));
+                if (i > start && (i - start == FiraParams.RANGING_REPORT_BATCH_SIZE_MAX
+                        || size + reportSize > RANGING_RESULTS_TRANSACTION_SIZE_MAX)) {
+                    onRangingResults(uwbSession, rangingReports.subList(start, i));
+                    start = i;
+                    size = 0;
+                }
+                size += reportSize;
+            }
+            if (start < rangingReports.size()) {
+                onRangingResults(
+                        uwbSession, rangingReports.subList(start, rangingReports.size()));
+            }
+        }
+    }
+
+    private static int getParcelledSize(RangingReport rangingReport) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            rangingReport.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void onRangingResults(UwbSession uwbSession, List<RangingReport> rangingReports) {
+        SessionHandle sessionHandle = uwbSession.getSessionHandle();
+        IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
         try {
-            uwbRangingCallbacks.onRangingResult(sessionHandle, rangingReport);
-            Log.i(TAG, "IUwbRangingCallbacks - onRangingResult");
+            uwbRangingCallbacks.onRangingResults(sessionHandle, rangingReports);
+            Log.i(TAG, "IUwbRangingCallbacks - onRangingResults : " + rangingReports.size());
         } catch (Exception e) {
-            Log.e(TAG, "IUwbRangingCallbacks - onRangingResult : Failed");
+            Log.e(TAG, "IUwbRangingCallbacks - onRangingResults : Failed");
             e.printStackTrace();
         }
     }
@@ -196,14 +373,20 @@ public class UwbSessionNotificationManager {
             PersistableBundle params)  {
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
-        mUwbInjector.finishUwbRangingPermissionForDataDelivery(uwbSession.getAttributionSource());
-        uwbSession.setDataDeliveryPermissionCheckNeeded(true);
-        try {
-            uwbRangingCallbacks.onRangingStopped(sessionHandle, reason, params);
-            Log.i(TAG, "IUwbRangingCallbacks - onRangingStopped");
-        } catch (Exception e) {
-            Log.e(TAG, "IUwbRangingCallbacks - onRangingStopped : Failed");
-            e.printStackTrace();
+        // The session stays locked until the callback, so that a flush already running on the
+        // ranging report thread can't deliver its reports after it.
+        synchronized (uwbSession) {
+            flushRangingReports(uwbSession);
+            mUwbInjector.finishUwbRangingPermissionForDataDelivery(
+                    uwbSession.getAttributionSource());
+            uwbSession.setDataDeliveryPermissionCheckNeeded(true);
+            try {
+                uwbRangingCallbacks.onRangingStopped(sessionHandle, reason, params);
+                Log.i(TAG, "IUwbRangingCallbacks - onRangingStopped");
+            } catch (Exception e) {
+                Log.e(TAG, "IUwbRangingCallbacks - onRangingStopped : Failed");
+                e.printStackTrace();
+            }
         }
     }
 
@@ -396,16 +579,20 @@ public class UwbSessionNotificationManager {
     public void onRangingClosed(UwbSession uwbSession, int status) {
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
-        try {
-            uwbRangingCallbacks.onRangingClosed(sessionHandle,
-                    UwbSessionNotificationHelper.convertUciStatusToApiReasonCode(
-                            status),
-                    UwbSessionNotificationHelper.convertUciStatusToParam(
-                            uwbSession.getProtocolName(), status));
-            Log.i(TAG, "IUwbRangingCallbacks - onRangingClosed");
-        } catch (Exception e) {
-            Log.e(TAG, "IUwbRangingCallbacks - onRangingClosed : Failed");
-            e.printStackTrace();
+        // Locked until the callback, as for onRangingStopped.
+        synchronized (uwbSession) {
+            flushRangingReports(uwbSession);
+            try {
+                uwbRangingCallbacks.onRangingClosed(sessionHandle,
+                        UwbSessionNotificationHelper.convertUciStatusToApiReasonCode(
+                                status),
+                        UwbSessionNotificationHelper.convertUciStatusToParam(
+                                uwbSession.getProtocolName(), status));
+                Log.i(TAG, "IUwbRangingCallbacks - onRangingClosed");
+            } catch (Exception e) {
+                Log.e(TAG, "IUwbRangingCallbacks - onRangingClosed : Failed");
+                e.printStackTrace();
+            }
         }
     }
 
@@ -413,12 +600,17 @@ public class UwbSessionNotificationManager {
             UwbSession uwbSession, @RangingChangeReason int reasonCode) {
         SessionHandle sessionHandle = uwbSession.getSessionHandle();
         IUwbRangingCallbacks uwbRangingCallbacks = uwbSession.getIUwbRangingCallbacks();
-        try {
-            uwbRangingCallbacks.onRangingClosed(sessionHandle, reasonCode, new PersistableBundle());
-            Log.i(TAG, "IUwbRangingCallbacks - onRangingClosed");
-        } catch (Exception e) {
-            Log.e(TAG, "IUwbRangingCallbacks - onRangingClosed : Failed");
-            e.printStackTrace();
+        // Locked until the callback, as for onRangingStopped.
+        synchronized (uwbSession) {
+            flushRangingReports(uwbSession);
+            try {
+                uwbRangingCallbacks.onRangingClosed(
+                        sessionHandle, reasonCode, new PersistableBundle());
+                Log.i(TAG, "IUwbRangingCallbacks - onRangingClosed");
+            } catch (Exception e) {
+                Log.e(TAG, "IUwbRangingCallbacks - onRangingClosed : Failed");
+                e.printStackTrace();
+            }
         }
     }
 
@@ -352,6 +352,13 @@ public class UwbShellCommand extends BasicShellCommandHandler {
             mSessionInfo.addRangingReport(rangingReport);
         }
 
+        public void onRangingResults(SessionHandle sessionHandle,
+                List<RangingReport> rangingReports) {
+            for (RangingReport rangingReport : rangingReports) {
+                onRangingResult(sessionHandle, rangingReport);
+            }
+        }
+
         public void onControleeAdded(SessionHandle sessionHandle, PersistableBundle params) {}
 
         public void onControleeAddFailed(SessionHandle sessionHandle, int reason,
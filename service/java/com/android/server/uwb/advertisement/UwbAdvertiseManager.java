@@ -24,18 +24,25 @@ import com.android.server.uwb.DeviceConfigFacade;
 import com.android.server.uwb.UwbInjector;
 import com.android.server.uwb.data.UwbOwrAoaMeasurement;
 
-import java.util.ArrayList;
-import java.util.Optional;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class UwbAdvertiseManager {
     private static final String TAG = "UwbAdvertiseManager";
 
+    // Upper bound on the number of remote devices tracked at once. When full, targets which have
+    // not been updated within the time threshold are evicted first, then the least recently
+    // updated one.
+    @VisibleForTesting
+    public static final int MAX_ADVERTISE_TARGETS = 64;
+
     private final ConcurrentHashMap<Long, UwbAdvertiseTarget> mAdvertiseTargetMap =
             new ConcurrentHashMap<>();
 
     private final UwbInjector mUwbInjector;
     private final DeviceConfigFacade mDeviceConfigFacade;
+    private long mLastStaleTargetsEvictionTime;
 
     public UwbAdvertiseManager(UwbInjector uwbInjector, DeviceConfigFacade deviceConfigFacade) {
         this.mUwbInjector = uwbInjector;
@@ -73,6 +80,14 @@ public class UwbAdvertiseManager {
         // First check if there exists a stale UwbAdvertiseTarget for the device, and remove it.
         checkAndRemoveStaleAdvertiseTarget(uwbOwrAoaMeasurement.mMacAddress);
 
+        // Also drop the other devices which stopped advertising, at most once per time threshold.
+        long currentTime = mUwbInjector.getElapsedSinceBootMillis();
+        if (currentTime - mLastStaleTargetsEvictionTime
+                > mDeviceConfigFacade.getAdvertiseTimeThresholdMillis()) {
+            removeStaleAdvertiseTargets();
+            mLastStaleTargetsEvictionTime = currentTime;
+        }
+
         // Now store the new measurement for the device.
         updateAdvertiseTargetInfo(uwbOwrAoaMeasurement);
     }
@@ -112,6 +127,28 @@ public class UwbAdvertiseManager {
         }
     }
 
+    private void removeStaleAdvertiseTargets() {
+        Iterator<UwbAdvertiseTarget> it = mAdvertiseTargetMap.values().iterator();
+        while (it.hasNext()) {
+            if (!isWithinTimeThreshold(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    private void removeLeastRecentlyUpdatedAdvertiseTarget() {
+        Map.Entry<Long, UwbAdvertiseTarget> oldest = null;
+        for (Map.Entry<Long, UwbAdvertiseTarget> entry : mAdvertiseTargetMap.entrySet()) {
+            if (oldest == null || entry.getValue().getLastUpdatedTime()
+                    < oldest.getValue().getLastUpdatedTime()) {
+                oldest = entry;
+            }
+        }
+        if (oldest != null) {
+            mAdvertiseTargetMap.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
     private boolean isWithinTimeThreshold(UwbAdvertiseTarget uwbAdvertiseTarget) {
         long currentTime = mUwbInjector.getElapsedSinceBootMillis();
         if (currentTime - uwbAdvertiseTarget.getLastUpdatedTime()
@@ -154,6 +191,12 @@ public class UwbAdvertiseManager {
     }
 
     private UwbAdvertiseTarget addAdvertiseTarget(long macAddress) {
+        if (mAdvertiseTargetMap.size() >= MAX_ADVERTISE_TARGETS) {
+            removeStaleAdvertiseTargets();
+            while (mAdvertiseTargetMap.size() >= MAX_ADVERTISE_TARGETS) {
+                removeLeastRecentlyUpdatedAdvertiseTarget();
+            }
+        }
         UwbAdvertiseTarget advertiseTarget = new UwbAdvertiseTarget(macAddress);
         mAdvertiseTargetMap.put(macAddress, advertiseTarget);
         return advertiseTarget;
@@ -166,10 +209,8 @@ public class UwbAdvertiseManager {
     @VisibleForTesting
     public class UwbAdvertiseTarget {
         private final long mMacAddress;
-        private final ArrayList<Double> mRecentAoaAzimuth = new ArrayList<>();
-        private final ArrayList<Double> mRecentAoaElevation = new ArrayList<>();
-        private double mVarianceOfAzimuth;
-        private double mVarianceOfElevation;
+        private final AoaHistory mRecentAoaAzimuth = new AoaHistory();
+        private final AoaHistory mRecentAoaElevation = new AoaHistory();
         private long mLastMeasuredTime;
         private boolean mIsVarianceCalculated;
 
@@ -179,60 +220,23 @@ public class UwbAdvertiseManager {
         }
 
         private void calculateAoaVariance(UwbOwrAoaMeasurement owrAoaMeasurement) {
-            double aoaAzimuth = owrAoaMeasurement.getAoaAzimuth();
-            double aoaElevation = owrAoaMeasurement.getAoaElevation();
-
-            mRecentAoaAzimuth.add(aoaAzimuth);
-            mRecentAoaElevation.add(aoaElevation);
-
             int arraySizeToCheck = mDeviceConfigFacade.getAdvertiseArraySizeToCheck();
             int arrayStartIndex = mDeviceConfigFacade.getAdvertiseArrayStartIndexToCalVariance();
             int arrayEndIndex = mDeviceConfigFacade.getAdvertiseArrayEndIndexToCalVariance();
 
-            if (mRecentAoaAzimuth.size() > arraySizeToCheck) {
-                mRecentAoaAzimuth.remove(0);
-                mRecentAoaElevation.remove(0);
-            }
-
-            if (mRecentAoaAzimuth.size() == arraySizeToCheck) {
-                double[] azimuthArr =
-                        mRecentAoaAzimuth
-                                .subList(arrayStartIndex, arrayEndIndex)
-                                .stream()
-                                .mapToDouble(Double::doubleValue)
-                                .toArray();
-                mVarianceOfAzimuth = getVariance(azimuthArr);
-                double[] elevationArr =
-                        mRecentAoaElevation
-                                .subList(arrayStartIndex, arrayEndIndex)
-                                .stream()
-                                .mapToDouble(Double::doubleValue)
-                                .toArray();
-                mVarianceOfElevation = getVariance(elevationArr);
-                mIsVarianceCalculated = true;
-            } else {
-                mIsVarianceCalculated = false;
-            }
-        }
-
-        private boolean isWithinCriterionAngle(double aoa) {
-            return Math.abs(aoa) <= mDeviceConfigFacade.getAdvertiseAoaCriteriaAngle();
+            mRecentAoaAzimuth.add(owrAoaMeasurement.getAoaAzimuth(), arraySizeToCheck,
+                    arrayStartIndex, arrayEndIndex);
+            mRecentAoaElevation.add(owrAoaMeasurement.getAoaElevation(), arraySizeToCheck,
+                    arrayStartIndex, arrayEndIndex);
+            mIsVarianceCalculated = mRecentAoaAzimuth.isFull();
         }
 
         private boolean isWithinCriterionAngle() {
-            Optional<Double> outsideCriterionAngle;
-
-            // Check if any stored AoaAzimuth value is outside the criterion angle range.
-            outsideCriterionAngle = mRecentAoaAzimuth.stream()
-                    .filter(x -> !isWithinCriterionAngle(x))
-                    .findFirst();
-            if (outsideCriterionAngle.isPresent()) return false;
-
-            // Check if any stored AoaElevation value is outside the criterion angle range.
-            outsideCriterionAngle = mRecentAoaElevation.stream()
-                    .filter(x -> !isWithinCriterionAngle(x))
-                    .findFirst();
-            return !outsideCriterionAngle.isPresent();
+            int criterionAngle = mDeviceConfigFacade.getAdvertiseAoaCriteriaAngle();
+            // Check if any stored AoaAzimuth or AoaElevation value is outside the criterion angle
+            // range.
+            return mRecentAoaAzimuth.isWithin(criterionAngle)
+                    && mRecentAoaElevation.isWithin(criterionAngle);
         }
 
         // TODO(b/246678053): Can we receive measurements that are out of order (in terms of the
@@ -243,11 +247,11 @@ public class UwbAdvertiseManager {
         }
 
         private double getVarianceOfAzimuth() {
-            return mVarianceOfAzimuth;
+            return mRecentAoaAzimuth.getVariance();
         }
 
         private double getVarianceOfElevation() {
-            return mVarianceOfElevation;
+            return mRecentAoaElevation.getVariance();
         }
 
         private long getLastUpdatedTime() {
@@ -259,41 +263,131 @@ public class UwbAdvertiseManager {
             return mIsVarianceCalculated;
         }
 
-        private double getAverage(double[] array) {
-            double sum = 0.0;
+        @Override
+        public String toString() {
+            return " mMacAddress : "
+                    + mMacAddress
+                    + ", mVarOfAzimuth : "
+                    + getVarianceOfAzimuth()
+                    + ", mVarOfElevation : "
+                    + getVarianceOfElevation()
+                    + ", mRecentAoaAzimuth : "
+                    + mRecentAoaAzimuth
+                    + ", mRecentAoaElevation : "
+                    + mRecentAoaElevation;
+        }
+    }
+
+    /**
+     * The most recent AoA values of a remote device, in a ring buffer holding the number of values
+     * to check. The population variance of the values between the start and end indexes (oldest
+     * first) is kept up to date with Welford's algorithm, sliding the window by one value for each
+     * new measurement instead of recomputing it.
+     */
+    @VisibleForTesting
+    static class AoaHistory {
+        private double[] mValues = new double[0];
+        private int mSize;
+        private int mOldestIndex;
+        private int mWindowStart;
+        private int mWindowEnd;
+        private double mWindowMean;
+        private double mWindowM2;
+
+        /** Adds a value, computing the variance once the buffer is full. */
+        void add(double value, int capacity, int windowStart, int windowEnd) {
+            capacity = Math.max(capacity, 1);
+            windowStart = Math.min(Math.max(windowStart, 0), capacity);
+            windowEnd = Math.min(Math.max(windowEnd, windowStart), capacity);
+            if (capacity != mValues.length) {
+                mValues = new double[capacity];
+                mSize = 0;
+                mOldestIndex = 0;
+            }
 
-            for (int i = 0; i < array.length; i++) sum += array[i];
+            if (mSize < capacity) {
+                mValues[(mOldestIndex + mSize) % capacity] = value;
+                mSize++;
+                if (mSize == capacity) {
+                    resetWindow(windowStart, windowEnd);
+                }
+                return;
+            }
 
-            return sum / array.length;
+            if (windowStart != mWindowStart || windowEnd != mWindowEnd) {
+                append(value);
+                resetWindow(windowStart, windowEnd);
+                return;
+            }
+            int windowSize = windowEnd - windowStart;
+            if (windowSize > 0) {
+                // The window moves by one value: the value at its start leaves it, and the value
+                // after its end (or the new value, if the window ends at the newest value) enters.
+                double leaving = get(windowStart);
+                double entering = windowEnd < capacity ? get(windowEnd) : value;
+                double mean = mWindowMean + (entering - leaving) / windowSize;
+                mWindowM2 += (entering - leaving) * (entering - mean + leaving - mWindowMean);
+                mWindowMean = mean;
+            }
+            append(value);
+            if (mOldestIndex == 0) {
+                // Recompute once per lap of the buffer, to not accumulate rounding errors.
+                resetWindow(windowStart, windowEnd);
+            }
         }
 
-        private double getVariance(double[] array) {
-            if (array.length < 2) return Double.NaN;
+        boolean isFull() {
+            return mSize > 0 && mSize == mValues.length;
+        }
 
-            double sum = 0.0;
-            double ret;
-            double avg = getAverage(array);
+        /** Returns the variance of the window, or NaN if it holds less than 2 values. */
+        double getVariance() {
+            int windowSize = mWindowEnd - mWindowStart;
+            if (!isFull() || windowSize < 2) {
+                return Double.NaN;
+            }
+            return Math.max(mWindowM2, 0.0) / windowSize;
+        }
 
-            for (int i = 0; i < array.length; i++) {
-                sum += Math.pow(array[i] - avg, 2);
+        /** Returns whether all the stored values are within +/- the given angle. */
+        boolean isWithin(double angle) {
+            for (int i = 0; i < mSize; i++) {
+                if (Math.abs(get(i)) > angle) {
+                    return false;
+                }
             }
-            ret = (double) sum / array.length;
+            return true;
+        }
+
+        private double get(int index) {
+            return mValues[(mOldestIndex + index) % mValues.length];
+        }
 
-            return ret;
+        private void append(double value) {
+            mValues[mOldestIndex] = value;
+            mOldestIndex = (mOldestIndex + 1) % mValues.length;
+        }
+
+        private void resetWindow(int windowStart, int windowEnd) {
+            mWindowStart = windowStart;
+            mWindowEnd = windowEnd;
+            mWindowMean = 0.0;
+            mWindowM2 = 0.0;
+            for (int i = windowStart; i < windowEnd; i++) {
+                double value = get(i);
+                double delta = value - mWindowMean;
+                mWindowMean += delta / (i - windowStart + 1);
+                mWindowM2 += delta * (value - mWindowMean);
+            }
         }
 
         @Override
         public String toString() {
-            return " mMacAddress : "
-                    + mMacAddress
-                    + ", mVarOfAzimuth : "
-                    + mVarianceOfAzimuth
-                    + ", mVarOfElevation : "
-                    + mVarianceOfElevation
-                    + ", mRecentAoaAzimuth : "
-                    + mRecentAoaAzimuth
-                    + ", mRecentAoaElevation : "
-                    + mRecentAoaElevation;
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < mSize; i++) {
+                sb.append(i == 0 ? "" : ", ").append(get(i));
+            }
+            return sb.append("]").toString();
         }
     }
 }
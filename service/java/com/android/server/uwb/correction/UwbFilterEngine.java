@@ -31,6 +31,7 @@ import com.android.server.uwb.correction.primers.IPrimer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.LongSupplier;
 
 /**
  * Consumes raw UWB values and outputs filtered UWB values. See the {@link UwbFilterEngine.Builder}
@@ -57,6 +58,12 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
 
     private boolean mClosed;
 
+    // Pose-driven predictions (oversampling) between UWB readings; see setPredictionListener.
+    @Nullable private PredictionListener mPredictionListener;
+    @Nullable private LongSupplier mClock;
+    private long mPredictionIntervalMs;
+    private long mLastOutputMs;
+
     private UwbFilterEngine(
             @NonNull List<IPrimer> primers,
             @Nullable IPoseSource poseSource,
@@ -75,7 +82,7 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
      * @param position The raw position produced by the UWB hardware.
      * @param timeMs The time at which the UWB value was received, in ms since boot.
      */
-    public void add(@NonNull SphericalVector.Annotated position, long timeMs) {
+    public synchronized void add(@NonNull SphericalVector.Annotated position, long timeMs) {
         StringBuilder bigLog = sDebug ? new StringBuilder(position.toString()) : null;
         Objects.requireNonNull(position);
 
@@ -118,6 +125,8 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
         if (bigLog != null) {
             Log.d(BIG_LOG_TAG, bigLog.toString());
         }
+        // A UWB reading restarts the wait for the next prediction.
+        mLastOutputMs = timeMs;
     }
 
     /**
@@ -126,7 +135,7 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
      * @return A SphericalVector representing the most likely UWB location.
      */
     @Nullable
-    public SphericalVector.Annotated compute(long timeMs) {
+    public synchronized SphericalVector.Annotated compute(long timeMs) {
         if (mFilter != null) {
             mFilter.updatePose(mPoseSource, timeMs);
             return mFilter.compute(timeMs);
@@ -154,11 +163,15 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
      */
     @Override
     public void close() {
-        if (!mClosed) {
-            mClosed = true;
-            if (mPoseSource != null) {
-                mPoseSource.unregisterListener(this);
+        synchronized (this) {
+            if (mClosed) {
+                return;
             }
+            mClosed = true;
+            mPredictionListener = null;
+        }
+        if (mPoseSource != null) {
+            mPoseSource.unregisterListener(this);
         }
     }
 
@@ -171,8 +184,57 @@ public class UwbFilterEngine implements AutoCloseable, PoseEventListener {
      */
     @Override
     public void onPoseChanged(@SuppressWarnings("unused") @NonNull Pose pose) {
-        // We don't use pose change as they happen at this point. If you're implementing UWB
-        // oversampling, this might be a good place to call compute() and produce a result.
+        // Pose changes are only used to oversample the UWB position, and only once there is a
+        // UWB reading to move. compute() applies the latest pose itself.
+        PredictionListener listener;
+        SphericalVector.Annotated prediction;
+        long nowMs;
+        synchronized (this) {
+            listener = mPredictionListener;
+            if (listener == null || mClosed || mLastInputState == null) {
+                return;
+            }
+            nowMs = mClock.getAsLong();
+            if (nowMs - mLastOutputMs < mPredictionIntervalMs) {
+                return;
+            }
+            prediction = compute(nowMs);
+            if (prediction == null) {
+                return;
+            }
+            mLastOutputMs = nowMs;
+        }
+        listener.onPrediction(prediction, nowMs);
+    }
+
+    /**
+     * Enables predictions between UWB readings. Each pose change computes a new result, which
+     * lets the UWB position be reported more often than the ranging interval.
+     *
+     * @param listener The listener to deliver predictions to, or null to stop predictions.
+     * @param minIntervalMs The minimum time between two results, UWB readings included.
+     * @param clock Supplies the current time, in ms since boot.
+     */
+    public synchronized void setPredictionListener(
+            @Nullable PredictionListener listener,
+            long minIntervalMs,
+            @NonNull LongSupplier clock) {
+        mPredictionListener = listener;
+        mPredictionIntervalMs = minIntervalMs;
+        mClock = Objects.requireNonNull(clock);
+    }
+
+    /**
+     * Receives the results the engine computes as the pose changes between UWB readings.
+     */
+    public interface PredictionListener {
+        /**
+         * Called when a pose change produced a new result.
+         *
+         * @param prediction The most likely UWB location as of timeMs.
+         * @param timeMs The time of the prediction, in ms since boot.
+         */
+        void onPrediction(@NonNull SphericalVector.Annotated prediction, long timeMs);
     }
 
     /**
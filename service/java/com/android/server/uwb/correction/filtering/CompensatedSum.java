@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction.filtering;
+
+/**
+ * A reusable, allocation-free accumulator that sums doubles the same way
+ * {@link java.util.stream.DoubleStream#sum()} does (Kahan compensated summation), so filters can
+ * drop the streams without changing their results.
+ */
+final class CompensatedSum {
+    private double mSum;
+    private double mCompensation;
+    private double mSimpleSum;
+
+    /** Clears the accumulator. */
+    void reset() {
+        mSum = 0;
+        mCompensation = 0;
+        mSimpleSum = 0;
+    }
+
+    /** Adds a value to the sum. */
+    void add(double value) {
+        double tmp = value - mCompensation;
+        double sum = mSum + tmp;
+        mCompensation = (sum - mSum) - tmp;
+        mSum = sum;
+        mSimpleSum += value;
+    }
+
+    /** Gets the sum of all values added since the last {@link #reset()}. */
+    double get() {
+        double tmp = mSum + mCompensation;
+        if (Double.isNaN(tmp) && Double.isInfinite(mSimpleSum)) {
+            // Better error recovery: the compensation term can turn an infinite sum into NaN.
+            return mSimpleSum;
+        }
+        return tmp;
+    }
+}
@@ -17,26 +17,44 @@ package com.android.server.uwb.correction.filtering;
 
 import androidx.annotation.NonNull;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
-
 /**
  * A Median, Average filter.  The filter has an adjustable median window and
  * the configured percentage of non-outliers are averaged.
+ *
+ * <p>The window is kept in a primitive ring buffer alongside an index of its slots in sorted
+ * order, which is updated incrementally as samples enter and leave the window. Adding a sample
+ * does not allocate.
  */
 public class MedAvgFilter implements IFilter {
     private static final int MAX_FILTER = 255;
 
     private int mWindowSize;
     private float mCut;
+
+    // The window, as a ring buffer with the oldest sample at mHead. mSeqs holds the order in
+    // which the samples were added, used to break ties between equal values the same way a
+    // stable sort of the window would.
+    private float[] mValues = new float[0];
+    private long[] mTimes = new long[0];
+    private double[] mFoms = new double[0];
+    private long[] mSeqs = new long[0];
+    private int mHead;
+    private int mCount;
+    private long mNextSeq;
+
+    // Ring buffer slots, ordered by value and then by age.
+    private int[] mSortedSlots = new int[0];
+
+    // Scratch copy of the window in the order used for averaging; see sortSamples().
+    private float[] mSortedValues = new float[0];
+    private long[] mSortedTimes = new long[0];
+    private double[] mSortedFoms = new double[0];
+    private long[] mSortedSeqs = new long[0];
+
+    private final CompensatedSum mFomWeight = new CompensatedSum();
     @NonNull
-    private final ArrayDeque<Sample> mWindow = new ArrayDeque<>();
-    @NonNull
-    private Sample mResult = new Sample(0F, 0, 0);
+    private final Sample mResultSample = new Sample(0F, 0, 0);
+    private Sample mResult = mResultSample;
 
     /**
      * Creates a new instance of the MedAvgFilter class.
@@ -68,6 +86,10 @@ public class MedAvgFilter implements IFilter {
                     "Value is out of range; must be between 1 and " + MAX_FILTER + " inclusive.");
         }
         mWindowSize = value;
+        // Samples beyond the new window size are only dropped by the next add().
+        if (value > mValues.length) {
+            grow(value);
+        }
     }
 
     /**
@@ -96,7 +118,8 @@ public class MedAvgFilter implements IFilter {
     /**
      * Gets a sample object with the result from the last computation. The sample's time is
      * the average time of the samples that created the result, effectively describing the
-     * latency introduced by the filter.
+     * latency introduced by the filter. The sample is owned by the filter and is updated in place
+     * by the next computation.
      * @return The result from the last computation.
      */
     @NonNull
@@ -113,11 +136,31 @@ public class MedAvgFilter implements IFilter {
      */
     @Override
     public void add(float value, long timeMs, double fom) {
-        mWindow.addLast(new Sample(value, timeMs, fom));
-        while (mWindow.size() > mWindowSize) {
-            mWindow.removeFirst();
+        while (mCount >= mWindowSize) {
+            removeOldest();
+        }
+        int slot = (mHead + mCount) % mValues.length;
+        mValues[slot] = value;
+        mTimes[slot] = timeMs;
+        mFoms[slot] = fom;
+        mSeqs[slot] = mNextSeq++;
+
+        // The new sample is the youngest, so it goes after any sample of equal value.
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Float.compare(mValues[mSortedSlots[mid]], value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        mResult = compute();
+        System.arraycopy(mSortedSlots, low, mSortedSlots, low + 1, mCount - low);
+        mSortedSlots[low] = slot;
+        mCount++;
+
+        compute();
     }
 
     /**
@@ -125,8 +168,25 @@ public class MedAvgFilter implements IFilter {
      * @param selector The interface containing the function that selects the new sample values.
      */
     protected void remap(RemapFunction selector) {
-        mWindow.forEach(s -> s.value = selector.run(s.value));
-        mResult = new Sample(selector.run(mResult.value), mResult.timeMs, mResult.fom);
+        for (int i = 0; i < mCount; i++) {
+            int slot = getSlot(i);
+            mValues[slot] = selector.run(mValues[slot]);
+        }
+        if (mResult != null) {
+            mResult.value = selector.run(mResult.value);
+        }
+
+        // The remapping may have reordered the values; the index is usually still close to
+        // sorted, which insertion sort handles in linear time.
+        for (int i = 1; i < mCount; i++) {
+            int slot = mSortedSlots[i];
+            int j = i - 1;
+            while (j >= 0 && compareSlots(mSortedSlots[j], slot) > 0) {
+                mSortedSlots[j + 1] = mSortedSlots[j];
+                j--;
+            }
+            mSortedSlots[j + 1] = slot;
+        }
     }
 
     /**
@@ -141,58 +201,132 @@ public class MedAvgFilter implements IFilter {
     }
 
     /**
-     * Performs the median and average component and returns a new sample.
+     * Performs the median and average component and stores the result.
      * The sample's instant indicates the sourced data's center time, approximating how much
      * latency was introduced by the filter.
      */
-    private Sample compute() {
-        int count = mWindow.size();
+    private void compute() {
+        int count = mCount;
         if (count == 0) {
             throw new IllegalStateException("The filter is empty.");
         }
         if (count == 1) {
-            return mWindow.getFirst();
+            mResultSample.value = mValues[mHead];
+            mResultSample.timeMs = mTimes[mHead];
+            mResultSample.fom = mFoms[mHead];
+            mResult = mResultSample;
+            return;
         }
-        List<Sample> sorted = sortSamples(mWindow);
+        sortSamples();
 
-        if (mCut == 1F) {
-            // 100% of a median cut is just an average.
-
-            // Note that this comes AFTER the sort. MedAvgRotationFilterFilter's averaging routine
-            // requires that samples are sorted, as it sorts in a special way to respect angle
-            // rollover.
-            return averageSamples(sorted);
+        int start = 0;
+        int end = count;
+        // 100% of a median cut is just an average.
+        // Note that this comes AFTER the sort. MedAvgRotationFilterFilter's averaging routine
+        // requires that samples are sorted, as it sorts in a special way to respect angle
+        // rollover.
+        if (mCut != 1F) {
+            int throwAway = Math.round(count * (1 - mCut) / 2);
+            if (2 * throwAway >= count) {
+                // At least 2 samples if count is even or 1 sample if count is odd
+                throwAway--;
+            }
+            start = throwAway;
+            end = count - throwAway;
         }
 
-        int throwAway = Math.round(count * (1 - mCut) / 2);
-        if (2 * throwAway >= count) {
-            // At least 2 samples if count is even or 1 sample if count is odd
-            throwAway--;
-        }
+        mResult = averageSamples(start, end, mResultSample) ? mResultSample : null;
+    }
 
-        return averageSamples(sorted.subList(throwAway, count - throwAway));
+    /**
+     * Gets the number of samples in the window.
+     */
+    protected int getCount() {
+        return mCount;
     }
 
     /**
-     * Creates a new, sorted list containing the provided samples. Sorting is based on the sample
-     * value.
-     * @param list A list of samples to sort.
-     * @return A new list, of the same samples, sorted by value.
+     * Gets a sample value from the window.
+     * @param index The age of the sample, 0 being the oldest.
+     * @return The value of the sample.
      */
-    protected List<Sample> sortSamples(Collection<Sample> list) {
-        ArrayList<Sample> sorted = new ArrayList<>(list);
-        Collections.sort(sorted);
-        return sorted;
+    protected float getValue(int index) {
+        return mValues[getSlot(index)];
     }
 
     /**
-     * Averages a list of samples.
-     * @param samples The list of samples.
-     * @return A sample containing the average value and time of the samples in the list.
+     * Fills {@link #mSortedValues} and its sibling arrays with the samples of the window, sorted
+     * by value.
      */
-    protected Sample averageSamples(Collection<Sample> samples) {
-        if (samples.size() == 0 || samples.stream().anyMatch(Objects::isNull)) {
-            return null; // Average can't be computed.
+    protected void sortSamples() {
+        copySortedSamples(0, 0F);
+    }
+
+    /**
+     * Fills {@link #mSortedValues} and its sibling arrays with the samples of the window, in
+     * sorted order starting at {@code rotation}. The samples before {@code rotation} come last,
+     * with {@code wrapOffset} added to their value. The result is then re-sorted, so that it is
+     * exactly what a stable sort of the window by the adjusted values would produce.
+     * @param rotation The sorted position of the first sample to copy.
+     * @param wrapOffset The amount to add to the values of wrapped samples.
+     */
+    protected void copySortedSamples(int rotation, float wrapOffset) {
+        int count = mCount;
+        for (int i = 0; i < count; i++) {
+            int position = i + rotation;
+            boolean wrapped = position >= count;
+            int slot = mSortedSlots[wrapped ? position - count : position];
+            mSortedValues[i] = wrapped ? mValues[slot] + wrapOffset : mValues[slot];
+            mSortedTimes[i] = mTimes[slot];
+            mSortedFoms[i] = mFoms[slot];
+            mSortedSeqs[i] = mSeqs[slot];
+        }
+        if (rotation == 0) {
+            return;
+        }
+        for (int i = 1; i < count; i++) {
+            float value = mSortedValues[i];
+            long timeMs = mSortedTimes[i];
+            double fom = mSortedFoms[i];
+            long seq = mSortedSeqs[i];
+            int j = i - 1;
+            while (j >= 0 && compare(mSortedValues[j], mSortedSeqs[j], value, seq) > 0) {
+                mSortedValues[j + 1] = mSortedValues[j];
+                mSortedTimes[j + 1] = mSortedTimes[j];
+                mSortedFoms[j + 1] = mSortedFoms[j];
+                mSortedSeqs[j + 1] = mSortedSeqs[j];
+                j--;
+            }
+            mSortedValues[j + 1] = value;
+            mSortedTimes[j + 1] = timeMs;
+            mSortedFoms[j + 1] = fom;
+            mSortedSeqs[j + 1] = seq;
+        }
+    }
+
+    /**
+     * Counts the samples in the window whose value is below the given value.
+     * @param value The value to compare to.
+     * @return The number of samples with a lower value.
+     */
+    protected int countBelow(float value) {
+        int count = 0;
+        while (count < mCount && mValues[mSortedSlots[count]] < value) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Averages a range of the sorted samples (see {@link #sortSamples()}).
+     * @param start The first sorted position to average, inclusive.
+     * @param end The last sorted position to average, exclusive.
+     * @param result The sample in which to store the average value and time of the samples.
+     * @return false if the average can't be computed, in which case result is unchanged.
+     */
+    protected boolean averageSamples(int start, int end, @NonNull Sample result) {
+        if (end <= start) {
+            return false; // Average can't be computed.
         }
         float valueSum = 0F;
         double fomSum = 0.0;
@@ -200,27 +334,88 @@ public class MedAvgFilter implements IFilter {
 
         // Using a relevant epoch keeps the values small and therefore decreases the risk of
         //  overflow.
-        long instantEpoch = samples.stream().findFirst().get().timeMs;
+        long instantEpoch = mSortedTimes[start];
 
         // If the FOM of all values is 1, fomWeight will be the size of the array.
-        float fomWeight = (float) samples.stream().mapToDouble(s -> s.fom).sum();
+        mFomWeight.reset();
+        for (int i = start; i < end; i++) {
+            mFomWeight.add(mSortedFoms[i]);
+        }
+        float fomWeight = (float) mFomWeight.get();
 
         if (fomWeight == 0) {
             // Every reading has 0 confidence. Can't produce an average. Also, this shouldn't
             // happen because FOM = 0 readings should be ignored by the engine.
-            return null;
+            return false;
         }
-        for (Sample s: samples) {
+        for (int i = start; i < end; i++) {
             // Sum up all samples to be averaged, multiplied by their confidence weight.
-            valueSum += s.value * (float) s.fom;
-            instantSum += (long) ((s.timeMs - instantEpoch) * s.fom);
-            fomSum += s.fom * s.fom;
-        }
-        return new Sample(
-            valueSum / fomWeight,
-            instantEpoch + (long) (instantSum / fomWeight),
-            fomSum / fomWeight
-        );
+            double fom = mSortedFoms[i];
+            valueSum += mSortedValues[i] * (float) fom;
+            instantSum += (long) ((mSortedTimes[i] - instantEpoch) * fom);
+            fomSum += fom * fom;
+        }
+        result.value = valueSum / fomWeight;
+        result.timeMs = instantEpoch + (long) (instantSum / fomWeight);
+        result.fom = fomSum / fomWeight;
+        return true;
+    }
+
+    private int getSlot(int index) {
+        return (mHead + index) % mValues.length;
+    }
+
+    private int compareSlots(int slot1, int slot2) {
+        return compare(mValues[slot1], mSeqs[slot1], mValues[slot2], mSeqs[slot2]);
+    }
+
+    private static int compare(float value1, long seq1, float value2, long seq2) {
+        int result = Float.compare(value1, value2);
+        return result != 0 ? result : Long.compare(seq1, seq2);
+    }
+
+    /** Drops the oldest sample from the window. */
+    private void removeOldest() {
+        int slot = mHead;
+        int position = 0;
+        while (mSortedSlots[position] != slot) {
+            position++;
+        }
+        System.arraycopy(mSortedSlots, position + 1, mSortedSlots, position,
+                mCount - position - 1);
+        mHead = (mHead + 1) % mValues.length;
+        mCount--;
+    }
+
+    /** Grows the buffers to hold the given number of samples, preserving the window. */
+    private void grow(int capacity) {
+        int oldCapacity = mValues.length;
+        float[] values = new float[capacity];
+        long[] times = new long[capacity];
+        double[] foms = new double[capacity];
+        long[] seqs = new long[capacity];
+        for (int i = 0; i < mCount; i++) {
+            int slot = getSlot(i);
+            values[i] = mValues[slot];
+            times[i] = mTimes[slot];
+            foms[i] = mFoms[slot];
+            seqs[i] = mSeqs[slot];
+        }
+        int[] sortedSlots = new int[capacity];
+        for (int i = 0; i < mCount; i++) {
+            // Slots are renumbered by age now that the oldest sample is at index 0.
+            sortedSlots[i] = (mSortedSlots[i] - mHead + oldCapacity) % oldCapacity;
+        }
+        mValues = values;
+        mTimes = times;
+        mFoms = foms;
+        mSeqs = seqs;
+        mSortedSlots = sortedSlots;
+        mHead = 0;
+        mSortedValues = new float[capacity];
+        mSortedTimes = new long[capacity];
+        mSortedFoms = new double[capacity];
+        mSortedSeqs = new long[capacity];
     }
 
     /**
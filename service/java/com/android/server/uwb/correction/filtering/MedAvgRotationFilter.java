@@ -22,12 +22,9 @@ import static java.lang.Math.atan2;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 
-import com.android.server.uwb.correction.math.MathHelper;
+import androidx.annotation.NonNull;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
+import com.android.server.uwb.correction.math.MathHelper;
 
 /**
  * A median and average filter that operates identically to {@link MedAvgFilter}, but uses the
@@ -36,6 +33,8 @@ import java.util.List;
  * their linear numerical values.
  */
 public class MedAvgRotationFilter extends MedAvgFilter {
+    private final CompensatedSum mSinSum = new CompensatedSum();
+    private final CompensatedSum mCosSum = new CompensatedSum();
 
     public MedAvgRotationFilter(int windowSize, float cut) {
         super(windowSize, cut);
@@ -44,17 +43,21 @@ public class MedAvgRotationFilter extends MedAvgFilter {
     /**
      * Creates a naive average of the given samples. Both the value and instant of the samples are
      * averaged. This will probably not produce a desired result if the samples are normalized to
-     * roll over at +/-PI rad. Use {@link #sortSamples(Collection)} to shift the roll over to a more
+     * roll over at +/-PI rad. Use {@link #sortSamples()} to shift the roll over to a more
      * desired location.
      *
-     * @param samples The list of samples.
-     * @return The average of the samples, normalized within +/-PI.
+     * @param start The first sorted position to average, inclusive.
+     * @param end The last sorted position to average, exclusive.
+     * @param result The sample in which to store the average, normalized within +/-PI.
+     * @return false if the average can't be computed.
      */
     @Override
-    protected Sample averageSamples(Collection<Sample> samples) {
-        Sample result = super.averageSamples(samples);
+    protected boolean averageSamples(int start, int end, @NonNull Sample result) {
+        if (!super.averageSamples(start, end, result)) {
+            return false;
+        }
         result.value = MathHelper.normalizeRadians(result.value);
-        return result;
+        return true;
     }
 
     /**
@@ -67,38 +70,34 @@ public class MedAvgRotationFilter extends MedAvgFilter {
     }
 
     /**
-     * Creates a new sorted list of angles based on the input list. 2pi is added to some angles to
-     * ensure that the sorted result is also in a clockwise order, and the numerical average
-     * will equal the directional average.
+     * Sorts the angles of the window. 2pi is added to some angles to ensure that the sorted
+     * result is also in a clockwise order, and the numerical average will equal the directional
+     * average.
      * The input angles must be between ±pi, but some output angles will exceed pi.
      */
-    protected List<Sample> sortSamples(Collection<Sample> list) {
-        List<Sample> result = new ArrayList<>(list);
-        int size = result.size();
-        if (size < 2) {
-            return result;
+    @Override
+    protected void sortSamples() {
+        int count = getCount();
+        if (count < 2) {
+            super.sortSamples();
+            return;
         }
 
         // Get the direction of all the positions on the unit circles; the directional average.
-        float avgAngle = (float) atan2(
-                result.stream().mapToDouble(sample -> sin(sample.value)).sum(),
-                result.stream().mapToDouble(sample -> cos(sample.value)).sum()
-        );
+        mSinSum.reset();
+        mCosSum.reset();
+        for (int i = 0; i < count; i++) {
+            float value = getValue(i);
+            mSinSum.add(sin(value));
+            mCosSum.add(cos(value));
+        }
+        float avgAngle = (float) atan2(mSinSum.get(), mCosSum.get());
 
         // All output values must be between avgAngle ± π. Compute the lowest allowed angle:
         float lowestAngle = normalizeRadians(avgAngle - F_PI);
 
-        // Wrap around any angles that are below our allowed angle by adding 2π.
-        int index;
-        for (index = 0; index < size; index++) {
-            Sample sample = result.get(index);
-            if (sample.value < lowestAngle) {
-                result.set(index, new Sample(sample.value + 2 * F_PI, sample.timeMs, sample.fom));
-            }
-        }
-
-        // Sort the result.
-        Collections.sort(result);
-        return result;
+        // Wrap around any angles that are below our allowed angle by adding 2π. Those are the
+        // lowest values of the window, so they move from the front to the back of the order.
+        copySortedSamples(countBelow(lowestAngle), 2 * F_PI);
     }
 }
@@ -21,7 +21,6 @@ import androidx.annotation.Nullable;
 import com.android.server.uwb.correction.math.Pose;
 import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.correction.math.SphericalVector.Annotated;
-import com.android.server.uwb.correction.math.Vector3;
 import com.android.server.uwb.correction.pose.IPoseSource;
 
 import java.util.Objects;
@@ -37,6 +36,8 @@ public class PositionFilterImpl implements IPositionFilter {
     @NonNull private final IFilter mElevationFilter;
     @NonNull private final IFilter mDistanceFilter;
     private Pose mLastPose;
+    // Scratch space for pose compensation, which runs for every pose update.
+    private final float[] mScratch = new float[3];
 
     public PositionFilterImpl(
             @NonNull IFilter azimuthFilter,
@@ -111,7 +112,7 @@ public class PositionFilterImpl implements IPositionFilter {
         }
         Pose newPose = poseSource.getPose();
         if (mLastPose != null && newPose != null && newPose != mLastPose) {
-            Pose deltaPose = Pose.compose(newPose.inverted(), mLastPose);
+            Pose deltaPose = poseSource.getPoseDelta(mLastPose, newPose);
             updatePoseFromDelta(deltaPose, compute(timeMs));
         }
         mLastPose = newPose;
@@ -126,21 +127,21 @@ public class PositionFilterImpl implements IPositionFilter {
      */
     private void updatePoseFromDelta(@NonNull Pose deltaPose, @NonNull SphericalVector estimate) {
         // This conversion (Spherical -> Cartesian -> transform -> Spherical) is the best
-        // I have for right now. At the expense of readability, this could more efficiently
-        // transform spherical coordinates if performance is a problem.
+        // I have for right now. It is done in place in mScratch to avoid allocating.
+        float[] v = mScratch;
 
         // Last known position of tag, relative to camera as of previous pose.
-        Vector3 vecFromOldCam = estimate.toCartesian();
+        estimate.toCartesian(v);
 
         // Convert to position of tag, relative to camera after the pose changed.
-        Vector3 vecFromNewCam = deltaPose.transformPoint(vecFromOldCam);
+        deltaPose.transformPoint(v[0], v[1], v[2], v);
 
         // New azimuth, elevation and distance based on this new tag position.
-        SphericalVector newEstimate = SphericalVector.fromCartesian(vecFromNewCam);
+        SphericalVector.fromCartesian(v[0], v[1], v[2], v);
 
         // Adjust the filters to represent this new estimation.
-        mAzimuthFilter.compensate(newEstimate.azimuth - estimate.azimuth);
-        mElevationFilter.compensate(newEstimate.elevation - estimate.elevation);
-        mDistanceFilter.compensate(newEstimate.distance - estimate.distance);
+        mAzimuthFilter.compensate(v[0] - estimate.azimuth);
+        mElevationFilter.compensate(v[1] - estimate.elevation);
+        mDistanceFilter.compensate(v[2] - estimate.distance);
     }
 }
@@ -75,6 +75,21 @@ public final class AoaVector {
      * @param distance The distance to the origin.
      */
     private AoaVector(float azimuth, float elevation, float distance) {
+        float[] v = normalize(azimuth, elevation, distance, new float[3]);
+        this.azimuth = v[0];
+        this.elevation = v[1];
+        this.distance = v[2];
+    }
+
+    /**
+     * Applies the same normalization as the AoaVector constructor, without allocating.
+     *
+     * @param out Receives the normalized azimuth, elevation and distance.
+     * @return The out array.
+     */
+    @NonNull
+    static float[] normalize(
+            float azimuth, float elevation, float distance, @NonNull float[] out) {
         elevation = MathHelper.normalizeRadians(elevation);
         float ae = abs(elevation);
         if (ae > F_HALF_PI) {
@@ -118,9 +133,10 @@ public final class AoaVector {
             }
         }
 
-        this.distance = distance;
-        this.azimuth = azimuth;
-        this.elevation = elevation;
+        out[0] = azimuth;
+        out[1] = elevation;
+        out[2] = distance;
+        return out;
     }
 
     /**
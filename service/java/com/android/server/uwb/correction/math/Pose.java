@@ -75,6 +75,15 @@ public class Pose {
         return new Pose(composedTranslation, Quaternion.multiply(lhs.rotation, rhs.rotation));
     }
 
+    /**
+     * Returns how the pose changed from {@code previous} to {@code current}, as a transform from
+     * coordinates relative to {@code previous} to coordinates relative to {@code current}. This
+     * is {@code compose(current.inverted(), previous)}.
+     */
+    public static Pose delta(@NonNull Pose previous, @NonNull Pose current) {
+        return compose(current.inverted(), previous);
+    }
+
     /**
      * Creates a Pose given a transformation matrix.
      *
@@ -107,6 +116,21 @@ public class Pose {
         return rotation.rotateVector(point).add(translation);
     }
 
+    /**
+     * Same as {@link #transformPoint(Vector3)}, without allocating.
+     *
+     * @param out Receives the transformed x, y and z coordinates. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public float[] transformPoint(float x, float y, float z, @NonNull float[] out) {
+        rotation.rotateVector(x, y, z, out);
+        out[0] += translation.x;
+        out[1] += translation.y;
+        out[2] += translation.z;
+        return out;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -228,19 +228,33 @@ public final class Quaternion {
     /** Rotates a Vector3 by this Quaternion. */
     @NonNull
     public Vector3 rotateVector(@NonNull Vector3 src) {
+        float[] v = rotateVector(src.x, src.y, src.z, new float[3]);
+        return new Vector3(v[0], v[1], v[2]);
+    }
+
+    /**
+     * Rotates a vector by this Quaternion without allocating.
+     *
+     * @param vx The x-coordinate of the vector to rotate.
+     * @param vy The y-coordinate of the vector to rotate.
+     * @param vz The z-coordinate of the vector to rotate.
+     * @param out Receives the rotated x, y and z coordinates. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public float[] rotateVector(float vx, float vy, float vz, @NonNull float[] out) {
         // This implements the GLM algorithm which is optimal (15 multiplies and 15 add/subtracts):
         // google3/third_party/glm/latest/glm/detail/type_quat.inl?l=343&rcl=333309501
-        float vx = src.x;
-        float vy = src.y;
-        float vz = src.z;
-
         float rx = y * vz - z * vy + w * vx;
         float ry = z * vx - x * vz + w * vy;
         float rz = x * vy - y * vx + w * vz;
         float sx = y * rz - z * ry;
         float sy = z * rx - x * rz;
         float sz = x * ry - y * rx;
-        return new Vector3(2 * sx + vx, 2 * sy + vy, 2 * sz + vz);
+        out[0] = 2 * sx + vx;
+        out[1] = 2 * sy + vy;
+        out[2] = 2 * sz + vz;
+        return out;
     }
 
     /**
@@ -249,14 +263,20 @@ public final class Quaternion {
      */
     @NonNull
     public static Quaternion multiply(@NonNull Quaternion lhs, @NonNull Quaternion rhs) {
+        return multiply(lhs, rhs.x, rhs.y, rhs.z, rhs.w);
+    }
+
+    /**
+     * Same as {@link #multiply(Quaternion, Quaternion)}, with the rhs rotation given by its
+     * components, e.g. straight from a sensor reading.
+     */
+    @NonNull
+    public static Quaternion multiply(
+            @NonNull Quaternion lhs, float rx, float ry, float rz, float rw) {
         float lx = lhs.x;
         float ly = lhs.y;
         float lz = lhs.z;
         float lw = lhs.w;
-        float rx = rhs.x;
-        float ry = rhs.y;
-        float rz = rhs.z;
-        float rw = rhs.w;
 
         return new Quaternion(
                 lw * rx + lx * rw + ly * rz - lz * ry,
@@ -421,24 +441,41 @@ public final class Quaternion {
      */
     @NonNull
     public Vector3 toYawPitchRoll() {
+        float[] ypr = toYawPitchRoll(new float[3]);
+        return new Vector3(ypr[0], ypr[1], ypr[2]);
+    }
+
+    /**
+     * Same as {@link #toYawPitchRoll()}, without allocating.
+     *
+     * @param out Receives the yaw, pitch and roll. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public float[] toYawPitchRoll(@NonNull float[] out) {
         float test = w * x - y * z;
         if (test > +EULER_THRESHOLD) {
             // There is a singularity when the pitch is directly up, so calculate the
             // angles another way.
-            return new Vector3((float) (+2 * atan2(z, w)), +F_HALF_PI, 0);
+            out[0] = (float) (+2 * atan2(z, w));
+            out[1] = +F_HALF_PI;
+            out[2] = 0;
+            return out;
         }
         if (test < -EULER_THRESHOLD) {
             // There is a singularity when the pitch is directly down, so calculate the
             // angles another way.
-            return new Vector3((float) (-2 * atan2(z, w)), -F_HALF_PI, 0);
+            out[0] = (float) (-2 * atan2(z, w));
+            out[1] = -F_HALF_PI;
+            out[2] = 0;
+            return out;
         }
         double pitch = asin(2 * test);
         double yaw = atan2(2 * (w * y + x * z), 1.0 - 2 * (x * x + y * y));
         double roll = atan2(2 * (w * z + x * y), 1.0 - 2 * (x * x + z * z));
-        return new Vector3(
-                (float) yaw,
-                (float) pitch,
-                (float) roll
-        );
+        out[0] = (float) yaw;
+        out[1] = (float) pitch;
+        out[2] = (float) roll;
+        return out;
     }
 }
@@ -137,13 +137,31 @@ public class SphericalVector {
      */
     @NonNull
     public static SphericalVector fromCartesian(float x, float y, float z) {
+        float[] v = fromCartesian(x, y, z, new float[3]);
+        return new SphericalVector(v[0], v[1], v[2]);
+    }
+
+    /**
+     * Same as {@link #fromCartesian(float, float, float)}, without allocating.
+     *
+     * @param out Receives the azimuth, elevation and distance, normalized as a SphericalVector
+     *            would be. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public static float[] fromCartesian(float x, float y, float z, @NonNull float[] out) {
         float d = (float) sqrt(x * x + y * y + z * z);
         if (d == 0) {
-            return new SphericalVector(0, 0, 0);
+            out[0] = 0;
+            out[1] = 0;
+            out[2] = 0;
+            return out;
         }
-        float azimuth = (float) atan2(x, -z);
-        float elevation = (float) asin(min(max(y / d, -1), 1));
-        return new SphericalVector(azimuth, elevation, d);
+        // asin already bounds the elevation to +/-90deg, so only the azimuth needs normalizing.
+        out[0] = MathHelper.normalizeRadians((float) atan2(x, -z));
+        out[1] = (float) asin(min(max(y / d, -1), 1));
+        out[2] = d;
+        return out;
     }
 
     /**
@@ -153,20 +171,44 @@ public class SphericalVector {
      * @return An equivalent SphericalVector.
      */
     public static SphericalVector fromAoAVector(AoaVector vec) {
-        float azimuth = vec.azimuth;
+        // The AoaVector is already normalized, so only the azimuth needs converting.
+        float[] v = fromNormalizedAoa(new float[] {vec.azimuth, vec.elevation, vec.distance});
+        return new SphericalVector(v[0], v[1], v[2]);
+    }
+
+    /**
+     * Same as {@code AoaVector.fromRadians(azimuth, elevation, distance).toSphericalVector()},
+     * without allocating.
+     *
+     * @param out Receives the azimuth, elevation and distance, normalized as a SphericalVector
+     *            would be. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public static float[] fromAoaRadians(
+            float azimuth, float elevation, float distance, @NonNull float[] out) {
+        return fromNormalizedAoa(AoaVector.normalize(azimuth, elevation, distance, out));
+    }
+
+    /** Converts a normalized AoA azimuth, elevation and distance to spherical ones, in place. */
+    @NonNull
+    private static float[] fromNormalizedAoa(@NonNull float[] v) {
+        v[0] = MathHelper.normalizeRadians(toSphericalAzimuth(v[0], v[1]));
+        return v;
+    }
+
+    /** Converts a normalized AoA azimuth to a spherical azimuth; elevation is the same in both. */
+    private static float toSphericalAzimuth(float aoaAzimuth, float elevation) {
+        float azimuth = aoaAzimuth;
         boolean mirrored = abs(azimuth) > F_HALF_PI;
         if (mirrored) {
             azimuth = F_PI - azimuth;
         }
         double ca = cos(azimuth);
-        double se = sin(vec.elevation);
-        double azz = sqrt(max(ca * ca - se * se, 0)) / cos(vec.elevation);
-        double az = acos(min(max(azz, -1), 1)) * signum(vec.azimuth);
-        if (mirrored) {
-            return new SphericalVector(F_PI - (float) az, vec.elevation, vec.distance);
-        } else {
-            return new SphericalVector((float) az, vec.elevation, vec.distance);
-        }
+        double se = sin(elevation);
+        double azz = sqrt(max(ca * ca - se * se, 0)) / cos(elevation);
+        double az = acos(min(max(azz, -1), 1)) * signum(aoaAzimuth);
+        return mirrored ? F_PI - (float) az : (float) az;
     }
 
     /**
@@ -186,14 +228,40 @@ public class SphericalVector {
      */
     @NonNull
     public Vector3 toCartesian() {
+        float[] v = toCartesian(azimuth, elevation, distance, new float[3]);
+        return new Vector3(v[0], v[1], v[2]);
+    }
+
+    /**
+     * Same as {@link #toCartesian()}, without allocating.
+     *
+     * @param out Receives the x, y and z coordinates. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public float[] toCartesian(@NonNull float[] out) {
+        return toCartesian(azimuth, elevation, distance, out);
+    }
+
+    /**
+     * Converts spherical coordinates to cartesian coordinates without allocating.
+     * See {@link #SphericalVector} for orientation information.
+     *
+     * @param out Receives the x, y and z coordinates. May be reused across calls.
+     * @return The out array.
+     */
+    @NonNull
+    public static float[] toCartesian(
+            float azimuth, float elevation, float distance, @NonNull float[] out) {
         float sa = (float) sin(azimuth);
-        float x = distance * (float) cos(elevation) * sa;
-        float y = distance * (float) sin(elevation);
         float z = distance * (float) abs(cos(elevation) * cos(azimuth));
         if (abs(azimuth) <= F_HALF_PI) {
             z = -z;
         }
-        return new Vector3(x, y, z);
+        out[0] = distance * (float) cos(elevation) * sa;
+        out[1] = distance * (float) sin(elevation);
+        out[2] = z;
+        return out;
     }
 
     /**
@@ -288,6 +356,31 @@ public class SphericalVector {
             this.hasDistance = hasDistance;
         }
 
+        /**
+         * Creates a new instance of the {@link SphericalVector.Annotated} without an intermediate
+         * {@link SphericalVector}.
+         *
+         * @param azimuth      The azimuth in radians.
+         * @param elevation    The elevation in radians.
+         * @param distance     The distance in meters.
+         * @param hasAzimuth   True if the vector includes azimuth.
+         * @param hasElevation True if the vector includes elevation.
+         * @param hasDistance  True if the vector includes distance.
+         */
+        public Annotated(
+                float azimuth,
+                float elevation,
+                float distance,
+                boolean hasAzimuth,
+                boolean hasElevation,
+                boolean hasDistance
+        ) {
+            super(azimuth, elevation, distance);
+            this.hasAzimuth = hasAzimuth;
+            this.hasElevation = hasElevation;
+            this.hasDistance = hasDistance;
+        }
+
         /**
          * Determines if a sparse vector has all components.
          *
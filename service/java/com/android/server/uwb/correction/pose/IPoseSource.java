@@ -75,8 +75,7 @@ public interface IPoseSource extends AutoCloseable {
     /**
      * Unregisters a listener from the pose updates.
      * @param listener The PoseEventListener that will no longer be notified when the pose changes.
-     * @return True if successfully removed. Note that a listener may be prematurely removed if it
-     *         has thrown an error.
+     * @return True if successfully removed.
      */
     boolean unregisterListener(@NonNull PoseEventListener listener);
 
@@ -86,6 +85,19 @@ public interface IPoseSource extends AutoCloseable {
      */
     Pose getPose();
 
+    /**
+     * Gets how the pose changed from {@code previous} to {@code current}, as computed by
+     * {@link Pose#delta(Pose, Pose)}. Pose sources may cache the result, since all the filter
+     * engines sharing a pose source ask for the same delta on a pose update.
+     * @param previous The pose at the last update.
+     * @param current The current pose.
+     * @return The pose delta.
+     */
+    @NonNull
+    default Pose getPoseDelta(@NonNull Pose previous, @NonNull Pose current) {
+        return Pose.delta(previous, current);
+    }
+
     /**
      * Gets the capabilities of this pose source.
      * @return An EnumSet of Capabilities.
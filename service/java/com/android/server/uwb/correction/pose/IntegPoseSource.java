@@ -34,7 +34,7 @@ import com.android.server.uwb.correction.math.Quaternion;
 import com.android.server.uwb.correction.math.Vector3;
 
 import java.security.InvalidParameterException;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Objects;
 
@@ -66,9 +66,10 @@ public class IntegPoseSource extends PoseSourceBase implements SensorEventListen
     private final Sensor mRotationSensor;
     private final Sensor mAccelSensor;
     private final int mIntervalUs;
-    private Vector3 mAccelCal = new Vector3(0, 0, 0);
-    private Vector3 mPosition = new Vector3(0, 0, 0);
-    private Vector3 mSpeed = new Vector3(0, 0, 0);
+    // x, y and z of the integration state, updated in place for every sensor reading.
+    private final float[] mAccelCal = new float[3];
+    private final float[] mPosition = new float[3];
+    private final float[] mSpeed = new float[3];
     private long mLastUpdateMs;
 
     // The local system is oriented with Y up.  The Android rotation vector has Z up. Pitching down
@@ -123,43 +124,33 @@ public class IntegPoseSource extends PoseSourceBase implements SensorEventListen
     public void onSensorChanged(SensorEvent event) {
         if (event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION) {
             if (mLastUpdateMs == 0) {
-                mLastUpdateMs = Instant.now().toEpochMilli();
+                mLastUpdateMs = System.currentTimeMillis();
                 return;
             }
-            long now = Instant.now().toEpochMilli();
+            long now = System.currentTimeMillis();
             float dur =  (now - mLastUpdateMs) / 1000.0F;
             mLastUpdateMs = now;
-            Vector3 accel = new Vector3(
-                    event.values[0] - mAccelCal.x,
-                    event.values[1] - mAccelCal.y,
-                    event.values[2] - mAccelCal.z
-            );
-            mAccelCal = new Vector3(
-                    mAccelCal.x + min(abs(accel.x), CALIBRATION_COEFFICIENT) * signum(accel.x),
-                    mAccelCal.y + min(abs(accel.y), CALIBRATION_COEFFICIENT) * signum(accel.y),
-                    mAccelCal.z + min(abs(accel.z), CALIBRATION_COEFFICIENT) * signum(accel.z)
-            );
-            mSpeed = new Vector3(
-                    (mSpeed.x + accel.x * dur) * SPEED_DAMPEN_COEFFICIENT,
-                    (mSpeed.y + accel.y * dur) * SPEED_DAMPEN_COEFFICIENT,
-                    (mSpeed.z + accel.z * dur) * SPEED_DAMPEN_COEFFICIENT
-            );
-            mPosition = new Vector3(
-                    (mPosition.x + mSpeed.x * dur) * POS_DAMPED_COEFFICIENT,
-                    (mPosition.y + mSpeed.y * dur) * POS_DAMPED_COEFFICIENT,
-                    (mPosition.z + mSpeed.z * dur) * POS_DAMPED_COEFFICIENT
-            );
-            if (mPosition.lengthSquared() > POS_RESET_DISTANCE_METERS * POS_RESET_DISTANCE_METERS) {
-                mPosition = Vector3.ORIGIN;
+            float positionLengthSquared = 0;
+            for (int i = 0; i < 3; i++) {
+                float accel = event.values[i] - mAccelCal[i];
+                mAccelCal[i] += min(abs(accel), CALIBRATION_COEFFICIENT) * signum(accel);
+                mSpeed[i] = (mSpeed[i] + accel * dur) * SPEED_DAMPEN_COEFFICIENT;
+                mPosition[i] = (mPosition[i] + mSpeed[i] * dur) * POS_DAMPED_COEFFICIENT;
+                positionLengthSquared += mPosition[i] * mPosition[i];
+            }
+            if (positionLengthSquared > POS_RESET_DISTANCE_METERS * POS_RESET_DISTANCE_METERS) {
+                Arrays.fill(mPosition, 0);
             }
         } else if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-            Quaternion base = new Quaternion(
-                    event.values[0],
-                    event.values[1],
-                    event.values[2],
-                    event.values[3]
-            );
-            publish(new Pose(mPosition, Quaternion.multiply(mRotator, base)));
+            // Published poses are immutable, so only the pose itself is allocated per reading.
+            publish(new Pose(
+                    new Vector3(mPosition[0], mPosition[1], mPosition[2]),
+                    Quaternion.multiply(
+                            mRotator,
+                            event.values[0],
+                            event.values[1],
+                            event.values[2],
+                            event.values[3])));
         }
     }
 
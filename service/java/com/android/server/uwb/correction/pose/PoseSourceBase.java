@@ -22,9 +22,9 @@ import androidx.annotation.NonNull;
 
 import com.android.server.uwb.correction.math.Pose;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -35,13 +35,17 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public abstract class PoseSourceBase implements IPoseSource {
     private final Lock mLockObject = new ReentrantLock();
+    // Copy-on-write, so that poses are published without locking or copying the listeners.
+    // Modifications are still made under the lock to keep starts and stops sequential.
     @GuardedBy("mLockObject")
     private final List<PoseEventListener> mListeners;
     private static final String TAG = "PoseSourceBase";
     private final AtomicReference<Pose> mPose = new AtomicReference<>();
+    // Last delta computed by getPoseDelta(), keyed by the identity of the two poses.
+    private final AtomicReference<PoseDelta> mLastDelta = new AtomicReference<>();
 
     public PoseSourceBase() {
-        mListeners = new ArrayList<>();
+        mListeners = new CopyOnWriteArrayList<>();
     }
 
     /**
@@ -114,24 +118,14 @@ public abstract class PoseSourceBase implements IPoseSource {
      */
     protected void publish(@NonNull Pose pose) {
         Objects.requireNonNull(pose);
-        ArrayList<PoseEventListener> listeners;
-        mLockObject.lock();
-        try {
-            // Copy snapshot to minimize lock time and allow changes to listeners while
-            // we report pose changes.
-            listeners = new ArrayList<>(this.mListeners);
-        } finally {
-            mLockObject.unlock();
-        }
         this.mPose.set(pose);
-        for (int i = 0; i < listeners.size(); i++) {
+        // Iterates over a snapshot, listeners may change while we report pose changes.
+        for (PoseEventListener listener : mListeners) {
             try {
-                listeners.get(i).onPoseChanged(pose);
+                listener.onPoseChanged(pose);
             } catch (Exception ex) {
-                Log.e(TAG, ex.toString());
-
-                // Remove the listener, so it doesn't become a persistent problem.
-                listeners.remove(i--);
+                // Keep the listener; unregistering would stop the sensor from its own callback.
+                Log.e(TAG, "Pose listener failed", ex);
             }
         }
     }
@@ -140,4 +134,32 @@ public abstract class PoseSourceBase implements IPoseSource {
     public Pose getPose() {
         return mPose.get();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Pose getPoseDelta(@NonNull Pose previous, @NonNull Pose current) {
+        PoseDelta lastDelta = mLastDelta.get();
+        if (lastDelta != null && lastDelta.mPrevious == previous
+                && lastDelta.mCurrent == current) {
+            return lastDelta.mDelta;
+        }
+        Pose delta = Pose.delta(previous, current);
+        mLastDelta.set(new PoseDelta(previous, current, delta));
+        return delta;
+    }
+
+    private static class PoseDelta {
+        final Pose mPrevious;
+        final Pose mCurrent;
+        final Pose mDelta;
+
+        PoseDelta(Pose previous, Pose current, Pose delta) {
+            mPrevious = previous;
+            mCurrent = current;
+            mDelta = delta;
+        }
+    }
 }
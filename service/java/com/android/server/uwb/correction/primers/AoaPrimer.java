@@ -32,6 +32,9 @@ import com.android.server.uwb.correction.pose.IPoseSource;
  * not perform the PDoA-to-azimuth conversion.
  */
 public class AoaPrimer implements IPrimer {
+    // Scratch space for the conversion, which runs for every sample.
+    private final float[] mScratch = new float[3];
+
     /**
      * Applies corrections to a raw position.
      *
@@ -50,11 +53,15 @@ public class AoaPrimer implements IPrimer {
         if (input.hasElevation && input.hasAzimuth) {
             // Reinterpret the SphericalVector as an AoAVector, then convert it to a
             // SphericalVector.
+            float[] v = SphericalVector.fromAoaRadians(
+                    input.azimuth,
+                    input.elevation,
+                    input.distance,
+                    mScratch);
             return new Annotated(
-                    AoaVector.fromRadians(
-                            input.azimuth,
-                            input.elevation,
-                            input.distance).toSphericalVector(),
+                    v[0],
+                    v[1],
+                    v[2],
                     true,
                     true,
                     input.hasDistance)
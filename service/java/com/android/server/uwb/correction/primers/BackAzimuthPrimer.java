@@ -33,14 +33,14 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.uwb.correction.math.MathHelper;
 import com.android.server.uwb.correction.math.Pose;
 import com.android.server.uwb.correction.math.SphericalVector;
 import com.android.server.uwb.correction.math.SphericalVector.Annotated;
 import com.android.server.uwb.correction.pose.IPoseSource;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.Arrays;
 
 /**
  * Tracks the correlation between azimuth and pose yaw to determine if the controlee has gone
@@ -67,12 +67,11 @@ public class BackAzimuthPrimer implements IPrimer {
 
     private final boolean mMaskRawAzimuthWhenBackfacing;
     private final float mDiscrepancyCoefficient;
-    private final int mWindowSize;
     private final float mStdDev;
     private final float mNormalThresholdRadPerSec;
     private final float mMirrorThresholdRadPerSec;
-    private final Queue<Float> mScoreHistory;
-    private final Queue<Float> mDiscrepancyHistory = new ArrayDeque<>();
+    private final SlidingWindow mScoreHistory;
+    private final SlidingWindow mDiscrepancyHistory;
     private boolean mMirrored = false;
     private float mLastAzimuthPrediction;
     // This initial value causes the first sample to have the least effect.
@@ -82,6 +81,8 @@ public class BackAzimuthPrimer implements IPrimer {
     private int mDeterminationCount = 0;
     private double mFomFilterValue = MINIMUM_FOM;
     private double mLastGoodReferenceTimeMs;
+    // Scratch space for the pose theories, which are computed for every sample.
+    private final float[] mScratch = new float[3];
 
     /**
      * Creates a new instance of the BackAzimuthPrimer class.
@@ -117,8 +118,8 @@ public class BackAzimuthPrimer implements IPrimer {
         mMirrorThresholdRadPerSec = mirrorThresholdRadPerSec;
         mMaskRawAzimuthWhenBackfacing = maskRawAzimuthWhenBackfacing;
         mDiscrepancyCoefficient = discrepancyCoefficient;
-        mScoreHistory = new ArrayDeque<>();
-        mWindowSize = windowSize;
+        mScoreHistory = new SlidingWindow(windowSize, /* sorted= */ true);
+        mDiscrepancyHistory = new SlidingWindow(windowSize, /* sorted= */ false);
         mStdDev = stdDev;
     }
 
@@ -131,7 +132,6 @@ public class BackAzimuthPrimer implements IPrimer {
      * @param timeMs     When the input occurred, in ms since boot.
      * @return A replacement value for the UWB vector that has been corrected for the situation.
      */
-    @SuppressWarnings("ConstantConditions") /* Unboxing longs in mCaptureTimes */
     @Override
     public SphericalVector.Annotated prime(
             @NonNull SphericalVector.Annotated input,
@@ -180,21 +180,21 @@ public class BackAzimuthPrimer implements IPrimer {
         // Pose transform for theorizing how the previous reading might have changed.
         // Note that we're using a full pose transform instead of just azimuth changes, as
         // the phone may have rolled or performed other movements that aren't just azimuth.
-        Pose deltaPose = Pose.compose(newPose.inverted(), mLastPose);
+        Pose deltaPose = poseSource.getPoseDelta(mLastPose, newPose);
 
         // Theorize, based on the old location, what the new location should be for mirrored and
         // unmirrored inputs.
-        SphericalVector normalTheory = transformSpherical(mLastInput, deltaPose);
-        SphericalVector mirrorTheory = transformSpherical(mirrorAzimuth(mLastInput), deltaPose);
+        float normalTheoryAzimuth = transformAzimuth(mLastInput.azimuth, deltaPose);
+        float mirrorTheoryAzimuth = transformAzimuth(mirrorAzimuth(mLastInput.azimuth), deltaPose);
 
         // Compute how many radians of pose change have affected the azimuth. More movement means
         // more certainty can be applied to the score.
         float azimuthDeltaFromPoseRad =
-                normalizeRadians(abs(normalTheory.azimuth - mLastInput.azimuth));
+                normalizeRadians(abs(normalTheoryAzimuth - mLastInput.azimuth));
 
         // Judge how well the front and back predictions did.
-        float normalDifference = abs(normalizeRadians(normalTheory.azimuth - normalInput.azimuth));
-        float mirrorDifference = abs(normalizeRadians(mirrorTheory.azimuth - mirrorInput.azimuth));
+        float normalDifference = abs(normalizeRadians(normalTheoryAzimuth - normalInput.azimuth));
+        float mirrorDifference = abs(normalizeRadians(mirrorTheoryAzimuth - mirrorInput.azimuth));
         // Note that one of these predictions will be perfect if the input itself is a prediction,
         // which FovPrimer might do. Carrying this detail in SphericalVector.Sparse may provide an
         // opportunity to ignore scoring when the input is predicted.
@@ -212,14 +212,13 @@ public class BackAzimuthPrimer implements IPrimer {
         mLastInput = normalInput;
         mLastPose = newPose;
 
-        mScoreHistory.offer(scoreRadPerSecBiased);
+        boolean scoreHistoryFull = mScoreHistory.isFull();
+        mScoreHistory.add(scoreRadPerSecBiased);
 
         double typScore = 0;
-        if (mScoreHistory.size() > mWindowSize) {
-            mScoreHistory.poll();
+        if (scoreHistoryFull) {
             // Get the median score.
-            typScore = mScoreHistory.stream().mapToDouble(Float::doubleValue).sorted()
-                    .skip(mWindowSize / 2).limit(1 + (mWindowSize % 2)).average().getAsDouble();
+            typScore = mScoreHistory.median();
 
             // Finally, the mirroring decision.
             if (typScore > mNormalThresholdRadPerSec) {
@@ -313,10 +312,7 @@ public class BackAzimuthPrimer implements IPrimer {
 
     /** Flips the score history, for when azimuth goes from front to behind or vice-versa. */
     private void flipScoreHistory() {
-        for (int x = 0; x < mScoreHistory.size(); x++) {
-            Float sh = mScoreHistory.poll();
-            mScoreHistory.offer(sh == null ? null : -sh);
-        }
+        mScoreHistory.negate();
     }
 
     /**
@@ -333,13 +329,11 @@ public class BackAzimuthPrimer implements IPrimer {
         // Discrepancy measures how much the forward-facing values are off. They will be WAY off
         // if the UWB signal is noisy, and slightly off if the signal is in the back. Rear azimuths
         // are usually both.
-        mDiscrepancyHistory.offer(normalDifference);
+        boolean discrepancyHistoryFull = mDiscrepancyHistory.isFull();
+        mDiscrepancyHistory.add(normalDifference);
 
-        if (mDiscrepancyHistory.size() > mWindowSize) {
-            mDiscrepancyHistory.poll();
-            float avgDiscrepancyRad =
-                    (float) mDiscrepancyHistory.stream().mapToDouble(Float::doubleValue).average()
-                            .getAsDouble();
+        if (discrepancyHistoryFull) {
+            float avgDiscrepancyRad = (float) mDiscrepancyHistory.mean();
 
             // Average discrepancy is multiplied by the configurable coefficient to bias the
             //  score toward the back.
@@ -349,14 +343,17 @@ public class BackAzimuthPrimer implements IPrimer {
     }
 
     /**
-     * Applies a pose delta (a transform) to a spherical coordinate.
+     * Applies a pose delta (a transform) to the last input, with the given azimuth.
      *
-     * @param input     The spherical vector to transform.
+     * @param azimuth   The azimuth to use in place of the last input's azimuth.
      * @param deltaPose The pose object representing how to transform the input.
-     * @return A new SphericalVector representing the input transformed by the delta pose.
+     * @return The azimuth of the input transformed by the delta pose.
      */
-    private SphericalVector transformSpherical(SphericalVector input, Pose deltaPose) {
-        return SphericalVector.fromCartesian(deltaPose.transformPoint(input.toCartesian()));
+    private float transformAzimuth(float azimuth, Pose deltaPose) {
+        float[] v = SphericalVector.toCartesian(
+                azimuth, mLastInput.elevation, mLastInput.distance, mScratch);
+        deltaPose.transformPoint(v[0], v[1], v[2], v);
+        return SphericalVector.fromCartesian(v[0], v[1], v[2], v)[0];
     }
 
     /**
@@ -368,11 +365,16 @@ public class BackAzimuthPrimer implements IPrimer {
     @NonNull
     private SphericalVector mirrorAzimuth(SphericalVector vector) {
         return SphericalVector.fromRadians(
-                signum(vector.azimuth) * (F_PI - abs(vector.azimuth)),
+                mirrorAzimuth(vector.azimuth),
                 vector.elevation,
                 vector.distance);
     }
 
+    /** Mirrors an azimuth front-to-back or back-to-front. */
+    private static float mirrorAzimuth(float azimuth) {
+        return signum(azimuth) * (F_PI - abs(azimuth));
+    }
+
     /**
      * Forces the azimuth to be front or back, mirroring it as necessary.
      *
@@ -400,4 +402,95 @@ public class BackAzimuthPrimer implements IPrimer {
         float variance = stdDev * stdDev;
         return (float) exp(-(x * x / (2 * variance)));
     }
+
+    /**
+     * The most recent values of a history, up to a fixed count. Values are kept in primitive
+     * arrays with a running sum, so adding one doesn't allocate or rescan the window. The sum is
+     * recomputed each time the window wraps around, so that rounding errors don't accumulate.
+     */
+    @VisibleForTesting
+    static final class SlidingWindow {
+        private final float[] mValues;
+        // The same values in ascending order, if the median is needed.
+        @Nullable private final float[] mSorted;
+        private int mCount;
+        private int mNext;
+        private double mSum;
+
+        SlidingWindow(int size, boolean sorted) {
+            mValues = new float[size];
+            mSorted = sorted ? new float[size] : null;
+        }
+
+        boolean isFull() {
+            return mCount == mValues.length;
+        }
+
+        /** Adds a value, replacing the oldest one once the window is full. */
+        void add(float value) {
+            if (isFull()) {
+                float oldest = mValues[mNext];
+                mSum -= oldest;
+                if (mSorted != null) {
+                    int index = Arrays.binarySearch(mSorted, 0, mCount, oldest);
+                    System.arraycopy(mSorted, index + 1, mSorted, index, mCount - index - 1);
+                    insertSorted(value, mCount - 1);
+                }
+            } else {
+                if (mSorted != null) {
+                    insertSorted(value, mCount);
+                }
+                mCount++;
+            }
+            mValues[mNext] = value;
+            mNext = (mNext + 1) % mValues.length;
+            if (mNext == 0) {
+                mSum = 0;
+                for (float v : mValues) {
+                    mSum += v;
+                }
+            } else {
+                mSum += value;
+            }
+        }
+
+        private void insertSorted(float value, int size) {
+            int index = Arrays.binarySearch(mSorted, 0, size, value);
+            if (index < 0) {
+                index = -(index + 1);
+            }
+            System.arraycopy(mSorted, index, mSorted, index + 1, size - index);
+            mSorted[index] = value;
+        }
+
+        double mean() {
+            return mSum / mCount;
+        }
+
+        /**
+         * Gets the median of a sorted window. For an odd count this is the average of the
+         * middle value and the one above it, which the scoring thresholds are tuned for.
+         */
+        double median() {
+            int from = mCount / 2;
+            int to = Math.min(mCount, from + 1 + mCount % 2);
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += mSorted[i];
+            }
+            return sum / (to - from);
+        }
+
+        /** Negates every value in the window. */
+        void negate() {
+            for (int i = 0; i < mCount; i++) {
+                mValues[i] = -mValues[i];
+            }
+            mSum = -mSum;
+            if (mSorted != null) {
+                System.arraycopy(mValues, 0, mSorted, 0, mCount);
+                Arrays.sort(mSorted, 0, mCount);
+            }
+        }
+    }
 }
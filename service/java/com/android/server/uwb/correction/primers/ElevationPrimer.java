@@ -38,6 +38,9 @@ public class ElevationPrimer implements IPrimer {
      * a reading that should be discarded. */
     public static double ELEVATION_FOM = 0.3;
 
+    // Scratch space for the pose angles, which are read for every sample.
+    private final float[] mYawPitchRoll = new float[3];
+
     /**
      * Applies a default pose-based elevation to a UWB reading that doesn't have one.
      *
@@ -63,12 +66,11 @@ public class ElevationPrimer implements IPrimer {
                 // an AoA elevation, we'll assume that elevation is level with the phone.
                 // i.e. If the phone pitches down, the elevation would appear up.
 
+                float pitch = pose.rotation.toYawPitchRoll(mYawPitchRoll)[1];
                 position = new SphericalVector.Annotated(
-                    SphericalVector.fromRadians(
-                        input.azimuth,
-                        -pose.rotation.toYawPitchRoll().y, // -Pitch becomes our assumed elevation
-                        input.distance
-                    ),
+                    input.azimuth,
+                    -pitch, // -Pitch becomes our assumed elevation
+                    input.distance,
                     input.hasAzimuth,
                     true,
                     input.hasDistance
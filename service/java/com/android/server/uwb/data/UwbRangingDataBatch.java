@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.data;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A view over several RANGE_DATA_NTFs packed by the native layer into one buffer, possibly for
+ * different sessions. Records are only decoded into {@link UwbRangingData} when requested.
+ *
+ * <p>The layout is written by {@code RangeDataBatch} in the UCI JNI library. All values are
+ * little-endian and unsigned. Each record is:
+ * <pre>
+ *   u32 recordLen (bytes following this field), u32 seqCounter, u32 sessionId,
+ *   u8 rcrIndication, u32 currRangingInterval, u8 rangingMeasuresType, u8 macAddressMode,
+ *   u16 noOfRangingMeasures, u16 rawNtfDataLen, rawNtfData, noOfRangingMeasures measurements
+ * </pre>
+ * Each measurement starts with its 2 or 8 byte MAC address (depending on macAddressMode),
+ * followed by the fields of the matching measurement class constructor, in order. The DL-TDoA
+ * anchor location and active ranging rounds are each prefixed by a u8 length.
+ *
+ * <p>The buffer may point at native memory that is only valid during the upcall delivering it,
+ * so the batch must not be used afterwards. Decoded {@link UwbRangingData} do not reference the
+ * buffer.
+ */
+public class UwbRangingDataBatch {
+    private static final int RECORD_LEN_SIZE = Integer.BYTES;
+    private static final int SESSION_ID_OFFSET = RECORD_LEN_SIZE + Integer.BYTES;
+
+    private final ByteBuffer mBuffer;
+    private final int[] mRecordOffsets;
+
+    /**
+     * @param buffer packed records, starting at the buffer position
+     * @param count number of records in the buffer
+     * @throws IllegalArgumentException if the buffer holds less than {@code count} records
+     */
+    public UwbRangingDataBatch(ByteBuffer buffer, int count) {
+        mBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        mRecordOffsets = new int[count];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            if (offset + RECORD_LEN_SIZE > mBuffer.limit()) {
+                throw new IllegalArgumentException("Truncated ranging data batch: " + i + " of "
+                        + count + " records");
+            }
+            mRecordOffsets[i] = offset;
+            offset += RECORD_LEN_SIZE + mBuffer.getInt(offset);
+            if (offset < 0 || offset > mBuffer.limit()) {
+                throw new IllegalArgumentException("Invalid length for ranging data record " + i);
+            }
+        }
+    }
+
+    /** Returns the number of notifications in the batch. */
+    public int size() {
+        return mRecordOffsets.length;
+    }
+
+    /** Returns the session ID of the {@code index}-th notification, without decoding it. */
+    public long getSessionId(int index) {
+        return Integer.toUnsignedLong(mBuffer.getInt(mRecordOffsets[index] + SESSION_ID_OFFSET));
+    }
+
+    /**
+     * Decodes the {@code index}-th notification.
+     *
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    public UwbRangingData get(int index) {
+        int start = mRecordOffsets[index] + RECORD_LEN_SIZE;
+        ByteBuffer record = mBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.limit(start + mBuffer.getInt(mRecordOffsets[index]));
+        record.position(start);
+        try {
+            return decodeRecord(record);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated ranging data record " + index, e);
+        }
+    }
+
+    private static UwbRangingData decodeRecord(ByteBuffer record) {
+        long seqCounter = Integer.toUnsignedLong(record.getInt());
+        long sessionId = Integer.toUnsignedLong(record.getInt());
+        int rcrIndication = getU8(record);
+        long currRangingInterval = Integer.toUnsignedLong(record.getInt());
+        int rangingMeasuresType = getU8(record);
+        int macAddressMode = getU8(record);
+        int noOfRangingMeasures = getU16(record);
+        byte[] rawNtfData = getBytes(record, getU16(record));
+        int macAddressLen = macAddressMode == UwbUciConstants.MAC_ADDRESSING_MODE_SHORT
+                ? UwbUciConstants.UWB_DEVICE_SHORT_MAC_ADDRESS_LEN
+                : UwbUciConstants.UWB_DEVICE_EXT_MAC_ADDRESS_LEN;
+
+        switch (rangingMeasuresType) {
+            case UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY: {
+                UwbTwoWayMeasurement[] measurements =
+                        new UwbTwoWayMeasurement[noOfRangingMeasures];
+                for (int i = 0; i < noOfRangingMeasures; i++) {
+                    measurements[i] = new UwbTwoWayMeasurement(getBytes(record, macAddressLen),
+                            getU8(record), getU8(record), getU16(record), getU16(record),
+                            getU8(record), getU16(record), getU8(record), getU16(record),
+                            getU8(record), getU16(record), getU8(record), getU8(record),
+                            getU8(record));
+                }
+                return new UwbRangingData(seqCounter, sessionId, rcrIndication,
+                        currRangingInterval, rangingMeasuresType, macAddressMode,
+                        noOfRangingMeasures, measurements, rawNtfData);
+            }
+            case UwbUciConstants.RANGING_MEASUREMENT_TYPE_OWR_AOA: {
+                UwbOwrAoaMeasurement measurement = new UwbOwrAoaMeasurement(
+                        getBytes(record, macAddressLen), getU8(record), getU8(record),
+                        getU8(record), getU16(record), getU16(record), getU8(record),
+                        getU16(record), getU8(record));
+                return new UwbRangingData(seqCounter, sessionId, rcrIndication,
+                        currRangingInterval, rangingMeasuresType, macAddressMode,
+                        noOfRangingMeasures, measurement, rawNtfData);
+            }
+            case UwbUciConstants.RANGING_MEASUREMENT_TYPE_DL_TDOA: {
+                UwbDlTDoAMeasurement[] measurements =
+                        new UwbDlTDoAMeasurement[noOfRangingMeasures];
+                for (int i = 0; i < noOfRangingMeasures; i++) {
+                    measurements[i] = new UwbDlTDoAMeasurement(getBytes(record, macAddressLen),
+                            getU8(record), getU8(record), getU16(record), getU16(record),
+                            getU8(record), getU8(record), getU16(record), getU8(record),
+                            getU16(record), getU8(record), getU8(record), record.getLong(),
+                            record.getLong(), getU16(record), getU16(record),
+                            Integer.toUnsignedLong(record.getInt()),
+                            Integer.toUnsignedLong(record.getInt()), getU16(record),
+                            getBytes(record, getU8(record)), getBytes(record, getU8(record)));
+                }
+                return new UwbRangingData(seqCounter, sessionId, rcrIndication,
+                        currRangingInterval, rangingMeasuresType, macAddressMode,
+                        noOfRangingMeasures, measurements, rawNtfData);
+            }
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown ranging measurement type " + rangingMeasuresType);
+        }
+    }
+
+    private static int getU8(ByteBuffer buffer) {
+        return Byte.toUnsignedInt(buffer.get());
+    }
+
+    private static int getU16(ByteBuffer buffer) {
+        return Short.toUnsignedInt(buffer.getShort());
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.discovery;
+
+import android.annotation.IntRange;
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+import com.android.server.uwb.discovery.TransportProvider.MessagePacket;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Queue of FiRa Connector Messages, wrapped as {@link MessagePacket}, waiting to be fragmented into
+ * FiRa Connector Data Packets.
+ *
+ * <p>Messages of different SECIDs are interleaved data packet by data packet, in a round robin
+ * order, up to the number of concurrent fragmented message sessions supported by the remote device.
+ * Messages of the same SECID are always sent one after the other, in the order they were added.
+ */
+public class MessagePacketQueue {
+    /* Messages which are not being fragmented yet. */
+    private final ArrayDeque<MessagePacket> mPendingMessages = new ArrayDeque<>();
+
+    /* Messages being fragmented, at most one per SECID. The head sends the next data packet. */
+    private final ArrayDeque<MessagePacket> mActiveMessages = new ArrayDeque<>();
+
+    private int mMaxConcurrentSessions = 1;
+
+    /**
+     * Set the maximum number of messages fragmented at the same time.
+     *
+     * @param maxConcurrentSessions maximum concurrent fragmented message sessions supported by the
+     *     remote device.
+     */
+    public void setMaxConcurrentSessions(@IntRange(from = 1) int maxConcurrentSessions) {
+        mMaxConcurrentSessions = Math.max(1, maxConcurrentSessions);
+    }
+
+    /** Add a message at the end of the queue. */
+    public void add(@NonNull MessagePacket messagePacket) {
+        mPendingMessages.add(messagePacket);
+    }
+
+    /** Check if all messages have been sent. */
+    public boolean isEmpty() {
+        return mPendingMessages.isEmpty() && mActiveMessages.isEmpty();
+    }
+
+    /** Get the number of messages not fully sent. */
+    public int size() {
+        return mPendingMessages.size() + mActiveMessages.size();
+    }
+
+    /** Remove all messages. */
+    public void clear() {
+        mPendingMessages.clear();
+        mActiveMessages.clear();
+    }
+
+    /**
+     * Get the message to take the next data packet from. Once the data packet is taken, {@link
+     * #advance()} must be called.
+     *
+     * @return the message, or null if the queue is empty.
+     */
+    @Nullable
+    public MessagePacket peek() {
+        Iterator<MessagePacket> iterator = mPendingMessages.iterator();
+        while (mActiveMessages.size() < mMaxConcurrentSessions && iterator.hasNext()) {
+            MessagePacket messagePacket = iterator.next();
+            if (!isActive(messagePacket.secid)) {
+                iterator.remove();
+                mActiveMessages.add(messagePacket);
+            }
+        }
+        return mActiveMessages.peek();
+    }
+
+    /**
+     * Move on after a data packet was taken from the message returned by {@link #peek()}. The
+     * message leaves the queue if it has no remaining bytes, otherwise it waits for its next turn.
+     */
+    public void advance() {
+        MessagePacket messagePacket = mActiveMessages.poll();
+        if (messagePacket != null && messagePacket.messageBytes.hasRemaining()) {
+            mActiveMessages.add(messagePacket);
+        }
+    }
+
+    private boolean isActive(int secid) {
+        for (MessagePacket messagePacket : mActiveMessages) {
+            if (messagePacket.secid == secid) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -17,6 +17,7 @@ package com.android.server.uwb.discovery;
 
 import android.annotation.IntRange;
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 
@@ -30,7 +31,12 @@ import com.android.server.uwb.discovery.info.FiraConnectorMessage.MessageType;
 
 import java.nio.ByteBuffer;
 
-/** Abstract class for Transport Provider */
+/**
+ * Abstract class for Transport Provider
+ *
+ * <p>Besides the assigned SECID, additional local SECIDs can be registered with their own data
+ * receiver, so that one transport connection carries several sessions with the remote device.
+ */
 public abstract class TransportProvider implements Transport {
     private static final String TAG = TransportProvider.class.getSimpleName();
 
@@ -76,6 +82,9 @@ public abstract class TransportProvider implements Transport {
 
     private DataReceiver mDataReceiver;
 
+    /* Data receivers of the additional local SECIDs. */
+    private final SparseArray<DataReceiver> mSecidDataReceivers = new SparseArray<>();
+
     /** Assigned SECID value (unsigned integer in the range 2..127, values 0 and 1 are reserved). */
     private int mSecid = 2;
 
@@ -114,8 +123,24 @@ public abstract class TransportProvider implements Transport {
             MessageType messageType,
             @NonNull byte[] data,
             SendingDataCallback sendingDataCallback) {
+        sendData(mDestinationSecid, messageType, data, sendingDataCallback);
+    }
+
+    /**
+     * Send data to the given SECID on the remote device.
+     *
+     * @param destinationSecid 7-bit secure component ID on the remote device.
+     * @param messageType message type of the data to be sent.
+     * @param data Raw bytes of data to be sent.
+     * @param sendingDataCallback Callback for sending data.
+     */
+    public void sendData(
+            @IntRange(from = 2, to = 127) int destinationSecid,
+            MessageType messageType,
+            @NonNull byte[] data,
+            SendingDataCallback sendingDataCallback) {
         if (sendMessage(
-                mDestinationSecid,
+                destinationSecid,
                 new FiraConnectorMessage(
                         messageType,
                         /*Default instrcution code for message exchange.*/
@@ -141,6 +166,37 @@ public abstract class TransportProvider implements Transport {
         mDataReceiver = null;
     }
 
+    /**
+     * Register the data receiver of an additional local SECID, only one receiver is allowed per
+     * SECID.
+     *
+     * @param secid 7-bit secure component ID, other than the assigned one.
+     * @param dataReceiver Receiver of the data sent by the remote device to this SECID.
+     * @return indicates if successfully registered.
+     */
+    public boolean registerDataReceiver(
+            @IntRange(from = 2, to = 127) int secid, DataReceiver dataReceiver) {
+        if (secid == ADMIN_SECID || secid == mSecid) {
+            Log.w(TAG, "Cannot register a data receiver for SECID:" + secid);
+            return false;
+        }
+        if (mSecidDataReceivers.get(secid) != null) {
+            Log.w(TAG, "Already has a registered data receiver for SECID:" + secid);
+            return false;
+        }
+        mSecidDataReceivers.put(secid, dataReceiver);
+        return true;
+    }
+
+    /**
+     * Unregister the data receiver of an additional local SECID.
+     *
+     * @param secid 7-bit secure component ID.
+     */
+    public void unregisterDataReceiver(@IntRange(from = 2, to = 127) int secid) {
+        mSecidDataReceivers.remove(secid);
+    }
+
     /* Indicates whether the server has started.
      */
     protected boolean mStarted = false;
@@ -201,13 +257,18 @@ public abstract class TransportProvider implements Transport {
             return;
         }
         if (secid != mSecid) {
-            Log.w(
-                    TAG,
-                    "onMessageReceived rejected due to invalid SECID. Expect:"
-                            + mSecid
-                            + " Received:"
-                            + secid);
-            sentAdminErrorMessage(ErrorType.SECID_INVALID);
+            DataReceiver dataReceiver = mSecidDataReceivers.get(secid);
+            if (dataReceiver == null) {
+                Log.w(
+                        TAG,
+                        "onMessageReceived rejected due to invalid SECID. Expect:"
+                                + mSecid
+                                + " Received:"
+                                + secid);
+                sentAdminErrorMessage(ErrorType.SECID_INVALID);
+                return;
+            }
+            dataReceiver.onDataReceived(message.payload);
             return;
         }
         if (mDataReceiver != null) {
@@ -37,6 +37,7 @@ public class TransportProviderFactory {
      * @param context Context.
      * @param secid Assigned local secid for this transport connection.
      * @param discoveryInfo Info of the discovery request.
+     * @param maxMessageBufferSize Maximum size of a message received from the client.
      * @param transportServerCallback callback for transport server events.
      */
     public static TransportServerProvider createServer(
@@ -44,13 +45,18 @@ public class TransportProviderFactory {
             Context context,
             int secid,
             DiscoveryInfo discoveryInfo,
+            int maxMessageBufferSize,
             TransportServerCallback transportServerCallback)
             throws AssertionError {
 
         switch (discoveryInfo.transportType) {
             case BLE:
                 return new GattTransportServerProvider(
-                        attributionSource, context, secid, transportServerCallback);
+                        attributionSource,
+                        context,
+                        secid,
+                        maxMessageBufferSize,
+                        transportServerCallback);
         }
         return null;
     }
@@ -30,6 +30,7 @@ import android.util.Log;
 
 import androidx.annotation.WorkerThread;
 
+import com.android.server.uwb.discovery.MessagePacketQueue;
 import com.android.server.uwb.discovery.TransportClientProvider;
 import com.android.server.uwb.discovery.TransportClientProvider.TransportClientCallback;
 import com.android.server.uwb.discovery.TransportProvider.MessagePacket;
@@ -38,12 +39,12 @@ import com.android.server.uwb.discovery.info.AdminErrorMessage.ErrorType;
 import com.android.server.uwb.discovery.info.FiraConnectorCapabilities;
 import com.android.server.uwb.discovery.info.FiraConnectorDataPacket;
 import com.android.server.uwb.discovery.info.FiraConnectorMessage;
+import com.android.server.uwb.discovery.info.FiraConnectorMessageBuffer;
+import com.android.server.uwb.discovery.info.FiraConnectorMessageBufferPool;
 import com.android.server.uwb.discovery.info.SecureComponentInfo;
 import com.android.server.uwb.discovery.info.TransportClientInfo;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
 import java.util.concurrent.Executor;
 
 /**
@@ -56,11 +57,22 @@ import java.util.concurrent.Executor;
  * Control Point characteristic on the remote GATT server. Afterwards, the client can starts
  * exchange data with the server over the "IN" and "OUT" Control Point characteristic. When any
  * unrecoverable event occurred, GATT client will be terminated.
+ *
+ * <p>Data packets are written to the "IN" Control Point characteristic one at a time, the next one
+ * being written from onCharacteristicWrite. If the server advertises write without response on that
+ * characteristic, data packets are written as write commands: the Bluetooth stack confirms them
+ * once sent instead of waiting for the server's response. Otherwise write requests are used.
  */
 @WorkerThread
 public class GattTransportClientProvider extends TransportClientProvider {
     private static final String TAG = GattTransportClientProvider.class.getSimpleName();
 
+    /** ATT_MTU used until a larger one is negotiated. */
+    private static final int DEFAULT_ATT_MTU = 23;
+
+    /** Size of the ATT header of a write command. */
+    private static final int ATT_WRITE_HEADER_SIZE = 3;
+
     private final Executor mCallbackExecutor;
     private final Context mContext;
     private TransportClientCallback mTransportClientCallback;
@@ -75,21 +87,32 @@ public class GattTransportClientProvider extends TransportClientProvider {
     private boolean mNotificationEnabled;
     private boolean mIsProcessing;
 
+    /* Whether the remote "IN" Control Point characteristic supports write without response. */
+    private boolean mWriteWithoutResponse;
+
+    /* ATT_MTU negotiated with the remote GATT server. */
+    private int mMtu = DEFAULT_ATT_MTU;
+
+    /* Whether a data packet written to mInControlPointCharacteristic is waiting to be confirmed by
+     * onCharacteristicWrite.
+     */
+    private boolean mInDataPacketPending;
+
     private BluetoothGattCharacteristic mInControlPointCharacteristic;
     private BluetoothGattCharacteristic mOutControlPointCharacteristic;
     private BluetoothGattCharacteristic mCapabilitiesCharacteristic;
 
     private BluetoothGattDescriptor mOutControlPointCccdDescriptor;
 
-    /* Queue of Fira Connector Data Packets from the mOutControlPointCharacteristic that are
-     * incomplete to be constructed as FiRa Connector Message.
+    /* Buffers reassembling the FiRa Connector Messages from the Fira Connector Data Packets of the
+     * mOutControlPointCharacteristic, by SECID.
      */
-    private ArrayDeque<FiraConnectorDataPacket> mIncompleteOutDataPacketQueue;
+    private FiraConnectorMessageBufferPool mOutMessageBuffers;
 
     /* Queue of Fira Connector Message wrapped as MessagePacket to be sent via the
      * mInControlPointCharacteristic.
      */
-    private ArrayDeque<MessagePacket> mInMessageQueue;
+    private MessagePacketQueue mInMessageQueue;
 
     /** GATT callbacks responsible for handling events from the remote device GATT server. */
     private BluetoothGattCallback mBluetoothGattCallback =
@@ -106,6 +129,10 @@ public class GattTransportClientProvider extends TransportClientProvider {
                     }
                     if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                         mConnected = false;
+                        // Negotiated again on the next connection.
+                        mWriteWithoutResponse = false;
+                        mMtu = DEFAULT_ATT_MTU;
+                        mInDataPacketPending = false;
                         terminateOnError(TerminationReason.REMOTE_DISCONNECTED);
                         mCallbackExecutor.execute(() -> startProcessing());
                     } else if (newState == BluetoothProfile.STATE_CONNECTED) {
@@ -164,6 +191,11 @@ public class GattTransportClientProvider extends TransportClientProvider {
                         terminateOnError(TerminationReason.SERVICE_DISCOVERY_FAILURE);
                         return;
                     }
+                    mWriteWithoutResponse =
+                            (mInControlPointCharacteristic.getProperties()
+                                            & BluetoothGattCharacteristic
+                                                    .PROPERTY_WRITE_NO_RESPONSE)
+                                    != 0;
                     mServiceDiscovered = true;
                     mCallbackExecutor.execute(() -> startProcessing());
                 }
@@ -213,7 +245,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
                     } else if (characteristic
                             .getUuid()
                             .equals(mInControlPointCharacteristic.getUuid())) {
-                        mCallbackExecutor.execute(() -> processInDataPacket());
+                        mCallbackExecutor.execute(() -> onInDataPacketWritten());
                     }
                 }
 
@@ -240,6 +272,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
                         return;
                     }
                     Log.d(TAG, "onMtuChanged new mtu=" + mtu);
+                    mMtu = mtu;
                     // Update Capabilities if changed, and sent to server.
                     int newDataPacketSize = mtu - 3;
                     if (newDataPacketSize == mCapabilities.optimizedDataPacketSize) {
@@ -280,8 +313,8 @@ public class GattTransportClientProvider extends TransportClientProvider {
         // Using FiRa defined default connector capabilities.
         mCapabilities = new FiraConnectorCapabilities.Builder().build();
 
-        mIncompleteOutDataPacketQueue = new ArrayDeque();
-        mInMessageQueue = new ArrayDeque();
+        mOutMessageBuffers = new FiraConnectorMessageBufferPool();
+        mInMessageQueue = new MessagePacketQueue();
     }
 
     @Override
@@ -322,8 +355,11 @@ public class GattTransportClientProvider extends TransportClientProvider {
         mBluetoothGatt.disconnect();
 
         // Clear in/out message queue.
-        mIncompleteOutDataPacketQueue.clear();
+        mOutMessageBuffers.clear();
         mInMessageQueue.clear();
+        mInDataPacketPending = false;
+        mWriteWithoutResponse = false;
+        mMtu = DEFAULT_ATT_MTU;
 
         mStarted = false;
         mConnected = false;
@@ -347,8 +383,9 @@ public class GattTransportClientProvider extends TransportClientProvider {
         }
         mInMessageQueue.add(new MessagePacket(secid, ByteBuffer.wrap(messageBytes)));
 
-        // No existing meesage in progress, sent this message immediately.
-        if (mInMessageQueue.size() == 1) {
+        // No data packet pending, sent this message immediately. Otherwise it is sent once the
+        // pending data packet has been written.
+        if (!mInDataPacketPending) {
             return processInDataPacket();
         }
         return true;
@@ -362,6 +399,8 @@ public class GattTransportClientProvider extends TransportClientProvider {
         }
         Log.d(TAG, "setCapabilites new capabilities:" + capabilities);
         mCapabilities = capabilities;
+        mInMessageQueue.setMaxConcurrentSessions(
+                capabilities.maxConcurrentFragmentedMessageSessionSupported);
         if (!mStarted || !mServiceDiscovered) {
             Log.w(
                     TAG,
@@ -373,7 +412,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
     }
 
     /**
-     * Process the next in control data packet from the queue. Write new data packet to {@link
+     * Process the next in control data packet from the queue. Write the new data packet to {@link
      * mInControlPointCharacteristic}.
      *
      * @return indicate if next in data packet was process successfully.
@@ -387,14 +426,17 @@ public class GattTransportClientProvider extends TransportClientProvider {
             Log.w(TAG, "processInDataPacket skipped due to empty queue.");
             return false;
         }
+        final int writeType =
+                mWriteWithoutResponse
+                        ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                        : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
         MessagePacket messagePacket = mInMessageQueue.peek();
         ByteBuffer byteBuffer = messagePacket.messageBytes;
         byte[] nextPayload =
                 new byte
                         [Math.min(
                                 byteBuffer.remaining(),
-                                mCapabilities.optimizedDataPacketSize
-                                        - FiraConnectorDataPacket.HEADER_SIZE)];
+                                getDataPacketSize() - FiraConnectorDataPacket.HEADER_SIZE)];
         byteBuffer.get(nextPayload);
 
         final FiraConnectorDataPacket dataPacket =
@@ -403,14 +445,11 @@ public class GattTransportClientProvider extends TransportClientProvider {
                         messagePacket.secid,
                         nextPayload);
 
-        if (!byteBuffer.hasRemaining()) {
-            mInMessageQueue.pop();
-        }
+        mInMessageQueue.advance();
+        mInDataPacketPending = true;
         final int status =
                 mBluetoothGatt.writeCharacteristic(
-                        mInControlPointCharacteristic,
-                        dataPacket.toBytes(),
-                        BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+                        mInControlPointCharacteristic, dataPacket.toBytes(), writeType);
         if (status != BluetoothStatusCodes.SUCCESS) {
             Log.w(TAG, "processInDataPacket failed due to fail to writeCharacteristic.");
             terminateOnError(TerminationReason.CHARACTERSTIC_WRITE_FAILURE);
@@ -419,6 +458,27 @@ public class GattTransportClientProvider extends TransportClientProvider {
         return true;
     }
 
+    /** Continue with the queued data packets once the pending one has been written. */
+    private void onInDataPacketWritten() {
+        mInDataPacketPending = false;
+        if (!mInMessageQueue.isEmpty()) {
+            processInDataPacket();
+        }
+    }
+
+    /**
+     * Get the size of the data packets written to {@link mInControlPointCharacteristic}.
+     *
+     * @return the optimized data packet size, bounded by the ATT_MTU when writing without response
+     *     since a write command can't be split into several ATT PDUs.
+     */
+    private int getDataPacketSize() {
+        if (!mWriteWithoutResponse) {
+            return mCapabilities.optimizedDataPacketSize;
+        }
+        return Math.min(mCapabilities.optimizedDataPacketSize, mMtu - ATT_WRITE_HEADER_SIZE);
+    }
+
     /**
      * Process the new out control data packet. Construct the FiraConnectorMessage if data is
      * complete, and notify callback with the constructed message.
@@ -435,41 +495,42 @@ public class GattTransportClientProvider extends TransportClientProvider {
             super.sentAdminErrorMessage(ErrorType.DATA_PACKET_LENGTH_OVERFLOW);
             return false;
         }
-        FiraConnectorDataPacket latestDataPacket = FiraConnectorDataPacket.fromBytes(bytes);
-        if (latestDataPacket == null) {
+        if (bytes.length < FiraConnectorDataPacket.HEADER_SIZE) {
             Log.w(
                     TAG,
                     "processOutDataPacket failed due to latest FiraConnectorDataPacket cannot be"
                             + " constructed from bytes.");
             return false;
         }
-        if (!mIncompleteOutDataPacketQueue.isEmpty()
-                && latestDataPacket.secid != mIncompleteOutDataPacketQueue.peek().secid) {
-            Log.w(
-                    TAG,
-                    "processOutDataPacket failed due to latest FiraConnectorDataPacket's SECID"
-                            + " doesn't match previous data packet.");
-            super.sentAdminErrorMessage(ErrorType.TOO_MANY_CONCURRENT_FRAGMENTED_MESSAGE_SESSIONS);
-            return false;
+        int secid = FiraConnectorDataPacket.getSecid(bytes);
+        FiraConnectorMessageBuffer messageBuffer = mOutMessageBuffers.get(secid);
+        if (messageBuffer == null) {
+            if (mOutMessageBuffers.getActiveCount()
+                    >= mCapabilities.maxConcurrentFragmentedMessageSessionSupported) {
+                Log.w(
+                        TAG,
+                        "processOutDataPacket failed due to latest FiraConnectorDataPacket's SECID"
+                                + " exceeding the concurrent fragmented message sessions.");
+                super.sentAdminErrorMessage(
+                        ErrorType.TOO_MANY_CONCURRENT_FRAGMENTED_MESSAGE_SESSIONS);
+                return false;
+            }
+            messageBuffer = mOutMessageBuffers.start(secid, mCapabilities.maxMessageBufferSize);
         }
-        mIncompleteOutDataPacketQueue.add(latestDataPacket);
-        if (!latestDataPacket.lastChainingPacket) {
+        messageBuffer.appendDataPacket(bytes);
+        if (!FiraConnectorDataPacket.isLastChainingPacket(bytes)) {
             return true;
         }
         // All data packets of the message has been received. Constructing the message.
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        for (FiraConnectorDataPacket dataPacket : mIncompleteOutDataPacketQueue) {
-            byteStream.write(dataPacket.payload, /*off=*/ 0, dataPacket.payload.length);
-        }
-        mIncompleteOutDataPacketQueue.clear();
-
-        if (byteStream.size() > mCapabilities.maxMessageBufferSize) {
+        boolean overflow = messageBuffer.isOverflow();
+        FiraConnectorMessage message = messageBuffer.takeMessage();
+        mOutMessageBuffers.release(
+                secid, mCapabilities.maxConcurrentFragmentedMessageSessionSupported);
+        if (overflow) {
             Log.w(TAG, "processOutDataPacket failed due to message length overflow.");
             super.sentAdminErrorMessage(ErrorType.MESSAGE_LENGTH_OVERFLOW);
             return false;
         }
-
-        FiraConnectorMessage message = FiraConnectorMessage.fromBytes(byteStream.toByteArray());
         if (message == null) {
             Log.w(
                     TAG,
@@ -478,7 +539,7 @@ public class GattTransportClientProvider extends TransportClientProvider {
             return false;
         }
 
-        super.onMessageReceived(latestDataPacket.secid, message);
+        super.onMessageReceived(secid, message);
         return true;
     }
 
@@ -31,17 +31,19 @@ import android.util.Log;
 
 import androidx.annotation.WorkerThread;
 
+import com.android.server.uwb.discovery.MessagePacketQueue;
 import com.android.server.uwb.discovery.TransportProvider.MessagePacket;
 import com.android.server.uwb.discovery.TransportProvider.TerminationReason;
 import com.android.server.uwb.discovery.TransportServerProvider;
 import com.android.server.uwb.discovery.TransportServerProvider.TransportServerCallback;
+import com.android.server.uwb.discovery.info.AdminErrorMessage.ErrorType;
 import com.android.server.uwb.discovery.info.FiraConnectorCapabilities;
 import com.android.server.uwb.discovery.info.FiraConnectorDataPacket;
 import com.android.server.uwb.discovery.info.FiraConnectorMessage;
+import com.android.server.uwb.discovery.info.FiraConnectorMessageBuffer;
+import com.android.server.uwb.discovery.info.FiraConnectorMessageBufferPool;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
 import java.util.Arrays;
 
 /**
@@ -52,6 +54,15 @@ import java.util.Arrays;
  * Until this happens and until the client enables the Handle Value Notification method on the "OUT"
  * Control Point characteristic (through Client Characteristic Configuration Descriptor), the server
  * shall ignore all commands sent by Write methods through the "IN" Control Point characteristic.
+ *
+ * <p>The "IN" Control Point characteristic accepts both write requests and write without response.
+ * Clients still write the data packets of a message one at a time, but with write without response
+ * the next one is written once the previous one is sent, without waiting for a response from this
+ * server.
+ *
+ * <p>The FiRa Connector Capabilities characteristic can be read back by the client to learn the
+ * capabilities of this server, notably the maximum size of a message it reassembles. A message
+ * exceeding it is answered with a MESSAGE_LENGTH_OVERFLOW administrative error message.
  */
 @WorkerThread
 public class GattTransportServerProvider extends TransportServerProvider {
@@ -62,6 +73,10 @@ public class GattTransportServerProvider extends TransportServerProvider {
     private BluetoothGattServer mBluetoothGattServer;
     private BluetoothDevice mRemoteGattDevice;
     private FiraConnectorCapabilities mRemoteCapabilities;
+    /* Capabilities of this server, bounding the messages received from the client. Using FiRa
+     * defined default connector capabilities, except for the configured max message buffer size.
+     */
+    private final FiraConnectorCapabilities mCapabilities;
     private boolean mConnected;
     private boolean mNotificationEnabled;
 
@@ -76,15 +91,15 @@ public class GattTransportServerProvider extends TransportServerProvider {
 
     private BluetoothGattDescriptor mOutControlPointCccdDescriptor;
 
-    /* Queue of Fira Connector Data Packets from the mInControlPointCharacteristic that are
-     * incomplete to be constructed as FiRa Connector Message.
+    /* Buffers reassembling the FiRa Connector Messages from the Fira Connector Data Packets of the
+     * mInControlPointCharacteristic, by SECID.
      */
-    private ArrayDeque<FiraConnectorDataPacket> mIncompleteInDataPacketQueue;
+    private FiraConnectorMessageBufferPool mInMessageBuffers;
 
     /* Queue of Fira Connector Message wrapped as MessagePacket to be sent via the
      * mOutControlPointCharacteristic.
      */
-    private ArrayDeque<MessagePacket> mOutMessageQueue;
+    private MessagePacketQueue mOutMessageQueue;
 
     /**
      * GATT server callbacks responsible for servicing read and write calls from the remote device
@@ -120,6 +135,16 @@ public class GattTransportServerProvider extends TransportServerProvider {
                                 offset,
                                 mOutControlPointCharacteristic.getValue());
                         processOutDataPacket();
+                    } else if (characteristic
+                            .getUuid()
+                            .equals(mCapabilitiesCharacteristic.getUuid())) {
+                        Log.d(TAG, "onRead CapabilitiesCharacteristic");
+                        mBluetoothGattServer.sendResponse(
+                                device,
+                                requestId,
+                                BluetoothGatt.GATT_SUCCESS,
+                                offset,
+                                mCapabilities.toBytes());
                     } else {
                         Log.w(TAG, "onRead unknown " + characteristic.getUuid());
                     }
@@ -145,6 +170,9 @@ public class GattTransportServerProvider extends TransportServerProvider {
                         mRemoteCapabilities = FiraConnectorCapabilities.fromBytes(value);
 
                         if (mRemoteCapabilities != null) {
+                            mOutMessageQueue.setMaxConcurrentSessions(
+                                    mRemoteCapabilities
+                                            .maxConcurrentFragmentedMessageSessionSupported);
                             mTransportServerCallback.onCapabilitesUpdated(mRemoteCapabilities);
                             startProcessing(device);
 
@@ -244,8 +272,13 @@ public class GattTransportServerProvider extends TransportServerProvider {
             AttributionSource attributionSource,
             Context context,
             int secid,
+            int maxMessageBufferSize,
             TransportServerCallback transportServerCallback) {
         super(secid);
+        mCapabilities =
+                new FiraConnectorCapabilities.Builder()
+                        .setMaxMessageBufferSize(maxMessageBufferSize)
+                        .build();
         Context attributedContext =
                 context.createContext(
                         new ContextParams.Builder()
@@ -256,8 +289,8 @@ public class GattTransportServerProvider extends TransportServerProvider {
         mBluetoothGattServer =
                 mBluetoothManager.openGattServer(attributedContext, mBluetoothGattServerCallback);
 
-        mIncompleteInDataPacketQueue = new ArrayDeque();
-        mOutMessageQueue = new ArrayDeque();
+        mInMessageBuffers = new FiraConnectorMessageBufferPool();
+        mOutMessageQueue = new MessagePacketQueue();
 
         setupGattCharacteristic();
     }
@@ -285,7 +318,7 @@ public class GattTransportServerProvider extends TransportServerProvider {
         boolean succeed = mBluetoothGattServer.removeService(mFiraCPService);
 
         // Clear in/out message queue.
-        mIncompleteInDataPacketQueue.clear();
+        mInMessageBuffers.clear();
         mOutMessageQueue.clear();
 
         mStarted = !succeed;
@@ -345,9 +378,7 @@ public class GattTransportServerProvider extends TransportServerProvider {
                         messagePacket.secid,
                         nextPayload);
 
-        if (!byteBuffer.hasRemaining()) {
-            mOutMessageQueue.pop();
-        }
+        mOutMessageQueue.advance();
         if (!mOutControlPointCharacteristic.setValue(dataPacket.toBytes())) {
             Log.w(
                     TAG,
@@ -374,34 +405,40 @@ public class GattTransportServerProvider extends TransportServerProvider {
             Log.w(TAG, "processInDataPacket failed due to server not ready for processing.");
             return false;
         }
-        FiraConnectorDataPacket latestDataPacket = FiraConnectorDataPacket.fromBytes(bytes);
-        if (latestDataPacket == null) {
+        if (bytes.length < FiraConnectorDataPacket.HEADER_SIZE) {
             Log.w(
                     TAG,
                     "processInDataPacket failed due to latest FiraConnectorDataPacket cannot be"
                             + " constructed from bytes.");
             return false;
         }
-        if (!mIncompleteInDataPacketQueue.isEmpty()
-                && latestDataPacket.secid != mIncompleteInDataPacketQueue.peek().secid) {
-            Log.w(
-                    TAG,
-                    "processInDataPacket failed due to latest FiraConnectorDataPacket's SECID"
-                            + " doesn't match previous data packet.");
-            return false;
+        int secid = FiraConnectorDataPacket.getSecid(bytes);
+        FiraConnectorMessageBuffer messageBuffer = mInMessageBuffers.get(secid);
+        if (messageBuffer == null) {
+            if (mInMessageBuffers.getActiveCount()
+                    >= mRemoteCapabilities.maxConcurrentFragmentedMessageSessionSupported) {
+                Log.w(
+                        TAG,
+                        "processInDataPacket failed due to latest FiraConnectorDataPacket's SECID"
+                                + " exceeding the concurrent fragmented message sessions.");
+                return false;
+            }
+            messageBuffer = mInMessageBuffers.start(secid, mCapabilities.maxMessageBufferSize);
         }
-        mIncompleteInDataPacketQueue.add(latestDataPacket);
-        if (!latestDataPacket.lastChainingPacket) {
+        messageBuffer.appendDataPacket(bytes);
+        if (!FiraConnectorDataPacket.isLastChainingPacket(bytes)) {
             return true;
         }
         // All data packets of the message has been received. Constructing the message.
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        for (FiraConnectorDataPacket dataPacket : mIncompleteInDataPacketQueue) {
-            byteStream.write(dataPacket.payload, /*off=*/ 0, dataPacket.payload.length);
+        boolean overflow = messageBuffer.isOverflow();
+        FiraConnectorMessage message = messageBuffer.takeMessage();
+        mInMessageBuffers.release(
+                secid, mRemoteCapabilities.maxConcurrentFragmentedMessageSessionSupported);
+        if (overflow) {
+            Log.w(TAG, "processInDataPacket failed due to message length overflow.");
+            super.sentAdminErrorMessage(ErrorType.MESSAGE_LENGTH_OVERFLOW);
+            return false;
         }
-        mIncompleteInDataPacketQueue.clear();
-
-        FiraConnectorMessage message = FiraConnectorMessage.fromBytes(byteStream.toByteArray());
         if (message == null) {
             Log.w(
                     TAG,
@@ -410,7 +447,7 @@ public class GattTransportServerProvider extends TransportServerProvider {
             return false;
         }
 
-        super.onMessageReceived(latestDataPacket.secid, message);
+        super.onMessageReceived(secid, message);
         return true;
     }
 
@@ -460,7 +497,8 @@ public class GattTransportServerProvider extends TransportServerProvider {
         mInControlPointCharacteristic =
                 new BluetoothGattCharacteristic(
                         UuidConstants.CP_IN_CONTROL_POINT_UUID.getUuid(),
-                        BluetoothGattCharacteristic.PROPERTY_WRITE,
+                        BluetoothGattCharacteristic.PROPERTY_WRITE
+                                | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
                         BluetoothGattCharacteristic.PERMISSION_WRITE);
         mFiraCPService.addCharacteristic(mInControlPointCharacteristic);
 
@@ -479,8 +517,11 @@ public class GattTransportServerProvider extends TransportServerProvider {
         mCapabilitiesCharacteristic =
                 new BluetoothGattCharacteristic(
                         UuidConstants.CP_FIRA_CONNECTOR_CAPABILITIES_UUID.getUuid(),
-                        BluetoothGattCharacteristic.PROPERTY_WRITE,
-                        BluetoothGattCharacteristic.PERMISSION_WRITE);
+                        BluetoothGattCharacteristic.PROPERTY_READ
+                                | BluetoothGattCharacteristic.PROPERTY_WRITE,
+                        BluetoothGattCharacteristic.PERMISSION_READ
+                                | BluetoothGattCharacteristic.PERMISSION_WRITE);
+        mCapabilitiesCharacteristic.setValue(mCapabilities.toBytes());
         mFiraCPService.addCharacteristic(mCapabilitiesCharacteristic);
     }
 
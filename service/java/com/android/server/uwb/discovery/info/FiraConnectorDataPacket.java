@@ -80,6 +80,28 @@ public class FiraConnectorDataPacket {
         return new FiraConnectorDataPacket(lastChainingPacket, secid, payload);
     }
 
+    /**
+     * Check if the raw bytes of a FiRa Connector Data Packet are the last packet in a fragmented
+     * session, without decoding the data packet.
+     *
+     * @param bytes non-empty byte array containing the FiRa UWB Connector Data Packet encoding.
+     * @return true if the last chaining packet bit is set in the header.
+     */
+    public static boolean isLastChainingPacket(@NonNull byte[] bytes) {
+        return (bytes[0] & LAST_CHAINING_PACKET_BITMASK) != 0;
+    }
+
+    /**
+     * Get the SECID from the raw bytes of a FiRa Connector Data Packet, without decoding the data
+     * packet.
+     *
+     * @param bytes non-empty byte array containing the FiRa UWB Connector Data Packet encoding.
+     * @return the SECID in the header.
+     */
+    public static int getSecid(@NonNull byte[] bytes) {
+        return bytes[0] & SECID_BITMASK;
+    }
+
     /**
      * Generate raw bytes array from FiraConnectorDataPacket.
      *
@@ -25,7 +25,6 @@ import com.android.server.uwb.util.ArrayUtils;
 
 import com.google.common.primitives.Bytes;
 
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -138,16 +137,33 @@ public class FiraConnectorMessage {
             Log.w(TAG, "Failed to convert empty into FiRa Connector Message.");
             return null;
         }
+        return fromBytes(bytes, /*offset=*/ 0, bytes.length);
+    }
+
+    /**
+     * Generate the FiraConnectorMessage from a range of a raw bytes array. The header is decoded in
+     * place, only the payload is copied.
+     *
+     * @param bytes byte array containing the FiRa UWB Connector Message encoding based on the FiRa
+     *     specification.
+     * @param offset start of the message in {@code bytes}.
+     * @param length length of the message in {@code bytes}.
+     * @return decode bytes into {@link FiraConnectorMessage}, else null if invalid.
+     */
+    @Nullable
+    public static FiraConnectorMessage fromBytes(@NonNull byte[] bytes, int offset, int length) {
+        if (length <= 0) {
+            Log.w(TAG, "Failed to convert empty into FiRa Connector Message.");
+            return null;
+        }
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
-        byte header = byteBuffer.get();
+        byte header = bytes[offset];
         MessageType messageType =
                 MessageType.valueOf((header >>> MESSAGE_TYPE_BITPOS) & MESSAGE_TYPE_BITMASK);
         InstructionCode instructionCode =
                 InstructionCode.valueOf(header & INSTRUCTION_CODE_BITMASK);
 
-        byte[] payload = new byte[byteBuffer.remaining()];
-        byteBuffer.get(payload);
+        byte[] payload = Arrays.copyOfRange(bytes, offset + 1, offset + length);
 
         return new FiraConnectorMessage(messageType, instructionCode, payload);
     }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.discovery.info;
+
+import android.annotation.IntRange;
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+/**
+ * Buffer reassembling a FiRa Connector Message from its FiRa Connector Data Packets.
+ *
+ * <p>The buffer is allocated once, usually with the maximum message buffer size of the {@link
+ * FiraConnectorCapabilities}, and reused for the following messages. The payload of each data
+ * packet is copied straight from its raw bytes, and the message is decoded in place.
+ */
+public class FiraConnectorMessageBuffer {
+    private final byte[] mBuffer;
+    private int mSize;
+
+    /* Whether the message being reassembled exceeded the capacity. */
+    private boolean mOverflow;
+
+    public FiraConnectorMessageBuffer(@IntRange(from = 1) int capacity) {
+        mBuffer = new byte[capacity];
+    }
+
+    /** Get the maximum size of a reassembled message. */
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /** Get the size of the message reassembled so far. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Check if no message is being reassembled. */
+    public boolean isEmpty() {
+        return mSize == 0 && !mOverflow;
+    }
+
+    /** Check if the message being reassembled exceeded the capacity. */
+    public boolean isOverflow() {
+        return mOverflow;
+    }
+
+    /**
+     * Append the payload of a data packet to the message.
+     *
+     * @param dataPacketBytes raw bytes of the FiRa Connector Data Packet, including its header.
+     * @return false if the message exceeded the capacity. The rest of the message is then dropped
+     *     until the buffer is cleared.
+     */
+    public boolean appendDataPacket(@NonNull byte[] dataPacketBytes) {
+        int length = dataPacketBytes.length - FiraConnectorDataPacket.HEADER_SIZE;
+        if (mOverflow || length > mBuffer.length - mSize) {
+            mOverflow = true;
+            return false;
+        }
+        System.arraycopy(
+                dataPacketBytes, FiraConnectorDataPacket.HEADER_SIZE, mBuffer, mSize, length);
+        mSize += length;
+        return true;
+    }
+
+    /**
+     * Decode the reassembled message, and clear the buffer for the next message.
+     *
+     * @return the {@link FiraConnectorMessage}, else null if empty or overflowed.
+     */
+    @Nullable
+    public FiraConnectorMessage takeMessage() {
+        try {
+            if (mOverflow) {
+                return null;
+            }
+            return FiraConnectorMessage.fromBytes(mBuffer, /*offset=*/ 0, mSize);
+        } finally {
+            clear();
+        }
+    }
+
+    /** Clear the buffer for the next message. */
+    public void clear() {
+        mSize = 0;
+        mOverflow = false;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.discovery.info;
+
+import android.annotation.IntRange;
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+
+/**
+ * {@link FiraConnectorMessageBuffer}s of the FiRa Connector Messages being reassembled, by SECID.
+ *
+ * <p>A SECID holds a buffer from the first data packet of a message until the message is complete.
+ * The buffer is then released, and kept for a following message if fewer buffers than the number
+ * of concurrent fragmented message sessions are already free.
+ */
+public class FiraConnectorMessageBufferPool {
+    private final SparseArray<FiraConnectorMessageBuffer> mActiveBuffers = new SparseArray<>();
+    private final ArrayDeque<FiraConnectorMessageBuffer> mFreeBuffers = new ArrayDeque<>();
+
+    /**
+     * Get the buffer of the message being reassembled for a SECID.
+     *
+     * @return the buffer, else null if no message was started for the SECID.
+     */
+    @Nullable
+    public FiraConnectorMessageBuffer get(int secid) {
+        return mActiveBuffers.get(secid);
+    }
+
+    /**
+     * Start reassembling a message for a SECID, reusing a free buffer of the same capacity if any.
+     *
+     * @return the buffer to reassemble the message in.
+     */
+    @NonNull
+    public FiraConnectorMessageBuffer start(int secid, @IntRange(from = 1) int capacity) {
+        FiraConnectorMessageBuffer buffer = mFreeBuffers.poll();
+        while (buffer != null && buffer.capacity() != capacity) {
+            // The capabilities changed, the buffer is too small or larger than needed.
+            buffer = mFreeBuffers.poll();
+        }
+        if (buffer == null) {
+            buffer = new FiraConnectorMessageBuffer(capacity);
+        }
+        mActiveBuffers.put(secid, buffer);
+        return buffer;
+    }
+
+    /**
+     * Release the buffer of a SECID once its message is complete or dropped.
+     *
+     * @param maxFreeBuffers the number of released buffers to keep for the following messages.
+     */
+    public void release(int secid, @IntRange(from = 0) int maxFreeBuffers) {
+        FiraConnectorMessageBuffer buffer = mActiveBuffers.get(secid);
+        if (buffer == null) {
+            return;
+        }
+        mActiveBuffers.remove(secid);
+        buffer.clear();
+        if (mFreeBuffers.size() < maxFreeBuffers) {
+            mFreeBuffers.push(buffer);
+        }
+    }
+
+    /** Get the number of messages being reassembled, over all SECIDs. */
+    public int getActiveCount() {
+        return mActiveBuffers.size();
+    }
+
+    /** Get the number of released buffers kept for the following messages. */
+    public int getFreeCount() {
+        return mFreeBuffers.size();
+    }
+
+    /** Drop all the buffers. */
+    public void clear() {
+        mActiveBuffers.clear();
+        mFreeBuffers.clear();
+    }
+}
@@ -20,6 +20,7 @@ import android.annotation.Nullable;
 import android.util.Log;
 
 import com.android.internal.annotations.Keep;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.uwb.UciLogModeStore;
 import com.android.server.uwb.UwbInjector;
 import com.android.server.uwb.data.DtTagUpdateRangingRoundsStatus;
@@ -28,21 +29,30 @@ import com.android.server.uwb.data.UwbDeviceInfoResponse;
 import com.android.server.uwb.data.UwbMulticastListUpdateStatus;
 import com.android.server.uwb.data.UwbRadarData;
 import com.android.server.uwb.data.UwbRangingData;
+import com.android.server.uwb.data.UwbRangingDataBatch;
 import com.android.server.uwb.data.UwbTlvData;
 import com.android.server.uwb.data.UwbUciConstants;
 import com.android.server.uwb.data.UwbVendorUciResponse;
 import com.android.server.uwb.info.UwbPowerStats;
 import com.android.server.uwb.multchip.UwbMultichipData;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Keep
 public class NativeUwbManager {
     private static final String TAG = NativeUwbManager.class.getSimpleName();
 
-    public final Object mNativeLock = new Object();
+    // Held exclusively while the native stack is (de)initialized or for commands sent to every
+    // UWBS. Commands addressing a single UWBS hold it shared along with that chip's lock, so that
+    // commands to different chips can run in parallel.
+    private final ReentrantReadWriteLock mNativeLock = new ReentrantReadWriteLock();
+    private final Map<String, ChipLock> mChipLocks = new ConcurrentHashMap<>();
     private final UwbInjector mUwbInjector;
     private final UciLogModeStore mUciLogModeStore;
     private final UwbMultichipData mUwbMultichipData;
@@ -61,8 +71,11 @@ public class NativeUwbManager {
 
     protected void loadLibrary() {
         System.loadLibrary("uwb_uci_jni_rust");
-        synchronized (mNativeLock) {
+        mNativeLock.writeLock().lock();
+        try {
             nativeInit();
+        } finally {
+            mNativeLock.writeLock().unlock();
         }
     }
 
@@ -101,10 +114,41 @@ public class NativeUwbManager {
     }
 
     public void onRangeDataNotificationReceived(UwbRangingData rangeData) {
-        Log.d(TAG, "onRangeDataNotificationReceived : " + rangeData);
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, "onRangeDataNotificationReceived : " + rangeData);
+        }
         mSessionListener.onRangeDataNotificationReceived(rangeData);
     }
 
+    /**
+     * Batched range data callback invoked via the JNI, when range data notification batching is
+     * enabled (see {@link #doInitialize()}). The buffer is only valid during this call.
+     */
+    public void onRangeDataNotificationsReceived(ByteBuffer packedRangeData, int count) {
+        Log.d(TAG, "onRangeDataNotificationsReceived : " + count);
+        UwbRangingDataBatch batch;
+        try {
+            batch = new UwbRangingDataBatch(packedRangeData, count);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Dropping malformed range data batch", e);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            UwbRangingData rangeData;
+            try {
+                rangeData = batch.get(i);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Dropping malformed range data for session " + batch.getSessionId(i),
+                        e);
+                continue;
+            }
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "onRangeDataNotificationsReceived : " + rangeData);
+            }
+            mSessionListener.onRangeDataNotificationReceived(rangeData);
+        }
+    }
+
     public void onMulticastListUpdateNotificationReceived(
             UwbMulticastListUpdateStatus multicastListUpdateData) {
         Log.d(TAG, "onMulticastListUpdateNotificationReceived : " + multicastListUpdateData);
@@ -138,7 +182,8 @@ public class NativeUwbManager {
     public Map<String, UwbDeviceInfoResponse> doInitialize() {
         UwbDeviceInfoResponse deviceInfoResponse = null;
         Map<String, UwbDeviceInfoResponse> chipIdToDeviceInfoResponseMap = new HashMap<>();
-        synchronized (mNativeLock) {
+        mNativeLock.writeLock().lock();
+        try {
             mDispatcherPointer = nativeDispatcherNew(mUwbMultichipData.getChipIds().toArray());
             for (String chipId : mUwbMultichipData.getChipIds()) {
                 deviceInfoResponse = nativeDoInitialize(chipId);
@@ -149,6 +194,10 @@ public class NativeUwbManager {
                 chipIdToDeviceInfoResponseMap.put(chipId, deviceInfoResponse);
             }
             nativeSetLogMode(mUciLogModeStore.getMode());
+            nativeSetRangeDataNtfBatchSize(
+                    mUwbInjector.getDeviceConfigFacade().getRangeDataNtfBatchSize());
+        } finally {
+            mNativeLock.writeLock().unlock();
         }
         return chipIdToDeviceInfoResponseMap;
     }
@@ -159,13 +208,16 @@ public class NativeUwbManager {
      * @return : If this returns true, UWB is off
      */
     public boolean doDeinitialize() {
-        synchronized (mNativeLock) {
+        mNativeLock.writeLock().lock();
+        try {
             for (String chipId : mUwbMultichipData.getChipIds()) {
                 nativeDoDeinitialize(chipId);
             }
 
             nativeDispatcherDestroy();
             mDispatcherPointer = 0L;
+        } finally {
+            mNativeLock.writeLock().unlock();
         }
         return true;
     }
@@ -185,7 +237,7 @@ public class NativeUwbManager {
      * Retrieves power related stats
      */
     public UwbPowerStats getPowerStats(String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeGetPowerStats(chipId);
         }
     }
@@ -201,7 +253,7 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte initSession(int sessionId, byte sessionType, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSessionInit(sessionId, sessionType, chipId);
         }
     }
@@ -214,7 +266,7 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte deInitSession(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSessionDeInit(sessionId, chipId);
         }
     }
@@ -227,7 +279,7 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte deviceReset(byte resetConfig, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeDeviceReset(resetConfig, chipId);
         }
     }
@@ -239,7 +291,7 @@ public class NativeUwbManager {
      * @return : Number of UWB sessions present in the UWBS.
      */
     public byte getSessionCount(String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeGetSessionCount(chipId);
         }
     }
@@ -252,7 +304,7 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Session State
      */
     public byte getSessionState(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeGetSessionState(sessionId, chipId);
         }
     }
@@ -265,7 +317,7 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte startRanging(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeRangingStart(sessionId, chipId);
         }
     }
@@ -278,7 +330,7 @@ public class NativeUwbManager {
      * @return : {@link UwbUciConstants}  Status code
      */
     public byte stopRanging(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeRangingStop(sessionId, chipId);
         }
     }
@@ -294,7 +346,7 @@ public class NativeUwbManager {
      */
     public UwbConfigStatusData setAppConfigurations(int sessionId, int noOfParams,
             int appConfigParamLen, byte[] appConfigParams, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSetAppConfigurations(sessionId, noOfParams, appConfigParamLen,
                     appConfigParams, chipId);
         }
@@ -311,7 +363,7 @@ public class NativeUwbManager {
      */
     public UwbConfigStatusData setRadarAppConfigurations(int sessionId, int noOfParams,
             int appConfigParamLen, byte[] appConfigParams, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSetRadarAppConfigurations(sessionId, noOfParams, appConfigParamLen,
                     appConfigParams, chipId);
         }
@@ -328,7 +380,7 @@ public class NativeUwbManager {
      */
     public UwbTlvData getAppConfigurations(int sessionId, int noOfParams, int appConfigParamLen,
             byte[] appConfigIds, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeGetAppConfigurations(sessionId, noOfParams, appConfigParamLen,
                     appConfigIds, chipId);
         }
@@ -341,7 +393,7 @@ public class NativeUwbManager {
      * @return :  {@link UwbTlvData} : All tlvs that are to be decoded
      */
     public UwbTlvData getCapsInfo(String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeGetCapsInfo(chipId);
         }
     }
@@ -365,7 +417,7 @@ public class NativeUwbManager {
     public byte controllerMulticastListUpdate(int sessionId, int action, int noOfControlee,
             byte[] addresses, int[] subSessionIds, byte[] subSessionKeyList,
             String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeControllerMulticastListUpdate(sessionId, (byte) action,
                     (byte) noOfControlee, addresses, subSessionIds, subSessionKeyList, chipId);
         }
@@ -379,7 +431,8 @@ public class NativeUwbManager {
     public byte setCountryCode(byte[] countryCode) {
         Log.i(TAG, "setCountryCode: " + new String(countryCode));
 
-        synchronized (mNativeLock) {
+        mNativeLock.writeLock().lock();
+        try {
             for (String chipId : mUwbMultichipData.getChipIds()) {
                 byte status = nativeSetCountryCode(countryCode, chipId);
                 if (status != UwbUciConstants.STATUS_CODE_OK) {
@@ -387,6 +440,8 @@ public class NativeUwbManager {
                 }
             }
             return UwbUciConstants.STATUS_CODE_OK;
+        } finally {
+            mNativeLock.writeLock().unlock();
         }
     }
 
@@ -397,15 +452,36 @@ public class NativeUwbManager {
      * @return true if the log mode is set successfully, false otherwise.
      */
     public boolean setLogMode(String logModeStr) {
-        synchronized (mNativeLock) {
+        mNativeLock.writeLock().lock();
+        try {
             return nativeSetLogMode(mUciLogModeStore.getMode());
+        } finally {
+            mNativeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the maximum number of range data notifications the native layer delivers per upcall.
+     * This is a no-op while UWB is disabled, {@link #doInitialize()} applies the current size.
+     *
+     * @return true if the batch size is set successfully, false otherwise.
+     */
+    public boolean setRangeDataNtfBatchSize(int batchSize) {
+        mNativeLock.writeLock().lock();
+        try {
+            if (mDispatcherPointer == 0L) {
+                return false;
+            }
+            return nativeSetRangeDataNtfBatchSize(batchSize);
+        } finally {
+            mNativeLock.writeLock().unlock();
         }
     }
 
     @NonNull
     public UwbVendorUciResponse sendRawVendorCmd(int mt, int gid, int oid, byte[] payload,
             String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSendRawVendorCmd(mt, gid, oid, payload, chipId);
         }
     }
@@ -424,7 +500,7 @@ public class NativeUwbManager {
      */
     public byte sendData(
             int sessionId, byte[] address, short sequenceNum, byte[] appData, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSendData(sessionId, address, sequenceNum, appData, chipId);
         }
     }
@@ -444,7 +520,7 @@ public class NativeUwbManager {
     public byte setDataTransferPhaseConfig(int sessionId, byte dtpcmRepetition,
             byte dataTransferControl, byte dtpmlSize, byte[] macAddress, byte[] slotBitmap,
             String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSessionDataTransferPhaseConfig(sessionId, dtpcmRepetition,
                 dataTransferControl, dtpmlSize, macAddress, slotBitmap, chipId);
         }
@@ -471,7 +547,7 @@ public class NativeUwbManager {
      */
     public DtTagUpdateRangingRoundsStatus sessionUpdateDtTagRangingRounds(int sessionId,
             int noOfRangingRounds, byte[] rangingRoundIndexes, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSessionUpdateDtTagRangingRounds(sessionId, noOfRangingRounds,
                     rangingRoundIndexes, chipId);
         }
@@ -485,7 +561,7 @@ public class NativeUwbManager {
      * @return : Max application data size that can be sent by UWBS.
      */
     public int queryMaxDataSizeBytes(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeQueryDataSize(sessionId, chipId);
         }
     }
@@ -496,7 +572,7 @@ public class NativeUwbManager {
      * @return :  uwb device timestamp
      */
     public long queryUwbsTimestamp(String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeQueryUwbTimestamp(chipId);
         }
     }
@@ -509,7 +585,7 @@ public class NativeUwbManager {
      * @return : session token generated for the session.
      */
     public int getSessionToken(int sessionId, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeGetSessionToken(sessionId, chipId);
         }
     }
@@ -527,12 +603,41 @@ public class NativeUwbManager {
      */
     public byte setHybridSessionConfiguration(int sessionId, int numberOfPhases, byte[] updateTime,
             byte[] phaseList, String chipId) {
-        synchronized (mNativeLock) {
+        try (ChipLock lock = lockChip(chipId)) {
             return nativeSetHybridSessionConfigurations(sessionId, numberOfPhases, updateTime,
                 phaseList, chipId);
         }
     }
 
+    /**
+     * Acquires the lock serializing the commands sent to the given UWBS, to be released by
+     * closing the returned {@link ChipLock}.
+     */
+    @VisibleForTesting
+    ChipLock lockChip(@Nullable String chipId) {
+        // Commands without a chip id are handled by the default UWBS.
+        String lockId = chipId != null ? chipId : mUwbMultichipData.getDefaultChipId();
+        ChipLock chipLock = mChipLocks.computeIfAbsent(lockId, id -> new ChipLock());
+        return chipLock.acquire();
+    }
+
+    @VisibleForTesting
+    final class ChipLock implements AutoCloseable {
+        private final ReentrantLock mLock = new ReentrantLock();
+
+        ChipLock acquire() {
+            mNativeLock.readLock().lock();
+            mLock.lock();
+            return this;
+        }
+
+        @Override
+        public void close() {
+            mLock.unlock();
+            mNativeLock.readLock().unlock();
+        }
+    }
+
     private native byte nativeSendData(int sessionId, byte[] address,
             short sequenceNum, byte[] appData, String chipId);
 
@@ -587,6 +692,8 @@ public class NativeUwbManager {
 
     private native boolean nativeSetLogMode(String logMode);
 
+    private native boolean nativeSetRangeDataNtfBatchSize(int batchSize);
+
     private native UwbVendorUciResponse nativeSendRawVendorCmd(int mt, int gid, int oid,
             byte[] payload, String chipId);
 
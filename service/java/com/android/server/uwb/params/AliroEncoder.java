@@ -21,6 +21,8 @@ import static com.google.uwb.support.aliro.AliroParams.RANGE_DATA_NTF_CONFIG_ENA
 import static com.google.uwb.support.aliro.AliroParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_EDGE_TRIG;
 import static com.google.uwb.support.aliro.AliroParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG;
 
+import android.annotation.Nullable;
+
 import com.android.server.uwb.UwbInjector;
 import com.android.server.uwb.config.ConfigParam;
 import com.android.server.uwb.data.UwbAliroConstants;
@@ -46,14 +48,16 @@ public class AliroEncoder extends TlvEncoder {
     }
 
     @Override
-    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion) {
+    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion,
+            @Nullable byte[] output) {
         if (param instanceof AliroOpenRangingParams) {
-            return getTlvBufferFromAliroOpenRangingParams(param);
+            return getTlvBufferFromAliroOpenRangingParams(param, output);
         }
         return null;
     }
 
-    private TlvBuffer getTlvBufferFromAliroOpenRangingParams(Params baseParam) {
+    private TlvBuffer getTlvBufferFromAliroOpenRangingParams(Params baseParam,
+            @Nullable byte[] output) {
         AliroOpenRangingParams params = (AliroOpenRangingParams) baseParam;
         int hoppingConfig = params.getHoppingConfigMode();
         int hoppingSequence = params.getHoppingSequence();
@@ -79,7 +83,7 @@ public class AliroEncoder extends TlvEncoder {
                 break;
         }
 
-        TlvBuffer.Builder tlvBufferBuilder = new TlvBuffer.Builder()
+        TlvBuffer.Builder tlvBufferBuilder = newTlvBufferBuilder(output)
                 .putByte(ConfigParam.DEVICE_TYPE,
                         (byte) UwbUciConstants.DEVICE_TYPE_CONTROLLER) // DEVICE_TYPE
                 .putByte(ConfigParam.STS_CONFIG,
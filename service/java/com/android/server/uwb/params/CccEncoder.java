@@ -21,6 +21,8 @@ import static com.google.uwb.support.ccc.CccParams.RANGE_DATA_NTF_CONFIG_ENABLE_
 import static com.google.uwb.support.ccc.CccParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_EDGE_TRIG;
 import static com.google.uwb.support.ccc.CccParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG;
 
+import android.annotation.Nullable;
+
 import com.android.server.uwb.UwbInjector;
 import com.android.server.uwb.config.ConfigParam;
 import com.android.server.uwb.data.UwbCccConstants;
@@ -41,14 +43,16 @@ public class CccEncoder extends TlvEncoder {
     }
 
     @Override
-    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion) {
+    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion,
+            @Nullable byte[] output) {
         if (param instanceof CccOpenRangingParams) {
-            return getTlvBufferFromCccOpenRangingParams(param);
+            return getTlvBufferFromCccOpenRangingParams(param, output);
         }
         return null;
     }
 
-    private TlvBuffer getTlvBufferFromCccOpenRangingParams(Params baseParam) {
+    private TlvBuffer getTlvBufferFromCccOpenRangingParams(Params baseParam,
+            @Nullable byte[] output) {
         CccOpenRangingParams params = (CccOpenRangingParams) baseParam;
         int hoppingConfig = params.getHoppingConfigMode();
         int hoppingSequence = params.getHoppingSequence();
@@ -74,7 +78,7 @@ public class CccEncoder extends TlvEncoder {
                 break;
         }
 
-        TlvBuffer.Builder tlvBufferBuilder = new TlvBuffer.Builder()
+        TlvBuffer.Builder tlvBufferBuilder = newTlvBufferBuilder(output)
                 .putByte(ConfigParam.DEVICE_TYPE,
                         (byte) UwbUciConstants.DEVICE_TYPE_CONTROLLER) // DEVICE_TYPE
                 .putByte(ConfigParam.STS_CONFIG,
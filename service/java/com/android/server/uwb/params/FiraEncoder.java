@@ -21,6 +21,7 @@ import static com.google.uwb.support.fira.FiraParams.RANGE_DATA_NTF_CONFIG_ENABL
 import static com.google.uwb.support.fira.FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_EDGE_TRIG;
 import static com.google.uwb.support.fira.FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_LEVEL_TRIG;
 
+import android.annotation.Nullable;
 import android.uwb.UwbAddress;
 
 import com.android.modules.utils.build.SdkLevel;
@@ -46,18 +47,20 @@ public class FiraEncoder extends TlvEncoder {
     }
 
     @Override
-    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion) {
+    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion,
+            @Nullable byte[] output) {
         // The "protocolVersion" is always expected to be of type "FiraProtocolVersion" here, but
         // in case it's not, we use a backup value of "PROTOCOL_VERSION_1_1".
         FiraProtocolVersion uwbsFiraProtocolVersion =
                 (protocolVersion instanceof FiraProtocolVersion)
                         ? (FiraProtocolVersion) protocolVersion : FiraParams.PROTOCOL_VERSION_1_1;
         if (param instanceof FiraOpenSessionParams) {
-            return getTlvBufferFromFiraOpenSessionParams(param, uwbsFiraProtocolVersion);
+            return getTlvBufferFromFiraOpenSessionParams(
+                    param, uwbsFiraProtocolVersion, output);
         }
 
         if (param instanceof FiraRangingReconfigureParams) {
-            return getTlvBufferFromFiraRangingReconfigureParams(param);
+            return getTlvBufferFromFiraRangingReconfigureParams(param, output);
         }
         return null;
     }
@@ -69,15 +72,15 @@ public class FiraEncoder extends TlvEncoder {
                 || rangeDataNtfConfig == RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_AOA_EDGE_TRIG;
     }
 
-    private TlvBuffer getTlvBufferFromFiraOpenSessionParams(
-            Params baseParam, FiraProtocolVersion uwbsFiraProtocolVersion) {
+    private TlvBuffer getTlvBufferFromFiraOpenSessionParams(Params baseParam,
+            FiraProtocolVersion uwbsFiraProtocolVersion, @Nullable byte[] output) {
         FiraOpenSessionParams params = (FiraOpenSessionParams) baseParam;
         int deviceType = params.getDeviceType();
         int resultReportConfig = getResultReportConfig(params);
         int rangingRoundControl = getRangingRoundControl(params);
         int deviceRole = params.getDeviceRole();
 
-        TlvBuffer.Builder tlvBufferBuilder = new TlvBuffer.Builder()
+        TlvBuffer.Builder tlvBufferBuilder = newTlvBufferBuilder(output)
                 .putByte(ConfigParam.RANGING_ROUND_USAGE, (byte) params.getRangingRoundUsage())
                 .putByte(ConfigParam.STS_CONFIG, (byte) params.getStsConfig())
                 .putByte(ConfigParam.MULTI_NODE_MODE, (byte) params.getMultiNodeMode())
@@ -308,9 +311,10 @@ public class FiraEncoder extends TlvEncoder {
         return buffer.array();
     }
 
-    private TlvBuffer getTlvBufferFromFiraRangingReconfigureParams(Params baseParam) {
+    private TlvBuffer getTlvBufferFromFiraRangingReconfigureParams(Params baseParam,
+            @Nullable byte[] output) {
         FiraRangingReconfigureParams params = (FiraRangingReconfigureParams) baseParam;
-        TlvBuffer.Builder tlvBuilder = new TlvBuffer.Builder();
+        TlvBuffer.Builder tlvBuilder = newTlvBufferBuilder(output);
         Integer blockStrideLength = params.getBlockStrideLength();
         Integer rangeDataNtfConfig = params.getRangeDataNtfConfig();
         Integer rangeDataProximityNear = params.getRangeDataProximityNear();
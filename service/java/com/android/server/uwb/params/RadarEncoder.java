@@ -29,6 +29,8 @@ import static com.android.server.uwb.config.ConfigParam.SAMPLES_PER_SWEEP_KEY;
 import static com.android.server.uwb.config.ConfigParam.SESSION_PRIORITY_KEY;
 import static com.android.server.uwb.config.ConfigParam.SWEEP_OFFSET_KEY;
 
+import android.annotation.Nullable;
+
 import com.google.uwb.support.base.Params;
 import com.google.uwb.support.base.ProtocolVersion;
 import com.google.uwb.support.radar.RadarOpenSessionParams;
@@ -38,18 +40,20 @@ import java.nio.ByteBuffer;
 /** Radar encoder */
 public class RadarEncoder extends TlvEncoder {
     @Override
-    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion) {
+    public TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion,
+            @Nullable byte[] output) {
         if (param instanceof RadarOpenSessionParams) {
-            return getTlvBufferFromRadarOpenSessionParams(param);
+            return getTlvBufferFromRadarOpenSessionParams(param, output);
         }
         return null;
     }
 
-    private TlvBuffer getTlvBufferFromRadarOpenSessionParams(Params baseParam) {
+    private TlvBuffer getTlvBufferFromRadarOpenSessionParams(Params baseParam,
+            @Nullable byte[] output) {
         RadarOpenSessionParams params = (RadarOpenSessionParams) baseParam;
 
         TlvBuffer.Builder tlvBufferBuilder =
-                new TlvBuffer.Builder()
+                newTlvBufferBuilder(output)
                         .putByteArray(
                                 RADAR_TIMING_PARAMS_KEY,
                                 getRadarTimingParams(params)) // RADAR_TIMING_PARAMS
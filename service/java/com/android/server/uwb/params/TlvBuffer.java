@@ -16,9 +16,6 @@
 
 package com.android.server.uwb.params;
 
-import com.android.server.uwb.config.ConfigParam;
-
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 
@@ -28,17 +25,51 @@ import java.util.Arrays;
  */
 public class TlvBuffer {
     private static final String TAG = "TlvBuffer";
-    private static final int MAX_BUFFER_SIZE = 512;
-    private final ByteBuffer mBuffer;
+    public static final int MAX_BUFFER_SIZE = 512;
+
+    private final byte[] mArray;
+    private final int mLength;
     private final int mNoOfParams;
 
     public TlvBuffer(byte[] tlvArray, int noOfParams) {
-        mBuffer = ByteBuffer.wrap(tlvArray);
+        this(tlvArray, tlvArray.length, noOfParams);
+    }
+
+    /**
+     * Wraps the first {@code length} bytes of {@code tlvArray}, without copying it.
+     */
+    public TlvBuffer(byte[] tlvArray, int length, int noOfParams) {
+        if (length < 0 || length > tlvArray.length) {
+            throw new IllegalArgumentException("Invalid TLV length " + length + " for a "
+                    + tlvArray.length + " byte array");
+        }
+        mArray = tlvArray;
+        mLength = length;
         mNoOfParams = noOfParams;
     }
 
+    /**
+     * Returns the encoded TLVs. This is the backing array when it holds nothing else, and an
+     * exact-size copy otherwise.
+     */
     public byte[] getByteArray() {
-        return mBuffer.array();
+        if (mLength == mArray.length) {
+            return mArray;
+        }
+        return Arrays.copyOf(mArray, mLength);
+    }
+
+    /**
+     * Returns the backing array, which may be larger than the TLVs it holds. Only the first
+     * {@link #getLength()} bytes are valid.
+     */
+    public byte[] getArray() {
+        return mArray;
+    }
+
+    /** Returns the number of valid bytes in {@link #getArray()}. */
+    public int getLength() {
+        return mLength;
     }
 
     public int getNoOfParams() {
@@ -46,18 +77,39 @@ public class TlvBuffer {
     }
 
     public static final class Builder {
-        ByteBuffer mBuffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
+        // Whether mArray is the caller's output array, which build() wraps without copying.
+        private final boolean mIsOutput;
+        private byte[] mArray;
+        private int mPosition;
         int mNoOfParams = 0;
         ByteOrder mOrder = ByteOrder.BIG_ENDIAN;
 
+        /**
+         * Creates a builder that encodes into an array of its own. {@link #build()} returns an
+         * exact-size copy.
+         */
+        public Builder() {
+            mArray = new byte[MAX_BUFFER_SIZE];
+            mIsOutput = false;
+        }
+
+        /**
+         * Creates a builder that encodes straight into {@code output}. {@link #build()} wraps
+         * {@code output} without copying it, unless the TLVs outgrow it.
+         */
+        public Builder(byte[] output) {
+            mArray = output;
+            mIsOutput = true;
+        }
+
         public TlvBuffer.Builder putOrder(ByteOrder order) {
             mOrder = order;
             return this;
         }
 
         public TlvBuffer.Builder putByte(int tagType, byte b) {
-            addHeader(tagType, Byte.BYTES);
-            this.mBuffer.put(b);
+            addHeader(tagType, Byte.BYTES, Byte.BYTES);
+            mArray[mPosition++] = b;
             this.mNoOfParams++;
             return this;
         }
@@ -68,15 +120,16 @@ public class TlvBuffer {
         }
 
         public TlvBuffer.Builder putByteArray(int tagType, int length, byte[] bArray) {
-            addHeader(tagType, length);
-            this.mBuffer.put(bArray);
+            addHeader(tagType, length, bArray.length);
+            System.arraycopy(bArray, 0, mArray, mPosition, bArray.length);
+            mPosition += bArray.length;
             this.mNoOfParams++;
             return this;
         }
 
         public TlvBuffer.Builder putShort(int tagType, short data) {
-            addHeader(tagType, Short.BYTES);
-            this.mBuffer.put(TlvUtil.getLeBytes(data));
+            addHeader(tagType, Short.BYTES, Short.BYTES);
+            putLe(data, Short.BYTES);
             this.mNoOfParams++;
             return this;
         }
@@ -87,36 +140,61 @@ public class TlvBuffer {
         }
 
         public TlvBuffer.Builder putShortArray(int tagType, int length, short[] sArray) {
-            addHeader(tagType, length * Short.BYTES);
+            addHeader(tagType, length * Short.BYTES, length * Short.BYTES);
             for (int i = 0; i < length; i++) {
-                this.mBuffer.put(TlvUtil.getLeBytes(sArray[i]));
+                putLe(sArray[i], Short.BYTES);
             }
             this.mNoOfParams++;
             return this;
         }
 
         public TlvBuffer.Builder putInt(int tagType, int data) {
-            addHeader(tagType, Integer.BYTES);
-            this.mBuffer.put(TlvUtil.getLeBytes(data));
+            addHeader(tagType, Integer.BYTES, Integer.BYTES);
+            putLe(data, Integer.BYTES);
             this.mNoOfParams++;
             return this;
         }
 
         public TlvBuffer.Builder putLong(int tagType, long data) {
-            addHeader(tagType, Long.BYTES);
-            this.mBuffer.put(TlvUtil.getLeBytes(data));
+            addHeader(tagType, Long.BYTES, Long.BYTES);
+            putLe(data, Long.BYTES);
             this.mNoOfParams++;
             return this;
         }
 
+        /**
+         * Builds the {@link TlvBuffer}. The builder must not be used afterwards.
+         */
         public TlvBuffer build() {
-            return new TlvBuffer(Arrays.copyOf(this.mBuffer.array(), this.mBuffer.position()),
-                    this.mNoOfParams);
+            if (mIsOutput) {
+                return new TlvBuffer(mArray, mPosition, this.mNoOfParams);
+            }
+            return new TlvBuffer(Arrays.copyOf(mArray, mPosition), this.mNoOfParams);
+        }
+
+        /**
+         * Writes a tag (low byte of {@code tagType}) and {@code length}, and reserves room for
+         * {@code valueSize} bytes of value.
+         */
+        private void addHeader(int tagType, int length, int valueSize) {
+            ensureCapacity(2 + valueSize);
+            mArray[mPosition++] = (byte) tagType;
+            mArray[mPosition++] = (byte) length;
         }
 
-        private void addHeader(int tagType, int length) {
-            mBuffer.put(ConfigParam.getTagBytes(tagType));
-            mBuffer.put((byte) length);
+        private void putLe(long data, int size) {
+            for (int i = 0; i < size; i++) {
+                mArray[mPosition++] = (byte) (data >> (8 * i));
+            }
+        }
+
+        private void ensureCapacity(int size) {
+            int required = mPosition + size;
+            if (required <= mArray.length) {
+                return;
+            }
+            mArray = Arrays.copyOf(mArray,
+                    Math.max(required, Math.max(mArray.length * 2, MAX_BUFFER_SIZE)));
         }
     }
 }
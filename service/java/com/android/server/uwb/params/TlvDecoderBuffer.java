@@ -16,32 +16,36 @@
 
 package com.android.server.uwb.params;
 
-import android.annotation.Nullable;
-import android.util.ArrayMap;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
-import com.android.server.uwb.config.ConfigParam;
 import com.android.server.uwb.util.UwbUtil;
 
-import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 
 /***
  * This assumes little endian data and 1 byte tags. This is intended for handling UCI interface
  * data.
+ *
+ * <p>Parsing doesn't copy the values; it records where each tag's value lies in the original
+ * array, and the getters read from there.
  * @see com.android.server.uwb.secure.iso7816.TlvParser
  */
 public class TlvDecoderBuffer {
     private static final String TAG = "TlvDecoderBuffer";
-    private final ByteBuffer mBuffer;
+    private static final int NUM_TAGS = 256;
+    private static final int TAG_NOT_PRESENT = -1;
+
+    private final byte[] mArray;
     private final int mNumParams;
-    private final Map<Byte, Tlv> mTlvs = new ArrayMap<>();
+    // Offset and length of the value of each tag in mArray, indexed by tag.
+    private final int[] mValueOffsets = new int[NUM_TAGS];
+    private final int[] mValueLengths = new int[NUM_TAGS];
+    private int mNumTlvs;
 
     @VisibleForTesting
     public static class Tlv {
@@ -79,13 +83,14 @@ public class TlvDecoderBuffer {
     }
 
     public TlvDecoderBuffer(byte[] tlvArray, int noOfParams) {
-        mBuffer = ByteBuffer.wrap(tlvArray);
+        mArray = tlvArray;
         mNumParams = noOfParams;
+        Arrays.fill(mValueOffsets, TAG_NOT_PRESENT);
     }
 
     @VisibleForTesting
     public byte[] getByteArray() {
-        return mBuffer.array();
+        return mArray;
     }
 
     @VisibleForTesting
@@ -95,105 +100,100 @@ public class TlvDecoderBuffer {
 
     @VisibleForTesting
     public Collection<Tlv> getTlvs() {
-        return mTlvs.values();
+        List<Tlv> tlvs = new ArrayList<>(mNumTlvs);
+        for (int tag = 0; tag < NUM_TAGS; tag++) {
+            int offset = mValueOffsets[tag];
+            if (offset != TAG_NOT_PRESENT) {
+                int length = mValueLengths[tag];
+                tlvs.add(new Tlv((byte) tag, (byte) length,
+                        Arrays.copyOfRange(mArray, offset, offset + length)));
+            }
+        }
+        return tlvs;
     }
 
     public boolean parse() {
-        if (mBuffer.capacity() == 0) return false;
-        while (mBuffer.hasRemaining()) {
-            try {
-                byte tagType = mBuffer.get();
-                byte length = mBuffer.get();
-                byte[] value = new byte[length];
-                mBuffer.get(value);
-                Log.i(TAG, "Parsed TLV: " + new Tlv(tagType, length, value));
-                mTlvs.put(tagType, new Tlv(tagType, length, value));
-            } catch (BufferUnderflowException e) {
-                Log.e(TAG, "Failed to parse buffer at position: " + mBuffer.position(), e);
+        if (mArray.length == 0) return false;
+        Arrays.fill(mValueOffsets, TAG_NOT_PRESENT);
+        mNumTlvs = 0;
+        boolean verbose = Log.isLoggable(TAG, Log.VERBOSE);
+        int position = 0;
+        while (position < mArray.length) {
+            if (position + 2 > mArray.length) {
+                Log.e(TAG, "Failed to parse buffer at position: " + position);
+                return false;
+            }
+            int tag = mArray[position] & 0xFF;
+            int length = mArray[position + 1] & 0xFF;
+            int offset = position + 2;
+            if (offset + length > mArray.length) {
+                Log.e(TAG, "Failed to parse buffer at position: " + offset);
                 return false;
             }
+            if (mValueOffsets[tag] == TAG_NOT_PRESENT) {
+                mNumTlvs++;
+            }
+            mValueOffsets[tag] = offset;
+            mValueLengths[tag] = length;
+            if (verbose) {
+                Log.v(TAG, "Parsed TLV: tagType: " + tag + ", length: " + length + ", value: "
+                        + UwbUtil.toHexString(Arrays.copyOfRange(mArray, offset, offset + length)));
+            }
+            position = offset + length;
         }
-        if (mNumParams != mTlvs.size()) {
-            Log.e(TAG, "Num TLVs parsed does not equal the num params, tlvs: " + mTlvs.size()
+        if (mNumParams != mNumTlvs) {
+            Log.e(TAG, "Num TLVs parsed does not equal the num params, tlvs: " + mNumTlvs
                     + ", num params: " + mNumParams);
             return false;
         }
         return true;
     }
 
-    @Nullable
-    private Tlv getTlv(int tagType) {
-        byte[] tagTypeByte = ConfigParam.getTagBytes(tagType);
-        if (tagTypeByte.length > 1) {
-            throw new IllegalArgumentException("Invalid tagType: " + Arrays.toString(tagTypeByte));
-        }
-        Tlv tlv = mTlvs.get(tagTypeByte[0]);
-        if (tlv == null) {
+    /**
+     * Gets the offset of the value of a tag in the backing array, checking that it has the
+     * expected length.
+     */
+    private int getValueOffset(int tagType, int expectedLength, String typeName) {
+        // Only the lowest byte of the tag type is used, as tags are 1 byte long.
+        int tag = tagType & 0xFF;
+        int offset = mValueOffsets[tag];
+        if (offset == TAG_NOT_PRESENT) {
             throw new IllegalArgumentException("Tag type: " + tagType + " not present");
         }
-        return tlv;
+        if (expectedLength >= 0 && mValueLengths[tag] != expectedLength) {
+            throw new IllegalArgumentException("Mismatch in value type, expected " + typeName
+                    + " found len: " + mValueLengths[tag]);
+        }
+        return offset;
     }
 
     public Byte getByte(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Byte.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value type, expected byte found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).get();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return mArray[getValueOffset(tagType, Byte.BYTES, "byte")];
     }
 
     public Short getShort(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Short.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value type, expected short found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).order(ByteOrder.LITTLE_ENDIAN).getShort();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        int offset = getValueOffset(tagType, Short.BYTES, "short");
+        return (short) ((mArray[offset] & 0xFF) | (mArray[offset + 1] << 8));
     }
 
     public Integer getInt(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Integer.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value type, expected int found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).order(ByteOrder.LITTLE_ENDIAN).getInt();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return readInt(getValueOffset(tagType, Integer.BYTES, "int"));
     }
 
     public Long getLong(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        if (tlv.length != Long.BYTES) {
-            throw new IllegalArgumentException(
-                    "Mismatch in value long, expected int found len: " + tlv.length);
-        }
-        try {
-            return ByteBuffer.wrap(tlv.value).order(ByteOrder.LITTLE_ENDIAN).getLong();
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        int offset = getValueOffset(tagType, Long.BYTES, "long");
+        return (readInt(offset) & 0xFFFFFFFFL) | ((long) readInt(offset + Integer.BYTES) << 32);
     }
 
     public byte[] getByteArray(int tagType) {
-        Tlv tlv = getTlv(tagType);
-        byte[] value = new byte[tlv.length];
-        try {
-            ByteBuffer.wrap(tlv.value).get(value);
-            return value;
-        } catch (BufferUnderflowException e) {
-            throw new IllegalArgumentException(e);
-        }
+        int offset = getValueOffset(tagType, -1, null);
+        return Arrays.copyOfRange(mArray, offset, offset + mValueLengths[tagType & 0xFF]);
+    }
+
+    private int readInt(int offset) {
+        return (mArray[offset] & 0xFF)
+                | (mArray[offset + 1] & 0xFF) << 8
+                | (mArray[offset + 2] & 0xFF) << 16
+                | (mArray[offset + 3] & 0xFF) << 24;
     }
 }
@@ -16,6 +16,8 @@
 
 package com.android.server.uwb.params;
 
+import android.annotation.Nullable;
+
 import com.android.server.uwb.UwbInjector;
 
 import com.google.uwb.support.aliro.AliroParams;
@@ -48,5 +50,23 @@ public abstract class TlvEncoder {
     /**
      * Convert the given {@code Params} into a TLV representation (that can be sent to the UWBS).
      */
-    public abstract TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion);
+    public final TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion) {
+        return getTlvBuffer(param, protocolVersion, null);
+    }
+
+    /**
+     * Same as {@link #getTlvBuffer(Params, ProtocolVersion)}, but encodes straight into
+     * {@code output} when it is large enough, instead of allocating the result. Only the first
+     * {@link TlvBuffer#getLength()} bytes of {@link TlvBuffer#getArray()} are valid.
+     */
+    public abstract TlvBuffer getTlvBuffer(Params param, ProtocolVersion protocolVersion,
+            @Nullable byte[] output);
+
+    /**
+     * Creates the builder for the TLVs returned by {@link #getTlvBuffer}, encoding into
+     * {@code output} if the caller provided one.
+     */
+    protected static TlvBuffer.Builder newTlvBufferBuilder(@Nullable byte[] output) {
+        return output == null ? new TlvBuffer.Builder() : new TlvBuffer.Builder(output);
+    }
 }
@@ -170,6 +170,8 @@ public class PacsControleeSession extends RangingSessionController {
                         // TODO: Transport server supports auto assigning secid.
                         /*secid placeholder*/ 2,
                         mDiscoveryInfo,
+                        mUwbInjector.getDeviceConfigFacade()
+                                .getFiraConnectorMaxMessageBufferSize(),
                         mServerCallback);
         sendMessage(TRANSPORT_STARTED);
     }
@@ -16,6 +16,7 @@
 
 package com.android.server.uwb.pm;
 
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanSettings;
 import android.content.AttributionSource;
@@ -195,7 +196,8 @@ public class PacsControllerSession extends RangingSessionController {
                         mControllerSessionCallback,
                         getRunningProfileSessionInfo(),
                         mTransportClientProvider,
-                        /* isController= */ true);
+                        /* isController= */ true,
+                        mUwbInjector.getSecureSessionCache());
     }
 
     @Override
@@ -238,11 +240,34 @@ public class PacsControllerSession extends RangingSessionController {
         UwbCapability uwbCapability =
                 UwbCapability.fromFiRaSpecificationParam(firaSpecificationParams);
 
-        return new RunningProfileSessionInfo.Builder(uwbCapability,
-                mSessionInfo.mServiceProfileInfo.getServiceAdfOid().get())
-                .setSharedPrimarySessionIdAndSessionKeyInfo(
-                        mSessionInfo.getSessionId(), mSessionInfo.getSharedSessionKeyInfo())
-                .build();
+        RunningProfileSessionInfo.Builder builder =
+                new RunningProfileSessionInfo.Builder(uwbCapability,
+                        mSessionInfo.mServiceProfileInfo.getServiceAdfOid().get())
+                        .setSharedPrimarySessionIdAndSessionKeyInfo(
+                                mSessionInfo.getSessionId(),
+                                mSessionInfo.getSharedSessionKeyInfo());
+        getPeerIdentity().ifPresent(builder::setPeerIdentity);
+        return builder.build();
+    }
+
+    /**
+     * Gets the identity address of the discovered device if it is bonded. The advertised address
+     * may be a resolvable private address, which changes over time and can be spoofed.
+     */
+    private Optional<String> getPeerIdentity() {
+        if (mDiscoveryInfo == null || mDiscoveryInfo.transportClientInfo.isEmpty()) {
+            return Optional.empty();
+        }
+        BluetoothDevice device = mDiscoveryInfo.transportClientInfo.get().scanResult.getDevice();
+        try {
+            if (device.getBondState() != BluetoothDevice.BOND_BONDED) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(device.getIdentityAddress());
+        } catch (SecurityException e) {
+            Log.w(TAG, "Identity of the peer is not available: " + e);
+            return Optional.empty();
+        }
     }
 
     /** Pacs profile controller implementation of SecureSession.Callback. */
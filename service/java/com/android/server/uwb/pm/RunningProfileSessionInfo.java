@@ -53,6 +53,12 @@ public class RunningProfileSessionInfo {
     /** The secure blob can be loaded into the FiRa applet. */
     @NonNull
     public final Optional<byte[]> secureBlob;
+    /**
+     * The stable identity of the remote device, e.g. the identity address of a bonded Bluetooth
+     * device. Only set when the identity is authenticated, it keys the cached peer information.
+     */
+    @NonNull
+    public final Optional<String> peerIdentity;
 
     private RunningProfileSessionInfo(
             Optional<ControleeInfo> controleeInfo,
@@ -61,7 +67,8 @@ public class RunningProfileSessionInfo {
             Optional<List<ObjectIdentifier>> selectableOidsOfResponder,
             Optional<Integer> sharedPrimarySessionId,
             Optional<byte[]> sharedPrimarySessionKeyInfo,
-            Optional<byte[]> secureBlob) {
+            Optional<byte[]> secureBlob,
+            Optional<String> peerIdentity) {
         this.controleeInfo = controleeInfo;
         this.uwbCapability = uwbCapability;
         this.oidOfProvisionedAdf = oidOfProvisionedAdf;
@@ -69,6 +76,7 @@ public class RunningProfileSessionInfo {
         this.sharedPrimarySessionId = sharedPrimarySessionId;
         this.sharedPrimarySessionKeyInfo = sharedPrimarySessionKeyInfo;
         this.secureBlob = secureBlob;
+        this.peerIdentity = peerIdentity;
     }
 
     /** Builder for the {@link RunningProfileSessionInfo} */
@@ -80,6 +88,7 @@ public class RunningProfileSessionInfo {
         private Optional<Integer> mSharedPrimarySessionId = Optional.empty();
         private Optional<byte[]> mSecureBlob = Optional.empty();
         private Optional<byte[]> mSharedPrimarySessionKeyInfo = Optional.empty();
+        private Optional<String> mPeerIdentity = Optional.empty();
 
         /** The constructor {@link RunningProfileSessionInfo.Builder} */
         public Builder(@NonNull UwbCapability uwbCapability,
@@ -120,6 +129,13 @@ public class RunningProfileSessionInfo {
             return this;
         }
 
+        /** Sets the authenticated identity of the remote device, stable across sessions. */
+        @NonNull
+        public Builder setPeerIdentity(@NonNull String peerIdentity) {
+            mPeerIdentity = Optional.of(peerIdentity);
+            return this;
+        }
+
         /** Builds the instance of {@link RunningProfileSessionInfo} */
         @NonNull
         public RunningProfileSessionInfo build() {
@@ -130,7 +146,8 @@ public class RunningProfileSessionInfo {
                     mSelectableOidsOfResponder,
                     mSharedPrimarySessionId,
                     mSharedPrimarySessionKeyInfo,
-                    mSecureBlob);
+                    mSecureBlob,
+                    mPeerIdentity);
         }
     }
 }
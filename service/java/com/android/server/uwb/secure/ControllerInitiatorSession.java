@@ -23,6 +23,7 @@ import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.server.uwb.pm.RunningProfileSessionInfo;
 import com.android.server.uwb.secure.csml.ControleeInfo;
@@ -42,13 +43,32 @@ import java.util.Optional;
 public class ControllerInitiatorSession extends InitiatorSession {
     private static final String LOG_TAG = "ControllerInitiator";
 
+    @Nullable
+    private final SecureSessionCache mSecureSessionCache;
+    // ControleeInfo the session data was generated from.
+    @Nullable
+    private ControleeInfo mControleeInfo;
+    // The session data was generated from the cached ControleeInfo of the peer.
+    private boolean mIsCachedControleeInfoUsed = false;
+
     public ControllerInitiatorSession(
             @NonNull Looper workLooper,
             @NonNull FiRaSecureChannel fiRaSecureChannel,
             @NonNull Callback sessionCallback,
             @NonNull RunningProfileSessionInfo runningProfileSessionInfo) {
+        this(workLooper, fiRaSecureChannel, sessionCallback, runningProfileSessionInfo,
+                /* secureSessionCache= */ null);
+    }
+
+    public ControllerInitiatorSession(
+            @NonNull Looper workLooper,
+            @NonNull FiRaSecureChannel fiRaSecureChannel,
+            @NonNull Callback sessionCallback,
+            @NonNull RunningProfileSessionInfo runningProfileSessionInfo,
+            @Nullable SecureSessionCache secureSessionCache) {
         super(workLooper, fiRaSecureChannel, sessionCallback, runningProfileSessionInfo);
         mIsController = true;
+        mSecureSessionCache = secureSessionCache;
     }
 
     private void sendGetControleeInfoCommand() {
@@ -58,17 +78,78 @@ public class ControllerInitiatorSession extends InitiatorSession {
                 getControleeInfoCommand.getCommandApdu().getEncoded());
     }
 
+    private void sendPutSessionDataCommand(@NonNull ControleeInfo controleeInfo) {
+        mSessionData = CsmlUtil.generateSessionData(
+                mRunningProfileSessionInfo.uwbCapability,
+                controleeInfo,
+                mRunningProfileSessionInfo.sharedPrimarySessionId,
+                mRunningProfileSessionInfo.sharedPrimarySessionKeyInfo,
+                mUniqueSessionId.get(),
+                !mIsDefaultUniqueSessionId);
+        mControleeInfo = controleeInfo;
+
+        PutDoCommand putSessionDataCommand = PutDoCommand.build(
+                CsmlUtil.constructGetOrPutDoTlv(
+                        new TlvDatum(CsmlUtil.SESSION_DATA_DO_TAG, mSessionData.toBytes())));
+        tunnelData(MSG_ID_PUT_SESSION_DATA,
+                putSessionDataCommand.getCommandApdu().getEncoded());
+    }
+
     @Override
     protected void handleFiRaSecureChannelEstablished() {
+        Optional<ControleeInfo> cachedControleeInfo = getCachedControleeInfo();
+        if (cachedControleeInfo.isPresent()) {
+            // the peer ranged recently, skip asking for its controlee info again.
+            logd("use the cached controlee info of the peer.");
+            try {
+                sendPutSessionDataCommand(cachedControleeInfo.get());
+                mIsCachedControleeInfoUsed = true;
+                return;
+            } catch (IllegalStateException e) {
+                logw("cached controlee info is not usable: " + e);
+                removeCachedControleeInfo();
+            }
+        }
         sendGetControleeInfoCommand();
     }
 
+    @NonNull
+    private Optional<ControleeInfo> getCachedControleeInfo() {
+        if (mSecureSessionCache == null || mRunningProfileSessionInfo.peerIdentity.isEmpty()) {
+            return Optional.empty();
+        }
+        return mSecureSessionCache.getControleeInfo(
+                mRunningProfileSessionInfo.peerIdentity.get(),
+                mRunningProfileSessionInfo.oidOfProvisionedAdf);
+    }
+
+    private void cacheControleeInfo() {
+        if (mSecureSessionCache == null || mRunningProfileSessionInfo.peerIdentity.isEmpty()
+                || mControleeInfo == null) {
+            return;
+        }
+        mSecureSessionCache.putControleeInfo(
+                mRunningProfileSessionInfo.peerIdentity.get(),
+                mRunningProfileSessionInfo.oidOfProvisionedAdf,
+                mControleeInfo);
+    }
+
+    private void removeCachedControleeInfo() {
+        if (mSecureSessionCache == null || mRunningProfileSessionInfo.peerIdentity.isEmpty()) {
+            return;
+        }
+        mSecureSessionCache.remove(
+                mRunningProfileSessionInfo.peerIdentity.get(),
+                mRunningProfileSessionInfo.oidOfProvisionedAdf);
+    }
+
     @Override
     protected void handleTunnelDataFailure(int msgId, @NonNull TunnelDataFailReason failReason) {
         switch (msgId) {
             case MSG_ID_GET_CONTROLEE_INFO:
                 // fall through
             case MSG_ID_PUT_SESSION_DATA:
+                removeCachedControleeInfo();
                 // simply abort the session.
                 logw(
                         "terminate session as tunnel data was failed: "
@@ -111,19 +192,7 @@ public class ControllerInitiatorSession extends InitiatorSession {
             }
             ControleeInfo controleeInfo = ControleeInfo.fromBytes(outboundData.data);
 
-            mSessionData = CsmlUtil.generateSessionData(
-                    mRunningProfileSessionInfo.uwbCapability,
-                    controleeInfo,
-                    mRunningProfileSessionInfo.sharedPrimarySessionId,
-                    mRunningProfileSessionInfo.sharedPrimarySessionKeyInfo,
-                    mUniqueSessionId.get(),
-                    !mIsDefaultUniqueSessionId);
-
-            PutDoCommand putSessionDataCommand = PutDoCommand.build(
-                    CsmlUtil.constructGetOrPutDoTlv(
-                            new TlvDatum(CsmlUtil.SESSION_DATA_DO_TAG, mSessionData.toBytes())));
-            tunnelData(MSG_ID_PUT_SESSION_DATA,
-                    putSessionDataCommand.getCommandApdu().getEncoded());
+            sendPutSessionDataCommand(controleeInfo);
         } catch (IllegalStateException e) {
             logw("unexpected response for getControleeInfo" + e);
             terminateSession();
@@ -140,10 +209,19 @@ public class ControllerInitiatorSession extends InitiatorSession {
                         StatusWord.fromInt(DataTypeConversionUtil.arbitraryByteArrayToI32(
                                 outboundData.get().data))))) {
             logw("unexpected response for tunnel putSessionData.");
+            removeCachedControleeInfo();
+            if (mIsCachedControleeInfoUsed) {
+                // the cached controlee info may be outdated, ask the peer for it.
+                mIsCachedControleeInfoUsed = false;
+                sendGetControleeInfoCommand();
+                return true;
+            }
             terminateSession();
             mSessionCallback.onSessionAborted();
             return true;
         }
+        // the peer accepted the session data, its controlee info can be reused next time.
+        cacheControleeInfo();
         DispatchResponse.RdsAvailableNotification rdsAvailable = null;
         for (DispatchResponse.Notification notification : response.notifications) {
             switch (notification.notificationEventId) {
@@ -51,8 +51,10 @@ import com.android.server.uwb.util.DataTypeConversionUtil;
 import com.android.server.uwb.util.ObjectIdentifier;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Set up the secure channel and handle the Tunnel data request.
@@ -170,21 +172,70 @@ public abstract class FiRaSecureChannel {
                 processRemoteCommandOrResponse(receivedData);
                 break;
             case CMD_CLEAN_UP_TERMINATED_OR_ABORTED_CHANNEL:
-                mDynamicSlotIdentifier.ifPresent((slotId) -> swapOutAdf(slotId));
-
-                if (mSecureElementChannel.closeChannel()) {
-                    mStatus = Status.INITIALIZED;
-                    mSecureChannelCallback.onSeChannelClosed(/*withError=*/ false);
+                if (mDynamicSlotIdentifier.isPresent()) {
+                    swapOutAdf(mDynamicSlotIdentifier.get(), this::closeSeChannel);
                 } else {
-                    logw("error happened on closing SE channel");
-                    mStatus = Status.ABNORMAL;
-                    mSecureChannelCallback.onSeChannelClosed(/*withError=*/ true);
+                    closeSeChannel();
                 }
-
                 break;
         }
     }
 
+    private void closeSeChannel() {
+        if (mSecureElementChannel.closeChannel()) {
+            mStatus = Status.INITIALIZED;
+            mSecureChannelCallback.onSeChannelClosed(/*withError=*/ false);
+        } else {
+            logw("error happened on closing SE channel");
+            mStatus = Status.ABNORMAL;
+            mSecureChannelCallback.onSeChannelClosed(/*withError=*/ true);
+        }
+    }
+
+    /**
+     * Opens the SE channel to the FiRa applet. The retries while the SE is temporarily unavailable
+     * are posted to the work handler instead of blocking it, as other secure sessions share it.
+     *
+     * @param onResponse called on the work handler with the response of the applet selection.
+     * @param onFailure called on the work handler if the communication with the SE failed.
+     */
+    protected final void openSeChannel(
+            @NonNull Consumer<ResponseApdu> onResponse,
+            @NonNull Consumer<IOException> onFailure) {
+        mSecureElementChannel.openChannel(mWorkHandler, toTransmitCallback(onResponse, onFailure));
+    }
+
+    /**
+     * Transmits the command to the FiRa applet, without blocking the work handler as {@link
+     * #openSeChannel(Consumer, Consumer)} does.
+     *
+     * @param onResponse called on the work handler with the Response APDU.
+     * @param onFailure called on the work handler if the communication with the SE failed.
+     */
+    protected final void transmitToApplet(
+            @NonNull FiRaCommand fiRaCommand,
+            @NonNull Consumer<ResponseApdu> onResponse,
+            @NonNull Consumer<IOException> onFailure) {
+        mSecureElementChannel.transmit(
+                fiRaCommand, mWorkHandler, toTransmitCallback(onResponse, onFailure));
+    }
+
+    private static SecureElementChannel.TransmitCallback toTransmitCallback(
+            @NonNull Consumer<ResponseApdu> onResponse,
+            @NonNull Consumer<IOException> onFailure) {
+        return new SecureElementChannel.TransmitCallback() {
+            @Override
+            public void onResponses(@NonNull List<ResponseApdu> responseApdus) {
+                onResponse.accept(responseApdus.get(0));
+            }
+
+            @Override
+            public void onFailure(@NonNull IOException e) {
+                onFailure.accept(e);
+            }
+        };
+    }
+
     protected abstract boolean doOpenSeChannelAfterInit();
 
     /**
@@ -202,44 +253,58 @@ public abstract class FiRaSecureChannel {
      * Swap in the ADF, this is optional, used only when the service profile is using the
      * dynamic slot.
      * @param secureBlob The secure BLOB contains the ADF OID and its encrypted content.
+     * @param onCompleted called on the work handler with whether the ADF was swapped in.
      */
-    protected final boolean swapInAdf(
+    protected final void swapInAdf(
             @NonNull byte[] secureBlob,
             @NonNull ObjectIdentifier adfOid,
-            @NonNull byte[] uwbControleeInfo) {
+            @NonNull byte[] uwbControleeInfo,
+            @NonNull Consumer<Boolean> onCompleted) {
         SwapInAdfCommand swapInAdfCmd =
                 SwapInAdfCommand.build(secureBlob, adfOid, uwbControleeInfo);
-        try {
-            SwapInAdfResponse response =
-                    SwapInAdfResponse.fromResponseApdu(
-                            mSecureElementChannel.transmit(swapInAdfCmd));
-            if (!response.isSuccess() || response.slotIdentifier.isEmpty()) {
-                throw new IllegalStateException(response.statusWord.toString());
-            } else {
-                mDynamicSlotIdentifier = response.slotIdentifier;
-                return true;
-            }
-        } catch (IOException | IllegalStateException e) {
-            logw("error on swapping in ADF: " + e);
-        }
-        return false;
+        transmitToApplet(
+                swapInAdfCmd,
+                responseApdu -> {
+                    try {
+                        SwapInAdfResponse response =
+                                SwapInAdfResponse.fromResponseApdu(responseApdu);
+                        if (!response.isSuccess() || response.slotIdentifier.isEmpty()) {
+                            throw new IllegalStateException(response.statusWord.toString());
+                        }
+                        mDynamicSlotIdentifier = response.slotIdentifier;
+                        onCompleted.accept(true);
+                    } catch (IllegalStateException e) {
+                        logw("error on swapping in ADF: " + e);
+                        onCompleted.accept(false);
+                    }
+                },
+                e -> {
+                    logw("error on swapping in ADF: " + e);
+                    onCompleted.accept(false);
+                });
     }
 
-    private boolean swapOutAdf(@NonNull byte[] slotIdentifier) {
+    private void swapOutAdf(@NonNull byte[] slotIdentifier, @NonNull Runnable onCompleted) {
         SwapOutAdfCommand swapOutAdfCmd = SwapOutAdfCommand.build(slotIdentifier);
-        try {
-            SwapOutAdfResponse response =
-                    SwapOutAdfResponse.fromResponseApdu(
-                            mSecureElementChannel.transmit(swapOutAdfCmd));
-            if (!response.isSuccess()) {
-                throw new IllegalStateException(response.statusWord.toString());
-            }
-            mDynamicSlotIdentifier = Optional.empty();
-        } catch (IOException | IllegalStateException e) {
-            logw("Failed to swap out ADF with exception: " + e);
-            return false;
-        }
-        return true;
+        transmitToApplet(
+                swapOutAdfCmd,
+                responseApdu -> {
+                    try {
+                        SwapOutAdfResponse response =
+                                SwapOutAdfResponse.fromResponseApdu(responseApdu);
+                        if (!response.isSuccess()) {
+                            throw new IllegalStateException(response.statusWord.toString());
+                        }
+                        mDynamicSlotIdentifier = Optional.empty();
+                    } catch (IllegalStateException e) {
+                        logw("Failed to swap out ADF with exception: " + e);
+                    }
+                    onCompleted.run();
+                },
+                e -> {
+                    logw("Failed to swap out ADF with exception: " + e);
+                    onCompleted.run();
+                });
     }
 
     protected boolean preprocessRemoteCommand(@NonNull byte[] data) {
@@ -252,36 +317,44 @@ public abstract class FiRaSecureChannel {
             return;
         }
 
-        try {
-            if (!mSecureElementChannel.isOpened()) {
-                throw new IllegalStateException("the SE is not opened to handle command.");
-            }
-            // otherwise, dispatch to FiRa applet
-            DispatchCommand dispatchCommand = DispatchCommand.build(data);
-            DispatchResponse response =
-                    DispatchResponse.fromResponseApdu(
-                            mSecureElementChannel.transmit(dispatchCommand));
-            if (mStatus == Status.ESTABLISHED) {
-                // send to initiator or responder
-                mSecureChannelCallback.onDispatchResponseAvailable(response);
-            } else {
-                if (!response.isSuccess()) {
-                    throw new IllegalStateException(
-                            "Dispatch Command error: " + response.statusWord);
-                }
-                handleDispatchResponseForSc(response);
-            }
-        } catch (IOException | IllegalStateException e) {
-            logw("Dispatch command failed for " + e);
-            if (mStatus != Status.ESTABLISHED) {
-                mSecureChannelCallback.onSetUpError(SetupError.DISPATCH);
-                ResponseApdu responseApdu = ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU;
-                mWorkHandler.sendMessage(
-                        mWorkHandler.obtainMessage(CMD_SEND_OOB_DATA, responseApdu.toByteArray()));
-            } else {
-                // send the error to initiator or responder.
-                mSecureChannelCallback.onDispatchCommandFailure();
-            }
+        if (!mSecureElementChannel.isOpened()) {
+            onDispatchFailure(new IllegalStateException("the SE is not opened to handle command."));
+            return;
+        }
+        // otherwise, dispatch to FiRa applet
+        DispatchCommand dispatchCommand = DispatchCommand.build(data);
+        transmitToApplet(
+                dispatchCommand,
+                responseApdu -> {
+                    try {
+                        DispatchResponse response = DispatchResponse.fromResponseApdu(responseApdu);
+                        if (mStatus == Status.ESTABLISHED) {
+                            // send to initiator or responder
+                            mSecureChannelCallback.onDispatchResponseAvailable(response);
+                        } else {
+                            if (!response.isSuccess()) {
+                                throw new IllegalStateException(
+                                        "Dispatch Command error: " + response.statusWord);
+                            }
+                            handleDispatchResponseForSc(response);
+                        }
+                    } catch (IllegalStateException e) {
+                        onDispatchFailure(e);
+                    }
+                },
+                this::onDispatchFailure);
+    }
+
+    private void onDispatchFailure(@NonNull Exception e) {
+        logw("Dispatch command failed for " + e);
+        if (mStatus != Status.ESTABLISHED) {
+            mSecureChannelCallback.onSetUpError(SetupError.DISPATCH);
+            ResponseApdu responseApdu = ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU;
+            mWorkHandler.sendMessage(
+                    mWorkHandler.obtainMessage(CMD_SEND_OOB_DATA, responseApdu.toByteArray()));
+        } else {
+            // send the error to initiator or responder.
+            mSecureChannelCallback.onDispatchCommandFailure();
         }
     }
 
@@ -322,11 +395,11 @@ public abstract class FiRaSecureChannel {
                             (DispatchResponse.SecureChannelEstablishedNotification) notification;
                     logd("defaultSessionId from notification: "
                             + eNotification.defaultSessionId);
-                    Optional<Integer> defaultSessionId = Optional.empty();
                     if (eNotification.defaultSessionId.isEmpty()) {
-                        defaultSessionId = readDefaultSessionId();
+                        readDefaultSessionId(mSecureChannelCallback::onEstablished);
+                    } else {
+                        mSecureChannelCallback.onEstablished(Optional.empty());
                     }
-                    mSecureChannelCallback.onEstablished(defaultSessionId);
                     break;
                 case NOTIFICATION_EVENT_ID_SECURE_SESSION_ABORTED:
                     cleanUpTerminatedOrAbortedSession();
@@ -350,26 +423,34 @@ public abstract class FiRaSecureChannel {
         }
     }
 
-    private Optional<Integer> readDefaultSessionId() {
+    private void readDefaultSessionId(@NonNull Consumer<Optional<Integer>> onRead) {
         TlvDatum getSessionIdTlv = CsmlUtil.constructGetSessionIdGetDoTlv();
         GetDoCommand getSessionIdCommand = GetDoCommand.build(getSessionIdTlv);
-        try {
-            ResponseApdu responseApdu =
-                    mSecureElementChannel.transmit(getSessionIdCommand);
-            if (responseApdu != null && responseApdu.getStatusWord() == SW_NO_ERROR.toInt()) {
-                TlvDatum sessionIdTlv = TlvParser.parseOneTlv(responseApdu.getResponseData());
-                if (sessionIdTlv != null
-                        && Objects.equals(sessionIdTlv.tag, CsmlUtil.SESSION_ID_TAG)) {
-                    return Optional.of(
-                            DataTypeConversionUtil.arbitraryByteArrayToI32(sessionIdTlv.value));
-                }
-            } else {
-                throw new IllegalStateException("no valid APDU response.");
-            }
-        } catch (IOException | IllegalStateException e) {
-            logw("error to getSessionId DO.");
-        }
-        return Optional.empty();
+        transmitToApplet(
+                getSessionIdCommand,
+                responseApdu -> {
+                    Optional<Integer> defaultSessionId = Optional.empty();
+                    try {
+                        if (responseApdu.getStatusWord() != SW_NO_ERROR.toInt()) {
+                            throw new IllegalStateException("no valid APDU response.");
+                        }
+                        TlvDatum sessionIdTlv =
+                                TlvParser.parseOneTlv(responseApdu.getResponseData());
+                        if (sessionIdTlv != null
+                                && Objects.equals(sessionIdTlv.tag, CsmlUtil.SESSION_ID_TAG)) {
+                            defaultSessionId = Optional.of(
+                                    DataTypeConversionUtil.arbitraryByteArrayToI32(
+                                            sessionIdTlv.value));
+                        }
+                    } catch (IllegalStateException e) {
+                        logw("error to getSessionId DO.");
+                    }
+                    onRead.accept(defaultSessionId);
+                },
+                e -> {
+                    logw("error to getSessionId DO.");
+                    onRead.accept(Optional.empty());
+                });
     }
 
     boolean isEstablished() {
@@ -399,22 +480,35 @@ public abstract class FiRaSecureChannel {
             @NonNull ExternalRequestCallback externalRequestCallback) {
         mWorkHandler.post(
                 () -> {
-                    try {
-                        if (!mSecureElementChannel.isOpened()) {
-                            throw new IllegalStateException("the OMAPI channel is not opened.");
-                        }
-
-                        ResponseApdu responseApdu = mSecureElementChannel.transmit(commandApdu);
-                        if (responseApdu.getStatusWord() == SW_NO_ERROR.toInt()) {
-                            externalRequestCallback.onSuccess(responseApdu.getResponseData());
-                        } else {
-                            logw("Applet failed to handle the APDU: " + commandApdu);
-                            externalRequestCallback.onFailure();
-                        }
-                    } catch (IOException | IllegalStateException e) {
-                        logw("sendLocalCommandApdu failed as: " + e);
+                    if (!mSecureElementChannel.isOpened()) {
+                        logw("sendLocalCommandApdu failed as the OMAPI channel is not opened.");
                         externalRequestCallback.onFailure();
+                        return;
                     }
+                    // Retries are posted to the work handler, so that the other secure sessions
+                    // sharing it aren't stalled while the SE is temporarily unavailable.
+                    mSecureElementChannel.transmit(
+                            List.of(commandApdu),
+                            mWorkHandler,
+                            new SecureElementChannel.TransmitCallback() {
+                                @Override
+                                public void onResponses(@NonNull List<ResponseApdu> responses) {
+                                    ResponseApdu responseApdu = responses.get(0);
+                                    if (responseApdu.getStatusWord() == SW_NO_ERROR.toInt()) {
+                                        externalRequestCallback.onSuccess(
+                                                responseApdu.getResponseData());
+                                    } else {
+                                        logw("Applet failed to handle the APDU: " + commandApdu);
+                                        externalRequestCallback.onFailure();
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(@NonNull IOException e) {
+                                    logw("sendLocalCommandApdu failed as: " + e);
+                                    externalRequestCallback.onFailure();
+                                }
+                            });
                 });
     }
 
@@ -432,25 +526,33 @@ public abstract class FiRaSecureChannel {
                     // send GetDataDO - terminate session to local.
                     TlvDatum terminateSessionDo = CsmlUtil.constructTerminateSessionGetDoTlv();
                     GetDoCommand getDoCommand = GetDoCommand.build(terminateSessionDo);
-                    try {
-                        GetDoResponse response =
-                                GetDoResponse.fromResponseApdu(
-                                        mSecureElementChannel.transmit(getDoCommand));
-                        if (response.isSuccess()) {
-                            mSecureChannelCallback.onTerminated(/*withError=*/ false);
-                            mStatus = Status.TERMINATED;
-                        } else {
-                            throw new IllegalStateException(
-                                    "Terminate response error: " + response.statusWord);
-                        }
-                    } catch (IOException | IllegalStateException e) {
-                        logw("Error happened on termination locally: " + e);
-                        mStatus = Status.ABNORMAL;
-                        mSecureChannelCallback.onTerminated(/*withError=*/ true);
-                    }
+                    transmitToApplet(
+                            getDoCommand,
+                            responseApdu -> {
+                                try {
+                                    GetDoResponse response =
+                                            GetDoResponse.fromResponseApdu(responseApdu);
+                                    if (!response.isSuccess()) {
+                                        throw new IllegalStateException(
+                                                "Terminate response error: "
+                                                        + response.statusWord);
+                                    }
+                                    mSecureChannelCallback.onTerminated(/*withError=*/ false);
+                                    mStatus = Status.TERMINATED;
+                                } catch (IllegalStateException e) {
+                                    onTerminateLocallyFailure(e);
+                                }
+                            },
+                            this::onTerminateLocallyFailure);
                 });
     }
 
+    private void onTerminateLocallyFailure(@NonNull Exception e) {
+        logw("Error happened on termination locally: " + e);
+        mStatus = Status.ABNORMAL;
+        mSecureChannelCallback.onTerminated(/*withError=*/ true);
+    }
+
     Status getStatus() {
         return mStatus;
     }
@@ -16,6 +16,8 @@
 
 package com.android.server.uwb.secure;
 
+import static com.android.server.uwb.secure.iso7816.StatusWord.SW_NO_ERROR;
+
 import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
@@ -32,7 +34,6 @@ import com.android.server.uwb.secure.csml.TunnelCommand;
 import com.android.server.uwb.secure.csml.TunnelResponse;
 import com.android.server.uwb.util.ObjectIdentifier;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
@@ -56,30 +57,31 @@ class InitiatorSecureChannel extends FiRaSecureChannel {
     protected void handleScMessage(@NonNull Message msg) {
         switch (msg.what) {
             case CMD_OPEN_CHANNEL:
-                if (mSecureElementChannel.openChannel()) {
-                    if (mRunningProfileSessionInfo.secureBlob.isPresent()) {
-                        if (!swapInAdf(
-                                mRunningProfileSessionInfo.secureBlob.get(),
-                                mRunningProfileSessionInfo.oidOfProvisionedAdf,
-                                mRunningProfileSessionInfo.controleeInfo.get().toBytes())) {
-                            mSecureChannelCallback.onSetUpError(SetupError.OPEN_SE_CHANNEL);
-                            return;
-                        }
-                    }
-                    mStatus = Status.CHANNEL_OPENED;
-                } else {
-                    mSecureChannelCallback.onSetUpError(SetupError.OPEN_SE_CHANNEL);
-                    return;
-                }
-                mWorkHandler.sendMessage(mWorkHandler.obtainMessage(CMD_SELECT_ADF));
+                openSeChannel(
+                        responseApdu -> {
+                            if (responseApdu.getStatusWord() != SW_NO_ERROR.toInt()) {
+                                mSecureChannelCallback.onSetUpError(SetupError.OPEN_SE_CHANNEL);
+                            } else if (mRunningProfileSessionInfo.secureBlob.isPresent()) {
+                                swapInAdf(
+                                        mRunningProfileSessionInfo.secureBlob.get(),
+                                        mRunningProfileSessionInfo.oidOfProvisionedAdf,
+                                        mRunningProfileSessionInfo.controleeInfo.get().toBytes(),
+                                        swappedIn -> {
+                                            if (swappedIn) {
+                                                onChannelOpened();
+                                            } else {
+                                                mSecureChannelCallback.onSetUpError(
+                                                        SetupError.OPEN_SE_CHANNEL);
+                                            }
+                                        });
+                            } else {
+                                onChannelOpened();
+                            }
+                        },
+                        e -> mSecureChannelCallback.onSetUpError(SetupError.OPEN_SE_CHANNEL));
                 break;
             case CMD_SELECT_ADF:
-                if (selectAdf(mRunningProfileSessionInfo.oidOfProvisionedAdf)) {
-                    mWorkHandler.sendMessage(mWorkHandler.obtainMessage(CMD_INITIATE_TRANSACTION));
-                    mStatus = Status.ADF_SELECTED;
-                } else {
-                    mSecureChannelCallback.onSetUpError(SetupError.SELECT_ADF);
-                }
+                selectAdf(mRunningProfileSessionInfo.oidOfProvisionedAdf);
                 break;
             case CMD_INITIATE_TRANSACTION:
                 Optional<Integer> uwbSessionId = mRunningProfileSessionInfo.sharedPrimarySessionId;
@@ -92,19 +94,26 @@ class InitiatorSecureChannel extends FiRaSecureChannel {
         }
     }
 
-    private boolean selectAdf(@NonNull ObjectIdentifier adfOid) {
+    private void onChannelOpened() {
+        mStatus = Status.CHANNEL_OPENED;
+        mWorkHandler.sendMessage(mWorkHandler.obtainMessage(CMD_SELECT_ADF));
+    }
+
+    private void selectAdf(@NonNull ObjectIdentifier adfOid) {
         SelectAdfCommand selectAdfCmd = SelectAdfCommand.build(adfOid);
-        try {
-            SelectAdfResponse response =
-                    SelectAdfResponse.fromResponseApdu(
-                            mSecureElementChannel.transmit(selectAdfCmd));
-            if (!response.isSuccess()) {
-                return false;
-            }
-        } catch (IOException e) {
-            return false;
-        }
-        return true;
+        transmitToApplet(
+                selectAdfCmd,
+                responseApdu -> {
+                    SelectAdfResponse response = SelectAdfResponse.fromResponseApdu(responseApdu);
+                    if (response.isSuccess()) {
+                        mWorkHandler.sendMessage(
+                                mWorkHandler.obtainMessage(CMD_INITIATE_TRANSACTION));
+                        mStatus = Status.ADF_SELECTED;
+                    } else {
+                        mSecureChannelCallback.onSetUpError(SetupError.SELECT_ADF);
+                    }
+                },
+                e -> mSecureChannelCallback.onSetUpError(SetupError.SELECT_ADF));
     }
 
     private void execInitiateTransactionCmd(
@@ -117,27 +126,32 @@ class InitiatorSecureChannel extends FiRaSecureChannel {
         } else {
             initiateTransactionCmd = InitiateTransactionCommand.buildForUnicast(adfOids);
         }
-        try {
-            InitiateTransactionResponse response =
-                    InitiateTransactionResponse.fromResponseApdu(
-                            mSecureElementChannel.transmit(initiateTransactionCmd));
-            if (!response.isSuccess()) {
-                throw new IllegalStateException(
-                        "INIT TRANSACTION: CMD error: " + response.statusWord);
-            }
-            // must have outbound data, otherwise the flow is stopped.
-            if (response.outboundDataToRemoteApplet.isPresent()
-                    && !response.outboundDataToRemoteApplet.isEmpty()) {
-                mWorkHandler.sendMessage(
-                        mWorkHandler.obtainMessage(
-                                CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_COMMAND, 0,
-                                response.outboundDataToRemoteApplet.get()));
-            } else {
-                throw new IllegalStateException("No outbound data for InitiateTransaction CMD");
-            }
-        } catch (IOException | IllegalStateException e) {
-            mSecureChannelCallback.onSetUpError(SetupError.INITIATE_TRANSACTION);
-        }
+        transmitToApplet(
+                initiateTransactionCmd,
+                responseApdu -> {
+                    try {
+                        InitiateTransactionResponse response =
+                                InitiateTransactionResponse.fromResponseApdu(responseApdu);
+                        if (!response.isSuccess()) {
+                            throw new IllegalStateException(
+                                    "INIT TRANSACTION: CMD error: " + response.statusWord);
+                        }
+                        // must have outbound data, otherwise the flow is stopped.
+                        if (response.outboundDataToRemoteApplet.isPresent()
+                                && !response.outboundDataToRemoteApplet.isEmpty()) {
+                            mWorkHandler.sendMessage(
+                                    mWorkHandler.obtainMessage(
+                                            CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_COMMAND, 0,
+                                            response.outboundDataToRemoteApplet.get()));
+                        } else {
+                            throw new IllegalStateException(
+                                    "No outbound data for InitiateTransaction CMD");
+                        }
+                    } catch (IllegalStateException e) {
+                        mSecureChannelCallback.onSetUpError(SetupError.INITIATE_TRANSACTION);
+                    }
+                },
+                e -> mSecureChannelCallback.onSetUpError(SetupError.INITIATE_TRANSACTION));
     }
 
     @Override
@@ -151,24 +165,28 @@ class InitiatorSecureChannel extends FiRaSecureChannel {
                     }
 
                     TunnelCommand tunnelCmd = TunnelCommand.build(data);
-                    try {
-                        TunnelResponse response =
-                                TunnelResponse.fromResponseApdu(
-                                        mSecureElementChannel.transmit(tunnelCmd));
-                        if (response.isSuccess() && response.outboundDataOrApdu.isPresent()) {
-                            mWorkHandler.sendMessage(
-                                    mWorkHandler.obtainMessage(
-                                            CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_COMMAND, 0,
-                                            response.outboundDataOrApdu.get()));
-                            externalRequestCallback.onSuccess(new byte[0]);
-                        } else {
-                            throw new IllegalStateException(
-                                    "Tunnel CMD error: " + response.statusWord);
-                        }
-                    } catch (IOException | IllegalStateException e) {
-                        logw("Exception for TUNNEL command: " + e);
-                        externalRequestCallback.onFailure();
-                    }
+                    transmitToApplet(
+                            tunnelCmd,
+                            responseApdu -> {
+                                TunnelResponse response =
+                                        TunnelResponse.fromResponseApdu(responseApdu);
+                                if (response.isSuccess()
+                                        && response.outboundDataOrApdu.isPresent()) {
+                                    mWorkHandler.sendMessage(
+                                            mWorkHandler.obtainMessage(
+                                                    CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_COMMAND,
+                                                    0, response.outboundDataOrApdu.get()));
+                                    externalRequestCallback.onSuccess(new byte[0]);
+                                } else {
+                                    logw("Exception for TUNNEL command: Tunnel CMD error: "
+                                            + response.statusWord);
+                                    externalRequestCallback.onFailure();
+                                }
+                            },
+                            e -> {
+                                logw("Exception for TUNNEL command: " + e);
+                                externalRequestCallback.onFailure();
+                            });
                 });
     }
 
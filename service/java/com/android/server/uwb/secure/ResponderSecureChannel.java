@@ -31,8 +31,6 @@ import com.android.server.uwb.pm.RunningProfileSessionInfo;
 import com.android.server.uwb.secure.iso7816.CommandApdu;
 import com.android.server.uwb.secure.iso7816.ResponseApdu;
 
-import java.io.IOException;
-
 class ResponderSecureChannel extends FiRaSecureChannel {
     private static final String LOG_TAG = "ResponderSecureChannel";
 
@@ -48,36 +46,30 @@ class ResponderSecureChannel extends FiRaSecureChannel {
     protected void handleScMessage(@NonNull Message msg) {
         switch (msg.what) {
             case CMD_OPEN_CHANNEL:
-                try {
-                    ResponseApdu responseApdu = mSecureElementChannel.openChannelWithResponse();
-                    if (responseApdu.getStatusWord() == SW_NO_ERROR.toInt()) {
-                        if (mRunningProfileSessionInfo.secureBlob.isPresent()) {
-                            if (!swapInAdf(
-                                    mRunningProfileSessionInfo.secureBlob.get(),
-                                    mRunningProfileSessionInfo.oidOfProvisionedAdf,
-                                    mRunningProfileSessionInfo.controleeInfo.get().toBytes())) {
-                                mSecureElementChannel.closeChannel();
-                                throw new IllegalStateException("Error on swapping in ADF");
+                openSeChannel(
+                        responseApdu -> {
+                            if (responseApdu.getStatusWord() != SW_NO_ERROR.toInt()) {
+                                onOpenChannelError(new IllegalStateException(
+                                        String.valueOf(responseApdu.getStatusWord())));
+                            } else if (mRunningProfileSessionInfo.secureBlob.isPresent()) {
+                                swapInAdf(
+                                        mRunningProfileSessionInfo.secureBlob.get(),
+                                        mRunningProfileSessionInfo.oidOfProvisionedAdf,
+                                        mRunningProfileSessionInfo.controleeInfo.get().toBytes(),
+                                        swappedIn -> {
+                                            if (swappedIn) {
+                                                onChannelOpened(responseApdu);
+                                            } else {
+                                                mSecureElementChannel.closeChannel();
+                                                onOpenChannelError(new IllegalStateException(
+                                                        "Error on swapping in ADF"));
+                                            }
+                                        });
+                            } else {
+                                onChannelOpened(responseApdu);
                             }
-                        }
-                        mStatus = Status.CHANNEL_OPENED;
-                    } else {
-                        throw new IllegalStateException(
-                                String.valueOf(responseApdu.getStatusWord()));
-                    }
-                    mWorkHandler.sendMessage(
-                            mWorkHandler.obtainMessage(
-                                    CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_RESPONSE, 0,
-                                    responseApdu.toByteArray()));
-                } catch (IOException | IllegalStateException e) {
-                    logw("Error on open channel: " + e);
-                    mSecureChannelCallback.onSetUpError(SetupError.OPEN_SE_CHANNEL);
-                    ResponseApdu responseApdu = ResponseApdu.SW_APPLET_SELECT_FAILED_APDU;
-                    mWorkHandler.sendMessage(
-                            mWorkHandler.obtainMessage(
-                                    CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_RESPONSE, 0,
-                                    responseApdu.toByteArray()));
-                }
+                        },
+                        this::onOpenChannelError);
                 // waiting for next request from the initiator.
                 break;
             default:
@@ -85,6 +77,24 @@ class ResponderSecureChannel extends FiRaSecureChannel {
         }
     }
 
+    private void onChannelOpened(@NonNull ResponseApdu responseApdu) {
+        mStatus = Status.CHANNEL_OPENED;
+        mWorkHandler.sendMessage(
+                mWorkHandler.obtainMessage(
+                        CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_RESPONSE, 0,
+                        responseApdu.toByteArray()));
+    }
+
+    private void onOpenChannelError(@NonNull Exception e) {
+        logw("Error on open channel: " + e);
+        mSecureChannelCallback.onSetUpError(SetupError.OPEN_SE_CHANNEL);
+        ResponseApdu responseApdu = ResponseApdu.SW_APPLET_SELECT_FAILED_APDU;
+        mWorkHandler.sendMessage(
+                mWorkHandler.obtainMessage(
+                        CMD_SEND_OOB_DATA, OOB_MSG_TYPE_APDU_RESPONSE, 0,
+                        responseApdu.toByteArray()));
+    }
+
     @Override
     protected boolean doOpenSeChannelAfterInit() {
         return false;
@@ -19,12 +19,14 @@ package com.android.server.uwb.secure;
 import static com.android.server.uwb.secure.iso7816.StatusWord.SW_NO_ERROR;
 import static com.android.server.uwb.secure.iso7816.StatusWord.SW_NO_SPECIFIC_DIAGNOSTIC;
 
+import android.os.Handler;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.server.uwb.secure.csml.FiRaCommand;
 import com.android.server.uwb.secure.iso7816.CommandApdu;
 import com.android.server.uwb.secure.iso7816.ResponseApdu;
@@ -33,14 +35,18 @@ import com.android.server.uwb.secure.omapi.OmapiConnection;
 import com.android.server.uwb.secure.omapi.OmapiConnection.InitCompletionCallback;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /** Manages the Secure Element and allows communications with the FiRa applet. */
 @WorkerThread
 public class SecureElementChannel {
     private static final String LOG_TAG = "SecureElementChannel";
     private static final int MAX_SE_OPERATION_RETRIES = 3;
-    private static final int DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS = 10;
+    private static final int MIN_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS = 10;
+    private static final int MAX_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS = 80;
 
     private static final StatusWord SW_TEMPORARILY_UNAVAILABLE =
             StatusWord.SW_CONDITIONS_NOT_SATISFIED;
@@ -48,7 +54,16 @@ public class SecureElementChannel {
     private final OmapiConnection mOmapiConnection;
     private final boolean mRemoveDelayBetweenRetriesForTest;
 
-    private boolean mIsOpened = false;
+    // Held for each exchange with the SE, so that the blocking and the non-blocking operations of
+    // the channel never interleave on the OMAPI connection.
+    private final Object mLock = new Object();
+
+    private volatile boolean mIsOpened = false;
+
+    // The non-blocking transmissions of the channel, the first one is in progress and the others
+    // wait for it to complete. They may run on the threads of different handlers.
+    @GuardedBy("mLock")
+    private final ArrayDeque<Transmission> mTransmissions = new ArrayDeque<>();
 
     /**
      * The constructor of the SecureElementChannel.
@@ -97,8 +112,13 @@ public class SecureElementChannel {
     @NonNull
     public ResponseApdu openChannelWithResponse() throws IOException {
         ResponseApdu responseApdu = ResponseApdu.fromStatusWord(SW_TEMPORARILY_UNAVAILABLE);
+        int retryDelayMillis = MIN_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS;
         for (int i = 0; i < MAX_SE_OPERATION_RETRIES; i++) {
-            responseApdu = mOmapiConnection.openChannel();
+            if (i > 0) {
+                threadSleep(retryDelayMillis);
+                retryDelayMillis = nextRetryDelayMillis(retryDelayMillis);
+            }
+            responseApdu = exchangeOpenChannel();
 
             if (!shouldRetryOpenChannel(responseApdu)) {
                 break;
@@ -108,18 +128,33 @@ public class SecureElementChannel {
                     "Open channel failed because SE is temporarily unavailable. "
                             + "Total attempts so far: "
                             + (i + 1));
-
-            threadSleep(DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS);
         }
 
-        if (responseApdu.getStatusWord() == StatusWord.SW_NO_ERROR.toInt()) {
-            mIsOpened = true;
-        } else {
+        if (responseApdu.getStatusWord() != StatusWord.SW_NO_ERROR.toInt()) {
             logw("All open channel attempts failed!");
         }
         return responseApdu;
     }
 
+    /**
+     * Opens the channel to the FiRa applet without blocking the thread of the handler while the SE
+     * is temporarily unavailable, as {@link #transmit(List, Handler, TransmitCallback)} does. The
+     * callback gets the Response APDU of the applet selection.
+     */
+    public void openChannel(@NonNull Handler handler, @NonNull TransmitCallback callback) {
+        enqueue(new OpenChannelTransmission(handler, callback));
+    }
+
+    private ResponseApdu exchangeOpenChannel() throws IOException {
+        synchronized (mLock) {
+            ResponseApdu responseApdu = mOmapiConnection.openChannel();
+            if (responseApdu.getStatusWord() == StatusWord.SW_NO_ERROR.toInt()) {
+                mIsOpened = true;
+            }
+            return responseApdu;
+        }
+    }
+
     /**
      * Checks if current channel is opened or not.
      */
@@ -137,13 +172,15 @@ public class SecureElementChannel {
      * @return
      */
     public boolean closeChannel() {
-        try {
-            mOmapiConnection.closeChannel();
-        } catch (IOException e) {
-            logw("Encountered exception while closing channel" + e);
-            return false;
+        synchronized (mLock) {
+            try {
+                mOmapiConnection.closeChannel();
+            } catch (IOException e) {
+                logw("Encountered exception while closing channel" + e);
+                return false;
+            }
+            mIsOpened = false;
         }
-        mIsOpened = false;
         return true;
     }
 
@@ -165,8 +202,15 @@ public class SecureElementChannel {
         if (!mIsOpened) {
             return responseApdu;
         }
+        int retryDelayMillis = MIN_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS;
         for (int i = 0; i < MAX_SE_OPERATION_RETRIES; i++) {
-            responseApdu = mOmapiConnection.transmit(command);
+            if (i > 0) {
+                threadSleep(retryDelayMillis);
+                retryDelayMillis = nextRetryDelayMillis(retryDelayMillis);
+            }
+            synchronized (mLock) {
+                responseApdu = mOmapiConnection.transmit(command);
+            }
             if (responseApdu.getStatusWord() != SW_TEMPORARILY_UNAVAILABLE.toInt()) {
                 return responseApdu;
             }
@@ -174,12 +218,222 @@ public class SecureElementChannel {
                     "Transmit failed because SE is temporarily unavailable. "
                             + "Total attempts so far: "
                             + (i + 1));
-            threadSleep(DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS);
         }
         logw("All transmit attempts for SE failed!");
         return responseApdu;
     }
 
+    /**
+     * Transmits a sequence of Command APDUs to the FiRa applet, one after the other, while the
+     * channel stays opened.
+     *
+     * @return the Response APDUs in the order of the commands. The sequence stops at the first
+     *     response which isn't SW_NO_ERROR, which is then the last one of the list.
+     */
+    @NonNull
+    public List<ResponseApdu> transmit(@NonNull List<CommandApdu> commands) throws IOException {
+        List<ResponseApdu> responseApdus = new ArrayList<>(commands.size());
+        for (CommandApdu command : commands) {
+            ResponseApdu responseApdu = transmit(command);
+            responseApdus.add(responseApdu);
+            if (responseApdu.getStatusWord() != SW_NO_ERROR.toInt()) {
+                break;
+            }
+        }
+        return responseApdus;
+    }
+
+    /**
+     * Transmits a sequence of Command APDUs to the FiRa applet without blocking the thread of the
+     * handler while the SE is temporarily unavailable: the retries are posted to the handler
+     * instead. Must be called from the thread of the handler, the callback is invoked on it.
+     *
+     * <p>The sequence stops at the first response which isn't SW_NO_ERROR, as {@link
+     * #transmit(List)} does. A sequence transmitted while another one is still in progress on the
+     * channel is only started once the other one completed.
+     */
+    public void transmit(
+            @NonNull List<CommandApdu> commands,
+            @NonNull Handler handler,
+            @NonNull TransmitCallback callback) {
+        enqueue(new CommandTransmission(commands, handler, callback));
+    }
+
+    /**
+     * Transmits a Command APDU defined by the FiRa to the FiRa applet, without blocking the thread
+     * of the handler as {@link #transmit(List, Handler, TransmitCallback)} does.
+     */
+    public void transmit(
+            @NonNull FiRaCommand fiRaCommand,
+            @NonNull Handler handler,
+            @NonNull TransmitCallback callback) {
+        transmit(List.of(fiRaCommand.getCommandApdu()), handler, callback);
+    }
+
+    private void enqueue(Transmission transmission) {
+        boolean idle;
+        synchronized (mLock) {
+            mTransmissions.add(transmission);
+            idle = mTransmissions.size() == 1;
+        }
+        if (idle) {
+            transmission.run();
+        }
+    }
+
+    /** Callback of the non-blocking transmission of Command APDUs. */
+    public interface TransmitCallback {
+        /** Called with the Response APDUs in the order of the commands. */
+        void onResponses(@NonNull List<ResponseApdu> responseApdus);
+
+        /** Called when the communication with the SE failed. */
+        void onFailure(@NonNull IOException e);
+    }
+
+    private abstract class Transmission implements Runnable {
+        private final String mName;
+        private final Handler mHandler;
+        private final TransmitCallback mCallback;
+        private final List<ResponseApdu> mResponseApdus = new ArrayList<>();
+        private int mAttempt = 0;
+
+        // Delay before the next retry, doubled while the SE keeps reporting it is temporarily
+        // unavailable and halved whenever an exchange succeeds on its first attempt.
+        private int mRetryDelayMillis = MIN_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS;
+
+        Transmission(String name, Handler handler, TransmitCallback callback) {
+            mName = name;
+            mHandler = handler;
+            mCallback = callback;
+        }
+
+        /** Gets the number of exchanges with the SE. */
+        abstract int getExchangeCount();
+
+        /** Runs one attempt of the exchange at the index, with mLock held. */
+        @GuardedBy("mLock")
+        abstract ResponseApdu exchange(int index) throws IOException;
+
+        /** Whether the exchange is attempted again after this response. */
+        abstract boolean shouldRetry(ResponseApdu responseApdu);
+
+        @Override
+        public void run() {
+            while (mResponseApdus.size() < getExchangeCount()) {
+                ResponseApdu responseApdu;
+                try {
+                    synchronized (mLock) {
+                        responseApdu = exchange(mResponseApdus.size());
+                    }
+                } catch (IOException e) {
+                    onCompleted();
+                    mCallback.onFailure(e);
+                    return;
+                }
+                if (shouldRetry(responseApdu) && mAttempt < MAX_SE_OPERATION_RETRIES - 1) {
+                    mAttempt++;
+                    logw(
+                            mName
+                                    + " failed because SE is temporarily unavailable. "
+                                    + "Total attempts so far: "
+                                    + mAttempt);
+                    mHandler.postDelayed(
+                            this,
+                            mRemoveDelayBetweenRetriesForTest ? 0 : nextRetryDelayMillis());
+                    return;
+                }
+                onAttemptCompleted(mAttempt);
+                mAttempt = 0;
+                mResponseApdus.add(responseApdu);
+                if (responseApdu.getStatusWord() != SW_NO_ERROR.toInt()) {
+                    break;
+                }
+            }
+            onCompleted();
+            mCallback.onResponses(mResponseApdus);
+        }
+
+        private int nextRetryDelayMillis() {
+            int delayMillis = mRetryDelayMillis;
+            mRetryDelayMillis = SecureElementChannel.nextRetryDelayMillis(delayMillis);
+            return delayMillis;
+        }
+
+        private void onAttemptCompleted(int attempt) {
+            if (attempt == 0) {
+                mRetryDelayMillis = Math.max(
+                        mRetryDelayMillis / 2, MIN_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS);
+            }
+        }
+
+        // Starts the next transmission of the channel on its own handler, after the callback of
+        // this one.
+        private void onCompleted() {
+            Transmission next;
+            synchronized (mLock) {
+                mTransmissions.remove(this);
+                next = mTransmissions.peek();
+            }
+            if (next != null) {
+                next.mHandler.post(next);
+            }
+        }
+    }
+
+    private class CommandTransmission extends Transmission {
+        private final List<CommandApdu> mCommands;
+
+        CommandTransmission(
+                List<CommandApdu> commands, Handler handler, TransmitCallback callback) {
+            super("Transmit", handler, callback);
+            mCommands = commands;
+        }
+
+        @Override
+        int getExchangeCount() {
+            return mCommands.size();
+        }
+
+        @Override
+        ResponseApdu exchange(int index) throws IOException {
+            if (!mIsOpened) {
+                return ResponseApdu.fromStatusWord(SW_TEMPORARILY_UNAVAILABLE);
+            }
+            return mOmapiConnection.transmit(mCommands.get(index));
+        }
+
+        @Override
+        boolean shouldRetry(ResponseApdu responseApdu) {
+            return mIsOpened
+                    && responseApdu.getStatusWord() == SW_TEMPORARILY_UNAVAILABLE.toInt();
+        }
+    }
+
+    private class OpenChannelTransmission extends Transmission {
+        OpenChannelTransmission(Handler handler, TransmitCallback callback) {
+            super("Open channel", handler, callback);
+        }
+
+        @Override
+        int getExchangeCount() {
+            return 1;
+        }
+
+        @Override
+        ResponseApdu exchange(int index) throws IOException {
+            return exchangeOpenChannel();
+        }
+
+        @Override
+        boolean shouldRetry(ResponseApdu responseApdu) {
+            return shouldRetryOpenChannel(responseApdu);
+        }
+    }
+
+    private static int nextRetryDelayMillis(int delayMillis) {
+        return Math.min(delayMillis * 2, MAX_DELAY_BETWEEN_SE_RETRY_ATTEMPTS_MILLIS);
+    }
+
     private void threadSleep(long millis) {
         if (!mRemoveDelayBetweenRetriesForTest) {
             try {
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.os.Looper;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.server.uwb.discovery.Transport;
 import com.android.server.uwb.pm.RunningProfileSessionInfo;
@@ -34,6 +35,9 @@ import com.android.server.uwb.secure.provisioning.ProvisioningManager;
 public class SecureFactory {
     /**
      * Create the instance of SecureSession for an UWB initiator.
+     *
+     * @param secureSessionCache cache of the information negotiated with the peers in previous
+     *                           sessions, used by the controller.
      */
     @NonNull
     public static SecureSession makeInitiatorSecureSession(
@@ -42,7 +46,8 @@ public class SecureFactory {
             @NonNull SecureSession.Callback secureSessionCallback,
             @NonNull RunningProfileSessionInfo runningProfileSessionInfo,
             @NonNull Transport transport,
-            boolean isController) {
+            boolean isController,
+            @Nullable SecureSessionCache secureSessionCache) {
         OmapiConnection omapiConnection = new OmapiConnectionImpl(context);
         SecureElementChannel secureElementChannel = new SecureElementChannel(omapiConnection);
         FiRaSecureChannel fiRaSecureChannel =
@@ -53,7 +58,8 @@ public class SecureFactory {
                     workLooper,
                     fiRaSecureChannel,
                     secureSessionCallback,
-                    runningProfileSessionInfo);
+                    runningProfileSessionInfo,
+                    secureSessionCache);
         } else {
             return new ControleeInitiatorSession(
                     workLooper,
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.secure;
+
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.server.uwb.secure.csml.ControleeInfo;
+import com.android.server.uwb.util.ObjectIdentifier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of the ControleeInfo received from FiRa peers, keyed by the peer identity and the
+ * OID of the ADF, so that a peer ranging again shortly after doesn't need to be asked for it again
+ * through the secure channel.
+ *
+ * <p>Only the ControleeInfo, which describes the UWB capabilities of the controlee, is kept. The
+ * secure channel and the session data carry fresh keys, they are negotiated for every session.
+ */
+public class SecureSessionCache {
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60 * 60 * 1000;
+
+    private final int mMaxEntries;
+    private final long mTimeToLiveMillis;
+    private final LongSupplier mElapsedRealtimeMillis;
+
+    // Least recently used entry first.
+    @GuardedBy("this")
+    private final LinkedHashMap<Pair<String, ObjectIdentifier>, Entry> mEntries =
+            new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f,
+                    /* accessOrder= */ true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Pair<String, ObjectIdentifier>, Entry> eldest) {
+                    return size() > mMaxEntries;
+                }
+            };
+
+    /**
+     * @param maxEntries maximum number of peers kept, the least recently used is evicted first.
+     * @param timeToLiveMillis time after which an entry is not used anymore.
+     * @param elapsedRealtimeMillis clock used to expire the entries.
+     */
+    public SecureSessionCache(
+            int maxEntries,
+            long timeToLiveMillis,
+            @NonNull LongSupplier elapsedRealtimeMillis) {
+        mMaxEntries = maxEntries;
+        mTimeToLiveMillis = timeToLiveMillis;
+        mElapsedRealtimeMillis = elapsedRealtimeMillis;
+    }
+
+    /** Gets the ControleeInfo cached for the peer, if it hasn't expired. */
+    @NonNull
+    public synchronized Optional<ControleeInfo> getControleeInfo(
+            @NonNull String peerIdentity, @NonNull ObjectIdentifier adfOid) {
+        Pair<String, ObjectIdentifier> key = Pair.create(peerIdentity, adfOid);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (mElapsedRealtimeMillis.getAsLong() - entry.mCachedTimeMillis >= mTimeToLiveMillis) {
+            mEntries.remove(key);
+            return Optional.empty();
+        }
+        return Optional.of(entry.mControleeInfo);
+    }
+
+    /** Caches the ControleeInfo received from the peer. */
+    public synchronized void putControleeInfo(
+            @NonNull String peerIdentity,
+            @NonNull ObjectIdentifier adfOid,
+            @NonNull ControleeInfo controleeInfo) {
+        mEntries.put(Pair.create(peerIdentity, adfOid),
+                new Entry(controleeInfo, mElapsedRealtimeMillis.getAsLong()));
+    }
+
+    /** Removes the entry of the peer, e.g. when the session set up with it failed. */
+    public synchronized void remove(
+            @NonNull String peerIdentity, @NonNull ObjectIdentifier adfOid) {
+        mEntries.remove(Pair.create(peerIdentity, adfOid));
+    }
+
+    /** Removes all the entries. */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /** Number of peers in the cache, including the expired ones not evicted yet. */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    private static class Entry {
+        private final ControleeInfo mControleeInfo;
+        private final long mCachedTimeMillis;
+
+        Entry(ControleeInfo controleeInfo, long cachedTimeMillis) {
+            mControleeInfo = controleeInfo;
+            mCachedTimeMillis = cachedTimeMillis;
+        }
+    }
+}
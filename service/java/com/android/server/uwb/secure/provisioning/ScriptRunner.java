@@ -29,6 +29,7 @@ import com.android.server.uwb.secure.iso7816.TlvParser;
 import com.android.server.uwb.util.ObjectIdentifier;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -53,62 +54,73 @@ class ScriptRunner {
         if (!mSecureElementChannel.openChannel()) {
             throw new ProvisioningException("open logical channel error.");
         }
+        List<CommandApdu> commandApdus = new ArrayList<>(primitiveApdus.size());
+        List<ApduCategory> apduCategories = new ArrayList<>(primitiveApdus.size());
         for (byte[] apduBytes : primitiveApdus) {
-            try {
-                CommandApdu commandApdu = CommandApdu.parse(apduBytes);
-                ApduCategory apduCategory = getApduCategory(commandApdu);
-                if (apduCategory == ApduCategory.NOT_ALLOWED) {
-                    throw new ProvisioningException("not allowed Command APDU."
-                            + commandApdu.getIns());
-                }
-                ResponseApdu responseApdu = mSecureElementChannel.transmit(commandApdu);
-                if (responseApdu.getStatusWord() != StatusWord.SW_NO_ERROR.toInt()) {
-                    throw new ProvisioningException("cannot handle the provisioning apdu.");
-                }
-                logd("apdu category: " + apduCategory);
-                if (apduCategory == ApduCategory.GENERAL) {
-                    // no further processing
-                    continue;
-                }
+            CommandApdu commandApdu = CommandApdu.parse(apduBytes);
+            ApduCategory apduCategory = getApduCategory(commandApdu);
+            if (apduCategory == ApduCategory.NOT_ALLOWED) {
+                throw new ProvisioningException("not allowed Command APDU."
+                        + commandApdu.getIns());
+            }
+            commandApdus.add(commandApdu);
+            apduCategories.add(apduCategory);
+        }
+        List<ResponseApdu> responseApdus;
+        try {
+            // Send the whole script in one go, it stops at the first APDU which fails.
+            responseApdus = mSecureElementChannel.transmit(commandApdus);
+        } catch (IOException e) {
+            throw new ProvisioningException(e);
+        }
+        for (int i = 0; i < responseApdus.size(); i++) {
+            CommandApdu commandApdu = commandApdus.get(i);
+            ApduCategory apduCategory = apduCategories.get(i);
+            ResponseApdu responseApdu = responseApdus.get(i);
+            if (responseApdu.getStatusWord() != StatusWord.SW_NO_ERROR.toInt()) {
+                throw new ProvisioningException("cannot handle the provisioning apdu.");
+            }
+            logd("apdu category: " + apduCategory);
+            if (apduCategory == ApduCategory.GENERAL) {
+                // no further processing
+                continue;
+            }
 
-                Map<TlvDatum.Tag, List<TlvDatum>> tlvsMap =
-                        TlvParser.parseTlvs(responseApdu);
-                Optional<ObjectIdentifier> adfOid = scriptContent.mAdfOid;
-                if (adfOid.isEmpty()) {
-                    List<TlvDatum> oids =  tlvsMap.get(CsmlUtil.OID_TAG);
-                    if (oids != null && oids.size() > 0) {
-                        adfOid = Optional.of(ObjectIdentifier.fromBytes(oids.get(0).value));
-                    } else if (apduCategory != ApduCategory.MANAGE_ADF
-                            && commandApdu.getP1() == LAST_MANAGE_ADF_INDICATOR_P1) {
-                        throw new ProvisioningException(
-                                "ADF OID must be provided in script or response.");
-                    }
-                }
-                switch(apduCategory) {
-                    case CREATE_ADF:
-                        provisioningCallback.onAdfCreated(serviceInstanceId, adfOid.get());
-                        break;
-                    case MANAGE_ADF:
-                        if (commandApdu.getP1() == LAST_MANAGE_ADF_INDICATOR_P1) {
-                            provisioningCallback.onAdfProvisioned(serviceInstanceId, adfOid.get());
-                        }
-                        break;
-                    case IMPORT_ADF:
-                        List<TlvDatum>  secureBlobs = tlvsMap.get(SECURE_BLOB_TAG);
-                        if (secureBlobs == null || secureBlobs.size() == 0) {
-                            throw new ProvisioningException("SecureBlob is not available.");
-                        }
-                        provisioningCallback.onAdfImported(serviceInstanceId, adfOid.get(),
-                                secureBlobs.get(0).value);
-                        break;
-                    case DELETE_ADF:
-                        provisioningCallback.onAdfDeleted(serviceInstanceId, adfOid.get());
-                        break;
-                    default:
-                        break;
+            Map<TlvDatum.Tag, List<TlvDatum>> tlvsMap =
+                    TlvParser.parseTlvs(responseApdu);
+            Optional<ObjectIdentifier> adfOid = scriptContent.mAdfOid;
+            if (adfOid.isEmpty()) {
+                List<TlvDatum> oids =  tlvsMap.get(CsmlUtil.OID_TAG);
+                if (oids != null && oids.size() > 0) {
+                    adfOid = Optional.of(ObjectIdentifier.fromBytes(oids.get(0).value));
+                } else if (apduCategory != ApduCategory.MANAGE_ADF
+                        && commandApdu.getP1() == LAST_MANAGE_ADF_INDICATOR_P1) {
+                    throw new ProvisioningException(
+                            "ADF OID must be provided in script or response.");
                 }
-            } catch (IOException e) {
-                throw new ProvisioningException(e);
+            }
+            switch(apduCategory) {
+                case CREATE_ADF:
+                    provisioningCallback.onAdfCreated(serviceInstanceId, adfOid.get());
+                    break;
+                case MANAGE_ADF:
+                    if (commandApdu.getP1() == LAST_MANAGE_ADF_INDICATOR_P1) {
+                        provisioningCallback.onAdfProvisioned(serviceInstanceId, adfOid.get());
+                    }
+                    break;
+                case IMPORT_ADF:
+                    List<TlvDatum>  secureBlobs = tlvsMap.get(SECURE_BLOB_TAG);
+                    if (secureBlobs == null || secureBlobs.size() == 0) {
+                        throw new ProvisioningException("SecureBlob is not available.");
+                    }
+                    provisioningCallback.onAdfImported(serviceInstanceId, adfOid.get(),
+                            secureBlobs.get(0).value);
+                    break;
+                case DELETE_ADF:
+                    provisioningCallback.onAdfDeleted(serviceInstanceId, adfOid.get());
+                    break;
+                default:
+                    break;
             }
         }
     }
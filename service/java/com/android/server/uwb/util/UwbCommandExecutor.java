@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.util;
+
+import android.annotation.NonNull;
+import android.os.SystemClock;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.io.PrintWriter;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived executor used to run the UCI commands of one UWBS with a timeout.
+ *
+ * <p>Commands are run one at a time, in submission order, by a single worker thread. A command
+ * which times out while running is cancelled, interrupting the worker. Since the worker may still
+ * be blocked in the native stack afterwards, it is then replaced by a new one which takes over the
+ * queued commands.
+ */
+public class UwbCommandExecutor {
+    private final String mName;
+    private final ThreadFactory mThreadFactory;
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private ThreadPoolExecutor mWorker;
+
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicLong mTaskCount = new AtomicLong();
+    private final AtomicLong mTimeoutCount = new AtomicLong();
+    private final AtomicLong mWorkerReplacementCount = new AtomicLong();
+    private final AtomicLong mTotalLatencyMs = new AtomicLong();
+    private final AtomicLong mMaxLatencyMs = new AtomicLong();
+
+    /** Command queued on the worker, recording whether the worker started running it. */
+    private class Command implements Runnable {
+        final FutureTask<?> mTask;
+        final AtomicBoolean mDequeued = new AtomicBoolean();
+        volatile boolean mStarted;
+
+        Command(FutureTask<?> task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            mStarted = true;
+            try {
+                mTask.run();
+            } finally {
+                dequeue();
+            }
+        }
+
+        /** Removes the command from the queue depth, once. */
+        void dequeue() {
+            if (mDequeued.compareAndSet(false, true)) {
+                mQueueDepth.decrementAndGet();
+            }
+        }
+    }
+
+    public UwbCommandExecutor(@NonNull String name) {
+        mName = name;
+        AtomicInteger threadCount = new AtomicInteger();
+        mThreadFactory = r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        mWorker = newWorker();
+    }
+
+    private ThreadPoolExecutor newWorker() {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), mThreadFactory);
+    }
+
+    /**
+     * Queues the task behind the commands already submitted and waits up to {@code timeoutMs} for
+     * its result. The task is cancelled if it does not complete in time.
+     *
+     * @throws ExecutionException if the task failed, or if the executor was shut down.
+     */
+    public <T> T execute(@NonNull FutureTask<T> task, long timeoutMs)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        Command command = new Command(task);
+        ThreadPoolExecutor worker;
+        long startTimeMs = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            worker = mWorker;
+            int queueDepth = mQueueDepth.incrementAndGet();
+            try {
+                worker.execute(command);
+            } catch (RejectedExecutionException e) {
+                mQueueDepth.decrementAndGet();
+                throw new ExecutionException(mName + " is shut down", e);
+            }
+            mMaxQueueDepth.accumulateAndGet(queueDepth, Math::max);
+        }
+        boolean stuck = false;
+        try {
+            return task.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (CancellationException e) {
+            // Cancelled while queued, e.g. by shutdownNow().
+            throw new ExecutionException("Command cancelled on " + mName, e);
+        } catch (TimeoutException e) {
+            mTimeoutCount.incrementAndGet();
+            task.cancel(true);
+            // A task timing out while queued does not stall the worker by itself; only replace
+            // the worker when it is stuck running this one.
+            if (command.mStarted) {
+                stuck = true;
+                replaceWorker(worker);
+            }
+            throw e;
+        } finally {
+            // A stuck command keeps counting until the native stack returns.
+            if (!stuck) {
+                command.dequeue();
+            }
+            long latencyMs = SystemClock.elapsedRealtime() - startTimeMs;
+            mTaskCount.incrementAndGet();
+            mTotalLatencyMs.addAndGet(latencyMs);
+            mMaxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+        }
+    }
+
+    private void replaceWorker(ThreadPoolExecutor stuckWorker) {
+        synchronized (mLock) {
+            if (mWorker != stuckWorker || mWorker.isShutdown()) {
+                return;
+            }
+            mWorker = newWorker();
+            mWorkerReplacementCount.incrementAndGet();
+            // Hand the queued commands over to the new worker, keeping their order.
+            for (Runnable command : stuckWorker.shutdownNow()) {
+                mWorker.execute(command);
+            }
+        }
+    }
+
+    /**
+     * Number of commands queued or running, including a timed out command the replaced worker is
+     * still stuck on.
+     */
+    public int getQueueDepth() {
+        return mQueueDepth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    public long getTaskCount() {
+        return mTaskCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return mTimeoutCount.get();
+    }
+
+    /** Number of workers replaced after being stuck on a timed out command. */
+    public long getWorkerReplacementCount() {
+        return mWorkerReplacementCount.get();
+    }
+
+    /** Average time between submitting a command and it completing or timing out. */
+    public long getAverageLatencyMs() {
+        long taskCount = mTaskCount.get();
+        return taskCount == 0 ? 0 : mTotalLatencyMs.get() / taskCount;
+    }
+
+    public long getMaxLatencyMs() {
+        return mMaxLatencyMs.get();
+    }
+
+    /** Stops accepting new commands, cancels the queued ones and interrupts the running one. */
+    public void shutdownNow() {
+        synchronized (mLock) {
+            for (Runnable command : mWorker.shutdownNow()) {
+                ((Command) command).mTask.cancel(false);
+                ((Command) command).dequeue();
+            }
+        }
+    }
+
+    /** Dumps the executor statistics. */
+    public void dump(PrintWriter pw) {
+        pw.println(mName + ": queueDepth=" + getQueueDepth()
+                + ", maxQueueDepth=" + getMaxQueueDepth()
+                + ", tasks=" + getTaskCount()
+                + ", timeouts=" + getTimeoutCount()
+                + ", workerReplacements=" + getWorkerReplacementCount()
+                + ", avgLatencyMs=" + getAverageLatencyMs()
+                + ", maxLatencyMs=" + getMaxLatencyMs());
+    }
+}
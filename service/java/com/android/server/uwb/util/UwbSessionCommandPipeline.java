@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.util;
+
+import android.annotation.NonNull;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs commands in ordered pipelines, one per key (e.g. per UWB session).
+ *
+ * <p>Commands submitted with the same key run one after the other in submission order, while
+ * commands with different keys may run concurrently. A command submitted with several keys runs
+ * after the commands queued before it for any of them, and before the commands queued after it.
+ * A command which throws does not stall the commands queued behind it.
+ *
+ * <p>Only the first command of each pipeline is handed to the executor, the next one is handed
+ * over once it completes, so at most one thread is busy per key. Each pipeline gets its own
+ * thread, so a command blocked in one pipeline never delays the others. The number of pending
+ * commands is bounded instead, {@link #submit} waits for a command to complete when it is
+ * reached.
+ */
+public class UwbSessionCommandPipeline {
+    private static final String TAG = "UwbSessionCommandPipeline";
+    private static final long KEEP_ALIVE_TIME_MS = 30_000;
+    // Well above the commands in flight for the ranging sessions UWB chips run concurrently.
+    public static final int DEFAULT_MAX_PENDING_COMMANDS = 64;
+
+    private final String mName;
+    private final Executor mExecutor;
+    private final int mPendingLimit;
+    private final Semaphore mPendingPermits;
+
+    private final Object mLock = new Object();
+    // Last stage of each pipeline with pending commands.
+    @GuardedBy("mLock")
+    private final Map<Object, CompletableFuture<Void>> mTails = new HashMap<>();
+
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+    private final AtomicInteger mMaxPendingCount = new AtomicInteger();
+    private final AtomicLong mCommandCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+    private final AtomicLong mThrottledCount = new AtomicLong();
+
+    public UwbSessionCommandPipeline(@NonNull String name) {
+        this(name, createExecutor(name), DEFAULT_MAX_PENDING_COMMANDS);
+    }
+
+    @VisibleForTesting
+    public UwbSessionCommandPipeline(@NonNull String name, @NonNull Executor executor,
+            int pendingLimit) {
+        mName = name;
+        mExecutor = executor;
+        mPendingLimit = pendingLimit;
+        mPendingPermits = new Semaphore(pendingLimit, true /* fair */);
+    }
+
+    private static Executor createExecutor(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // One worker per pipeline with a running command, released once idle. The number of
+        // workers is bounded by the number of pending commands.
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_TIME_MS,
+                TimeUnit.MILLISECONDS, new SynchronousQueue<>(), threadFactory);
+    }
+
+    /**
+     * Queues the command at the end of the pipeline of {@code key}.
+     *
+     * @return a future completed once the command has run, whether or not it threw.
+     */
+    public CompletableFuture<Void> submit(@NonNull Object key, @NonNull Runnable command) {
+        return submit(Collections.singletonList(key), command);
+    }
+
+    /**
+     * Queues the command at the end of the pipelines of all the {@code keys}. Waits for a pending
+     * command to complete first if the maximum number of pending commands is reached.
+     *
+     * @return a future completed once the command has run, whether or not it threw.
+     */
+    public CompletableFuture<Void> submit(@NonNull Collection<?> keys,
+            @NonNull Runnable command) {
+        if (!mPendingPermits.tryAcquire()) {
+            mThrottledCount.incrementAndGet();
+            Log.w(TAG, mName + ": " + mPendingLimit + " commands pending, waiting");
+            mPendingPermits.acquireUninterruptibly();
+        }
+        int pendingCount = mPendingCount.incrementAndGet();
+        mMaxPendingCount.accumulateAndGet(pendingCount, Math::max);
+        Runnable stage = () -> {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                mFailureCount.incrementAndGet();
+                Log.e(TAG, mName + ": command for " + keys + " failed", e);
+            } finally {
+                mCommandCount.incrementAndGet();
+                mPendingCount.decrementAndGet();
+                mPendingPermits.release();
+            }
+        };
+        synchronized (mLock) {
+            CompletableFuture<?>[] tails = keys.stream()
+                    .map(mTails::get)
+                    .filter(Objects::nonNull)
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture<Void> next = tails.length == 0
+                    ? CompletableFuture.runAsync(stage, mExecutor)
+                    : CompletableFuture.allOf(tails).exceptionally(t -> null)
+                            .thenRunAsync(stage, mExecutor);
+            for (Object key : keys) {
+                mTails.put(key, next);
+            }
+            // Drop the pipelines once drained, unless a newer command was queued behind it.
+            return next.whenComplete((v, t) -> {
+                synchronized (mLock) {
+                    for (Object key : keys) {
+                        mTails.remove(key, next);
+                    }
+                }
+            });
+        }
+    }
+
+    /** Number of keys with commands queued or running. */
+    public int getActivePipelineCount() {
+        synchronized (mLock) {
+            return mTails.size();
+        }
+    }
+
+    /** Number of commands submitted and not yet completed. */
+    public int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    public int getMaxPendingCount() {
+        return mMaxPendingCount.get();
+    }
+
+    public long getCommandCount() {
+        return mCommandCount.get();
+    }
+
+    public long getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    /** Number of commands which waited for the number of pending commands to go down. */
+    public long getThrottledCount() {
+        return mThrottledCount.get();
+    }
+
+    /** Dumps the pipeline statistics. */
+    public void dump(PrintWriter pw) {
+        pw.println(mName + ": activePipelines=" + getActivePipelineCount()
+                + ", pending=" + getPendingCount()
+                + ", maxPending=" + getMaxPendingCount()
+                + ", commands=" + getCommandCount()
+                + ", failures=" + getFailureCount()
+                + ", throttled=" + getThrottledCount());
+    }
+}
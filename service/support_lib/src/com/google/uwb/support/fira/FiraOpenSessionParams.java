@@ -153,6 +153,8 @@ public class FiraOpenSessionParams extends FiraParams {
     @Nullable private final int mReferenceSessionHandle;
     @Nullable private final int mSessionOffsetInMicroSeconds;
     private final int mApplicationDataEndpoint;
+    private final int mRangingReportBatchSize;
+    private final int mRangingReportBatchMaxLatencyMs;
 
     private static final int BUNDLE_VERSION_1 = 1;
     private static final int BUNDLE_VERSION_CURRENT = BUNDLE_VERSION_1;
@@ -264,6 +266,9 @@ public class FiraOpenSessionParams extends FiraParams {
     private static final String KEY_SESSION_OFFSET_IN_MICRO_SECONDS =
                 "session_offset_in_micro_seconds";
     private static final String KEY_APPLICATION_DATA_ENDPOINT = "application_data_endpoint";
+    private static final String KEY_RANGING_REPORT_BATCH_SIZE = "ranging_report_batch_size";
+    private static final String KEY_RANGING_REPORT_BATCH_MAX_LATENCY_MS =
+            "ranging_report_batch_max_latency_ms";
 
     private FiraOpenSessionParams(
             FiraProtocolVersion protocolVersion,
@@ -351,7 +356,9 @@ public class FiraOpenSessionParams extends FiraParams {
             @Nullable int referenceTimeBase,
             @Nullable int referenceSessionHandle,
             @Nullable int sessionOffsetInMicroSecond,
-            int applicationDataEndpoint) {
+            int applicationDataEndpoint,
+            int rangingReportBatchSize,
+            int rangingReportBatchMaxLatencyMs) {
         mProtocolVersion = protocolVersion;
         mSessionId = sessionId;
         mSessionType = sessionType;
@@ -438,6 +445,8 @@ public class FiraOpenSessionParams extends FiraParams {
         mReferenceSessionHandle = referenceSessionHandle;
         mSessionOffsetInMicroSeconds = sessionOffsetInMicroSecond;
         mApplicationDataEndpoint = applicationDataEndpoint;
+        mRangingReportBatchSize = rangingReportBatchSize;
+        mRangingReportBatchMaxLatencyMs = rangingReportBatchMaxLatencyMs;
     }
 
     @Override
@@ -818,6 +827,19 @@ public class FiraOpenSessionParams extends FiraParams {
         return mApplicationDataEndpoint;
     }
 
+    /**
+     * Number of ranging reports accumulated by the service before they are delivered together,
+     * a value of 1 delivers each report as soon as it is received.
+     */
+    public int getRangingReportBatchSize() {
+        return mRangingReportBatchSize;
+    }
+
+    /** Maximum time a ranging report may be held back for batched delivery. */
+    public int getRangingReportBatchMaxLatencyMs() {
+        return mRangingReportBatchMaxLatencyMs;
+    }
+
     @Nullable
     private static int[] byteArrayToIntArray(@Nullable byte[] bytes) {
         if (bytes == null) {
@@ -960,6 +982,8 @@ public class FiraOpenSessionParams extends FiraParams {
             bundle.putInt(KEY_SESSION_OFFSET_IN_MICRO_SECONDS, mSessionOffsetInMicroSeconds);
         }
         bundle.putInt(KEY_APPLICATION_DATA_ENDPOINT, mApplicationDataEndpoint);
+        bundle.putInt(KEY_RANGING_REPORT_BATCH_SIZE, mRangingReportBatchSize);
+        bundle.putInt(KEY_RANGING_REPORT_BATCH_MAX_LATENCY_MS, mRangingReportBatchMaxLatencyMs);
         return bundle;
     }
 
@@ -1098,7 +1122,12 @@ public class FiraOpenSessionParams extends FiraParams {
                         bundle.getInt(KEY_REFERENCE_SESSION_HANDLE),
                         bundle.getInt(KEY_SESSION_OFFSET_IN_MICRO_SECONDS))
                 .setApplicationDataEndpoint(bundle.getInt(
-                        KEY_APPLICATION_DATA_ENDPOINT, APPLICATION_DATA_ENDPOINT_DEFAULT));
+                        KEY_APPLICATION_DATA_ENDPOINT, APPLICATION_DATA_ENDPOINT_DEFAULT))
+                .setRangingReportBatchSize(bundle.getInt(
+                        KEY_RANGING_REPORT_BATCH_SIZE, RANGING_REPORT_BATCH_SIZE_DEFAULT))
+                .setRangingReportBatchMaxLatencyMs(bundle.getInt(
+                        KEY_RANGING_REPORT_BATCH_MAX_LATENCY_MS,
+                        RANGING_REPORT_BATCH_MAX_LATENCY_MS_DEFAULT));
 
         if (builder.isTimeScheduledTwrSession()) {
             long[] destAddresses = bundle.getLongArray(KEY_DEST_ADDRESS_LIST);
@@ -1369,6 +1398,10 @@ public class FiraOpenSessionParams extends FiraParams {
 
         private int mApplicationDataEndpoint = APPLICATION_DATA_ENDPOINT_DEFAULT;
 
+        private int mRangingReportBatchSize = RANGING_REPORT_BATCH_SIZE_DEFAULT;
+
+        private int mRangingReportBatchMaxLatencyMs = RANGING_REPORT_BATCH_MAX_LATENCY_MS_DEFAULT;
+
         public Builder() {}
 
         public Builder(@NonNull Builder builder) {
@@ -1459,6 +1492,8 @@ public class FiraOpenSessionParams extends FiraParams {
             mReferenceSessionHandle = builder.mReferenceSessionHandle;
             mSessionOffsetInMicroSeconds = builder.mSessionOffsetInMicroSeconds;
             mApplicationDataEndpoint = builder.mApplicationDataEndpoint;
+            mRangingReportBatchSize = builder.mRangingReportBatchSize;
+            mRangingReportBatchMaxLatencyMs = builder.mRangingReportBatchMaxLatencyMs;
         }
 
         public Builder(@NonNull FiraOpenSessionParams params) {
@@ -1550,6 +1585,8 @@ public class FiraOpenSessionParams extends FiraParams {
             mReferenceSessionHandle = params.mReferenceSessionHandle;
             mSessionOffsetInMicroSeconds = params.mSessionOffsetInMicroSeconds;
             mApplicationDataEndpoint = params.mApplicationDataEndpoint;
+            mRangingReportBatchSize = params.mRangingReportBatchSize;
+            mRangingReportBatchMaxLatencyMs = params.mRangingReportBatchMaxLatencyMs;
         }
 
         public FiraOpenSessionParams.Builder setProtocolVersion(FiraProtocolVersion version) {
@@ -2052,6 +2089,30 @@ public class FiraOpenSessionParams extends FiraParams {
             return this;
         }
 
+        /**
+         * Sets the number of ranging reports to accumulate before delivering them together to
+         * the application. Reports are delivered earlier if the oldest one has been held for
+         * {@link #setRangingReportBatchMaxLatencyMs(int)}, or when ranging stops. The batch size
+         * can't exceed {@link #RANGING_REPORT_BATCH_SIZE_MAX}.
+         */
+        public FiraOpenSessionParams.Builder setRangingReportBatchSize(
+                int rangingReportBatchSize) {
+            mRangingReportBatchSize = rangingReportBatchSize;
+            return this;
+        }
+
+        public FiraOpenSessionParams.Builder setRangingReportBatchMaxLatencyMs(
+                int rangingReportBatchMaxLatencyMs) {
+            mRangingReportBatchMaxLatencyMs = rangingReportBatchMaxLatencyMs;
+            return this;
+        }
+
+        private void checkRangingReportBatching() {
+            checkArgument(mRangingReportBatchSize >= 1
+                    && mRangingReportBatchSize <= RANGING_REPORT_BATCH_SIZE_MAX);
+            checkArgument(mRangingReportBatchMaxLatencyMs > 0);
+        }
+
         private void checkAddress() {
             checkArgument(
                     mMacAddressMode == MAC_ADDRESS_MODE_2_BYTES
@@ -2207,6 +2268,7 @@ public class FiraOpenSessionParams extends FiraParams {
             checkInterleavingRatio();
             checkRangeDataNtfConfig();
             checkDlTdoaParameters();
+            checkRangingReportBatching();
             return new FiraOpenSessionParams(
                     mProtocolVersion.get(),
                     mSessionId.get(),
@@ -2293,7 +2355,9 @@ public class FiraOpenSessionParams extends FiraParams {
                     mReferenceTimeBase,
                     mReferenceSessionHandle,
                     mSessionOffsetInMicroSeconds,
-                    mApplicationDataEndpoint);
+                    mApplicationDataEndpoint,
+                    mRangingReportBatchSize,
+                    mRangingReportBatchMaxLatencyMs);
         }
     }
 }
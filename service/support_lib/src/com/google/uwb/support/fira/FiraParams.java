@@ -1128,6 +1128,14 @@ public abstract class FiraParams extends Params {
     // Default value (Host as the both secure & non-secure endpoint).
     public static final int APPLICATION_DATA_ENDPOINT_DEFAULT = 0;
 
+    // Default value (each ranging report is delivered as soon as it is received).
+    public static final int RANGING_REPORT_BATCH_SIZE_DEFAULT = 1;
+    public static final int RANGING_REPORT_BATCH_MAX_LATENCY_MS_DEFAULT = 1000;
+    // A batch is delivered in one binder transaction, whose 1 MB buffer is shared by all the
+    // transactions in flight for the process. A report with a full RANGE_DATA_NTF is a few KB
+    // once parceled, so a batch of at most 32 reports stays well below that limit.
+    public static final int RANGING_REPORT_BATCH_SIZE_MAX = 32;
+
     //Reference time base feature mask.
     public static final int SESSION_TIME_BASE_REFERENCE_FEATURE_ENABLED = 1;
 
@@ -34,9 +34,11 @@ public class RangingReportMetadata {
     public static final String KEY_BUNDLE_VERSION = "bundle_version";
     public static final String SESSION_ID = "session_id";
     public static final String RAW_NTF_DATA = "raw_ntf_data";
+    public static final String PREDICTED = "predicted";
 
     private final long mSessionId;
     private final byte[] mRawNtfData;
+    private final boolean mPredicted;
 
     public static int getBundleVersion() {
         return BUNDLE_VERSION_CURRENT;
@@ -50,9 +52,18 @@ public class RangingReportMetadata {
         return mRawNtfData;
     }
 
-    private RangingReportMetadata(long sessionId, byte[] rawNtfData) {
+    /**
+     * Whether the report was predicted from pose changes between ranging rounds, instead of
+     * being measured.
+     */
+    public boolean isPredicted() {
+        return mPredicted;
+    }
+
+    private RangingReportMetadata(long sessionId, byte[] rawNtfData, boolean predicted) {
         mSessionId = sessionId;
         mRawNtfData = rawNtfData;
+        mPredicted = predicted;
     }
 
     @Nullable
@@ -84,6 +95,7 @@ public class RangingReportMetadata {
         bundle.putInt(KEY_BUNDLE_VERSION, getBundleVersion());
         bundle.putLong(SESSION_ID, mSessionId);
         bundle.putIntArray(RAW_NTF_DATA, byteArrayToIntArray(mRawNtfData));
+        bundle.putBoolean(PREDICTED, mPredicted);
         return bundle;
     }
 
@@ -100,6 +112,7 @@ public class RangingReportMetadata {
         return new RangingReportMetadata.Builder()
                 .setSessionId(bundle.getLong(SESSION_ID))
                 .setRawNtfData(intArrayToByteArray(bundle.getIntArray(RAW_NTF_DATA)))
+                .setPredicted(bundle.getBoolean(PREDICTED))
                 .build();
     }
 
@@ -107,6 +120,7 @@ public class RangingReportMetadata {
     public static class Builder {
         private long mSessionId;
         private byte[] mRawNtfData;
+        private boolean mPredicted = false;
 
         public RangingReportMetadata.Builder setSessionId(long sessionId) {
             mSessionId = sessionId;
@@ -118,8 +132,13 @@ public class RangingReportMetadata {
             return this;
         }
 
+        public RangingReportMetadata.Builder setPredicted(boolean predicted) {
+            mPredicted = predicted;
+            return this;
+        }
+
         public RangingReportMetadata build() {
-            return new RangingReportMetadata(mSessionId, mRawNtfData);
+            return new RangingReportMetadata(mSessionId, mRawNtfData, mPredicted);
         }
     }
 }
@@ -47,6 +47,7 @@ import static com.google.uwb.support.fira.FiraParams.UL_TDOA_DEVICE_ID_16_BIT;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import android.os.PersistableBundle;
@@ -149,6 +150,8 @@ public class FiraTests {
         byte[] ulTdoaDeviceId = new byte[] {(byte) 0x0C, (byte) 0x0B};
         int ulTdoaTxTimestampType = TX_TIMESTAMP_40_BIT;
         int maxNumberOfMeasurements = 1;
+        int rangingReportBatchSize = 10;
+        int rangingReportBatchMaxLatencyMs = 2_000;
 
         FiraOpenSessionParams params =
                 new FiraOpenSessionParams.Builder()
@@ -218,6 +221,8 @@ public class FiraTests {
                         .setUlTdoaDeviceId(ulTdoaDeviceId)
                         .setUlTdoaTxTimestampType(ulTdoaTxTimestampType)
                         .setMaxNumberOfMeasurements(maxNumberOfMeasurements)
+                        .setRangingReportBatchSize(rangingReportBatchSize)
+                        .setRangingReportBatchMaxLatencyMs(rangingReportBatchMaxLatencyMs)
                         .build();
 
         assertEquals(params.getProtocolVersion(), protocolVersion);
@@ -292,6 +297,8 @@ public class FiraTests {
         assertArrayEquals(params.getUlTdoaDeviceId(), ulTdoaDeviceId);
         assertEquals(params.getUlTdoaTxTimestampType(), ulTdoaTxTimestampType);
         assertEquals(params.getMaxNumberOfMeasurements(), maxNumberOfMeasurements);
+        assertEquals(params.getRangingReportBatchSize(), rangingReportBatchSize);
+        assertEquals(params.getRangingReportBatchMaxLatencyMs(), rangingReportBatchMaxLatencyMs);
 
         FiraOpenSessionParams fromBundle = FiraOpenSessionParams.fromBundle(params.toBundle());
 
@@ -366,6 +373,8 @@ public class FiraTests {
         assertArrayEquals(fromBundle.getUlTdoaDeviceId(), ulTdoaDeviceId);
         assertEquals(fromBundle.getUlTdoaTxTimestampType(), ulTdoaTxTimestampType);
         assertEquals(fromBundle.getMaxNumberOfMeasurements(), maxNumberOfMeasurements);
+        assertEquals(fromBundle.getRangingReportBatchSize(), rangingReportBatchSize);
+        assertEquals(fromBundle.getRangingReportBatchMaxLatencyMs(), rangingReportBatchMaxLatencyMs);
 
         verifyProtocolPresent(fromBundle);
         verifyBundlesEqual(params, fromBundle);
@@ -443,11 +452,39 @@ public class FiraTests {
         assertArrayEquals(fromCopy.getUlTdoaDeviceId(), ulTdoaDeviceId);
         assertEquals(fromCopy.getUlTdoaTxTimestampType(), ulTdoaTxTimestampType);
         assertEquals(fromCopy.getMaxNumberOfMeasurements(), maxNumberOfMeasurements);
+        assertEquals(fromCopy.getRangingReportBatchSize(), rangingReportBatchSize);
+        assertEquals(fromCopy.getRangingReportBatchMaxLatencyMs(), rangingReportBatchMaxLatencyMs);
 
         verifyProtocolPresent(fromCopy);
         verifyBundlesEqual(params, fromCopy);
     }
 
+    @Test
+    public void testOpenSessionParams_rangingReportBatchSizeBounded() {
+        FiraOpenSessionParams.Builder builder =
+                new FiraOpenSessionParams.Builder()
+                        .setProtocolVersion(FiraParams.PROTOCOL_VERSION_1_1)
+                        .setSessionId(1)
+                        .setSessionType(SESSION_TYPE_RANGING)
+                        .setDeviceType(RANGING_DEVICE_TYPE_CONTROLLER)
+                        .setDeviceRole(RANGING_DEVICE_ROLE_INITIATOR)
+                        .setDeviceAddress(UwbAddress.fromBytes(new byte[] {1, 2}))
+                        .setDestAddressList(List.of(UwbAddress.fromBytes(new byte[] {4, 5})))
+                        .setMultiNodeMode(FiraParams.MULTI_NODE_MODE_UNICAST)
+                        .setVendorId(new byte[] {8, 7})
+                        .setStaticStsIV(new byte[] {1, 2, 3, 4, 5, 6});
+
+        FiraOpenSessionParams params =
+                builder.setRangingReportBatchSize(FiraParams.RANGING_REPORT_BATCH_SIZE_MAX)
+                        .build();
+        assertEquals(params.getRangingReportBatchSize(), FiraParams.RANGING_REPORT_BATCH_SIZE_MAX);
+
+        builder.setRangingReportBatchSize(FiraParams.RANGING_REPORT_BATCH_SIZE_MAX + 1);
+        assertThrows(IllegalArgumentException.class, builder::build);
+        builder.setRangingReportBatchSize(0);
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+
     @Test
     public void testRangingReconfigureParams() {
         int action = MULTICAST_LIST_UPDATE_ACTION_DELETE;
@@ -20,6 +20,8 @@ import static com.google.uwb.support.fira.FiraParams.RANGING_DEVICE_TYPE_CONTROL
 import static com.google.uwb.support.fira.FiraParams.RANGING_ROUND_USAGE_DS_TWR_DEFERRED_MODE;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import android.uwb.UwbAddress;
 
@@ -109,6 +111,17 @@ public class OemExtensionTests {
 
         assertEquals(fromBundle.getSessionId(), sessionId);
         assertEquals(Arrays.toString(fromBundle.getRawNtfData()), Arrays.toString(testRawDataNtf));
+        assertFalse(fromBundle.isPredicted());
+
+        RangingReportMetadata predicted = RangingReportMetadata.fromBundle(
+                new RangingReportMetadata.Builder()
+                        .setSessionId(sessionId)
+                        .setRawNtfData(new byte[0])
+                        .setPredicted(true)
+                        .build()
+                        .toBundle());
+
+        assertTrue(predicted.isPredicted());
     }
 
     @Test
@@ -25,6 +25,8 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
@@ -48,6 +50,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.MockitoSession;
 
+import java.util.function.IntConsumer;
+
 public class DeviceConfigFacadeTest {
     @Mock private Resources mResources;
     @Mock private Context mContext;
@@ -237,6 +241,13 @@ public class DeviceConfigFacadeTest {
         assertEquals(false, mDeviceConfigFacade.isUwbDisabledUntilFirstToggle());
         assertEquals(false, mDeviceConfigFacade.isPersistentCacheUseForCountryCodeEnabled());
         assertEquals(false, mDeviceConfigFacade.isHwIdleTurnOffEnabled());
+        assertEquals(DeviceConfigFacade.DEFAULT_RANGE_DATA_NTF_BATCH_SIZE,
+                mDeviceConfigFacade.getRangeDataNtfBatchSize());
+        assertEquals(false, mDeviceConfigFacade.isSessionCommandPipelineEnabled());
+        assertEquals(DeviceConfigFacade.DEFAULT_FILTER_OVERSAMPLING_INTERVAL_MS,
+                mDeviceConfigFacade.getFilterOversamplingIntervalMs());
+        assertEquals(DeviceConfigFacade.DEFAULT_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE,
+                mDeviceConfigFacade.getFiraConnectorMaxMessageBufferSize());
     }
 
     /**
@@ -305,6 +316,8 @@ public class DeviceConfigFacadeTest {
 
         when(DeviceConfig.getInt(anyString(), eq("filter_angle_inliers_percent"),
                 anyInt())).thenReturn(8);
+        when(DeviceConfig.getBoolean(anyString(), eq("session_command_pipeline_enabled"),
+                anyBoolean())).thenReturn(true);
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
         assertEquals(8, mDeviceConfigFacade.getFilterAngleInliersPercent());
 
@@ -351,6 +364,12 @@ public class DeviceConfigFacadeTest {
                 anyBoolean())).thenReturn(true);
         when(DeviceConfig.getBoolean(anyString(), eq("hw_idle_turn_off_enabled"),
                 anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getInt(anyString(), eq("range_data_ntf_batch_size"),
+                anyInt())).thenReturn(8);
+        when(DeviceConfig.getInt(anyString(), eq("filter_oversampling_interval_ms"),
+                anyInt())).thenReturn(20);
+        when(DeviceConfig.getInt(anyString(), eq("fira_connector_max_message_buffer_size"),
+                anyInt())).thenReturn(100_000);
 
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
         assertEquals(0, mDeviceConfigFacade.getPrimerFovDegree());
@@ -372,6 +391,11 @@ public class DeviceConfigFacadeTest {
         assertEquals(true, mDeviceConfigFacade.isUwbDisabledUntilFirstToggle());
         assertEquals(true, mDeviceConfigFacade.isPersistentCacheUseForCountryCodeEnabled());
         assertEquals(true, mDeviceConfigFacade.isHwIdleTurnOffEnabled());
+        assertEquals(8, mDeviceConfigFacade.getRangeDataNtfBatchSize());
+        assertEquals(true, mDeviceConfigFacade.isSessionCommandPipelineEnabled());
+        assertEquals(20, mDeviceConfigFacade.getFilterOversamplingIntervalMs());
+        // Clamped to the largest value the FiRa Connector Capabilities can advertise.
+        assertEquals(0xFFFF, mDeviceConfigFacade.getFiraConnectorMaxMessageBufferSize());
         when(DeviceConfig.getString(anyString(), eq("pose_source_type"),
                 anyString())).thenReturn("NONE");
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
@@ -414,4 +438,24 @@ public class DeviceConfigFacadeTest {
                 mDeviceConfigFacade.getBackNoiseInfluenceCoeff(),
                 0.001);
     }
+
+    /**
+     * Verifies that the batch size listener is only notified when the batch size changes.
+     */
+    @Test
+    public void testRangeDataNtfBatchSizeListener_notifiedOnChange() {
+        IntConsumer listener = mock(IntConsumer.class);
+        mDeviceConfigFacade.setRangeDataNtfBatchSizeListener(listener);
+
+        mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
+        verify(listener, never()).accept(anyInt());
+
+        when(DeviceConfig.getInt(anyString(), eq("range_data_ntf_batch_size"),
+                anyInt())).thenReturn(8);
+        mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
+        verify(listener).accept(8);
+
+        mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
+        verify(listener).accept(anyInt());
+    }
 }
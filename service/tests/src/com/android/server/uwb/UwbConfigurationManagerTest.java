@@ -43,6 +43,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -68,6 +69,7 @@ import com.google.uwb.support.radar.RadarParams;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -151,6 +153,101 @@ public class UwbConfigurationManagerTest {
         assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
     }
 
+    @Test
+    public void testSetAppConfigurations_unchangedParamsNotSent() throws Exception {
+        byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
+        UwbConfigStatusData appConfig = new UwbConfigStatusData(UwbUciConstants.STATUS_CODE_OK,
+                1, cfgStatus);
+        when(mNativeUwbManager.setAppConfigurations(anyInt(), anyInt(), anyInt(),
+                any(byte[].class), anyString())).thenReturn(appConfig);
+        ArgumentCaptor<Integer> noOfParamsCaptor = ArgumentCaptor.forClass(Integer.class);
+
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+        // Nothing changed, no command is sent.
+        int status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                mFiraParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+
+        assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
+        verify(mNativeUwbManager).setAppConfigurations(anyInt(), noOfParamsCaptor.capture(),
+                anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        int noOfParams = noOfParamsCaptor.getValue();
+
+        // Only the changed param is sent.
+        FiraOpenSessionParams changedParams = new FiraOpenSessionParams.Builder(mFiraParams)
+                .setRangingIntervalMs(mFiraParams.getRangingIntervalMs() * 2)
+                .build();
+        status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                changedParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+
+        assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
+        verify(mNativeUwbManager, times(2)).setAppConfigurations(anyInt(),
+                noOfParamsCaptor.capture(), anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        assertEquals(1, (int) noOfParamsCaptor.getValue());
+
+        // All params are sent again once the session is deinitialized.
+        mUwbConfigurationManager.clearAppConfigurations(mUwbSession.getSessionId(), TEST_CHIP_ID);
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+
+        verify(mNativeUwbManager, times(3)).setAppConfigurations(anyInt(),
+                noOfParamsCaptor.capture(), anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        assertEquals(noOfParams, (int) noOfParamsCaptor.getValue());
+    }
+
+    @Test
+    public void testSetAppConfigurations_controleeParamsSentAfterMulticastListUpdate()
+            throws Exception {
+        byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
+        UwbConfigStatusData appConfig = new UwbConfigStatusData(UwbUciConstants.STATUS_CODE_OK,
+                1, cfgStatus);
+        when(mNativeUwbManager.setAppConfigurations(anyInt(), anyInt(), anyInt(),
+                any(byte[].class), anyString())).thenReturn(appConfig);
+        ArgumentCaptor<Integer> noOfParamsCaptor = ArgumentCaptor.forClass(Integer.class);
+
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+        mUwbConfigurationManager.clearControleeConfigurations(
+                mUwbSession.getSessionId(), TEST_CHIP_ID);
+        int status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                mFiraParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+
+        // NUMBER_OF_CONTROLEES and DST_MAC_ADDRESS are sent again.
+        assertEquals(UwbUciConstants.STATUS_CODE_OK, status);
+        verify(mNativeUwbManager, times(2)).setAppConfigurations(anyInt(),
+                noOfParamsCaptor.capture(), anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        assertEquals(2, (int) noOfParamsCaptor.getValue());
+    }
+
+    @Test
+    public void testSetAppConfigurations_allParamsSentAfterFailure() throws Exception {
+        byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
+        UwbConfigStatusData appConfig = new UwbConfigStatusData(UwbUciConstants.STATUS_CODE_OK,
+                1, cfgStatus);
+        UwbConfigStatusData failedAppConfig = new UwbConfigStatusData(
+                UwbUciConstants.STATUS_CODE_INVALID_PARAM, 1, cfgStatus);
+        when(mNativeUwbManager.setAppConfigurations(anyInt(), anyInt(), anyInt(),
+                any(byte[].class), anyString())).thenReturn(appConfig, failedAppConfig, appConfig);
+        ArgumentCaptor<Integer> noOfParamsCaptor = ArgumentCaptor.forClass(Integer.class);
+        FiraOpenSessionParams changedParams = new FiraOpenSessionParams.Builder(mFiraParams)
+                .setRangingIntervalMs(mFiraParams.getRangingIntervalMs() * 2)
+                .build();
+
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+        int status = mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(),
+                changedParams, TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+        assertEquals(UwbUciConstants.STATUS_CODE_INVALID_PARAM, status);
+        mUwbConfigurationManager.setAppConfigurations(mUwbSession.getSessionId(), mFiraParams,
+                TEST_CHIP_ID, PROTOCOL_VERSION_1_1);
+
+        verify(mNativeUwbManager, times(3)).setAppConfigurations(anyInt(),
+                noOfParamsCaptor.capture(), anyInt(), any(byte[].class), eq(TEST_CHIP_ID));
+        List<Integer> noOfParams = noOfParamsCaptor.getAllValues();
+        assertEquals(1, (int) noOfParams.get(1));
+        assertEquals(noOfParams.get(0), noOfParams.get(2));
+    }
+
     @Test
     public void testSetAppConfigurations_radarSession() throws Exception {
         byte[] cfgStatus = {0x01, UwbUciConstants.STATUS_CODE_OK};
@@ -31,12 +31,21 @@ import android.uwb.UwbAddress;
 
 import com.android.server.uwb.correction.TestHelpers;
 import com.android.server.uwb.correction.UwbFilterEngine;
+import com.android.server.uwb.correction.filtering.NullFilter;
+import com.android.server.uwb.correction.filtering.PositionFilterImpl;
+import com.android.server.uwb.correction.math.Pose;
+import com.android.server.uwb.correction.math.Quaternion;
+import com.android.server.uwb.correction.math.Vector3;
+import com.android.server.uwb.correction.pose.NullPoseSource;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class UwbControleeTest {
     public static final UwbAddress UWB_ADDRESS = UwbAddress.fromBytes(new byte[] {1, 2});
     UwbControlee mControlee;
@@ -113,4 +122,55 @@ public class UwbControleeTest {
         RangingMeasurement newMeasure = rm.build();
         assertThat(newMeasure.getAngleOfArrivalMeasurement()).isNull();
     }
+
+    @Test
+    public void testPredictions() {
+        NullPoseSource poseSource = new NullPoseSource();
+        UwbFilterEngine engine = new UwbFilterEngine.Builder()
+                .setFilter(
+                new PositionFilterImpl(new NullFilter(), new NullFilter(), new NullFilter()))
+                .setPoseSource(poseSource)
+                .build();
+        UwbControlee controlee = new UwbControlee(UWB_ADDRESS, engine, mUwbInjector);
+        List<RangingMeasurement> predictions = new ArrayList<>();
+        controlee.enablePredictions(10, predictions::add);
+        poseSource.changePose(Pose.IDENTITY);
+
+        // Nothing to predict from before the first measurement.
+        assertThat(predictions).isEmpty();
+
+        AngleMeasurement am = new AngleMeasurement(0.1, 0.0, 1.0);
+        RangingMeasurement.Builder rm = new RangingMeasurement.Builder()
+                .setDistanceMeasurement(new DistanceMeasurement.Builder()
+                        .setMeters(2)
+                        .setErrorMeters(0.0)
+                        .setConfidenceLevel(1.0)
+                        .build())
+                .setAngleOfArrivalMeasurement(new AngleOfArrivalMeasurement.Builder(am).build())
+                .setStatus(RANGING_STATUS_SUCCESS)
+                .setRemoteDeviceAddress(UWB_ADDRESS)
+                .setElapsedRealtimeNanos(100);
+        controlee.filterMeasurement(rm);
+
+        // Too soon after the measurement.
+        when(mUwbInjector.getElapsedSinceBootMillis()).thenReturn(15L);
+        poseSource.changePose(new Pose(Vector3.ORIGIN, Quaternion.yawPitchRoll(-0.02f, 0, 0)));
+        assertThat(predictions).isEmpty();
+
+        when(mUwbInjector.getElapsedSinceBootMillis()).thenReturn(30L);
+        poseSource.changePose(new Pose(Vector3.ORIGIN, Quaternion.yawPitchRoll(-0.05f, 0, 0)));
+        assertThat(predictions).hasSize(1);
+        RangingMeasurement prediction = predictions.get(0);
+        assertThat(prediction.getRemoteDeviceAddress()).isEqualTo(UWB_ADDRESS);
+        assertThat(prediction.getElapsedRealtimeNanos()).isEqualTo(30_000_000L);
+        TestHelpers.assertClose(
+                prediction.getAngleOfArrivalMeasurement().getAzimuth().getRadians(), 0.05);
+        TestHelpers.assertClose(prediction.getDistanceMeasurement().getMeters(), 2);
+
+        // No more predictions once closed.
+        controlee.close();
+        when(mUwbInjector.getElapsedSinceBootMillis()).thenReturn(50L);
+        poseSource.changePose(Pose.IDENTITY);
+        assertThat(predictions).hasSize(1);
+    }
 }
@@ -19,6 +19,8 @@ package com.android.server.uwb;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.verify;
 import static com.android.server.uwb.DeviceConfigFacade.DEFAULT_RANGING_RESULT_LOG_INTERVAL_MS;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.validateMockitoUsage;
@@ -468,6 +470,38 @@ public class UwbMetricsTest {
                 UwbStatsLog.UWB_DEVICE_ERROR_REPORTED__TYPE__UCI_GENERIC_ERROR));
     }
 
+    @Test
+    public void testDumpRangingReportsOfOpenAndClosedSessions() throws Exception {
+        mUwbMetrics.logRangingInitEvent(mUwbSession, UwbUciConstants.STATUS_CODE_OK);
+        mUwbMetrics.logRangingResult(UwbStatsLog.UWB_SESSION_INITIATED__PROFILE__FIRA,
+                mRangingData, mFilteredRangingMeasurement);
+        mUwbMetrics.logRangingCloseEvent(mUwbSession, UwbUciConstants.STATUS_CODE_OK);
+
+        when(mUwbSession.getSessionId()).thenReturn(2);
+        when(mRangingData.getSessionId()).thenReturn(2L);
+        mUwbMetrics.logRangingInitEvent(mUwbSession, UwbUciConstants.STATUS_CODE_OK);
+        mUwbMetrics.logRangingResult(UwbStatsLog.UWB_SESSION_INITIATED__PROFILE__FIRA,
+                mRangingData, mFilteredRangingMeasurement);
+        // Not logged, the measurement status is not OK.
+        when(mTwoWayMeasurement.isStatusCodeOk()).thenReturn(false);
+        mUwbMetrics.logRangingResult(UwbStatsLog.UWB_SESSION_INITIATED__PROFILE__FIRA,
+                mRangingData, mFilteredRangingMeasurement);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(stream);
+        mUwbMetrics.dump(null, writer, null);
+        writer.flush();
+        String dump = stream.toString();
+
+        String reports = dump.substring(dump.indexOf("-- mRangingReportList --"),
+                dump.indexOf("mNumApps="));
+        assertThat(reports.split("time=")).hasLength(3);
+        assertThat(reports).contains("sessionId=1, Nlos=");
+        assertThat(reports).contains("sessionId=2, Nlos=");
+        assertThat(reports).contains("DistanceCm=" + DISTANCE_DEFAULT_CM + ",");
+        assertThat(reports).contains("FilteredDistanceCm=" + DISTANCE_FILTERED_CM + ",");
+    }
+
     @Test
     public void testDumpStatsNoCrash() throws Exception {
         mUwbMetrics.logRangingInitEvent(mUwbSession, UwbUciConstants.STATUS_CODE_OK);
@@ -51,6 +51,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.validateMockitoUsage;
@@ -124,6 +125,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -277,7 +279,7 @@ public class UwbServiceCoreTest {
             FutureTask t = invocation.getArgument(0);
             t.run();
             return t.get();
-        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt());
+        }).when(mUwbInjector).runTaskOnCommandExecutor(any(FutureTask.class), anyInt(), any());
         mUwbServiceCore = new UwbServiceCore(mContext, mNativeUwbManager, mUwbMetrics,
                 mUwbCountryCode, mUwbSessionManager, mUwbConfigurationManager,
                 mUwbInjector, mTestLooper.getLooper());
@@ -439,6 +441,55 @@ public class UwbServiceCoreTest {
         verifyGetCachedSpecificationInfoSuccess();
     }
 
+    @Test
+    public void testCachedSpecificationPerChip() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+        GenericSpecificationParams defaultChipParams = mock(GenericSpecificationParams.class);
+        GenericSpecificationParams chipOneParams = mock(GenericSpecificationParams.class);
+        FiraSpecificationParams chipOneFiraParams = mock(FiraSpecificationParams.class);
+        when(chipOneParams.getFiraSpecificationParams()).thenReturn(chipOneFiraParams);
+        when(chipOneFiraParams.getMaxRangingSessionNumber()).thenReturn(2);
+        when(mUwbConfigurationManager.getCapsInfo(eq(GenericParams.PROTOCOL_NAME), any(),
+                eq(TEST_DEFAULT_CHIP_ID), any()))
+                .thenReturn(Pair.create(UwbUciConstants.STATUS_CODE_OK, defaultChipParams));
+        when(mUwbConfigurationManager.getCapsInfo(eq(GenericParams.PROTOCOL_NAME), any(),
+                eq(TEST_CHIP_ONE_CHIP_ID), any()))
+                .thenReturn(Pair.create(UwbUciConstants.STATUS_CODE_OK, chipOneParams));
+
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_DEFAULT_CHIP_ID))
+                .isEqualTo(defaultChipParams);
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_CHIP_ONE_CHIP_ID))
+                .isEqualTo(chipOneParams);
+        assertThat(mUwbServiceCore.getCachedSpecificationParams(TEST_DEFAULT_CHIP_ID))
+                .isEqualTo(defaultChipParams);
+        assertThat(mUwbServiceCore.getMaxFiraSessionsNumber(TEST_DEFAULT_CHIP_ID))
+                .isEqualTo((long) FiraSpecificationParams.DEFAULT_MAX_RANGING_SESSIONS_NUMBER);
+        assertThat(mUwbServiceCore.getMaxFiraSessionsNumber(TEST_CHIP_ONE_CHIP_ID))
+                .isEqualTo(2L);
+
+        // The specification of each chip is only queried once.
+        verify(mUwbConfigurationManager).getCapsInfo(eq(GenericParams.PROTOCOL_NAME), any(),
+                eq(TEST_DEFAULT_CHIP_ID), any());
+        verify(mUwbConfigurationManager).getCapsInfo(eq(GenericParams.PROTOCOL_NAME), any(),
+                eq(TEST_CHIP_ONE_CHIP_ID), any());
+    }
+
+    @Test
+    public void testCachedSpecificationResetOnDeviceStateOff() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+        verifyGetCachedSpecificationInfoSuccess();
+
+        clearInvocations(mUwbConfigurationManager);
+
+        mUwbServiceCore.onDeviceStatusNotificationReceived(UwbUciConstants.DEVICE_STATE_OFF,
+                TEST_DEFAULT_CHIP_ID);
+        mUwbServiceCore.onDeviceStatusNotificationReceived(UwbUciConstants.DEVICE_STATE_READY,
+                TEST_DEFAULT_CHIP_ID);
+
+        // Verify that invoking cached specification info updates the cached value.
+        verifyGetCachedSpecificationInfoSuccess();
+    }
+
     @Test
     public void testEnable_failure() throws Exception {
         IUwbAdapterStateCallbacks cb = mock(IUwbAdapterStateCallbacks.class);
@@ -774,6 +825,7 @@ public class UwbServiceCoreTest {
         disableUwb();
 
         verify(mNativeUwbManager).doDeinitialize();
+        verify(mUwbInjector).shutdownCommandExecutors();
         verify(mUwbMetrics).logUwbStateChangeEvent(false, true, false);
         verify(cb).onAdapterStateChanged(UwbManager.AdapterStateCallback.STATE_DISABLED,
                 StateChangeReason.SYSTEM_POLICY);
@@ -1256,6 +1308,50 @@ public class UwbServiceCoreTest {
         verify(mUwbSessionManager).startRanging(eq(sessionHandle), argThat(p -> (p == null)));
     }
 
+    @Test
+    public void testStartRangingGroup() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        SessionHandle profileSessionHandle = mock(SessionHandle.class);
+        when(mProfileManager.hasSession(profileSessionHandle)).thenReturn(true);
+        mUwbServiceCore.startRangingGroup(
+                List.of(sessionHandle1, profileSessionHandle, sessionHandle2),
+                new PersistableBundle());
+
+        InOrder inOrder = inOrder(mUwbSessionManager, mProfileManager);
+        inOrder.verify(mUwbSessionManager).startRangingGroup(
+                List.of(sessionHandle1, sessionHandle2));
+        inOrder.verify(mProfileManager).startRanging(profileSessionHandle);
+    }
+
+    @Test
+    public void testStartRangingGroup_protocolSpecificParamsRejected() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+
+        CccStartRangingParams params = new CccStartRangingParams.Builder()
+                .setRanMultiplier(6)
+                .setSessionId(1)
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> mUwbServiceCore.startRangingGroup(
+                List.of(mock(SessionHandle.class), mock(SessionHandle.class)),
+                params.toBundle()));
+        verify(mUwbSessionManager, never()).startRangingGroup(any());
+    }
+
+    @Test
+    public void testStopRangingGroup() throws Exception {
+        enableUwbWithCountryCodeChangedCallback();
+
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        mUwbServiceCore.stopRangingGroup(List.of(sessionHandle1, sessionHandle2));
+
+        verify(mUwbSessionManager).stopRangingGroup(List.of(sessionHandle1, sessionHandle2));
+    }
+
     @Test
     public void testReconfigureRanging() throws Exception {
         enableUwbWithCountryCodeChangedCallback();
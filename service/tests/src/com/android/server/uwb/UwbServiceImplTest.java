@@ -288,6 +288,30 @@ public class UwbServiceImplTest {
         verify(mUwbServiceCore).startRanging(sessionHandle, parameters);
     }
 
+    @Test
+    public void testStartRangingGroup() throws Exception {
+        assumeTrue(SdkLevel.isAtLeastV()); // Test should only run on V+ devices.
+        final List<SessionHandle> sessionHandles =
+                List.of(mock(SessionHandle.class), mock(SessionHandle.class));
+        final PersistableBundle parameters = new PersistableBundle();
+
+        when(mFeatureFlags.groupedSessionStartStop()).thenReturn(true);
+        mUwbServiceImpl.startRangingGroup(sessionHandles, parameters);
+
+        verify(mUwbServiceCore).startRangingGroup(sessionHandles, parameters);
+    }
+
+    @Test
+    public void testStartRangingGroup_flagDisabled() throws Exception {
+        final List<SessionHandle> sessionHandles = List.of(mock(SessionHandle.class));
+
+        when(mFeatureFlags.groupedSessionStartStop()).thenReturn(false);
+        assertThrows(UnsupportedOperationException.class,
+                () -> mUwbServiceImpl.startRangingGroup(sessionHandles, new PersistableBundle()));
+
+        verify(mUwbServiceCore, never()).startRangingGroup(any(), any());
+    }
+
     @Test
     public void testReconfigureRanging() throws Exception {
         final SessionHandle sessionHandle = mock(SessionHandle.class);
@@ -312,6 +336,29 @@ public class UwbServiceImplTest {
         verify(mUwbServiceCore).stopRanging(sessionHandle);
     }
 
+    @Test
+    public void testStopRangingGroup() throws Exception {
+        assumeTrue(SdkLevel.isAtLeastV()); // Test should only run on V+ devices.
+        final List<SessionHandle> sessionHandles =
+                List.of(mock(SessionHandle.class), mock(SessionHandle.class));
+
+        when(mFeatureFlags.groupedSessionStartStop()).thenReturn(true);
+        mUwbServiceImpl.stopRangingGroup(sessionHandles);
+
+        verify(mUwbServiceCore).stopRangingGroup(sessionHandles);
+    }
+
+    @Test
+    public void testStopRangingGroup_flagDisabled() throws Exception {
+        final List<SessionHandle> sessionHandles = List.of(mock(SessionHandle.class));
+
+        when(mFeatureFlags.groupedSessionStartStop()).thenReturn(false);
+        assertThrows(UnsupportedOperationException.class,
+                () -> mUwbServiceImpl.stopRangingGroup(sessionHandles));
+
+        verify(mUwbServiceCore, never()).stopRangingGroup(any());
+    }
+
     @Test
     public void testCloseRanging() throws Exception {
         final SessionHandle sessionHandle = mock(SessionHandle.class);
@@ -21,6 +21,8 @@ import static android.app.ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREG
 
 import static com.android.modules.utils.build.SdkLevel.isAtLeastV;
 import static com.android.server.uwb.UwbSessionManager.SESSION_OPEN_RANGING;
+import static com.android.server.uwb.UwbSessionManager.SESSION_START_RANGING_GROUP;
+import static com.android.server.uwb.UwbSessionManager.SESSION_STOP_RANGING_GROUP;
 import static com.android.server.uwb.UwbTestUtils.DATA_PAYLOAD;
 import static com.android.server.uwb.UwbTestUtils.MAX_DATA_SIZE;
 import static com.android.server.uwb.UwbTestUtils.PEER_BAD_MAC_ADDRESS;
@@ -77,6 +79,7 @@ import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -93,6 +96,7 @@ import android.app.ActivityManager.OnUidImportanceListener;
 import android.app.AlarmManager;
 import android.content.AttributionSource;
 import android.os.IBinder;
+import android.os.Message;
 import android.os.PersistableBundle;
 import android.os.Process;
 import android.os.RemoteException;
@@ -102,6 +106,7 @@ import android.util.Pair;
 import android.uwb.IUwbAdapter;
 import android.uwb.IUwbRangingCallbacks;
 import android.uwb.RangingChangeReason;
+import android.uwb.RangingReport;
 import android.uwb.SessionHandle;
 import android.uwb.StateChangeReason;
 import android.uwb.UwbAddress;
@@ -120,6 +125,7 @@ import com.android.server.uwb.data.UwbUciConstants;
 import com.android.server.uwb.jni.NativeUwbManager;
 import com.android.server.uwb.multchip.UwbMultichipData;
 import com.android.server.uwb.params.TlvUtil;
+import com.android.server.uwb.util.UwbSessionCommandPipeline;
 
 import com.google.uwb.support.aliro.AliroOpenRangingParams;
 import com.google.uwb.support.aliro.AliroParams;
@@ -153,17 +159,20 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -299,6 +308,8 @@ public class UwbSessionManagerTest {
     @Mock
     private UwbMultichipData mUwbMultichipData;
     private TestLooper mTestLooper = new TestLooper();
+    // Commands handed to the executor of the session command pipeline.
+    private final Queue<Runnable> mSessionCommands = new ArrayDeque<>();
     private UwbSessionManager mUwbSessionManager;
     @Captor
     private ArgumentCaptor<OnUidImportanceListener> mOnUidImportanceListenerArgumentCaptor;
@@ -316,7 +327,7 @@ public class UwbSessionManagerTest {
             FutureTask t = invocation.getArgument(0);
             t.run();
             return t.get();
-        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt());
+        }).when(mUwbInjector).runTaskOnCommandExecutor(any(FutureTask.class), anyInt(), any());
         mSpecificationParamsBuilder = new GenericSpecificationParams.Builder()
                 .setAliroSpecificationParams(mAliroSpecificationParams)
                 .setCccSpecificationParams(mCccSpecificationParams)
@@ -327,6 +338,9 @@ public class UwbSessionManagerTest {
                 (int) MAX_ALIRO_SESSION_NUM);
         when(mCccSpecificationParams.getMaxRangingSessionNumber()).thenReturn(
                 (int) MAX_CCC_SESSION_NUM);
+        when(mUwbServiceCore.getMaxFiraSessionsNumber(any())).thenReturn(MAX_FIRA_SESSION_NUM);
+        when(mUwbServiceCore.getMaxAliroSessionsNumber(any())).thenReturn(MAX_ALIRO_SESSION_NUM);
+        when(mUwbServiceCore.getMaxCccSessionsNumber(any())).thenReturn(MAX_CCC_SESSION_NUM);
         when(mUwbMultichipData.getDefaultChipId()).thenReturn("default");
         when(mDeviceConfigFacade.isBackgroundRangingEnabled()).thenReturn(false);
         when(mDeviceConfigFacade.isRangingErrorStreakTimerEnabled()).thenReturn(true);
@@ -341,6 +355,9 @@ public class UwbSessionManagerTest {
                 mUwbInjector,
                 mAlarmManager,
                 mActivityManager,
+                mTestLooper.getLooper(),
+                new UwbSessionCommandPipeline("UwbSessionCommand", mSessionCommands::add,
+                        UwbSessionCommandPipeline.DEFAULT_MAX_PENDING_COMMANDS),
                 mTestLooper.getLooper()));
 
         verify(mActivityManager).addOnUidImportanceListener(
@@ -897,7 +914,7 @@ public class UwbSessionManagerTest {
     public void onSessionStatusNotificationReceived_max_retry() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
         when(mockUwbSession.getWaitObj()).thenReturn(mock(WaitObj.class));
         when(mockUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
 
@@ -917,7 +934,7 @@ public class UwbSessionManagerTest {
     public void onSessionStatusNotificationReceived_session_mgmt_cmds() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
         when(mockUwbSession.getWaitObj()).thenReturn(mock(WaitObj.class));
         when(mockUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
 
@@ -1221,6 +1238,39 @@ public class UwbSessionManagerTest {
 
     }
 
+    @Test
+    public void uwbSession_addAndRemoveControlee() {
+        IUwbRangingCallbacks mockRangingCallbacks = mock(IUwbRangingCallbacks.class);
+        FiraOpenSessionParams mockParams = mock(FiraOpenSessionParams.class);
+        FiraOpenSessionParams.Builder mockBuilder = mock(FiraOpenSessionParams.Builder.class);
+        when(mockParams.getDestAddressList())
+                .thenReturn(Collections.singletonList(UWB_DEST_ADDRESS));
+        when(mockParams.toBuilder()).thenReturn(mockBuilder);
+        when(mockBuilder.setSessionPriority(anyInt())).thenReturn(mockBuilder);
+        when(mockBuilder.build()).thenReturn(mockParams);
+        UwbSession uwbSession = mUwbSessionManager.new UwbSession(ATTRIBUTION_SOURCE,
+                SESSION_HANDLE, TEST_SESSION_ID, TEST_SESSION_TYPE, FiraParams.PROTOCOL_NAME,
+                mockParams, mockRangingCallbacks, TEST_CHIP_ID);
+
+        uwbSession.addControlee(UWB_DEST_ADDRESS_2);
+        // Adding an existing controlee is a no-op.
+        uwbSession.addControlee(UWB_DEST_ADDRESS);
+
+        assertThat(uwbSession.getControleeList()).hasSize(2);
+        assertThat(uwbSession.getControlee(UWB_DEST_ADDRESS).getUwbAddress())
+                .isEqualTo(UWB_DEST_ADDRESS);
+        assertThat(uwbSession.getControlee(UWB_DEST_ADDRESS_2).getUwbAddress())
+                .isEqualTo(UWB_DEST_ADDRESS_2);
+        assertThat(uwbSession.getControlee(UWB_DEST_ADDRESS_3)).isNull();
+
+        uwbSession.removeControlee(UWB_DEST_ADDRESS);
+
+        assertThat(uwbSession.getControleeList()).hasSize(1);
+        assertThat(uwbSession.getControlee(UWB_DEST_ADDRESS)).isNull();
+        assertThat(uwbSession.getControlee(UWB_DEST_ADDRESS_2).getUwbAddress())
+                .isEqualTo(UWB_DEST_ADDRESS_2);
+    }
+
     @Test
     public void initSession_controleeList() throws RemoteException {
         doReturn(0).when(mUwbSessionManager).getSessionCount();
@@ -1340,6 +1390,118 @@ public class UwbSessionManagerTest {
                 .onRangingStartFailed(any(), eq(UwbUciConstants.STATUS_CODE_FAILED));
     }
 
+    private UwbSession setUpSessionGroupMember(SessionHandle sessionHandle, int sessionId,
+            int sessionState) {
+        UwbSession uwbSession = mock(UwbSession.class);
+        when(uwbSession.getSessionId()).thenReturn(sessionId);
+        when(uwbSession.getChipId()).thenReturn(TEST_CHIP_ID);
+        when(uwbSession.getProtocolName()).thenReturn(FiraParams.PROTOCOL_NAME);
+        when(uwbSession.getWaitObj()).thenReturn(mock(WaitObj.class));
+        doReturn(true).when(mUwbSessionManager).isExistedSession(sessionHandle);
+        doReturn(sessionId).when(mUwbSessionManager).getSessionId(sessionHandle);
+        doReturn(uwbSession).when(mUwbSessionManager).getUwbSession(sessionId);
+        doReturn(sessionState).when(mUwbSessionManager).getCurrentSessionState(sessionId);
+        return uwbSession;
+    }
+
+    @Test
+    public void startRangingGroup_currentSessionStateIdle() {
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        UwbSession uwbSession1 = setUpSessionGroupMember(
+                sessionHandle1, TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        UwbSession uwbSession2 = setUpSessionGroupMember(
+                sessionHandle2, TEST_SESSION_ID + 1, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(uwbSession2.getStackSessionPriority()).thenReturn(70);
+
+        // A session listed twice is only started once.
+        mUwbSessionManager.startRangingGroup(
+                List.of(sessionHandle1, sessionHandle2, sessionHandle1));
+
+        verify(mUwbSessionManager, never()).startRanging(any(), any());
+        // The start commands of the chip are sent in one batch, by decreasing priority.
+        Message message = mTestLooper.nextMessage();
+        assertThat(message.what).isEqualTo(SESSION_START_RANGING_GROUP);
+        assertThat((List<UwbSession>) message.obj).containsExactly(uwbSession2, uwbSession1)
+                .inOrder();
+        assertThat(mTestLooper.nextMessage()).isNull();
+    }
+
+    @Test
+    public void startRangingGroup_maxSessionsExceeded_startsNone() {
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        UwbSession uwbSession1 = setUpSessionGroupMember(
+                sessionHandle1, TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        UwbSession uwbSession2 = setUpSessionGroupMember(
+                sessionHandle2, TEST_SESSION_ID + 1, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        doReturn(1L).when(mUwbSessionManager).getMaxFiraSessionsNumber(TEST_CHIP_ID);
+
+        mUwbSessionManager.startRangingGroup(List.of(sessionHandle1, sessionHandle2));
+
+        verify(mUwbSessionNotificationManager).onRangingStartFailed(
+                uwbSession1, UwbUciConstants.STATUS_CODE_ERROR_MAX_SESSIONS_EXCEEDED);
+        verify(mUwbSessionNotificationManager).onRangingStartFailed(
+                uwbSession2, UwbUciConstants.STATUS_CODE_ERROR_MAX_SESSIONS_EXCEEDED);
+        assertThat(mTestLooper.nextMessage()).isNull();
+    }
+
+    @Test
+    public void execStartRangingGroup_oneSessionRejected_stopsStartedSessions() {
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        SessionHandle sessionHandle3 = mock(SessionHandle.class);
+        UwbSession uwbSession1 = setUpSessionGroupMember(
+                sessionHandle1, TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        UwbSession uwbSession2 = setUpSessionGroupMember(
+                sessionHandle2, TEST_SESSION_ID + 1, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        UwbSession uwbSession3 = setUpSessionGroupMember(
+                sessionHandle3, TEST_SESSION_ID + 2, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(uwbSession1.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE,
+                UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(mNativeUwbManager.startRanging(eq(TEST_SESSION_ID), anyString()))
+                .thenReturn(UwbUciConstants.STATUS_CODE_OK);
+        when(mNativeUwbManager.startRanging(eq(TEST_SESSION_ID + 1), anyString()))
+                .thenReturn(UwbUciConstants.STATUS_CODE_REJECTED);
+        when(mNativeUwbManager.stopRanging(eq(TEST_SESSION_ID), anyString()))
+                .thenReturn(UwbUciConstants.STATUS_CODE_OK);
+
+        mUwbSessionManager.startRangingGroup(
+                List.of(sessionHandle1, sessionHandle2, sessionHandle3));
+        mTestLooper.dispatchAll();
+
+        verify(mUwbSessionNotificationManager).onRangingStarted(
+                eq(uwbSession1), any());
+        verify(mUwbSessionNotificationManager).onRangingStartFailed(
+                uwbSession2, UwbUciConstants.STATUS_CODE_REJECTED);
+        verify(mNativeUwbManager, never()).startRanging(eq(TEST_SESSION_ID + 2), anyString());
+        verify(mUwbSessionNotificationManager).onRangingStartFailed(
+                uwbSession3, UwbUciConstants.STATUS_CODE_REJECTED);
+        // The group fails as a whole.
+        verify(mNativeUwbManager).stopRanging(eq(TEST_SESSION_ID), anyString());
+        verify(mUwbSessionNotificationManager).onRangingStoppedWithApiReasonCode(
+                eq(uwbSession1), eq(RangingChangeReason.LOCAL_API), any());
+    }
+
+    @Test
+    public void startRangingGroup_oneSessionNotIdle_startsNone() {
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        doReturn(true).when(mUwbSessionManager).isExistedSession(any());
+        doReturn(TEST_SESSION_ID).when(mUwbSessionManager).getSessionId(sessionHandle1);
+        doReturn(TEST_SESSION_ID + 1).when(mUwbSessionManager).getSessionId(sessionHandle2);
+        doReturn(mock(UwbSession.class)).when(mUwbSessionManager).getUwbSession(anyInt());
+        doReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE)
+                .when(mUwbSessionManager).getCurrentSessionState(TEST_SESSION_ID);
+        doReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE)
+                .when(mUwbSessionManager).getCurrentSessionState(TEST_SESSION_ID + 1);
+
+        assertThrows(IllegalStateException.class, () -> mUwbSessionManager.startRangingGroup(
+                List.of(sessionHandle1, sessionHandle2)));
+
+        assertThat(mTestLooper.nextMessage()).isNull();
+    }
+
     @Test
     public void stopRanging_notExistedSession() {
         doReturn(false).when(mUwbSessionManager).isExistedSession(any());
@@ -1366,6 +1528,56 @@ public class UwbSessionManagerTest {
         assertThat(mTestLooper.nextMessage().what).isEqualTo(3); // SESSION_STOP_RANGING
     }
 
+    @Test
+    public void stopRangingGroup_currentSessionStateActive() {
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        SessionHandle sessionHandle3 = mock(SessionHandle.class);
+        UwbSession uwbSession1 = setUpSessionGroupMember(
+                sessionHandle1, TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        UwbSession uwbSession2 = setUpSessionGroupMember(
+                sessionHandle2, TEST_SESSION_ID + 1, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        UwbSession uwbSession3 = setUpSessionGroupMember(
+                sessionHandle3, TEST_SESSION_ID + 2, UwbUciConstants.UWB_SESSION_STATE_IDLE);
+
+        mUwbSessionManager.stopRangingGroup(
+                List.of(sessionHandle1, sessionHandle2, sessionHandle3));
+
+        // The idle session is reported stopped, the others are stopped in one batch.
+        verify(mUwbSessionNotificationManager).onRangingStopped(
+                uwbSession3, UwbUciConstants.STATUS_CODE_OK);
+        Message message = mTestLooper.nextMessage();
+        assertThat(message.what).isEqualTo(SESSION_STOP_RANGING_GROUP);
+        assertThat((List<UwbSession>) message.obj).containsExactly(uwbSession1, uwbSession2)
+                .inOrder();
+        assertThat(mTestLooper.nextMessage()).isNull();
+    }
+
+    @Test
+    public void execStopRangingGroup_success() throws Exception {
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        UwbSession uwbSession1 = setUpSessionGroupMember(
+                sessionHandle1, TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        UwbSession uwbSession2 = setUpSessionGroupMember(
+                sessionHandle2, TEST_SESSION_ID + 1, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        when(uwbSession1.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(uwbSession2.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(mNativeUwbManager.stopRanging(anyInt(), anyString()))
+                .thenReturn(UwbUciConstants.STATUS_CODE_OK);
+
+        mUwbSessionManager.stopRangingGroup(List.of(sessionHandle1, sessionHandle2));
+        mTestLooper.dispatchAll();
+
+        verify(mUwbInjector).runTaskOnCommandExecutor(any(), anyInt(), eq(TEST_CHIP_ID));
+        verify(mUwbSessionNotificationManager).onRangingStoppedWithApiReasonCode(
+                eq(uwbSession1), eq(RangingChangeReason.LOCAL_API), any());
+        verify(mUwbSessionNotificationManager).onRangingStoppedWithApiReasonCode(
+                eq(uwbSession2), eq(RangingChangeReason.LOCAL_API), any());
+        verify(uwbSession1).stopTimers();
+        verify(uwbSession2).stopTimers();
+    }
+
     @Test
     public void stopRanging_currentSessionStateActive_owrAoa() {
         UwbSession mockUwbSession = mock(UwbSession.class);
@@ -1424,7 +1636,7 @@ public class UwbSessionManagerTest {
     public void getUwbSession_success() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
 
         UwbSession actualUwbSession = mUwbSessionManager.getUwbSession(TEST_SESSION_ID);
 
@@ -1435,19 +1647,34 @@ public class UwbSessionManagerTest {
     public void getUwbSession_failed() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
 
         UwbSession actualUwbSession = mUwbSessionManager.getUwbSession(TEST_SESSION_ID - 1);
 
         assertThat(actualUwbSession).isNull();
     }
 
+    @Test
+    public void getUwbSession_afterRemoveSession() {
+        UwbSession mockUwbSession = mock(UwbSession.class);
+        SessionHandle mockSessionHandle = mock(SessionHandle.class);
+        when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
+        when(mockUwbSession.getSessionHandle()).thenReturn(mockSessionHandle);
+        when(mockUwbSession.getBinder()).thenReturn(mock(IBinder.class));
+        mUwbSessionManager.putSession(mockSessionHandle, mockUwbSession);
+
+        mUwbSessionManager.removeSession(mockUwbSession);
+
+        assertThat(mUwbSessionManager.getUwbSession(TEST_SESSION_ID)).isNull();
+        assertThat(mUwbSessionManager.isExistedSession(TEST_SESSION_ID)).isFalse();
+    }
+
     @Test
     public void getSessionId_success() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
         SessionHandle mockSessionHandle = mock(SessionHandle.class);
-        mUwbSessionManager.mSessionTable.put(mockSessionHandle, mockUwbSession);
+        mUwbSessionManager.putSession(mockSessionHandle, mockUwbSession);
         when(mockUwbSession.getSessionHandle()).thenReturn(mockSessionHandle);
 
         int actualSessionId = mUwbSessionManager.getSessionId(mockSessionHandle);
@@ -1460,7 +1687,7 @@ public class UwbSessionManagerTest {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
         SessionHandle mockSessionHandle = mock(SessionHandle.class);
-        mUwbSessionManager.mSessionTable.put(mockSessionHandle, mockUwbSession);
+        mUwbSessionManager.putSession(mockSessionHandle, mockUwbSession);
         when(mockUwbSession.getSessionHandle()).thenReturn(mockSessionHandle);
 
         Integer actualSessionId = mUwbSessionManager.getSessionId(mock(SessionHandle.class));
@@ -1490,7 +1717,7 @@ public class UwbSessionManagerTest {
     public void isExistedSession_sessionId_success() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
 
         boolean result = mUwbSessionManager.isExistedSession(TEST_SESSION_ID);
 
@@ -1509,12 +1736,12 @@ public class UwbSessionManagerTest {
         UwbSession mockUwbSession1 = mock(UwbSession.class);
         when(mockUwbSession1.getSessionId()).thenReturn(TEST_SESSION_ID);
         when(mockUwbSession1.getChipId()).thenReturn(TEST_CHIP_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession1);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession1);
 
         UwbSession mockUwbSession2 = mock(UwbSession.class);
         when(mockUwbSession2.getSessionId()).thenReturn(TEST_SESSION_ID + 100);
         when(mockUwbSession2.getChipId()).thenReturn(TEST_CHIP_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession2);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession2);
 
         when(mNativeUwbManager.stopRanging(eq(TEST_SESSION_ID), anyString()))
                 .thenReturn((byte) UwbUciConstants.STATUS_CODE_FAILED);
@@ -1533,7 +1760,7 @@ public class UwbSessionManagerTest {
     public void setCurrentSessionState() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
 
         mUwbSessionManager.setCurrentSessionState(
                 TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
@@ -1553,7 +1780,7 @@ public class UwbSessionManagerTest {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
         when(mockUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
 
         int actualStatus = mUwbSessionManager.getCurrentSessionState(TEST_SESSION_ID);
 
@@ -1564,7 +1791,7 @@ public class UwbSessionManagerTest {
     public void getSessionIdSet() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         when(mockUwbSession.getSessionId()).thenReturn(TEST_SESSION_ID);
-        mUwbSessionManager.mSessionTable.put(mock(SessionHandle.class), mockUwbSession);
+        mUwbSessionManager.putSession(mock(SessionHandle.class), mockUwbSession);
 
         Set<Integer> actualSessionIds = mUwbSessionManager.getSessionIdSet();
 
@@ -3740,6 +3967,54 @@ public class UwbSessionManagerTest {
         assertNull(uwbSession.getSendDataInfo(DATA_SEQUENCE_NUM));
     }
 
+    private UwbSession prepareExistingUwbSessionWithRangingReportBatching() throws Exception {
+        FiraOpenSessionParams params = new FiraOpenSessionParams.Builder()
+                .setDeviceAddress(UwbAddress.fromBytes(new byte[] {(byte) 0x01, (byte) 0x02 }))
+                .setVendorId(new byte[] { (byte) 0x00, (byte) 0x01 })
+                .setStaticStsIV(new byte[] { (byte) 0x01, (byte) 0x02, (byte) 0x03,
+                        (byte) 0x04, (byte) 0x05, (byte) 0x06 })
+                .setDestAddressList(Arrays.asList(
+                        UWB_DEST_ADDRESS))
+                .setProtocolVersion(new FiraProtocolVersion(1, 0))
+                .setSessionId(10)
+                .setDeviceType(FiraParams.RANGING_DEVICE_TYPE_CONTROLLER)
+                .setDeviceRole(FiraParams.RANGING_DEVICE_ROLE_INITIATOR)
+                .setMultiNodeMode(FiraParams.MULTI_NODE_MODE_UNICAST)
+                .setRangingIntervalMs(TEST_RANGING_INTERVAL_MS)
+                .setRangingReportBatchSize(2)
+                .build();
+        return prepareExistingUwbSessionActive(params);
+    }
+
+    @Test
+    public void testRangingReportBatching_completeBatchFlushed() throws Exception {
+        UwbSession uwbSession = prepareExistingUwbSessionWithRangingReportBatching();
+        clearInvocations(mUwbSessionNotificationManager);
+
+        uwbSession.addPendingRangingReport(mock(RangingReport.class));
+        uwbSession.addPendingRangingReport(mock(RangingReport.class));
+        mTestLooper.dispatchAll();
+
+        verify(mUwbSessionNotificationManager).flushRangingReports(any());
+    }
+
+    @Test
+    public void testRangingReportBatching_closeKeepsPendingReportsForClosedCallback()
+            throws Exception {
+        UwbSession uwbSession = prepareExistingUwbSessionWithRangingReportBatching();
+        clearInvocations(mUwbSessionNotificationManager);
+        RangingReport rangingReport = mock(RangingReport.class);
+
+        uwbSession.addPendingRangingReport(rangingReport);
+        uwbSession.close();
+        mTestLooper.moveTimeForward(FiraParams.RANGING_REPORT_BATCH_MAX_LATENCY_MS_DEFAULT);
+        mTestLooper.dispatchAll();
+
+        // The latency flush is cancelled, the report is left to the flush of the closed callback.
+        verify(mUwbSessionNotificationManager, never()).flushRangingReports(any());
+        assertThat(uwbSession.takePendingRangingReports()).containsExactly(rangingReport);
+    }
+
     // Test case for scenario when a Data packet is successfully sent to a remote device (in
     // short MacAddress format). Verifies the deletion of stored data depending upon the status
     // code (STATUS_CODE_DATA_TRANSFER_REPETITION_OK) when data repetition count = 0.
@@ -3876,8 +4151,8 @@ public class UwbSessionManagerTest {
         mUwbSessionManager.stopRanging(uwbSession.getSessionHandle());
         mTestLooper.dispatchNext();
 
-        verify(mUwbInjector).runTaskOnSingleThreadExecutor(
-                any(), eq(IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS));
+        verify(mUwbInjector).runTaskOnCommandExecutor(
+                any(), eq(IUwbAdapter.RANGING_SESSION_START_THRESHOLD_MS), any());
         verify(mUwbSessionNotificationManager)
                 .onRangingStoppedWithApiReasonCode(eq(uwbSession),
                         eq(RangingChangeReason.LOCAL_API), any());
@@ -3913,6 +4188,142 @@ public class UwbSessionManagerTest {
         verify(mUwbMetrics, never()).longRangingStopEvent(eq(uwbSession));
     }
 
+    /** Runs the commands queued in the session command pipelines, and those queued behind. */
+    private void runSessionCommands() {
+        Runnable command;
+        while ((command = mSessionCommands.poll()) != null) {
+            command.run();
+        }
+    }
+
+    @Test
+    public void execStopRanging_sessionCommandPipeline_success() throws Exception {
+        when(mDeviceConfigFacade.isSessionCommandPipelineEnabled()).thenReturn(true);
+        UwbSession uwbSession = prepareExistingUwbSession();
+        doReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE, UwbUciConstants.UWB_SESSION_STATE_IDLE)
+                .when(uwbSession).getSessionState();
+        when(mNativeUwbManager.stopRanging(eq(TEST_SESSION_ID), anyString()))
+                .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
+
+        mUwbSessionManager.stopRanging(uwbSession.getSessionHandle());
+        mTestLooper.dispatchAll();
+
+        // The command is queued in the pipeline of the session instead of running on the looper.
+        verify(mNativeUwbManager, never()).stopRanging(anyInt(), anyString());
+
+        runSessionCommands();
+
+        verify(mNativeUwbManager).stopRanging(eq(TEST_SESSION_ID), anyString());
+        verify(mUwbSessionNotificationManager)
+                .onRangingStoppedWithApiReasonCode(eq(uwbSession),
+                        eq(RangingChangeReason.LOCAL_API), any());
+        verify(mUwbMetrics).longRangingStopEvent(eq(uwbSession));
+    }
+
+    @Test
+    public void execStartRanging_sessionCommandPipeline_nativeStartRangingFailed()
+            throws Exception {
+        when(mDeviceConfigFacade.isSessionCommandPipelineEnabled()).thenReturn(true);
+        UwbSession uwbSession = prepareExistingUwbSession();
+        doReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE, UwbUciConstants.UWB_SESSION_STATE_ACTIVE)
+                .when(uwbSession).getSessionState();
+        when(mNativeUwbManager.startRanging(eq(TEST_SESSION_ID), anyString()))
+                .thenReturn((byte) UwbUciConstants.STATUS_CODE_FAILED);
+
+        mUwbSessionManager.startRanging(
+                uwbSession.getSessionHandle(), uwbSession.getParams());
+        mTestLooper.dispatchAll();
+        runSessionCommands();
+
+        verify(mUwbSessionNotificationManager).onRangingStartFailed(
+                eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_FAILED));
+        verify(mUwbMetrics).longRangingStartEvent(
+                eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_FAILED));
+    }
+
+    @Test
+    public void execStopRangingAndDeInit_sessionCommandPipeline_runInOrder() throws Exception {
+        when(mDeviceConfigFacade.isSessionCommandPipelineEnabled()).thenReturn(true);
+        UwbSession uwbSession = prepareExistingUwbSession();
+        int[] sessionState = {UwbUciConstants.UWB_SESSION_STATE_ACTIVE};
+        doAnswer(invocation -> sessionState[0]).when(uwbSession).getSessionState();
+        when(mNativeUwbManager.stopRanging(eq(TEST_SESSION_ID), anyString()))
+                .thenAnswer(invocation -> {
+                    sessionState[0] = UwbUciConstants.UWB_SESSION_STATE_IDLE;
+                    return (byte) UwbUciConstants.STATUS_CODE_OK;
+                });
+        when(mNativeUwbManager.deInitSession(eq(TEST_SESSION_ID), anyString()))
+                .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
+
+        mUwbSessionManager.stopRanging(uwbSession.getSessionHandle());
+        mUwbSessionManager.deInitSession(uwbSession.getSessionHandle());
+        mTestLooper.dispatchAll();
+        runSessionCommands();
+
+        InOrder inOrder = inOrder(mNativeUwbManager, mUwbSessionNotificationManager);
+        inOrder.verify(mNativeUwbManager).stopRanging(eq(TEST_SESSION_ID), anyString());
+        inOrder.verify(mUwbSessionNotificationManager)
+                .onRangingStoppedWithApiReasonCode(eq(uwbSession),
+                        eq(RangingChangeReason.LOCAL_API), any());
+        inOrder.verify(mNativeUwbManager).deInitSession(eq(TEST_SESSION_ID), anyString());
+        inOrder.verify(mUwbSessionNotificationManager).onRangingClosed(
+                eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_OK));
+        assertThat(mUwbSessionManager.getSessionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void execStopRanging_sessionCommandPipeline_exceptionDoesNotStallSession()
+            throws Exception {
+        when(mDeviceConfigFacade.isSessionCommandPipelineEnabled()).thenReturn(true);
+        UwbSession uwbSession = prepareExistingUwbSession();
+        doReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE).when(uwbSession).getSessionState();
+        when(mNativeUwbManager.stopRanging(eq(TEST_SESSION_ID), anyString()))
+                .thenThrow(new IllegalStateException());
+        when(mNativeUwbManager.deInitSession(eq(TEST_SESSION_ID), anyString()))
+                .thenReturn((byte) UwbUciConstants.STATUS_CODE_OK);
+
+        mUwbSessionManager.stopRanging(uwbSession.getSessionHandle());
+        mUwbSessionManager.deInitSession(uwbSession.getSessionHandle());
+        mTestLooper.dispatchAll();
+        runSessionCommands();
+
+        verify(mUwbSessionNotificationManager, never()).onRangingStopped(any(), anyInt());
+        verify(mUwbSessionNotificationManager).onRangingClosed(
+                eq(uwbSession), eq(UwbUciConstants.STATUS_CODE_OK));
+    }
+
+    @Test
+    public void execStopRangingGroup_sessionCommandPipeline_queuedInSessionPipelines()
+            throws Exception {
+        when(mDeviceConfigFacade.isSessionCommandPipelineEnabled()).thenReturn(true);
+        SessionHandle sessionHandle1 = mock(SessionHandle.class);
+        SessionHandle sessionHandle2 = mock(SessionHandle.class);
+        UwbSession uwbSession1 = setUpSessionGroupMember(
+                sessionHandle1, TEST_SESSION_ID, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        UwbSession uwbSession2 = setUpSessionGroupMember(
+                sessionHandle2, TEST_SESSION_ID + 1, UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        when(uwbSession1.getSessionHandle()).thenReturn(sessionHandle1);
+        when(uwbSession2.getSessionHandle()).thenReturn(sessionHandle2);
+        when(uwbSession1.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(uwbSession2.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        when(mNativeUwbManager.stopRanging(anyInt(), anyString()))
+                .thenReturn(UwbUciConstants.STATUS_CODE_OK);
+
+        mUwbSessionManager.stopRangingGroup(List.of(sessionHandle1, sessionHandle2));
+        mTestLooper.dispatchAll();
+
+        // The group command is queued behind the commands of both sessions.
+        verify(mUwbInjector, never()).runTaskOnCommandExecutor(any(), anyInt(), anyString());
+
+        runSessionCommands();
+
+        verify(mUwbInjector).runTaskOnCommandExecutor(any(), anyInt(), eq(TEST_CHIP_ID));
+        verify(mUwbSessionNotificationManager).onRangingStoppedWithApiReasonCode(
+                eq(uwbSession1), eq(RangingChangeReason.LOCAL_API), any());
+        verify(mUwbSessionNotificationManager).onRangingStoppedWithApiReasonCode(
+                eq(uwbSession2), eq(RangingChangeReason.LOCAL_API), any());
+    }
+
     @Test
     public void testFiraSessionStoppedDuetoInbandSignal() throws Exception {
         //Assuming that when session is in active state,
@@ -4412,8 +4823,8 @@ public class UwbSessionManagerTest {
         mUwbSessionManager.stopRanging(uwbSession.getSessionHandle());
         mTestLooper.dispatchNext();
 
-        verify(mUwbInjector).runTaskOnSingleThreadExecutor(
-                any(), eq(TEST_RANGING_INTERVAL_MS * 4 * 11));
+        verify(mUwbInjector).runTaskOnCommandExecutor(
+                any(), eq(TEST_RANGING_INTERVAL_MS * 4 * 11), any());
         verify(mUwbSessionNotificationManager)
                 .onRangingStoppedWithApiReasonCode(eq(uwbSession),
                         eq(RangingChangeReason.LOCAL_API), any());
@@ -4755,7 +5166,7 @@ public class UwbSessionManagerTest {
 
         UwbSession mockUwbSession = mock(UwbSession.class);
         SessionHandle mockSessionHandle = mock(SessionHandle.class);
-        mUwbSessionManager.mSessionTable.put(mockSessionHandle, mockUwbSession);
+        mUwbSessionManager.putSession(mockSessionHandle, mockUwbSession);
 
         mUwbSessionManager.deInitSession(mockSessionHandle);
 
@@ -4768,7 +5179,7 @@ public class UwbSessionManagerTest {
     public void deInitSession_success_afterOwrAoaMeasurement() {
         UwbSession mockUwbSession = mock(UwbSession.class);
         SessionHandle mockSessionHandle = mock(SessionHandle.class);
-        mUwbSessionManager.mSessionTable.put(mockSessionHandle, mockUwbSession);
+        mUwbSessionManager.putSession(mockSessionHandle, mockUwbSession);
 
         when(mockUwbSession.getWaitObj()).thenReturn(mock(WaitObj.class));
         when(mockUwbSession.getSessionHandle()).thenReturn(mockSessionHandle);
@@ -4879,7 +5290,7 @@ public class UwbSessionManagerTest {
         when(mockUwbSession1.getSessionId()).thenReturn(TEST_SESSION_ID);
         when(mockUwbSession1.getProtocolName()).thenReturn(FiraParams.PROTOCOL_NAME);
         when(mockUwbSession1.getSessionHandle()).thenReturn(mockSessionHandle1);
-        mUwbSessionManager.mSessionTable.put(mockSessionHandle1, mockUwbSession1);
+        mUwbSessionManager.putSession(mockSessionHandle1, mockUwbSession1);
 
         UwbSession mockUwbSession2 = mock(UwbSession.class);
         SessionHandle mockSessionHandle2 = mock(SessionHandle.class);
@@ -4887,7 +5298,7 @@ public class UwbSessionManagerTest {
         when(mockUwbSession2.getSessionId()).thenReturn(TEST_SESSION_ID + 100);
         when(mockUwbSession2.getProtocolName()).thenReturn(FiraParams.PROTOCOL_NAME);
         when(mockUwbSession2.getSessionHandle()).thenReturn(mockSessionHandle2);
-        mUwbSessionManager.mSessionTable.put(mockSessionHandle2, mockUwbSession2);
+        mUwbSessionManager.putSession(mockSessionHandle2, mockUwbSession2);
 
         mUwbSessionManager.deinitAllSession();
 
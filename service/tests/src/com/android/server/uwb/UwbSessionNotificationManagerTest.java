@@ -26,6 +26,7 @@ import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TY
 import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY;
 import static com.android.server.uwb.data.UwbUciConstants.STATUS_CODE_FAILED;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.uwb.support.radar.RadarParams.RADAR_DATA_TYPE_RADAR_SWEEP_SAMPLES;
 
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -34,7 +35,9 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -51,6 +54,7 @@ import android.util.Pair;
 import android.uwb.IUwbOemExtensionCallback;
 import android.uwb.IUwbRangingCallbacks;
 import android.uwb.RangingChangeReason;
+import android.uwb.RangingMeasurement;
 import android.uwb.RangingReport;
 import android.uwb.SessionHandle;
 
@@ -64,6 +68,7 @@ import com.android.uwb.flags.Flags;
 
 import com.google.uwb.support.fira.FiraOpenSessionParams;
 import com.google.uwb.support.fira.FiraParams;
+import com.google.uwb.support.oemextension.RangingReportMetadata;
 import com.google.uwb.support.radar.RadarData;
 import com.google.uwb.support.radar.RadarOpenSessionParams;
 import com.google.uwb.support.radar.RadarParams;
@@ -73,9 +78,13 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -124,6 +133,8 @@ public class UwbSessionNotificationManagerTest {
         when(mFiraParams.hasRangingResultReportMessage()).thenReturn(false);
         when(mFiraParams.hasControlMessage()).thenReturn(false);
         when(mFiraParams.hasRangingControlPhase()).thenReturn(true);
+        when(mFiraParams.getRangeDataNtfConfig()).thenReturn(
+                FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE);
         when(mUwbInjector.checkUwbRangingPermissionForStartDataDelivery(any(), any()))
                 .thenReturn(true);
         when(mUwbInjector.getElapsedSinceBootNanos()).thenReturn(TEST_ELAPSED_NANOS);
@@ -176,6 +187,209 @@ public class UwbSessionNotificationManagerTest {
                 eq(testRangingDataAndRangingReport.second.getMeasurements().get(0)));
     }
 
+    @Test
+    public void testOnRangingResult_withBatching_holdsBackReport() throws Exception {
+        Pair<UwbRangingData, RangingReport> testRangingDataAndRangingReport =
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS);
+        when(mUwbSession.isRangingReportBatchingEnabled()).thenReturn(true);
+
+        mUwbSessionNotificationManager.onRangingResult(
+                mUwbSession, testRangingDataAndRangingReport.first);
+
+        verify(mUwbSession).addPendingRangingReport(testRangingDataAndRangingReport.second);
+        verify(mIUwbRangingCallbacks, never()).onRangingResult(any(), any());
+        verify(mIUwbRangingCallbacks, never()).onRangingResults(any(), any());
+    }
+
+    @Test
+    public void testFlushRangingReports_splitsBatchesAboveMaxSize() throws Exception {
+        RangingReport rangingReport = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS).second;
+        List<RangingReport> pending = new ArrayList<>();
+        for (int i = 0; i < FiraParams.RANGING_REPORT_BATCH_SIZE_MAX + 1; i++) {
+            pending.add(rangingReport);
+        }
+        when(mUwbSession.isRangingReportBatchingEnabled()).thenReturn(true);
+        when(mUwbSession.takePendingRangingReports()).thenReturn(pending);
+
+        mUwbSessionNotificationManager.flushRangingReports(mUwbSession);
+
+        InOrder inOrder = inOrder(mIUwbRangingCallbacks);
+        inOrder.verify(mIUwbRangingCallbacks).onRangingResults(
+                mSessionHandle, pending.subList(0, FiraParams.RANGING_REPORT_BATCH_SIZE_MAX));
+        inOrder.verify(mIUwbRangingCallbacks).onRangingResults(
+                mSessionHandle, List.of(rangingReport));
+    }
+
+    @Test
+    public void testFlushRangingReports_splitsBatchesAboveMaxTransactionSize() throws Exception {
+        RangingMeasurement measurement = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS)
+                .second.getMeasurements().get(0);
+        // Each report takes more than half of the transaction.
+        RangingReport rangingReport = new RangingReport.Builder()
+                .addRangingReportMetadata(new RangingReportMetadata.Builder()
+                        .setSessionId(1)
+                        .setRawNtfData(new byte[
+                                UwbSessionNotificationManager.RANGING_RESULTS_TRANSACTION_SIZE_MAX
+                                        / 2])
+                        .build()
+                        .toBundle())
+                .addMeasurement(measurement)
+                .build();
+        List<RangingReport> pending = List.of(rangingReport, rangingReport);
+        when(mUwbSession.isRangingReportBatchingEnabled()).thenReturn(true);
+        when(mUwbSession.takePendingRangingReports()).thenReturn(pending);
+
+        mUwbSessionNotificationManager.flushRangingReports(mUwbSession);
+
+        verify(mIUwbRangingCallbacks, times(2)).onRangingResults(
+                mSessionHandle, List.of(rangingReport));
+        verify(mIUwbRangingCallbacks, never()).onRangingResults(mSessionHandle, pending);
+    }
+
+    @Test
+    public void testOnRangingStopped_withBatching_flushesPendingReports() throws Exception {
+        Pair<UwbRangingData, RangingReport> testRangingDataAndRangingReport =
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS);
+        List<RangingReport> pending = List.of(testRangingDataAndRangingReport.second);
+        when(mUwbSession.isRangingReportBatchingEnabled()).thenReturn(true);
+        when(mUwbSession.takePendingRangingReports()).thenReturn(pending);
+
+        mUwbSessionNotificationManager.onRangingStopped(
+                mUwbSession, UwbUciConstants.STATUS_CODE_OK);
+
+        InOrder inOrder = inOrder(mIUwbRangingCallbacks);
+        inOrder.verify(mIUwbRangingCallbacks).onRangingResults(mSessionHandle, pending);
+        inOrder.verify(mIUwbRangingCallbacks).onRangingStopped(eq(mSessionHandle), anyInt(),
+                any());
+    }
+
+    @Test
+    public void testOnRangingClosed_withBatching_flushesPendingReports() throws Exception {
+        Pair<UwbRangingData, RangingReport> testRangingDataAndRangingReport =
+                UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS);
+        List<RangingReport> pending = List.of(testRangingDataAndRangingReport.second);
+        when(mUwbSession.isRangingReportBatchingEnabled()).thenReturn(true);
+        when(mUwbSession.takePendingRangingReports()).thenReturn(pending);
+
+        mUwbSessionNotificationManager.onRangingClosed(
+                mUwbSession, UwbUciConstants.STATUS_CODE_OK);
+
+        InOrder inOrder = inOrder(mIUwbRangingCallbacks);
+        inOrder.verify(mIUwbRangingCallbacks).onRangingResults(mSessionHandle, pending);
+        inOrder.verify(mIUwbRangingCallbacks).onRangingClosed(eq(mSessionHandle), anyInt(),
+                any());
+    }
+
+    @Test
+    public void testOnPredictedRangingResult() throws Exception {
+        RangingMeasurement measurement = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS)
+                .second.getMeasurements().get(0);
+        when(mUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+
+        ArgumentCaptor<RangingReport> reportCaptor = ArgumentCaptor.forClass(RangingReport.class);
+        verify(mIUwbRangingCallbacks).onRangingResult(eq(mSessionHandle), reportCaptor.capture());
+        assertThat(reportCaptor.getValue().getMeasurements()).containsExactly(measurement);
+        assertThat(RangingReportMetadata.fromBundle(
+                reportCaptor.getValue().getRangingReportMetadata()).isPredicted()).isTrue();
+        verify(mUwbMetrics, never()).logRangingResult(anyInt(), any(), any());
+    }
+
+    @Test
+    public void testOnPredictedRangingResult_olderThanLastReport_dropped() throws Exception {
+        RangingMeasurement measurement = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS)
+                .second.getMeasurements().get(0);
+        when(mUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        when(mUwbSession.getLastRangingReportElapsedNanos()).thenReturn(TEST_ELAPSED_NANOS);
+
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+
+        verify(mIUwbRangingCallbacks, never()).onRangingResult(any(), any());
+    }
+
+    @Test
+    public void testOnPredictedRangingResult_notDeliveredWhenIdleOrBatching() throws Exception {
+        RangingMeasurement measurement = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS)
+                .second.getMeasurements().get(0);
+        when(mUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_IDLE);
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+
+        when(mUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        when(mUwbSession.isRangingReportBatchingEnabled()).thenReturn(true);
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+
+        verify(mIUwbRangingCallbacks, never()).onRangingResult(any(), any());
+    }
+
+    @Test
+    public void testOnPredictedRangingResult_appliesProximityBounds() throws Exception {
+        // The measurement is 101 cm away.
+        RangingMeasurement measurement = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS)
+                .second.getMeasurements().get(0);
+        when(mUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        when(mFiraParams.getRangeDataNtfConfig()).thenReturn(
+                FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE_PROXIMITY_LEVEL_TRIG);
+        when(mFiraParams.getRangeDataNtfProximityNear()).thenReturn(0);
+        when(mFiraParams.getRangeDataNtfProximityFar()).thenReturn(100);
+
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+        verify(mIUwbRangingCallbacks, never()).onRangingResult(any(), any());
+
+        when(mFiraParams.getRangeDataNtfProximityFar()).thenReturn(200);
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+        verify(mIUwbRangingCallbacks).onRangingResult(eq(mSessionHandle), any());
+    }
+
+    @Test
+    public void testOnPredictedRangingResult_notDeliveredWhenDisabledOrInBackground()
+            throws Exception {
+        RangingMeasurement measurement = UwbTestUtils.generateRangingDataAndRangingReport(
+                        PEER_SHORT_MAC_ADDRESS, MAC_ADDRESSING_MODE_SHORT,
+                        RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                        true, true, false, false, TEST_ELAPSED_NANOS)
+                .second.getMeasurements().get(0);
+        when(mUwbSession.getSessionState()).thenReturn(UwbUciConstants.UWB_SESSION_STATE_ACTIVE);
+        when(mFiraParams.getRangeDataNtfConfig()).thenReturn(
+                FiraParams.RANGE_DATA_NTF_CONFIG_DISABLE);
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+
+        when(mFiraParams.getRangeDataNtfConfig()).thenReturn(
+                FiraParams.RANGE_DATA_NTF_CONFIG_ENABLE);
+        when(mUwbSession.hasNonPrivilegedApp()).thenReturn(true);
+        when(mUwbSession.hasNonPrivilegedFgAppOrService()).thenReturn(false);
+        mUwbSessionNotificationManager.onPredictedRangingResult(mUwbSession, measurement);
+
+        verify(mIUwbRangingCallbacks, never()).onRangingResult(any(), any());
+    }
+
     @Test
     public void testOnRangingResult_forTwoWay_WithNoAoa() throws Exception {
         when(mFiraParams.getAoaResultRequest()).thenReturn(
@@ -103,7 +103,7 @@ public class UwbShellCommandTest {
             FutureTask t = invocation.getArgument(0);
             t.run();
             return t.get();
-        }).when(mUwbInjector).runTaskOnSingleThreadExecutor(any(FutureTask.class), anyInt());
+        }).when(mUwbInjector).runTaskOnCommandExecutor(any(FutureTask.class), anyInt(), any());
         GenericSpecificationParams params = new GenericSpecificationParams.Builder()
                 .setCccSpecificationParams(mock(CccSpecificationParams.class))
                 .setFiraSpecificationParams(
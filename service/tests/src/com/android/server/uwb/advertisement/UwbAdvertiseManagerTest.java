@@ -18,6 +18,7 @@ package com.android.server.uwb.advertisement;
 
 import static com.android.server.uwb.util.DataTypeConversionUtil.macAddressByteArrayToLong;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -349,6 +350,76 @@ public class UwbAdvertiseManagerTest {
         assertNull(mUwbAdvertiseManager.getAdvertiseTarget(TEST_MAC_ADDRESS_B_INT));
     }
 
+    @Test
+    public void testUpdateAdvertiseTarget_removesStaleTargetsOfOtherDevices() throws Exception {
+        mUwbAdvertiseManager.updateAdvertiseTarget(UWB_OWR_AOA_MEASUREMENT_DEVICE_A);
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(TEST_MAC_ADDRESS_A_LONG));
+
+        // Device A stops advertising, device B is seen after the time threshold.
+        when(mUwbInjector.getElapsedSinceBootMillis()).thenReturn(
+                OWR_AOA_MEASUREMENT_TIME_OUTSIDE_THRESHOLD_MILLIS);
+        setupOwrAoaMeasurement(TEST_MAC_ADDRESS_B);
+
+        assertNull(mUwbAdvertiseManager.getAdvertiseTarget(TEST_MAC_ADDRESS_A_LONG));
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(
+                macAddressByteArrayToLong(TEST_MAC_ADDRESS_B)));
+    }
+
+    @Test
+    public void testUpdateAdvertiseTarget_boundedNumberOfTargets() throws Exception {
+        long currentTimeMillis = FIRST_OWR_AOA_MEASUREMENT_TIME_MILLIS;
+        for (int i = 0; i <= UwbAdvertiseManager.MAX_ADVERTISE_TARGETS; i++) {
+            when(mUwbInjector.getElapsedSinceBootMillis()).thenReturn(currentTimeMillis++);
+            setupOwrAoaMeasurement(new byte[] {(byte) (i >> 8), (byte) i});
+        }
+
+        // All the targets are within the time threshold, so the least recently updated one is
+        // evicted.
+        assertNull(mUwbAdvertiseManager.getAdvertiseTarget(
+                macAddressByteArrayToLong(new byte[] {0, 0})));
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(
+                macAddressByteArrayToLong(new byte[] {0, 1})));
+        assertNotNull(mUwbAdvertiseManager.getAdvertiseTarget(macAddressByteArrayToLong(
+                new byte[] {0, (byte) UwbAdvertiseManager.MAX_ADVERTISE_TARGETS})));
+    }
+
+    @Test
+    public void testAoaHistory_slidingVariance() throws Exception {
+        UwbAdvertiseManager.AoaHistory aoaHistory = new UwbAdvertiseManager.AoaHistory();
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i * 37 % 23) - 11.5;
+            aoaHistory.add(values[i], OVERLAY_ARRAY_SIZE_TO_CHECK,
+                    OVERLAY_ARRAY_START_INDEX_TO_CAL_VARIANCE,
+                    OVERLAY_ARRAY_END_INDEX_TO_CAL_VARIANCE);
+            if (i < OVERLAY_ARRAY_SIZE_TO_CHECK - 1) {
+                assertTrue(Double.isNaN(aoaHistory.getVariance()));
+                continue;
+            }
+
+            // Variance of the values from the start to the end index of the last values.
+            int first = i + 1 - OVERLAY_ARRAY_SIZE_TO_CHECK;
+            int start = first + OVERLAY_ARRAY_START_INDEX_TO_CAL_VARIANCE;
+            int end = first + OVERLAY_ARRAY_END_INDEX_TO_CAL_VARIANCE;
+            double mean = 0;
+            for (int j = start; j < end; j++) {
+                mean += values[j] / (end - start);
+            }
+            double variance = 0;
+            for (int j = start; j < end; j++) {
+                variance += (values[j] - mean) * (values[j] - mean) / (end - start);
+            }
+            assertEquals(variance, aoaHistory.getVariance(), 1e-9);
+        }
+    }
+
+    private void setupOwrAoaMeasurement(byte[] macAddress) {
+        mUwbAdvertiseManager.updateAdvertiseTarget(new UwbOwrAoaMeasurement(macAddress,
+                TEST_STATUS, TEST_LOS, TEST_FRAME_SEQ_NUMBER, TEST_BLOCK_INDEX,
+                TEST_AOA_AZIMUTH_Q97_FORMAT, TEST_AOA_AZIMUTH_FOM,
+                TEST_AOA_ELEVATION_Q97_FORMAT, TEST_AOA_ELEVATION_FOM));
+    }
+
     private UwbOwrAoaMeasurement setupOwrAoaMeasurements(byte[] macAddress, int numMeasurements,
             int aoaAzimuth, int aoaAzimuthVariance,
             int aoaElevation, int aoaElevationVariance) {
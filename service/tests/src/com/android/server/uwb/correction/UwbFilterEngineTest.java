@@ -33,6 +33,9 @@ import com.android.server.uwb.correction.primers.NullPrimer;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Presubmit
 public class UwbFilterEngineTest {
 
@@ -161,4 +164,38 @@ public class UwbFilterEngineTest {
 
         engine.close();
     }
+
+    @Test
+    public void testPredictions() {
+        NullPoseSource poseSource = new NullPoseSource();
+        UwbFilterEngine engine = new UwbFilterEngine.Builder()
+                .setFilter(
+                new PositionFilterImpl(new NullFilter(), new NullFilter(), new NullFilter()))
+                .setPoseSource(poseSource)
+                .build();
+        long[] nowMs = {0};
+        List<Annotated> predictions = new ArrayList<>();
+        engine.setPredictionListener(
+                (prediction, timeMs) -> predictions.add(prediction), 10, () -> nowMs[0]);
+
+        poseSource.changePose(Pose.IDENTITY);
+        engine.add(SphericalVector.fromRadians(0.7f, 0, 1.3f).toAnnotated(), 0);
+
+        // Pose changes within the interval after a reading don't produce a prediction.
+        nowMs[0] = 5;
+        poseSource.changePose(new Pose(Vector3.ORIGIN, Quaternion.yawPitchRoll(-0.2f, 0, 0)));
+        assertThat(predictions).isEmpty();
+
+        // Turn left.
+        nowMs[0] = 10;
+        poseSource.changePose(new Pose(Vector3.ORIGIN, Quaternion.yawPitchRoll(-0.5f, 0, 0)));
+        assertThat(predictions).hasSize(1);
+        assertClose(predictions.get(0).azimuth, 0.7f - 0.5f);
+        assertClose(predictions.get(0).distance, 1.3f);
+
+        engine.close();
+        nowMs[0] = 100;
+        poseSource.changePose(Pose.IDENTITY);
+        assertThat(predictions).hasSize(1);
+    }
 }
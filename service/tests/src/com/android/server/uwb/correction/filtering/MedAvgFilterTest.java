@@ -113,4 +113,44 @@ public class MedAvgFilterTest {
                 / (0.5f + 0.5f + 0.25f + 1f + 0.25f);
         assertThat(filter.getResult().value).isWithin(0.000001f).of(weightedResult);
     }
+
+    // Ensures that shrinking the window drops the oldest samples once the next sample arrives.
+    @Test
+    public void shrinkWindowTest() {
+        MedAvgFilter filter = new MedAvgFilter(4, 1);
+        filter.add(1, 0, 1);
+        filter.add(2, 0, 1);
+        filter.add(3, 0, 1);
+        filter.add(4, 0, 1);
+        filter.setWindowSize(2);
+        filter.add(5, 0, 1);
+        assertThat(filter.getResult().value).isEqualTo((4 + 5) / 2f);
+    }
+
+    // Ensures that growing the window keeps the samples already in the filter.
+    @Test
+    public void growWindowTest() {
+        MedAvgFilter filter = new MedAvgFilter(2, 1);
+        filter.add(1, 0, 1);
+        filter.add(2, 0, 1);
+        filter.add(3, 0, 1);
+        filter.setWindowSize(4);
+        filter.add(4, 0, 1);
+        filter.add(5, 0, 1);
+        assertThat(filter.getResult().value).isEqualTo((2 + 3 + 4 + 5) / 4f);
+    }
+
+    // Ensures that the median tracks the window as it slides over repeated values.
+    @Test
+    public void slidingMedianTest() {
+        MedAvgFilter filter = new MedAvgFilter(3, 0);
+        filter.add(5, 0, 1);
+        filter.add(1, 0, 1);
+        filter.add(5, 0, 1);
+        assertThat(filter.getResult().value).isEqualTo(5);
+        filter.add(1, 0, 1);
+        assertThat(filter.getResult().value).isEqualTo(1);
+        filter.add(9, 0, 1);
+        assertThat(filter.getResult().value).isEqualTo(5);
+    }
 }
@@ -54,4 +54,16 @@ public class MedAvgRotationFilterFilterTest {
                 toRadians((175 + (360 - 175) + 5) / 3f) + F_HALF_PI - 2 * F_PI
         );
     }
+
+    @Test
+    public void slideTest() {
+        MedAvgRotationFilter filter = new MedAvgRotationFilter(3, 1);
+        filter.add((float) toRadians(-10), 0, 1);
+        filter.add((float) toRadians(175), 0, 1);
+        filter.add((float) toRadians(-175), 0, 1);
+        filter.add((float) toRadians(170), 0, 1);
+
+        // The -10 degree sample has left the window.
+        assertClose(filter.getResult().value, toRadians((175 + (360 - 175) + 170) / 3f));
+    }
 }
@@ -59,4 +59,33 @@ public class PoseTest {
         assertThat(p.rotation.z).isEqualTo(0);
         assertThat(p.rotation.w).isEqualTo(0);
     }
+
+    @Test
+    public void testDelta() {
+        Pose previous = new Pose(new Vector3(1, 2, 3), Quaternion.yawPitchRoll(0.1F, 0, 0));
+        Pose current = new Pose(new Vector3(2, 2, 3), Quaternion.yawPitchRoll(0.3F, 0.1F, 0));
+        Pose expected = Pose.compose(current.inverted(), previous);
+
+        Pose delta = Pose.delta(previous, current);
+
+        assertThat(delta.translation.x).isWithin(1e-6F).of(expected.translation.x);
+        assertThat(delta.translation.y).isWithin(1e-6F).of(expected.translation.y);
+        assertThat(delta.translation.z).isWithin(1e-6F).of(expected.translation.z);
+        assertThat(delta.rotation.x).isWithin(1e-6F).of(expected.rotation.x);
+        assertThat(delta.rotation.y).isWithin(1e-6F).of(expected.rotation.y);
+        assertThat(delta.rotation.z).isWithin(1e-6F).of(expected.rotation.z);
+        assertThat(delta.rotation.w).isWithin(1e-6F).of(expected.rotation.w);
+    }
+
+    @Test
+    public void testTransformPointWithoutAllocation() {
+        Pose pose = new Pose(new Vector3(1, 2, 3), Quaternion.yawPitchRoll(0.3F, 0.1F, 0.2F));
+        Vector3 expected = pose.transformPoint(new Vector3(4, 5, 6));
+        float[] out = new float[3];
+
+        assertThat(pose.transformPoint(4, 5, 6, out)).isSameInstanceAs(out);
+        assertThat(out[0]).isWithin(1e-6F).of(expected.x);
+        assertThat(out[1]).isWithin(1e-6F).of(expected.y);
+        assertThat(out[2]).isWithin(1e-6F).of(expected.z);
+    }
 }
@@ -19,6 +19,8 @@ package com.android.server.uwb.correction.math;
 import static com.android.server.uwb.correction.TestHelpers.assertClose;
 import static com.android.server.uwb.correction.math.MathHelper.F_HALF_PI;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.junit.Assert.assertTrue;
 
 import static java.lang.Math.abs;
@@ -51,4 +53,26 @@ public class QuaternionTest {
         quaternion = Quaternion.yawPitchRoll(0, 0, F_HALF_PI);
         assertClose(quaternion.rotateVector(new Vector3(1, 2, 3)), new Vector3(-2, 1, 3));
     }
+
+    @Test
+    public void testWithoutAllocation() {
+        float[] out = new float[3];
+        Quaternion quaternion = Quaternion.yawPitchRoll(0.5f, 1f, 1.5f);
+
+        Vector3 ypr = quaternion.toYawPitchRoll();
+        assertThat(quaternion.toYawPitchRoll(out)).isEqualTo(new float[] {ypr.x, ypr.y, ypr.z});
+
+        Vector3 rotated = quaternion.rotateVector(new Vector3(1, 2, 3));
+        assertThat(quaternion.rotateVector(1, 2, 3, out))
+                .isEqualTo(new float[] {rotated.x, rotated.y, rotated.z});
+
+        Quaternion rhs = Quaternion.yawPitchRoll(-0.2f, 0.3f, 0);
+        Quaternion product = Quaternion.multiply(quaternion, rhs);
+        Quaternion productFromComponents =
+                Quaternion.multiply(quaternion, rhs.x, rhs.y, rhs.z, rhs.w);
+        assertThat(productFromComponents.x).isEqualTo(product.x);
+        assertThat(productFromComponents.y).isEqualTo(product.y);
+        assertThat(productFromComponents.z).isEqualTo(product.z);
+        assertThat(productFromComponents.w).isEqualTo(product.w);
+    }
 }
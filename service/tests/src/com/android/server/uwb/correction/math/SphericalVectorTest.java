@@ -154,4 +154,30 @@ public class SphericalVectorTest {
         SphericalVector loc = SphericalVector.fromDegrees(1.2f, -3.4f, 5.6f);
         assertEquals("[⦡   1.2,⦨ -3.4,⤠ 5.60]", loc.toString());
     }
+
+    @Test
+    public void testWithoutAllocation() {
+        float[] out = new float[3];
+        // Front, back and an AoA combination that is only legal after scaling.
+        float[][] inputs = {{15, 25, 6}, {-95, -25, 6}, {80, 40, 2}, {0, 0, 0}};
+        for (float[] in : inputs) {
+            SphericalVector vec = SphericalVector.fromDegrees(in[0], in[1], in[2]);
+
+            Vector3 cartesian = vec.toCartesian();
+            assertThat(vec.toCartesian(out)).isEqualTo(
+                    new float[] {cartesian.x, cartesian.y, cartesian.z});
+
+            SphericalVector spherical = SphericalVector.fromCartesian(cartesian);
+            assertThat(SphericalVector.fromCartesian(cartesian.x, cartesian.y, cartesian.z, out))
+                    .isEqualTo(new float[] {
+                            spherical.azimuth, spherical.elevation, spherical.distance});
+
+            spherical = AoaVector.fromRadians(vec.azimuth, vec.elevation, vec.distance)
+                    .toSphericalVector();
+            assertThat(SphericalVector.fromAoaRadians(
+                    vec.azimuth, vec.elevation, vec.distance, out))
+                    .isEqualTo(new float[] {
+                            spherical.azimuth, spherical.elevation, spherical.distance});
+        }
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.correction.pose;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.server.uwb.correction.math.Pose;
+import com.android.server.uwb.correction.math.Quaternion;
+import com.android.server.uwb.correction.math.Vector3;
+
+import org.junit.Test;
+
+public class PoseSourceBaseTest {
+
+    @Test
+    public void testGetPoseDelta_cachedPerSource() {
+        NullPoseSource source1 = new NullPoseSource();
+        NullPoseSource source2 = new NullPoseSource();
+        Pose previous = new Pose(new Vector3(1, 2, 3), Quaternion.yawPitchRoll(0.1F, 0, 0));
+        Pose current = new Pose(new Vector3(2, 2, 3), Quaternion.yawPitchRoll(0.3F, 0.1F, 0));
+
+        Pose delta = source1.getPoseDelta(previous, current);
+
+        // The same pose update is only computed once by a pose source.
+        assertThat(source1.getPoseDelta(previous, current)).isSameInstanceAs(delta);
+        assertThat(source1.getPoseDelta(current, previous)).isNotSameInstanceAs(delta);
+        // Other pose sources don't share the cache.
+        assertThat(source2.getPoseDelta(previous, current)).isNotSameInstanceAs(delta);
+    }
+
+    @Test
+    public void testPublish_throwingListenerKept() {
+        NullPoseSource source = new NullPoseSource();
+        int[] calls = new int[1];
+        PoseEventListener listener = pose -> {
+            calls[0]++;
+            throw new IllegalStateException();
+        };
+        source.registerListener(listener);
+
+        source.changePose(Pose.IDENTITY);
+        source.changePose(Pose.IDENTITY);
+
+        assertThat(calls[0]).isEqualTo(2);
+        assertThat(source.unregisterListener(listener)).isTrue();
+    }
+}
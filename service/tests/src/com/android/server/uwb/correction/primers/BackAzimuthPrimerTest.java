@@ -112,4 +112,63 @@ public class BackAzimuthPrimerTest {
             }
         }
     }
+
+    @Test
+    public void slidingWindowSumAndMedian() {
+        BackAzimuthPrimer.SlidingWindow window = new BackAzimuthPrimer.SlidingWindow(4, true);
+
+        window.add(3);
+        window.add(1);
+        window.add(2);
+
+        assertThat(window.isFull()).isFalse();
+        assertThat(window.mean()).isWithin(1e-9).of(2);
+        // For an odd count, the middle value is averaged with the one above it.
+        assertThat(window.median()).isWithin(1e-9).of(2.5);
+
+        window.add(4);
+
+        assertThat(window.isFull()).isTrue();
+        assertThat(window.mean()).isWithin(1e-9).of(2.5);
+        assertThat(window.median()).isWithin(1e-9).of(3);
+    }
+
+    @Test
+    public void slidingWindowEvictsOldestAtCapacity() {
+        BackAzimuthPrimer.SlidingWindow window = new BackAzimuthPrimer.SlidingWindow(3, true);
+        window.add(10);
+        window.add(1);
+        window.add(2);
+
+        // Evicts the 10, which was the largest value.
+        window.add(3);
+
+        assertThat(window.isFull()).isTrue();
+        assertThat(window.mean()).isWithin(1e-9).of(2);
+        assertThat(window.median()).isWithin(1e-9).of(2.5);
+
+        // Evicts the 1, which was the smallest value.
+        window.add(-5);
+
+        assertThat(window.mean()).isWithin(1e-9).of(0);
+        assertThat(window.median()).isWithin(1e-9).of(2.5);
+
+        window.negate();
+
+        assertThat(window.mean()).isWithin(1e-9).of(0);
+        assertThat(window.median()).isWithin(1e-9).of(1.5);
+    }
+
+    @Test
+    public void slidingWindowSumDoesNotDrift() {
+        BackAzimuthPrimer.SlidingWindow window = new BackAzimuthPrimer.SlidingWindow(5, false);
+        for (int i = 0; i < 1_000_000; i++) {
+            window.add((i % 2 == 0) ? 1e9f : (i % 7) * 1e-4f);
+        }
+        for (int i = 0; i < 5; i++) {
+            window.add(0.1f);
+        }
+
+        assertThat(window.mean()).isWithin(1e-9).of(0.1f);
+    }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.data;
+
+import static com.android.server.uwb.data.UwbUciConstants.MAC_ADDRESSING_MODE_EXTENDED;
+import static com.android.server.uwb.data.UwbUciConstants.MAC_ADDRESSING_MODE_SHORT;
+import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_DL_TDOA;
+import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_OWR_AOA;
+import static com.android.server.uwb.data.UwbUciConstants.RANGING_MEASUREMENT_TYPE_TWO_WAY;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.platform.test.annotations.Presubmit;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.data.UwbRangingDataBatch}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+@Presubmit
+public class UwbRangingDataBatchTest {
+    private static final byte[] TEST_RAW_NTF_DATA = {0x10, 0x20, 0x30};
+    private static final byte[] TEST_SHORT_MAC_ADDRESS = {0x01, 0x02};
+    private static final byte[] TEST_EXT_MAC_ADDRESS = {0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07,
+            0x08};
+
+    /** Writes a record the way the native layer does, leaving the buffer after its header. */
+    private static int putHeader(ByteBuffer buffer, long sessionId, int measuresType,
+            int macAddressMode, int noOfMeasures) {
+        int start = buffer.position();
+        buffer.putInt(0); // Record length, see endRecord().
+        buffer.putInt(0xFFFFFFF0); // Sequence counter
+        buffer.putInt((int) sessionId);
+        buffer.put((byte) 1); // RCR indication
+        buffer.putInt(200); // Current ranging interval
+        buffer.put((byte) measuresType);
+        buffer.put((byte) macAddressMode);
+        buffer.putShort((short) noOfMeasures);
+        buffer.putShort((short) TEST_RAW_NTF_DATA.length);
+        buffer.put(TEST_RAW_NTF_DATA);
+        return start;
+    }
+
+    private static void endRecord(ByteBuffer buffer, int start) {
+        buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+    }
+
+    private static void putTwoWayMeasurement(ByteBuffer buffer, int distance) {
+        buffer.put(TEST_SHORT_MAC_ADDRESS);
+        buffer.put((byte) UwbUciConstants.STATUS_CODE_OK);
+        buffer.put((byte) 1); // NLoS
+        buffer.putShort((short) distance);
+        buffer.putShort((short) 0xFF80); // AoA azimuth
+        buffer.put((byte) 100);
+        buffer.putShort((short) 0x0180); // AoA elevation
+        buffer.put((byte) 90);
+        buffer.putShort((short) 0); // Destination AoA azimuth
+        buffer.put((byte) 0);
+        buffer.putShort((short) 0); // Destination AoA elevation
+        buffer.put((byte) 0);
+        buffer.put((byte) 3); // Slot index
+        buffer.put((byte) 0xC8); // RSSI
+    }
+
+    private static ByteBuffer newBuffer() {
+        return ByteBuffer.allocateDirect(512).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void testTwoWayAndOwrAoa() {
+        ByteBuffer buffer = newBuffer();
+        int start = putHeader(buffer, 0xF0000001L, RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                MAC_ADDRESSING_MODE_SHORT, 2);
+        putTwoWayMeasurement(buffer, 100);
+        putTwoWayMeasurement(buffer, 0xFFFF);
+        endRecord(buffer, start);
+        start = putHeader(buffer, 9, RANGING_MEASUREMENT_TYPE_OWR_AOA,
+                MAC_ADDRESSING_MODE_EXTENDED, 1);
+        buffer.put(TEST_EXT_MAC_ADDRESS);
+        buffer.put((byte) UwbUciConstants.STATUS_CODE_OK);
+        buffer.put((byte) 0); // NLoS
+        buffer.put((byte) 0xFE); // Frame sequence number
+        buffer.putShort((short) 0x8001); // Block index
+        buffer.putShort((short) 0x0180); // AoA azimuth
+        buffer.put((byte) 100);
+        buffer.putShort((short) 0xFF80); // AoA elevation
+        buffer.put((byte) 90);
+        endRecord(buffer, start);
+        buffer.flip();
+
+        UwbRangingDataBatch batch = new UwbRangingDataBatch(buffer, 2);
+
+        assertThat(batch.size()).isEqualTo(2);
+        assertThat(batch.getSessionId(0)).isEqualTo(0xF0000001L);
+        assertThat(batch.getSessionId(1)).isEqualTo(9);
+
+        UwbRangingData twoWay = batch.get(0);
+        assertThat(twoWay.getSequenceCounter()).isEqualTo(0xFFFFFFF0L);
+        assertThat(twoWay.getSessionId()).isEqualTo(0xF0000001L);
+        assertThat(twoWay.getRcrIndication()).isEqualTo(1);
+        assertThat(twoWay.getCurrRangingInterval()).isEqualTo(200);
+        assertThat(twoWay.getRangingMeasuresType()).isEqualTo(RANGING_MEASUREMENT_TYPE_TWO_WAY);
+        assertThat(twoWay.getMacAddressMode()).isEqualTo(MAC_ADDRESSING_MODE_SHORT);
+        assertThat(twoWay.getNoOfRangingMeasures()).isEqualTo(2);
+        assertThat(twoWay.getRawNtfData()).isEqualTo(TEST_RAW_NTF_DATA);
+        UwbTwoWayMeasurement expected = new UwbTwoWayMeasurement(TEST_SHORT_MAC_ADDRESS,
+                UwbUciConstants.STATUS_CODE_OK, 1, 100, 0xFF80, 100, 0x0180, 90, 0, 0, 0, 0, 3,
+                0xC8);
+        UwbTwoWayMeasurement measurement = twoWay.getRangingTwoWayMeasures()[0];
+        assertThat(measurement.getMacAddress()).isEqualTo(TEST_SHORT_MAC_ADDRESS);
+        assertThat(measurement.getNLoS()).isEqualTo(expected.getNLoS());
+        assertThat(measurement.getDistance()).isEqualTo(expected.getDistance());
+        assertThat(measurement.getAoaAzimuth()).isEqualTo(expected.getAoaAzimuth());
+        assertThat(measurement.getAoaAzimuthFom()).isEqualTo(expected.getAoaAzimuthFom());
+        assertThat(measurement.getAoaElevation()).isEqualTo(expected.getAoaElevation());
+        assertThat(measurement.getSlotIndex()).isEqualTo(expected.getSlotIndex());
+        assertThat(measurement.getRssi()).isEqualTo(expected.getRssi());
+        assertThat(twoWay.getRangingTwoWayMeasures()[1].getDistance()).isEqualTo(0xFFFF);
+
+        UwbRangingData owrAoa = batch.get(1);
+        assertThat(owrAoa.getSessionId()).isEqualTo(9);
+        assertThat(owrAoa.getRangingMeasuresType()).isEqualTo(RANGING_MEASUREMENT_TYPE_OWR_AOA);
+        assertThat(owrAoa.getNoOfRangingMeasures()).isEqualTo(1);
+        UwbOwrAoaMeasurement expectedOwrAoa = new UwbOwrAoaMeasurement(TEST_EXT_MAC_ADDRESS,
+                UwbUciConstants.STATUS_CODE_OK, 0, 0xFE, 0x8001, 0x0180, 100, 0xFF80, 90);
+        UwbOwrAoaMeasurement owrAoaMeasurement = owrAoa.getRangingOwrAoaMeasure();
+        assertThat(owrAoaMeasurement.getMacAddress()).isEqualTo(TEST_EXT_MAC_ADDRESS);
+        assertThat(owrAoaMeasurement.getFrameSequenceNumber()).isEqualTo(0xFE);
+        assertThat(owrAoaMeasurement.getBlockIndex()).isEqualTo(0x8001);
+        assertThat(owrAoaMeasurement.getAoaAzimuth()).isEqualTo(expectedOwrAoa.getAoaAzimuth());
+        assertThat(owrAoaMeasurement.getAoaElevation())
+                .isEqualTo(expectedOwrAoa.getAoaElevation());
+    }
+
+    @Test
+    public void testDlTdoa() {
+        ByteBuffer buffer = newBuffer();
+        int start = putHeader(buffer, 3, RANGING_MEASUREMENT_TYPE_DL_TDOA,
+                MAC_ADDRESSING_MODE_SHORT, 1);
+        buffer.put(TEST_SHORT_MAC_ADDRESS);
+        buffer.put((byte) 0); // Status
+        buffer.put((byte) 1); // Message type
+        buffer.putShort((short) 1331); // Message control
+        buffer.putShort((short) 5); // Block index
+        buffer.put((byte) 1); // Round index
+        buffer.put((byte) 0); // NLoS
+        buffer.putShort((short) 67); // AoA azimuth
+        buffer.put((byte) 50);
+        buffer.putShort((short) 37); // AoA elevation
+        buffer.put((byte) 90);
+        buffer.put((byte) 0xF0); // RSSI
+        buffer.putLong(500_000L); // Tx timestamp
+        buffer.putLong(-1L); // Rx timestamp
+        buffer.putShort((short) 100); // Anchor CFO
+        buffer.putShort((short) 200); // CFO
+        buffer.putInt(0xFFFFFFFF); // Initiator reply time
+        buffer.putInt(7); // Responder reply time
+        buffer.putShort((short) 0xFFFF); // Initiator-responder ToF
+        buffer.put((byte) 3).put(new byte[] {1, 2, 3}); // Anchor location
+        buffer.put((byte) 1).put((byte) 4); // Active ranging rounds
+        endRecord(buffer, start);
+        buffer.flip();
+
+        UwbRangingData rangingData = new UwbRangingDataBatch(buffer, 1).get(0);
+
+        assertThat(rangingData.getRangingMeasuresType())
+                .isEqualTo(RANGING_MEASUREMENT_TYPE_DL_TDOA);
+        UwbDlTDoAMeasurement measurement = rangingData.getUwbDlTDoAMeasurements()[0];
+        UwbDlTDoAMeasurement expected = new UwbDlTDoAMeasurement(TEST_SHORT_MAC_ADDRESS, 0, 1,
+                1331, 5, 1, 0, 67, 50, 37, 90, 0xF0, 500_000L, -1L, 100, 200, 0xFFFFFFFFL, 7,
+                0xFFFF, new byte[] {1, 2, 3}, new byte[] {4});
+        assertThat(measurement.getMacAddress()).isEqualTo(TEST_SHORT_MAC_ADDRESS);
+        assertThat(measurement.getMessageControl()).isEqualTo(1331);
+        assertThat(measurement.getAoaAzimuth()).isEqualTo(expected.getAoaAzimuth());
+        assertThat(measurement.getRssi()).isEqualTo(0xF0);
+        assertThat(measurement.getTxTimestamp()).isEqualTo(500_000L);
+        assertThat(measurement.getRxTimestamp()).isEqualTo(-1L);
+        assertThat(measurement.getAnchorCfo()).isEqualTo(expected.getAnchorCfo());
+        assertThat(measurement.getCfo()).isEqualTo(expected.getCfo());
+        assertThat(measurement.getInitiatorReplyTime()).isEqualTo(0xFFFFFFFFL);
+        assertThat(measurement.getResponderReplyTime()).isEqualTo(7);
+        assertThat(measurement.getInitiatorResponderTof()).isEqualTo(0xFFFF);
+        assertThat(measurement.getAnchorLocation()).isEqualTo(new byte[] {1, 2, 3});
+        assertThat(measurement.getActiveRangingRounds()).isEqualTo(new byte[] {4});
+    }
+
+    @Test
+    public void testMalformedBatch() {
+        ByteBuffer buffer = newBuffer();
+        int start = putHeader(buffer, 3, RANGING_MEASUREMENT_TYPE_TWO_WAY,
+                MAC_ADDRESSING_MODE_SHORT, 2);
+        // Only one of the two measurements.
+        putTwoWayMeasurement(buffer, 100);
+        endRecord(buffer, start);
+        buffer.flip();
+
+        // More records than the buffer holds.
+        assertThrows(IllegalArgumentException.class, () -> new UwbRangingDataBatch(buffer, 2));
+
+        UwbRangingDataBatch batch = new UwbRangingDataBatch(buffer, 1);
+        assertThat(batch.getSessionId(0)).isEqualTo(3);
+        assertThrows(IllegalArgumentException.class, () -> batch.get(0));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.discovery;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.discovery.TransportProvider.MessagePacket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Unit test for {@link MessagePacketQueue} */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class MessagePacketQueueTest {
+    private static final int SECID = 2;
+    private static final int SECID2 = 3;
+    private static final int SECID3 = 4;
+
+    private MessagePacketQueue mMessagePacketQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        mMessagePacketQueue = new MessagePacketQueue();
+    }
+
+    private static MessagePacket createMessagePacket(int secid, int dataPacketCount) {
+        return new MessagePacket(secid, ByteBuffer.wrap(new byte[dataPacketCount]));
+    }
+
+    /** Takes one byte of each message as its data packet, and returns the SECIDs in order. */
+    private List<Integer> drain() {
+        List<Integer> secids = new ArrayList<>();
+        while (!mMessagePacketQueue.isEmpty()) {
+            MessagePacket messagePacket = mMessagePacketQueue.peek();
+            messagePacket.messageBytes.get();
+            mMessagePacketQueue.advance();
+            secids.add(messagePacket.secid);
+        }
+        return secids;
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(mMessagePacketQueue.isEmpty()).isTrue();
+        assertThat(mMessagePacketQueue.size()).isEqualTo(0);
+        assertThat(mMessagePacketQueue.peek()).isNull();
+    }
+
+    @Test
+    public void testSingleSession_messagesSentOneAfterTheOther() {
+        mMessagePacketQueue.add(createMessagePacket(SECID, 2));
+        mMessagePacketQueue.add(createMessagePacket(SECID2, 2));
+
+        assertThat(mMessagePacketQueue.size()).isEqualTo(2);
+        assertThat(drain()).containsExactly(SECID, SECID, SECID2, SECID2).inOrder();
+        assertThat(mMessagePacketQueue.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentSessions_messagesInterleaved() {
+        mMessagePacketQueue.setMaxConcurrentSessions(2);
+        mMessagePacketQueue.add(createMessagePacket(SECID, 3));
+        mMessagePacketQueue.add(createMessagePacket(SECID2, 1));
+        mMessagePacketQueue.add(createMessagePacket(SECID3, 2));
+
+        assertThat(drain())
+                .containsExactly(SECID, SECID2, SECID, SECID3, SECID, SECID3)
+                .inOrder();
+    }
+
+    @Test
+    public void testConcurrentSessions_sameSecidKeptInOrder() {
+        mMessagePacketQueue.setMaxConcurrentSessions(2);
+        MessagePacket first = createMessagePacket(SECID, 2);
+        MessagePacket second = createMessagePacket(SECID, 1);
+        mMessagePacketQueue.add(first);
+        mMessagePacketQueue.add(second);
+        mMessagePacketQueue.add(createMessagePacket(SECID2, 2));
+
+        assertThat(mMessagePacketQueue.peek()).isSameInstanceAs(first);
+        assertThat(drain()).containsExactly(SECID, SECID2, SECID, SECID2, SECID).inOrder();
+        assertThat(second.messageBytes.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void testClear() {
+        mMessagePacketQueue.add(createMessagePacket(SECID, 2));
+        mMessagePacketQueue.add(createMessagePacket(SECID2, 2));
+        mMessagePacketQueue.peek();
+
+        mMessagePacketQueue.clear();
+
+        assertThat(mMessagePacketQueue.isEmpty()).isTrue();
+        assertThat(mMessagePacketQueue.peek()).isNull();
+    }
+}
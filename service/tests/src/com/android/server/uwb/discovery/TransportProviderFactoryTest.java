@@ -105,6 +105,7 @@ public class TransportProviderFactoryTest {
                         mMockContext,
                         SECID,
                         mDiscoveryInfo,
+                        /*maxMessageBufferSize=*/ 4096,
                         mMockTransportServerCallback);
 
         assertThat(provider).isNotNull();
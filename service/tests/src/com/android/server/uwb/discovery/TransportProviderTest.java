@@ -148,6 +148,37 @@ public class TransportProviderTest {
         verify(mMockDataReceiver2, times(1)).onDataReceived(MESSAGE_PAYLOAD);
     }
 
+    @Test
+    public void testRegisterAndUnregisterDataReceiver_additionalSecid() {
+        mTransportProvider.registerDataReceiver(mMockDataReceiver);
+        assertThat(mTransportProvider.registerDataReceiver(SECID2, mMockDataReceiver2)).isTrue();
+        mTransportProvider.onMessageReceived(SECID, MESSAGE);
+        mTransportProvider.onMessageReceived(SECID2, MESSAGE);
+
+        verify(mMockDataReceiver, times(1)).onDataReceived(MESSAGE_PAYLOAD);
+        verify(mMockDataReceiver2, times(1)).onDataReceived(MESSAGE_PAYLOAD);
+
+        mTransportProvider.unregisterDataReceiver(SECID2);
+        mTransportProvider.onMessageReceived(SECID2, MESSAGE);
+
+        verifyNoMoreInteractions(mMockDataReceiver2);
+        assertThat(mFakeTransportProvider.lastSendMessageSecid)
+                .isEqualTo(TransportProvider.ADMIN_SECID);
+        assertThat(mFakeTransportProvider.lastSendMessage.toString())
+                .isEqualTo(new AdminErrorMessage(ErrorType.SECID_INVALID).toString());
+    }
+
+    @Test
+    public void testRegisterDataReceiver_additionalSecidRejected() {
+        assertThat(mTransportProvider.registerDataReceiver(SECID, mMockDataReceiver)).isFalse();
+        assertThat(
+                        mTransportProvider.registerDataReceiver(
+                                TransportProvider.ADMIN_SECID, mMockDataReceiver))
+                .isFalse();
+        assertThat(mTransportProvider.registerDataReceiver(SECID2, mMockDataReceiver)).isTrue();
+        assertThat(mTransportProvider.registerDataReceiver(SECID2, mMockDataReceiver2)).isFalse();
+    }
+
     @Test
     public void testSendData_succeed() {
         mTransportProvider.sendData(MessageType.COMMAND, MESSAGE_PAYLOAD, mMockSendingDataCallback);
@@ -178,6 +209,14 @@ public class TransportProviderTest {
                                 .toString());
     }
 
+    @Test
+    public void testSendData_destinationSecid() {
+        mTransportProvider.sendData(
+                SECID3, MessageType.COMMAND, MESSAGE_PAYLOAD, mMockSendingDataCallback);
+        verify(mMockSendingDataCallback, times(1)).onSuccess();
+        assertThat(mFakeTransportProvider.lastSendMessageSecid).isEqualTo(SECID3);
+    }
+
     @Test
     public void testOnMessageReceived_secidMismatch() {
         mTransportProvider.registerDataReceiver(mMockDataReceiver);
@@ -72,6 +72,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.concurrent.Executor;
 
@@ -110,6 +111,12 @@ public class GattTransportClientProviderTest {
                     UuidConstants.CP_IN_CONTROL_POINT_UUID.getUuid(),
                     BluetoothGattCharacteristic.PROPERTY_WRITE,
                     BluetoothGattCharacteristic.PERMISSION_WRITE);
+    private static final BluetoothGattCharacteristic IN_CHARACTERSTIC_WRITE_NO_RESPONSE =
+            new BluetoothGattCharacteristic(
+                    UuidConstants.CP_IN_CONTROL_POINT_UUID.getUuid(),
+                    BluetoothGattCharacteristic.PROPERTY_WRITE
+                            | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
+                    BluetoothGattCharacteristic.PERMISSION_WRITE);
     private static final BluetoothGattCharacteristic CAPABILITIES_CHARACTERSTIC =
             new BluetoothGattCharacteristic(
                     UuidConstants.CP_FIRA_CONNECTOR_CAPABILITIES_UUID.getUuid(),
@@ -134,6 +141,7 @@ public class GattTransportClientProviderTest {
     @Mock BluetoothGatt mMockBluetoothGatt;
     @Mock BluetoothGattService mMockBluetoothGattService;
     @Mock DataReceiver mMockDataReceiver;
+    @Mock DataReceiver mMockDataReceiver2;
 
     private TransportClientInfo mTransportClientInfo;
     private GattTransportClientProvider mGattTransportClientProvider;
@@ -242,11 +250,15 @@ public class GattTransportClientProviderTest {
     }
 
     private void setupGattServicesDiscover() {
+        setupGattServicesDiscover(IN_CHARACTERSTIC);
+    }
+
+    private void setupGattServicesDiscover(BluetoothGattCharacteristic inCharacteristic) {
         when(mMockBluetoothGatt.getService(UuidConstants.FIRA_CP_PARCEL_UUID.getUuid()))
                 .thenReturn(mMockBluetoothGattService);
         when(mMockBluetoothGattService.getCharacteristic(
                         UuidConstants.CP_IN_CONTROL_POINT_UUID.getUuid()))
-                .thenReturn(IN_CHARACTERSTIC);
+                .thenReturn(inCharacteristic);
         when(mMockBluetoothGattService.getCharacteristic(
                         UuidConstants.CP_OUT_CONTROL_POINT_UUID.getUuid()))
                 .thenReturn(mOutCharacterstic);
@@ -305,8 +317,12 @@ public class GattTransportClientProviderTest {
     }
 
     private void startProcessing() {
+        startProcessing(IN_CHARACTERSTIC);
+    }
+
+    private void startProcessing(BluetoothGattCharacteristic inCharacteristic) {
         setupGattConnect();
-        setupGattServicesDiscover();
+        setupGattServicesDiscover(inCharacteristic);
         setupGattWriteCharacteristic(CAPABILITIES_CHARACTERSTIC);
         setupGattWriteDescriptor();
         setupGattWriteCharacteristic(IN_CHARACTERSTIC);
@@ -629,6 +645,105 @@ public class GattTransportClientProviderTest {
                 .isEqualTo(packet1.toString());
     }
 
+    private FiraConnectorMessage createMessage(int payloadSize) {
+        byte[] messagePayload = new byte[payloadSize];
+        Arrays.fill(messagePayload, (byte) 3);
+        return new FiraConnectorMessage(
+                MessageType.EVENT, InstructionCode.DATA_EXCHANGE, messagePayload);
+    }
+
+    @Test
+    public void testSendMessage_writeWithoutResponseOneDataPacketAtATime() {
+        FiraConnectorMessage message = createMessage(/*payloadSize=*/ 51);
+        startProcessing(IN_CHARACTERSTIC_WRITE_NO_RESPONSE);
+        // No data packet is confirmed written.
+        doReturn(BluetoothStatusCodes.SUCCESS)
+                .when(mMockBluetoothGatt)
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, message)).isTrue();
+        verify(mMockBluetoothGatt, times(1))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+
+        // Each confirmed data packet lets the next one go.
+        for (int i = 0; i < 3; i++) {
+            mBluetoothGattCallback.onCharacteristicWrite(
+                    mMockBluetoothGatt,
+                    IN_CHARACTERSTIC_WRITE_NO_RESPONSE,
+                    BluetoothGatt.GATT_SUCCESS);
+        }
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockBluetoothGatt, times(3))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)),
+                        captor.capture(),
+                        eq(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE));
+        ByteArrayOutputStream messageStream = new ByteArrayOutputStream();
+        for (byte[] bytes : captor.getAllValues()) {
+            FiraConnectorDataPacket dataPacket = FiraConnectorDataPacket.fromBytes(bytes);
+            messageStream.write(dataPacket.payload, /*off=*/ 0, dataPacket.payload.length);
+        }
+        assertThat(messageStream.toByteArray()).isEqualTo(message.toBytes());
+        assertThat(FiraConnectorDataPacket.fromBytes(captor.getValue()).lastChainingPacket)
+                .isTrue();
+        verify(mMockTransportClientCallback, never()).onTerminated(any());
+    }
+
+    @Test
+    public void testSendMessage_mtuResetOnDisconnect() {
+        FiraConnectorMessage message = createMessage(/*payloadSize=*/ 51);
+        startProcessing(IN_CHARACTERSTIC_WRITE_NO_RESPONSE);
+        mBluetoothGattCallback.onMtuChanged(
+                mMockBluetoothGatt, /*mtu=*/ 100, BluetoothGatt.GATT_SUCCESS);
+
+        mBluetoothGattCallback.onConnectionStateChange(
+                mMockBluetoothGatt,
+                BluetoothGatt.GATT_SUCCESS,
+                BluetoothProfile.STATE_DISCONNECTED);
+        verify(mMockTransportClientCallback)
+                .onTerminated(TerminationReason.REMOTE_DISCONNECTED);
+        assertThat(mGattTransportClientProvider.start()).isTrue();
+        mBluetoothGattCallback.onConnectionStateChange(
+                mMockBluetoothGatt, BluetoothGatt.GATT_SUCCESS, BluetoothProfile.STATE_CONNECTED);
+        verify(mMockTransportClientCallback, times(2)).onProcessingStarted();
+
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, message)).isTrue();
+
+        // The MTU negotiated on the previous connection doesn't apply anymore.
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockBluetoothGatt, times(3))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)),
+                        captor.capture(),
+                        eq(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE));
+        for (byte[] bytes : captor.getAllValues()) {
+            assertThat(bytes.length).isAtMost(20);
+        }
+    }
+
+    @Test
+    public void testSendMessage_writeWithoutResponseDataPacketFitsMtu() {
+        FiraConnectorMessage message = createMessage(/*payloadSize=*/ 51);
+        startProcessing(IN_CHARACTERSTIC_WRITE_NO_RESPONSE);
+        // Optimized data packet size of 21 bytes, above the 20 bytes allowed by the default MTU.
+        assertThat(mGattTransportClientProvider.setCapabilites(CAPABILITIES)).isTrue();
+
+        assertThat(mGattTransportClientProvider.sendMessage(SECID, message)).isTrue();
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockBluetoothGatt, times(3))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)),
+                        captor.capture(),
+                        eq(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE));
+        for (byte[] bytes : captor.getAllValues()) {
+            assertThat(bytes.length).isAtMost(20);
+        }
+    }
+
     private void notifyAndReadOutCharacteristic(byte[] bytes) {
         Answer notifyGattCharacteristicRead =
                 new Answer() {
@@ -840,6 +955,95 @@ public class GattTransportClientProviderTest {
                         eq(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT));
     }
 
+    @Test
+    public void testOutCharactersticNotifyAndRead_headerOnlyFirstDataPacketStartsSession() {
+        byte[] messageBytes = MESSAGE.toBytes();
+        // A first data packet without payload still starts the fragmented message session.
+        byte[] packet_bytes1 =
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ false, SECID, new byte[0])
+                        .toBytes();
+        byte[] packet_bytes2 =
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ true, SECID2, messageBytes)
+                        .toBytes();
+        FiraConnectorDataPacket expectedInPacket =
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ true,
+                        TransportProvider.ADMIN_SECID,
+                        new AdminErrorMessage(
+                                        ErrorType.TOO_MANY_CONCURRENT_FRAGMENTED_MESSAGE_SESSIONS)
+                                .toBytes());
+
+        startProcessing();
+        notifyAndReadOutCharacteristic(packet_bytes1);
+        notifyAndReadOutCharacteristic(packet_bytes2);
+
+        verify(mMockDataReceiver, never()).onDataReceived(any());
+        verify(mMockBluetoothGatt, times(1))
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)),
+                        eq(expectedInPacket.toBytes()),
+                        eq(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT));
+    }
+
+    @Test
+    public void testOutCharactersticNotifyAndRead_concurrentSessions() {
+        FiraConnectorCapabilities capabilities =
+                new FiraConnectorCapabilities.Builder()
+                        .setMaxConcurrentFragmentedMessageSessionSupported(2)
+                        .build();
+        int payloadSize = capabilities.optimizedDataPacketSize - 1;
+        byte[] messagePayload1 = new byte[24];
+        Arrays.fill(messagePayload1, (byte) 1);
+        byte[] messageBytes1 =
+                new FiraConnectorMessage(
+                                MessageType.COMMAND, InstructionCode.DATA_EXCHANGE, messagePayload1)
+                        .toBytes();
+        byte[] messagePayload2 = new byte[24];
+        Arrays.fill(messagePayload2, (byte) 2);
+        byte[] messageBytes2 =
+                new FiraConnectorMessage(
+                                MessageType.COMMAND, InstructionCode.DATA_EXCHANGE, messagePayload2)
+                        .toBytes();
+
+        startProcessing();
+        assertThat(mGattTransportClientProvider.setCapabilites(capabilities)).isTrue();
+        assertThat(mGattTransportClientProvider.registerDataReceiver(SECID2, mMockDataReceiver2))
+                .isTrue();
+        // Data packets of both messages interleaved.
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(
+                                /*lastChainingPacket=*/ false,
+                                SECID,
+                                Arrays.copyOf(messageBytes1, payloadSize))
+                        .toBytes());
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(
+                                /*lastChainingPacket=*/ false,
+                                SECID2,
+                                Arrays.copyOf(messageBytes2, payloadSize))
+                        .toBytes());
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(
+                                /*lastChainingPacket=*/ true,
+                                SECID,
+                                Arrays.copyOfRange(
+                                        messageBytes1, payloadSize, messageBytes1.length))
+                        .toBytes());
+        notifyAndReadOutCharacteristic(
+                new FiraConnectorDataPacket(
+                                /*lastChainingPacket=*/ true,
+                                SECID2,
+                                Arrays.copyOfRange(
+                                        messageBytes2, payloadSize, messageBytes2.length))
+                        .toBytes());
+
+        verify(mMockDataReceiver, times(1)).onDataReceived(messagePayload1);
+        verify(mMockDataReceiver2, times(1)).onDataReceived(messagePayload2);
+        verify(mMockBluetoothGatt, never())
+                .writeCharacteristic(
+                        argThat(new CharacteristicMatcher(IN_CHARACTERSTIC)), any(), anyInt());
+    }
+
     @Test
     public void testOutCharactersticNotifyAndRead_messageLengthOverflow() {
         int payloadSize = 200;
@@ -36,6 +36,7 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattServer;
 import android.bluetooth.BluetoothGattServerCallback;
+import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
 import android.bluetooth.BluetoothUuid;
@@ -86,6 +87,7 @@ public class GattTransportServerProviderTest {
     private static final FiraConnectorDataPacket DATA_PACKET =
             new FiraConnectorDataPacket(/*lastChainingPacket=*/ true, SECID, MESSAGE.toBytes());
     private static final int OPTIMIZED_DATA_PACKET_SIZE = 21;
+    private static final int MAX_MESSAGE_BUFFER_SIZE = 300;
     private static final FiraConnectorCapabilities CAPABILITIES =
             new FiraConnectorCapabilities.Builder()
                     .setOptimizedDataPacketSize(OPTIMIZED_DATA_PACKET_SIZE)
@@ -128,6 +130,7 @@ public class GattTransportServerProviderTest {
     @Mock TransportServerCallback mMockTransportServerCallback;
     @Mock BluetoothDevice mMockBluetoothDevice;
     @Mock DataReceiver mMockDataReceiver;
+    @Mock DataReceiver mMockDataReceiver2;
 
     private GattTransportServerProvider mGattTransportServerProvider;
     private BluetoothGattServerCallback mBluetoothGattServerCallback;
@@ -146,7 +149,11 @@ public class GattTransportServerProviderTest {
 
         mGattTransportServerProvider =
                 new GattTransportServerProvider(
-                        mMockAttributionSource, mMockContext, SECID, mMockTransportServerCallback);
+                        mMockAttributionSource,
+                        mMockContext,
+                        SECID,
+                        MAX_MESSAGE_BUFFER_SIZE,
+                        mMockTransportServerCallback);
 
         mGattTransportServerProvider.registerDataReceiver(mMockDataReceiver);
 
@@ -172,6 +179,22 @@ public class GattTransportServerProviderTest {
         verify(mMockBluetoothGattServer, times(1)).addService(any());
     }
 
+    @Test
+    public void testStart_inCharacteristicSupportsWriteWithoutResponse() {
+        assertThat(mGattTransportServerProvider.start()).isTrue();
+
+        ArgumentCaptor<BluetoothGattService> captor =
+                ArgumentCaptor.forClass(BluetoothGattService.class);
+        verify(mMockBluetoothGattServer, times(1)).addService(captor.capture());
+        BluetoothGattCharacteristic inCharacteristic =
+                captor.getValue()
+                        .getCharacteristic(UuidConstants.CP_IN_CONTROL_POINT_UUID.getUuid());
+        assertThat(inCharacteristic.getProperties())
+                .isEqualTo(
+                        BluetoothGattCharacteristic.PROPERTY_WRITE
+                                | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE);
+    }
+
     @Test
     public void testStop_failed() {
         when(mMockBluetoothGattServer.removeService(any())).thenReturn(false);
@@ -604,6 +627,165 @@ public class GattTransportServerProviderTest {
         assertThat(captor.getValue()).isEqualTo(message.payload);
     }
 
+    private void writeInCharacteristic(FiraConnectorDataPacket dataPacket) {
+        mBluetoothGattServerCallback.onCharacteristicWriteRequest(
+                mMockBluetoothDevice,
+                /*requestId=*/ 4,
+                IN_CHARACTERSTIC,
+                /*preparedWrite=*/ false,
+                /*responseNeeded=*/ false,
+                /*offset=*/ 0,
+                dataPacket.toBytes());
+    }
+
+    @Test
+    public void testInCharactersticWrite_concurrentSessions() {
+        int secid2 = SECID + 1;
+        FiraConnectorCapabilities capabilities =
+                new FiraConnectorCapabilities.Builder()
+                        .setOptimizedDataPacketSize(OPTIMIZED_DATA_PACKET_SIZE)
+                        .setMaxConcurrentFragmentedMessageSessionSupported(2)
+                        .build();
+        int payloadSize = OPTIMIZED_DATA_PACKET_SIZE - 1;
+        byte[] messagePayload1 = new byte[24];
+        Arrays.fill(messagePayload1, (byte) 1);
+        byte[] messageBytes1 =
+                new FiraConnectorMessage(
+                                MessageType.EVENT, InstructionCode.DATA_EXCHANGE, messagePayload1)
+                        .toBytes();
+        byte[] messagePayload2 = new byte[24];
+        Arrays.fill(messagePayload2, (byte) 2);
+        byte[] messageBytes2 =
+                new FiraConnectorMessage(
+                                MessageType.EVENT, InstructionCode.DATA_EXCHANGE, messagePayload2)
+                        .toBytes();
+
+        startProcessing();
+        mBluetoothGattServerCallback.onCharacteristicWriteRequest(
+                mMockBluetoothDevice,
+                /*requestId=*/ 3,
+                CAPABILITIES_CHARACTERSTIC,
+                /*preparedWrite=*/ false,
+                /*responseNeeded=*/ false,
+                /*offset=*/ 0,
+                capabilities.toBytes());
+        assertThat(mGattTransportServerProvider.registerDataReceiver(secid2, mMockDataReceiver2))
+                .isTrue();
+        // Data packets of both messages interleaved.
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ false,
+                        SECID,
+                        Arrays.copyOf(messageBytes1, payloadSize)));
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ false,
+                        secid2,
+                        Arrays.copyOf(messageBytes2, payloadSize)));
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ true,
+                        SECID,
+                        Arrays.copyOfRange(messageBytes1, payloadSize, messageBytes1.length)));
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ true,
+                        secid2,
+                        Arrays.copyOfRange(messageBytes2, payloadSize, messageBytes2.length)));
+
+        verify(mMockDataReceiver, times(1)).onDataReceived(messagePayload1);
+        verify(mMockDataReceiver2, times(1)).onDataReceived(messagePayload2);
+    }
+
+    @Test
+    public void testInCharactersticWrite_tooManyConcurrentSessions() {
+        byte[] messageBytes = MESSAGE.toBytes();
+
+        startProcessing();
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ false,
+                        SECID,
+                        Arrays.copyOf(messageBytes, 2)));
+        // Only one fragmented message session is supported by the capabilities.
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ true, SECID + 1, messageBytes));
+        writeInCharacteristic(
+                new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ true,
+                        SECID,
+                        Arrays.copyOfRange(messageBytes, 2, messageBytes.length)));
+
+        verify(mMockDataReceiver, times(1)).onDataReceived(MESSAGE.payload);
+    }
+
+    @Test
+    public void testInCharactersticWrite_messageBoundByLocalCapabilities() {
+        // The client may receive larger messages than the server does.
+        FiraConnectorCapabilities capabilities =
+                new FiraConnectorCapabilities.Builder()
+                        .setOptimizedDataPacketSize(OPTIMIZED_DATA_PACKET_SIZE)
+                        .setMaxMessageBufferSize(1000)
+                        .build();
+        byte[] messagePayload = new byte[MAX_MESSAGE_BUFFER_SIZE];
+        byte[] messageBytes =
+                new FiraConnectorMessage(
+                                MessageType.EVENT, InstructionCode.DATA_EXCHANGE, messagePayload)
+                        .toBytes();
+        int payloadSize = OPTIMIZED_DATA_PACKET_SIZE - 1;
+
+        startProcessing();
+        mBluetoothGattServerCallback.onCharacteristicWriteRequest(
+                mMockBluetoothDevice,
+                /*requestId=*/ 3,
+                CAPABILITIES_CHARACTERSTIC,
+                /*preparedWrite=*/ false,
+                /*responseNeeded=*/ false,
+                /*offset=*/ 0,
+                capabilities.toBytes());
+        for (int from = 0; from < messageBytes.length; from += payloadSize) {
+            int to = Math.min(from + payloadSize, messageBytes.length);
+            writeInCharacteristic(
+                    new FiraConnectorDataPacket(
+                            /*lastChainingPacket=*/ to == messageBytes.length,
+                            SECID,
+                            Arrays.copyOfRange(messageBytes, from, to)));
+        }
+
+        verify(mMockDataReceiver, never()).onDataReceived(any());
+        ArgumentCaptor<BluetoothGattCharacteristic> captor =
+                ArgumentCaptor.forClass(BluetoothGattCharacteristic.class);
+        verify(mMockBluetoothGattServer, times(1))
+                .notifyCharacteristicChanged(
+                        eq(mMockBluetoothDevice), captor.capture(), eq(/*confirm=*/ false));
+        assertThat(captor.getValue().getValue())
+                .isEqualTo(
+                        new FiraConnectorDataPacket(
+                                        /*lastChainingPacket=*/ true,
+                                        TransportProvider.ADMIN_SECID,
+                                        new AdminErrorMessage(ErrorType.MESSAGE_LENGTH_OVERFLOW)
+                                                .toBytes())
+                                .toBytes());
+    }
+
+    @Test
+    public void testCapabilitiesCharacteristicRead_advertisesMaxMessageBufferSize() {
+        mBluetoothGattServerCallback.onCharacteristicReadRequest(
+                mMockBluetoothDevice, /*requestId=*/ 6, /*offset=*/ 0, CAPABILITIES_CHARACTERSTIC);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockBluetoothGattServer, times(1))
+                .sendResponse(
+                        eq(mMockBluetoothDevice),
+                        eq(/*requestId=*/ 6),
+                        eq(BluetoothGatt.GATT_SUCCESS),
+                        eq(/*offset=*/ 0),
+                        captor.capture());
+        assertThat(FiraConnectorCapabilities.fromBytes(captor.getValue()).maxMessageBufferSize)
+                .isEqualTo(MAX_MESSAGE_BUFFER_SIZE);
+    }
+
     @Test
     public void testInCharactersticWrite_secidMismatch() {
         byte[] messageBytes = MESSAGE.toBytes();
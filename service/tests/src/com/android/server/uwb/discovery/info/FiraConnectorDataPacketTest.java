@@ -76,6 +76,17 @@ public class FiraConnectorDataPacketTest {
         assertThat(packet.payload).isEqualTo(PAYLOAD);
     }
 
+    @Test
+    public void headerFromBytes_succeed() {
+        assertThat(FiraConnectorDataPacket.isLastChainingPacket(TEST_BYTES)).isTrue();
+        assertThat(FiraConnectorDataPacket.getSecid(TEST_BYTES)).isEqualTo(SECID);
+
+        byte[] bytes = Arrays.copyOf(TEST_BYTES, TEST_BYTES.length);
+        bytes[0] = (byte) (bytes[0] & 0x7f);
+        assertThat(FiraConnectorDataPacket.isLastChainingPacket(bytes)).isFalse();
+        assertThat(FiraConnectorDataPacket.getSecid(bytes)).isEqualTo(SECID);
+    }
+
     @Test
     public void toBytes_succeed() {
         FiraConnectorDataPacket packet =
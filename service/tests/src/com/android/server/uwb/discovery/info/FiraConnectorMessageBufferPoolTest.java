@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.discovery.info;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FiraConnectorMessageBufferPoolTest {
+    private static final int SECID = 2;
+    private static final int SECID2 = 3;
+    private static final int CAPACITY = 10;
+
+    @Test
+    public void testStart() {
+        FiraConnectorMessageBufferPool pool = new FiraConnectorMessageBufferPool();
+
+        assertThat(pool.get(SECID)).isNull();
+        FiraConnectorMessageBuffer buffer = pool.start(SECID, CAPACITY);
+
+        assertThat(pool.get(SECID)).isSameInstanceAs(buffer);
+        assertThat(pool.get(SECID2)).isNull();
+        assertThat(buffer.capacity()).isEqualTo(CAPACITY);
+        assertThat(pool.getActiveCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRelease_bufferReused() {
+        FiraConnectorMessageBufferPool pool = new FiraConnectorMessageBufferPool();
+        FiraConnectorMessageBuffer buffer = pool.start(SECID, CAPACITY);
+        buffer.appendDataPacket(
+                new FiraConnectorDataPacket(/*lastChainingPacket=*/ false, SECID, new byte[] {1})
+                        .toBytes());
+
+        pool.release(SECID, /*maxFreeBuffers=*/ 1);
+
+        assertThat(pool.get(SECID)).isNull();
+        assertThat(pool.getActiveCount()).isEqualTo(0);
+        assertThat(pool.getFreeCount()).isEqualTo(1);
+        FiraConnectorMessageBuffer reused = pool.start(SECID2, CAPACITY);
+        assertThat(reused).isSameInstanceAs(buffer);
+        assertThat(reused.isEmpty()).isTrue();
+        assertThat(pool.getFreeCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRelease_freeBuffersBounded() {
+        FiraConnectorMessageBufferPool pool = new FiraConnectorMessageBufferPool();
+        pool.start(SECID, CAPACITY);
+        pool.start(SECID2, CAPACITY);
+
+        pool.release(SECID, /*maxFreeBuffers=*/ 1);
+        pool.release(SECID2, /*maxFreeBuffers=*/ 1);
+
+        assertThat(pool.getActiveCount()).isEqualTo(0);
+        assertThat(pool.getFreeCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStart_capacityChanged() {
+        FiraConnectorMessageBufferPool pool = new FiraConnectorMessageBufferPool();
+        FiraConnectorMessageBuffer buffer = pool.start(SECID, CAPACITY);
+        pool.release(SECID, /*maxFreeBuffers=*/ 1);
+
+        FiraConnectorMessageBuffer larger = pool.start(SECID, CAPACITY * 2);
+
+        assertThat(larger).isNotSameInstanceAs(buffer);
+        assertThat(larger.capacity()).isEqualTo(CAPACITY * 2);
+        assertThat(pool.getFreeCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testClear() {
+        FiraConnectorMessageBufferPool pool = new FiraConnectorMessageBufferPool();
+        pool.start(SECID, CAPACITY);
+        pool.start(SECID2, CAPACITY);
+        pool.release(SECID2, /*maxFreeBuffers=*/ 1);
+
+        pool.clear();
+
+        assertThat(pool.get(SECID)).isNull();
+        assertThat(pool.getActiveCount()).isEqualTo(0);
+        assertThat(pool.getFreeCount()).isEqualTo(0);
+    }
+}
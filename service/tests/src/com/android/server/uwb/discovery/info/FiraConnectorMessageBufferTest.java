@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.server.uwb.discovery.info;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.discovery.info.FiraConnectorMessage.InstructionCode;
+import com.android.server.uwb.discovery.info.FiraConnectorMessage.MessageType;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/** Unit test for {@link FiraConnectorMessageBuffer} */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FiraConnectorMessageBufferTest {
+    private static final int SECID = 2;
+    private static final int CAPACITY = 10;
+    private static final byte[] PAYLOAD = new byte[] {(byte) 0xF4, 0x00, 0x40, 0x01, 0x02};
+    private static final FiraConnectorMessage MESSAGE =
+            new FiraConnectorMessage(MessageType.EVENT, InstructionCode.DATA_EXCHANGE, PAYLOAD);
+
+    private static byte[] dataPacketBytes(byte[] messageBytes, int from, int to) {
+        return new FiraConnectorDataPacket(
+                        /*lastChainingPacket=*/ to == messageBytes.length,
+                        SECID,
+                        Arrays.copyOfRange(messageBytes, from, to))
+                .toBytes();
+    }
+
+    @Test
+    public void testReassembleMessage() {
+        FiraConnectorMessageBuffer buffer = new FiraConnectorMessageBuffer(CAPACITY);
+        byte[] messageBytes = MESSAGE.toBytes();
+
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.appendDataPacket(dataPacketBytes(messageBytes, 0, 4))).isTrue();
+        assertThat(buffer.isEmpty()).isFalse();
+        assertThat(buffer.appendDataPacket(dataPacketBytes(messageBytes, 4, messageBytes.length)))
+                .isTrue();
+        assertThat(buffer.size()).isEqualTo(messageBytes.length);
+
+        FiraConnectorMessage message = buffer.takeMessage();
+        assertThat(message.toString()).isEqualTo(MESSAGE.toString());
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.capacity()).isEqualTo(CAPACITY);
+    }
+
+    @Test
+    public void testReuseForNextMessage() {
+        FiraConnectorMessageBuffer buffer = new FiraConnectorMessageBuffer(CAPACITY);
+        byte[] messageBytes = MESSAGE.toBytes();
+        buffer.appendDataPacket(dataPacketBytes(messageBytes, 0, messageBytes.length));
+        buffer.takeMessage();
+
+        FiraConnectorMessage nextMessage =
+                new FiraConnectorMessage(
+                        MessageType.COMMAND, InstructionCode.DATA_EXCHANGE, new byte[] {0x05});
+        byte[] nextMessageBytes = nextMessage.toBytes();
+        buffer.appendDataPacket(dataPacketBytes(nextMessageBytes, 0, nextMessageBytes.length));
+
+        assertThat(buffer.takeMessage().toString()).isEqualTo(nextMessage.toString());
+    }
+
+    @Test
+    public void testOverflow() {
+        FiraConnectorMessageBuffer buffer = new FiraConnectorMessageBuffer(CAPACITY);
+        byte[] messageBytes = new byte[CAPACITY + 1];
+        messageBytes[0] = (byte) 0x40;
+
+        assertThat(buffer.appendDataPacket(dataPacketBytes(messageBytes, 0, CAPACITY - 1)))
+                .isTrue();
+        assertThat(buffer.appendDataPacket(dataPacketBytes(messageBytes, CAPACITY - 1, CAPACITY)))
+                .isTrue();
+        assertThat(
+                        buffer.appendDataPacket(
+                                dataPacketBytes(messageBytes, CAPACITY, messageBytes.length)))
+                .isFalse();
+        assertThat(buffer.isOverflow()).isTrue();
+        assertThat(buffer.isEmpty()).isFalse();
+        assertThat(buffer.takeMessage()).isNull();
+
+        assertThat(buffer.isOverflow()).isFalse();
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testTakeMessage_empty() {
+        FiraConnectorMessageBuffer buffer = new FiraConnectorMessageBuffer(CAPACITY);
+        assertThat(buffer.appendDataPacket(new byte[] {(byte) 0x82})).isTrue();
+
+        assertThat(buffer.takeMessage()).isNull();
+    }
+}
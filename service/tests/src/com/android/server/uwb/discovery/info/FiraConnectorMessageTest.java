@@ -95,6 +95,20 @@ public class FiraConnectorMessageTest {
                 (byte) 0x81, MessageType.COMMAND_RESPOND, InstructionCode.ERROR_INDICATION);
     }
 
+    @Test
+    public void fromBytes_succeedWithOffset() {
+        byte[] bytes = new byte[TEST_BYTES.length + 3];
+        System.arraycopy(TEST_BYTES, 0, bytes, /*destPos=*/ 2, TEST_BYTES.length);
+        FiraConnectorMessage message =
+                FiraConnectorMessage.fromBytes(bytes, /*offset=*/ 2, TEST_BYTES.length);
+        assertThat(message).isNotNull();
+
+        assertThat(message.messageType).isEqualTo(MESSAGE_TYPE);
+        assertThat(message.instructionCode).isEqualTo(INSTRUCTION_CODE);
+        assertThat(message.payload).isEqualTo(PAYLOAD);
+        assertThat(FiraConnectorMessage.fromBytes(bytes, /*offset=*/ 2, /*length=*/ 0)).isNull();
+    }
+
     @Test
     public void toBytes_succeed() {
         FiraConnectorMessage message =
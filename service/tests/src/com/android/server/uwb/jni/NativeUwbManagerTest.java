@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.jni;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.when;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.server.uwb.UciLogModeStore;
+import com.android.server.uwb.UwbInjector;
+import com.android.server.uwb.multchip.UwbMultichipData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Unit tests for {@link NativeUwbManager}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class NativeUwbManagerTest {
+    private static final String DEFAULT_CHIP_ID = "defaultChipId";
+    private static final String OTHER_CHIP_ID = "otherChipId";
+    private static final int TIMEOUT_MS = 1000;
+    private static final int BLOCKED_CHECK_MS = 100;
+
+    @Mock private UwbInjector mUwbInjector;
+    @Mock private UciLogModeStore mUciLogModeStore;
+    @Mock private UwbMultichipData mUwbMultichipData;
+
+    private NativeUwbManager mNativeUwbManager;
+    private ExecutorService mExecutor;
+    private final CountDownLatch mLockHeld = new CountDownLatch(1);
+    private final CountDownLatch mReleaseLock = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mUwbMultichipData.getDefaultChipId()).thenReturn(DEFAULT_CHIP_ID);
+        mNativeUwbManager = new NativeUwbManager(mUwbInjector, mUciLogModeStore,
+                mUwbMultichipData) {
+            @Override
+            protected void loadLibrary() {
+                // The native library isn't available in unit tests.
+            }
+        };
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        mReleaseLock.countDown();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testLockChip_differentChipsDoNotBlockEachOther() throws Exception {
+        holdChipLock(DEFAULT_CHIP_ID);
+
+        Future<?> otherChip = mExecutor.submit(() -> {
+            mNativeUwbManager.lockChip(OTHER_CHIP_ID).close();
+        });
+
+        otherChip.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testLockChip_sameChipIsSerialized() throws Exception {
+        holdChipLock(DEFAULT_CHIP_ID);
+
+        Future<?> sameChip = mExecutor.submit(() -> {
+            mNativeUwbManager.lockChip(DEFAULT_CHIP_ID).close();
+        });
+
+        assertBlocked(sameChip);
+        mReleaseLock.countDown();
+        sameChip.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testLockChip_nullChipIdUsesDefaultChipLock() throws Exception {
+        holdChipLock(DEFAULT_CHIP_ID);
+
+        Future<?> nullChip = mExecutor.submit(() -> {
+            mNativeUwbManager.lockChip(null).close();
+        });
+
+        assertBlocked(nullChip);
+        mReleaseLock.countDown();
+        nullChip.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testSetRangeDataNtfBatchSize_beforeInitialize_isNoOp() {
+        // Without a dispatcher the call must not reach the native layer.
+        assertThat(mNativeUwbManager.setRangeDataNtfBatchSize(8)).isFalse();
+    }
+
+    private void holdChipLock(String chipId) throws InterruptedException {
+        mExecutor.submit(() -> {
+            try (NativeUwbManager.ChipLock lock = mNativeUwbManager.lockChip(chipId)) {
+                mLockHeld.countDown();
+                mReleaseLock.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        });
+        assertThat(mLockHeld.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    private static void assertBlocked(Future<?> future) throws Exception {
+        try {
+            future.get(BLOCKED_CHECK_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return;
+        }
+        throw new AssertionError("lock was acquired while held by another thread");
+    }
+}
@@ -422,6 +422,21 @@ public class FiraEncoderTest {
         assertThat(tlvs.getByteArray()).isEqualTo(TEST_FIRA_RECONFIGURE_TLV_DATA);
     }
 
+    @Test
+    public void testFiraOpenSessionParamsIntoOutput() throws Exception {
+        FiraOpenSessionParams params = TEST_FIRA_OPEN_SESSION_PARAMS_V_1_1.build();
+        byte[] output = new byte[TlvBuffer.MAX_BUFFER_SIZE];
+        TlvBuffer tlvs = mFiraEncoder.getTlvBuffer(params, PROTOCOL_VERSION_1_1, output);
+
+        assertThat(tlvs.getArray()).isSameInstanceAs(output);
+        assertThat(tlvs.getNoOfParams()).isEqualTo(45);
+        assertThat(tlvs.getByteArray()).isEqualTo(mFiraSessionv11TlvData);
+
+        // The output array is only used by the call it is passed to.
+        tlvs = mFiraEncoder.getTlvBuffer(params, PROTOCOL_VERSION_1_1);
+        assertThat(tlvs.getArray()).isNotSameInstanceAs(output);
+    }
+
     // This test could be changed to just check that TlvEncoder returns a FiraEncoder, as
     // above testFiraOpenSessionParams() already checks the encoding done by FiraEncoder.
     @Test
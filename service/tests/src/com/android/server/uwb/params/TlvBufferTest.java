@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.params;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.platform.test.annotations.Presubmit;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.uwb.util.UwbUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit tests for {@link com.android.server.uwb.params.TlvBuffer}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+@Presubmit
+public class TlvBufferTest {
+    private static final byte[] TEST_TLV_DATA = UwbUtil.getByteArray(
+            "0001AB" + "01020201" + "020404030201" + "03080807060504030201" + "0402CAFE"
+                    + "050402010403");
+
+    private static TlvBuffer.Builder putTestTlvs(TlvBuffer.Builder builder) {
+        return builder
+                .putByte(0x100, (byte) 0xAB)
+                .putShort(1, (short) 0x0102)
+                .putInt(2, 0x01020304)
+                .putLong(3, 0x0102030405060708L)
+                .putByteArray(4, UwbUtil.getByteArray("CAFE"))
+                .putShortArray(5, new short[] {0x0102, 0x0304});
+    }
+
+    @Test
+    public void testBuild() {
+        TlvBuffer tlvBuffer = putTestTlvs(new TlvBuffer.Builder()).build();
+
+        assertThat(tlvBuffer.getByteArray()).isEqualTo(TEST_TLV_DATA);
+        assertThat(tlvBuffer.getLength()).isEqualTo(TEST_TLV_DATA.length);
+        assertThat(tlvBuffer.getNoOfParams()).isEqualTo(6);
+    }
+
+    @Test
+    public void testBuildNested() {
+        TlvBuffer.Builder outer = new TlvBuffer.Builder().putByte(0, (byte) 1);
+        TlvBuffer inner = new TlvBuffer.Builder().putShort(1, (short) 0x0102).build();
+        TlvBuffer tlvBuffer = outer.putByteArray(2, inner.getByteArray()).build();
+
+        assertThat(inner.getByteArray()).isEqualTo(UwbUtil.getByteArray("01020201"));
+        assertThat(tlvBuffer.getByteArray())
+                .isEqualTo(UwbUtil.getByteArray("000101" + "020401020201"));
+        // Builders never share their arrays.
+        assertThat(putTestTlvs(new TlvBuffer.Builder()).build().getByteArray())
+                .isEqualTo(TEST_TLV_DATA);
+    }
+
+    @Test
+    public void testBuildAfterAbandonedBuilder() {
+        // E.g. an encoder threw before building.
+        TlvBuffer.Builder abandoned = new TlvBuffer.Builder().putShort(1, (short) 0x0102);
+
+        assertThat(putTestTlvs(new TlvBuffer.Builder()).build().getByteArray())
+                .isEqualTo(TEST_TLV_DATA);
+        assertThat(putTestTlvs(new TlvBuffer.Builder()).build().getByteArray())
+                .isEqualTo(TEST_TLV_DATA);
+        // The abandoned builder kept its own TLVs.
+        assertThat(abandoned.build().getByteArray()).isEqualTo(UwbUtil.getByteArray("01020201"));
+    }
+
+    @Test
+    public void testBuildIntoOutput() {
+        byte[] output = new byte[TlvBuffer.MAX_BUFFER_SIZE];
+        TlvBuffer tlvBuffer = putTestTlvs(new TlvBuffer.Builder(output)).build();
+
+        assertThat(tlvBuffer.getArray()).isSameInstanceAs(output);
+        assertThat(tlvBuffer.getLength()).isEqualTo(TEST_TLV_DATA.length);
+        assertThat(tlvBuffer.getByteArray()).isEqualTo(TEST_TLV_DATA);
+        assertThat(tlvBuffer.getNoOfParams()).isEqualTo(6);
+    }
+
+    @Test
+    public void testBuildIntoSmallOutput() {
+        byte[] output = new byte[4];
+        TlvBuffer tlvBuffer = putTestTlvs(new TlvBuffer.Builder(output)).build();
+
+        assertThat(tlvBuffer.getArray()).isNotSameInstanceAs(output);
+        assertThat(tlvBuffer.getByteArray()).isEqualTo(TEST_TLV_DATA);
+    }
+
+    @Test
+    public void testBuildLargerThanMaxBufferSize() {
+        TlvBuffer.Builder builder = new TlvBuffer.Builder();
+        for (int i = 0; i < TlvBuffer.MAX_BUFFER_SIZE; i++) {
+            builder.putByte(i, (byte) i);
+        }
+        TlvBuffer tlvBuffer = builder.build();
+
+        assertThat(tlvBuffer.getLength()).isEqualTo(3 * TlvBuffer.MAX_BUFFER_SIZE);
+        assertThat(tlvBuffer.getNoOfParams()).isEqualTo(TlvBuffer.MAX_BUFFER_SIZE);
+    }
+}
@@ -96,4 +96,21 @@ public class TlvDecoderBufferTest {
         assertThat(tlvDecoderBuffer.getByteArray(40)).isEqualTo(UwbUtil.getByteArray(
                 "010203040506"));
     }
+
+    @Test
+    public void testGetLong() throws Exception {
+        TlvDecoderBuffer tlvDecoderBuffer =
+                new TlvDecoderBuffer(UwbUtil.getByteArray("3008F0DEBC9A78563412"), 1);
+        assertThat(tlvDecoderBuffer.parse()).isTrue();
+
+        assertThat(tlvDecoderBuffer.getLong(0x30)).isEqualTo(0x123456789ABCDEF0L);
+    }
+
+    @Test
+    public void testParseTruncatedValue() throws Exception {
+        TlvDecoderBuffer tlvDecoderBuffer =
+                new TlvDecoderBuffer(UwbUtil.getByteArray("0001010104C800"), 2);
+
+        assertThat(tlvDecoderBuffer.parse()).isFalse();
+    }
 }
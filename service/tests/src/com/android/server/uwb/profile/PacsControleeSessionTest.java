@@ -52,6 +52,7 @@ import android.uwb.UwbAddress;
 import androidx.test.filters.SmallTest;
 import androidx.test.runner.AndroidJUnit4;
 
+import com.android.server.uwb.DeviceConfigFacade;
 import com.android.server.uwb.UwbInjector;
 import com.android.server.uwb.UwbServiceCore;
 import com.android.server.uwb.data.ServiceProfileData.ServiceProfileInfo;
@@ -101,6 +102,8 @@ public class PacsControleeSessionTest {
     private UwbServiceCore mUwbServiceCore;
     @Mock
     private UwbMultichipData mUwbMultichipData;
+    @Mock
+    private DeviceConfigFacade mDeviceConfigFacade;
 
     private TestLooper mLooper;
     private PacsControleeSession mRangingSessionController;
@@ -118,6 +121,9 @@ public class PacsControleeSessionTest {
         when(mUwbInjector.getUwbServiceCore()).thenReturn(mUwbServiceCore);
         when(mUwbMultichipData.getDefaultChipId()).thenReturn(DEFAULT_CHIP_ID);
         when(mUwbInjector.getMultichipData()).thenReturn(mUwbMultichipData);
+        when(mUwbInjector.getDeviceConfigFacade()).thenReturn(mDeviceConfigFacade);
+        when(mDeviceConfigFacade.getFiraConnectorMaxMessageBufferSize()).thenReturn(
+                DeviceConfigFacade.DEFAULT_FIRA_CONNECTOR_MAX_MESSAGE_BUFFER_SIZE);
         when(mUwbServiceCore.getCachedSpecificationParams(DEFAULT_CHIP_ID)).thenReturn(
                 mGenericSpecificationParams);
         mFiraSpecificationParams = new FiraSpecificationParams.Builder()
@@ -21,7 +21,9 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,6 +31,7 @@ import static org.mockito.Mockito.when;
 import android.os.test.TestLooper;
 
 import com.android.server.uwb.pm.RunningProfileSessionInfo;
+import com.android.server.uwb.secure.csml.ControleeInfo;
 import com.android.server.uwb.secure.csml.CsmlUtil;
 import com.android.server.uwb.secure.csml.DispatchResponse;
 import com.android.server.uwb.secure.csml.GetDoCommand;
@@ -49,6 +52,11 @@ import org.mockito.MockitoAnnotations;
 import java.util.Optional;
 
 public class ControllerInitiatorSessionTest {
+    private static final String PEER_IDENTITY = "00:11:22:33:44:55";
+    private static final ObjectIdentifier ADF_OID =
+            ObjectIdentifier.fromBytes(new byte[] {(byte) 1});
+    private static final String CONTROLEE_INFO_DO = "BF70020A0B";
+
     @Mock
     private FiRaSecureChannel mFiRaSecureChannel;
     @Mock
@@ -303,4 +311,123 @@ public class ControllerInitiatorSessionTest {
         verify(mFiRaSecureChannel).terminateLocally();
         verify(mSecureSessionCallback).onSessionAborted();
     }
+
+    private SecureSessionCache startSessionWithCache() {
+        SecureSessionCache secureSessionCache = new SecureSessionCache(
+                /* maxEntries= */ 2, /* timeToLiveMillis= */ 1000, () -> 0L);
+        RunningProfileSessionInfo runningProfileSessionInfo =
+                new RunningProfileSessionInfo.Builder(mock(UwbCapability.class), ADF_OID)
+                        .setPeerIdentity(PEER_IDENTITY)
+                        .build();
+        mControllerInitiatorSession = new ControllerInitiatorSession(
+                mTestLooper.getLooper(), mFiRaSecureChannel, mSecureSessionCallback,
+                runningProfileSessionInfo, secureSessionCache);
+        clearInvocations(mFiRaSecureChannel);
+
+        mControllerInitiatorSession.startSession();
+
+        verify(mFiRaSecureChannel).init(mSecureChannelCallbackCaptor.capture());
+        return secureSessionCache;
+    }
+
+    private void putSessionDataWithCachedControleeInfo() {
+        ArgumentCaptor<FiRaSecureChannel.ExternalRequestCallback> externalRequestCallbackCaptor =
+                ArgumentCaptor.forClass(FiRaSecureChannel.ExternalRequestCallback.class);
+        ArgumentCaptor<byte[]> tunnelDataCaptor = ArgumentCaptor.forClass(byte[].class);
+
+        mSecureChannelCallbackCaptor.getValue().onEstablished(Optional.empty());
+
+        // no GetControleeInfo, the session data is put straight away.
+        verify(mFiRaSecureChannel).tunnelToRemoteDevice(
+                tunnelDataCaptor.capture(), externalRequestCallbackCaptor.capture());
+        assertThat(DataTypeConversionUtil.byteArrayToHexString(tunnelDataCaptor.getValue()))
+                .contains("00DB3FFF"); // PUT DO command
+        assertThat(DataTypeConversionUtil.byteArrayToHexString(tunnelDataCaptor.getValue()))
+                .contains("BF78"); // SESSION DATA DO TAG
+        externalRequestCallbackCaptor.getValue().onSuccess(new byte[0]);
+    }
+
+    @Test
+    public void putControleeSessionDataSuccess_controleeInfoCached() {
+        SecureSessionCache secureSessionCache = startSessionWithCache();
+        doGetControleeInfoResponse();
+        assertThat(secureSessionCache.getControleeInfo(PEER_IDENTITY, ADF_OID).isPresent())
+                .isFalse();
+        byte[] data = DataTypeConversionUtil.hexStringToByteArray(
+                "711380018181029000E10A80010081010282020101");
+        ResponseApdu responseApdu = ResponseApdu.fromDataAndStatusWord(data, 0x9000);
+
+        mSecureChannelCallbackCaptor.getValue().onDispatchResponseAvailable(
+                DispatchResponse.fromResponseApdu(responseApdu));
+        mTestLooper.dispatchAll();
+
+        verify(mSecureSessionCallback).onSessionDataReady(eq(1), any(), eq(false));
+        assertThat(secureSessionCache.getControleeInfo(PEER_IDENTITY, ADF_OID).isPresent())
+                .isTrue();
+    }
+
+    @Test
+    public void onSecureChannelEstablishedWithCachedControleeInfo_skipGetControleeInfo() {
+        SecureSessionCache secureSessionCache = startSessionWithCache();
+        secureSessionCache.putControleeInfo(PEER_IDENTITY, ADF_OID, ControleeInfo.fromBytes(
+                DataTypeConversionUtil.hexStringToByteArray(CONTROLEE_INFO_DO)));
+        putSessionDataWithCachedControleeInfo();
+        byte[] data = DataTypeConversionUtil.hexStringToByteArray(
+                "711380018181029000E10A80010081010282020101");
+        ResponseApdu responseApdu = ResponseApdu.fromDataAndStatusWord(data, 0x9000);
+
+        mSecureChannelCallbackCaptor.getValue().onDispatchResponseAvailable(
+                DispatchResponse.fromResponseApdu(responseApdu));
+        mTestLooper.dispatchAll();
+
+        verify(mSecureSessionCallback).onSessionDataReady(eq(1), any(), eq(false));
+    }
+
+    @Test
+    public void putSessionDataWithCachedControleeInfoRejected_getControleeInfoRetried() {
+        SecureSessionCache secureSessionCache = startSessionWithCache();
+        secureSessionCache.putControleeInfo(PEER_IDENTITY, ADF_OID, ControleeInfo.fromBytes(
+                DataTypeConversionUtil.hexStringToByteArray(CONTROLEE_INFO_DO)));
+        putSessionDataWithCachedControleeInfo();
+        byte[] rejectedData = DataTypeConversionUtil.hexStringToByteArray(
+                "710781018081029001");
+        ResponseApdu rejectedResponseApdu =
+                ResponseApdu.fromDataAndStatusWord(rejectedData, 0x9000);
+
+        mSecureChannelCallbackCaptor.getValue().onDispatchResponseAvailable(
+                DispatchResponse.fromResponseApdu(rejectedResponseApdu));
+        mTestLooper.dispatchAll();
+
+        // the session goes on with the controlee info from the peer.
+        ArgumentCaptor<byte[]> tunnelDataCaptor = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<FiRaSecureChannel.ExternalRequestCallback> externalRequestCallbackCaptor =
+                ArgumentCaptor.forClass(FiRaSecureChannel.ExternalRequestCallback.class);
+        verify(mFiRaSecureChannel, times(2)).tunnelToRemoteDevice(
+                tunnelDataCaptor.capture(), externalRequestCallbackCaptor.capture());
+        assertThat(DataTypeConversionUtil.byteArrayToHexString(tunnelDataCaptor.getValue()))
+                .contains("00CB3FFF"); // get do command cla|ins|p1|p2
+        verify(mSecureSessionCallback, never()).onSessionAborted();
+        assertThat(secureSessionCache.getControleeInfo(PEER_IDENTITY, ADF_OID).isPresent())
+                .isFalse();
+        externalRequestCallbackCaptor.getValue().onSuccess(new byte[0]);
+
+        byte[] data = DataTypeConversionUtil.hexStringToByteArray(
+                "710A8001818105BF70020A0B"); // controlee info DO (BF70xxxx)
+        mSecureChannelCallbackCaptor.getValue().onDispatchResponseAvailable(
+                DispatchResponse.fromResponseApdu(
+                        ResponseApdu.fromDataAndStatusWord(data, 0x9000)));
+        mTestLooper.dispatchAll();
+        verify(mFiRaSecureChannel, times(3)).tunnelToRemoteDevice(
+                tunnelDataCaptor.capture(), externalRequestCallbackCaptor.capture());
+        assertThat(DataTypeConversionUtil.byteArrayToHexString(tunnelDataCaptor.getValue()))
+                .contains("00DB3FFF"); // PUT DO command
+        externalRequestCallbackCaptor.getValue().onSuccess(new byte[0]);
+
+        // the session data from the controlee info of the peer is rejected too.
+        mSecureChannelCallbackCaptor.getValue().onDispatchResponseAvailable(
+                DispatchResponse.fromResponseApdu(rejectedResponseApdu));
+        mTestLooper.dispatchAll();
+
+        verify(mSecureSessionCallback).onSessionAborted();
+    }
 }
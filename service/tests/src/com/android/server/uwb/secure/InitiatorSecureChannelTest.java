@@ -24,12 +24,15 @@ import static com.android.server.uwb.secure.FiRaSecureChannel.CMD_SEND_OOB_DATA;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.os.Handler;
 import android.os.test.TestLooper;
 
 import com.android.server.uwb.discovery.Transport;
@@ -37,6 +40,7 @@ import com.android.server.uwb.pm.RunningProfileSessionInfo;
 import com.android.server.uwb.secure.csml.ControleeInfo;
 import com.android.server.uwb.secure.csml.DispatchCommand;
 import com.android.server.uwb.secure.csml.DispatchResponse;
+import com.android.server.uwb.secure.csml.FiRaCommand;
 import com.android.server.uwb.secure.csml.FiRaResponse;
 import com.android.server.uwb.secure.csml.GetDoCommand;
 import com.android.server.uwb.secure.csml.InitiateTransactionCommand;
@@ -64,6 +68,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 
 public class InitiatorSecureChannelTest {
@@ -111,7 +116,7 @@ public class InitiatorSecureChannelTest {
 
     private void doOpenChannel(RunningProfileSessionInfo runningProfileSessionInfo) {
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannel()).thenReturn(true);
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
         when(mSecureElementChannel.isOpened()).thenReturn(true);
 
         mTestLooper.dispatchNext();
@@ -132,7 +137,7 @@ public class InitiatorSecureChannelTest {
     @Test
     public void openChannelGeneralFailed() {
         doInit(mock(RunningProfileSessionInfo.class));
-        when(mSecureElementChannel.openChannel()).thenReturn(false);
+        mockOpenChannel(ResponseApdu.SW_APPLET_SELECT_FAILED_APDU);
 
         mTestLooper.dispatchNext(); // OPEN_CHANNEL
 
@@ -154,8 +159,8 @@ public class InitiatorSecureChannelTest {
                         .setControleeInfo(mockControleeInfo)
                         .build();
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannel()).thenReturn(true);
-        when(mSecureElementChannel.transmit(any(SwapInAdfCommand.class))).thenReturn(
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmit(SwapInAdfCommand.class,
                 ResponseApdu.fromResponse(
                         DataTypeConversionUtil.hexStringToByteArray("0604000000019000")));
 
@@ -177,8 +182,8 @@ public class InitiatorSecureChannelTest {
                         .setSecureBlob(new byte[0])
                         .build();
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannel()).thenReturn(true);
-        when(mSecureElementChannel.transmit(any(SwapInAdfCommand.class))).thenReturn(
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmit(SwapInAdfCommand.class,
                 ResponseApdu.fromStatusWord(StatusWord.SW_WARNING_STATE_UNCHANGED));
 
         mTestLooper.dispatchNext(); // OPEN_CHANNEL
@@ -192,8 +197,7 @@ public class InitiatorSecureChannelTest {
 
     private void doSelectAdf(RunningProfileSessionInfo runningProfileSessionInfo)
             throws IOException {
-        when(mSecureElementChannel.transmit(any(SelectAdfCommand.class)))
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmit(SelectAdfCommand.class, ResponseApdu.SW_SUCCESS_APDU);
 
         doOpenChannel(runningProfileSessionInfo);
 
@@ -215,8 +219,7 @@ public class InitiatorSecureChannelTest {
 
     @Test
     public void selectAdfFailed() throws IOException {
-        when(mSecureElementChannel.transmit(any(SelectAdfCommand.class)))
-                .thenReturn(ResponseApdu.SW_FILE_NOT_FOUND_APDU);
+        mockTransmit(SelectAdfCommand.class, ResponseApdu.SW_FILE_NOT_FOUND_APDU);
         RunningProfileSessionInfo runningProfileSessionInfo =
                 new RunningProfileSessionInfo.Builder(
                         mock(UwbCapability.class), ObjectIdentifier.INVALID_OID)
@@ -251,8 +254,8 @@ public class InitiatorSecureChannelTest {
                                         ObjectIdentifier.fromBytes(new byte[] { (byte) 0x01 })))
                         .build();
         doSelectAdf(runningProfileSessionInfo);
-        when(mSecureElementChannel.transmit(any(InitiateTransactionCommand.class)))
-                .thenReturn(constructSuccessInitiateTransactionResponse());
+        mockTransmit(
+                InitiateTransactionCommand.class, constructSuccessInitiateTransactionResponse());
 
         mTestLooper.dispatchNext();
 
@@ -269,8 +272,8 @@ public class InitiatorSecureChannelTest {
                         .build();
         doSelectAdf(runningProfileSessionInfo);
 
-        when(mSecureElementChannel.transmit(any(InitiateTransactionCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockTransmit(
+                InitiateTransactionCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
 
         mTestLooper.dispatchNext();
 
@@ -289,8 +292,8 @@ public class InitiatorSecureChannelTest {
                                 ObjectIdentifier.fromBytes(new byte[] { (byte) 0x01 })))
                         .build();
         doSelectAdf(runningProfileSessionInfo);
-        when(mSecureElementChannel.transmit(any(InitiateTransactionCommand.class)))
-                .thenReturn(constructSuccessInitiateTransactionResponse());
+        mockTransmit(
+                InitiateTransactionCommand.class, constructSuccessInitiateTransactionResponse());
 
         mTestLooper.dispatchNext();
 
@@ -308,8 +311,8 @@ public class InitiatorSecureChannelTest {
                         .build();
         doSelectAdf(runningProfileSessionInfo);
 
-        when(mSecureElementChannel.transmit(any(InitiateTransactionCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockTransmit(
+                InitiateTransactionCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
 
         mTestLooper.dispatchNext();
 
@@ -327,8 +330,8 @@ public class InitiatorSecureChannelTest {
                         .build();
         doSelectAdf(runningProfileSessionInfo);
 
-        when(mSecureElementChannel.transmit(any(InitiateTransactionCommand.class)))
-                .thenReturn(constructSuccessInitiateTransactionResponse());
+        mockTransmit(
+                InitiateTransactionCommand.class, constructSuccessInitiateTransactionResponse());
 
         mTestLooper.dispatchAll();
     }
@@ -339,7 +342,8 @@ public class InitiatorSecureChannelTest {
         ResponseApdu responseApdu = ResponseApdu.fromDataAndStatusWord(
                 DataTypeConversionUtil.hexStringToByteArray("710F80018181029000E106800100810101"),
                 StatusWord.SW_NO_ERROR.toInt());
-        when(mSecureElementChannel.transmit(any(DispatchCommand.class))).thenReturn(responseApdu);
+        mockTransmit(DispatchCommand.class, responseApdu);
+        mockTransmitFailure(GetDoCommand.class);
 
         mInitiatorSecureChannel.processRemoteCommandOrResponse(new byte[0]);
     }
@@ -350,14 +354,13 @@ public class InitiatorSecureChannelTest {
         ResponseApdu responseApdu = ResponseApdu.fromDataAndStatusWord(
                 DataTypeConversionUtil.hexStringToByteArray("710F80018181029000E106800100810101"),
                 StatusWord.SW_NO_ERROR.toInt());
-        when(mSecureElementChannel.transmit(any(DispatchCommand.class))).thenReturn(responseApdu);
+        mockTransmit(DispatchCommand.class, responseApdu);
         ResponseApdu sessionIdResponseApdu = ResponseApdu.fromDataAndStatusWord(
                 DataTypeConversionUtil.hexStringToByteArray("810101"),
                 StatusWord.SW_NO_ERROR.toInt());
-        when(mSecureElementChannel.transmit(any(GetDoCommand.class)))
-                .thenReturn(sessionIdResponseApdu);
+        mockTransmit(GetDoCommand.class, sessionIdResponseApdu);
         mInitiatorSecureChannel.processRemoteCommandOrResponse(new byte[0]);
-        verify(mSecureElementChannel).transmit(any(GetDoCommand.class));
+        verify(mSecureElementChannel).transmit(any(GetDoCommand.class), any(Handler.class), any());
     }
 
     @Test
@@ -388,7 +391,7 @@ public class InitiatorSecureChannelTest {
                 DataTypeConversionUtil.hexStringToByteArray(
                         "711380018181029000E10A80010081010282020101"),
                 StatusWord.SW_NO_ERROR.toInt());
-        when(mSecureElementChannel.transmit(any(DispatchCommand.class))).thenReturn(responseApdu);
+        mockTransmit(DispatchCommand.class, responseApdu);
 
         mInitiatorSecureChannel.processRemoteCommandOrResponse(new byte[0]);
 
@@ -411,8 +414,7 @@ public class InitiatorSecureChannelTest {
     @Test
     public void receiveResponseOfScSetupDispatchFailure() throws IOException {
         doPrepareSC();
-        when(mSecureElementChannel.transmit(any(DispatchCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockTransmit(DispatchCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
 
         mInitiatorSecureChannel.processRemoteCommandOrResponse(new byte[0]);
 
@@ -424,8 +426,7 @@ public class InitiatorSecureChannelTest {
     public void receiveResponseAfterScSetupSuccess() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(DispatchCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockTransmit(DispatchCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
 
         mInitiatorSecureChannel.processRemoteCommandOrResponse(new byte[0]);
 
@@ -436,8 +437,7 @@ public class InitiatorSecureChannelTest {
     public void receiveResponseAfterScSetupFail() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(DispatchCommand.class)))
-                .thenThrow(new IOException());
+        mockTransmitFailure(DispatchCommand.class);
 
         mInitiatorSecureChannel.processRemoteCommandOrResponse(new byte[0]);
 
@@ -474,8 +474,7 @@ public class InitiatorSecureChannelTest {
     public void sendLocalCommandApduSuccess() throws IOException {
         doInit(mock(RunningProfileSessionInfo.class));
         when(mSecureElementChannel.isOpened()).thenReturn(true);
-        when(mSecureElementChannel.transmit(any(CommandApdu.class)))
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmitResponse(ResponseApdu.SW_SUCCESS_APDU);
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
         CommandApdu commandApdu =
@@ -491,8 +490,7 @@ public class InitiatorSecureChannelTest {
     public void sendLocalCommandApduFail() throws IOException {
         doInit(mock(RunningProfileSessionInfo.class));
         when(mSecureElementChannel.isOpened()).thenReturn(true);
-        when(mSecureElementChannel.transmit(any(CommandApdu.class)))
-                .thenReturn(ResponseApdu.SW_CLA_NOT_SUPPORTED_APDU);
+        mockTransmitResponse(ResponseApdu.SW_CLA_NOT_SUPPORTED_APDU);
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
         CommandApdu commandApdu =
@@ -523,8 +521,11 @@ public class InitiatorSecureChannelTest {
     public void sendLocalCommandApduFailAsException() throws IOException {
         doInit(mock(RunningProfileSessionInfo.class));
         when(mSecureElementChannel.isOpened()).thenReturn(true);
-        when(mSecureElementChannel.transmit(any(CommandApdu.class)))
-                .thenThrow(new IOException());
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(2);
+            callback.onFailure(new IOException());
+            return null;
+        }).when(mSecureElementChannel).transmit(anyList(), any(Handler.class), any());
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
         CommandApdu commandApdu =
@@ -540,8 +541,7 @@ public class InitiatorSecureChannelTest {
     public void terminateLocallySuccess() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(GetDoCommand.class)))
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmit(GetDoCommand.class, ResponseApdu.SW_SUCCESS_APDU);
 
         mInitiatorSecureChannel.terminateLocally();
         mTestLooper.dispatchAll();
@@ -564,7 +564,7 @@ public class InitiatorSecureChannelTest {
     public void terminateLocallyWithException() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(GetDoCommand.class))).thenThrow(new IOException());
+        mockTransmitFailure(GetDoCommand.class);
 
         mInitiatorSecureChannel.terminateLocally();
         mTestLooper.dispatchAll();
@@ -578,8 +578,7 @@ public class InitiatorSecureChannelTest {
     public void terminateLocallyFail() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(GetDoCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockTransmit(GetDoCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
 
         mInitiatorSecureChannel.terminateLocally();
         mTestLooper.dispatchAll();
@@ -593,8 +592,7 @@ public class InitiatorSecureChannelTest {
     public void tunnelToRemoteDeviceSuccess() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(TunnelCommand.class)))
-                .thenReturn(ResponseApdu.fromDataAndStatusWord(
+        mockTransmit(TunnelCommand.class, ResponseApdu.fromDataAndStatusWord(
                         DataTypeConversionUtil.hexStringToByteArray("7103810101"), 0x9000));
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
@@ -610,8 +608,7 @@ public class InitiatorSecureChannelTest {
     public void tunnelToRemoteDeviceWrongSW() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(TunnelCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockTransmit(TunnelCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
 
@@ -626,8 +623,7 @@ public class InitiatorSecureChannelTest {
     public void tunnelToRemoteDeviceEmptyData() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(TunnelCommand.class)))
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmit(TunnelCommand.class, ResponseApdu.SW_SUCCESS_APDU);
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
 
@@ -642,8 +638,7 @@ public class InitiatorSecureChannelTest {
     public void tunnelToRemoteDeviceEmptyWithException() throws IOException {
         doEstablishSC();
         mTestLooper.dispatchAll();
-        when(mSecureElementChannel.transmit(any(TunnelCommand.class)))
-                .thenThrow(new IOException());
+        mockTransmitFailure(TunnelCommand.class);
         FiRaSecureChannel.ExternalRequestCallback externalRequestCallback =
                 mock(FiRaSecureChannel.ExternalRequestCallback.class);
 
@@ -653,4 +648,36 @@ public class InitiatorSecureChannelTest {
         assertThat(mTestLooper.nextMessage()).isNull();
         verify(externalRequestCallback).onFailure();
     }
+
+    private void mockOpenChannel(ResponseApdu responseApdu) {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(1);
+            callback.onResponses(List.of(responseApdu));
+            return null;
+        }).when(mSecureElementChannel).openChannel(any(Handler.class), any());
+    }
+
+    private <T extends FiRaCommand> void mockTransmit(Class<T> type, ResponseApdu responseApdu) {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(2);
+            callback.onResponses(List.of(responseApdu));
+            return null;
+        }).when(mSecureElementChannel).transmit(any(type), any(Handler.class), any());
+    }
+
+    private <T extends FiRaCommand> void mockTransmitFailure(Class<T> type) {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(2);
+            callback.onFailure(new IOException());
+            return null;
+        }).when(mSecureElementChannel).transmit(any(type), any(Handler.class), any());
+    }
+
+    private void mockTransmitResponse(ResponseApdu responseApdu) {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(2);
+            callback.onResponses(List.of(responseApdu));
+            return null;
+        }).when(mSecureElementChannel).transmit(anyList(), any(Handler.class), any());
+    }
 }
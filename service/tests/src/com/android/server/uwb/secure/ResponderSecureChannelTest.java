@@ -22,11 +22,13 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.os.Handler;
 import android.os.test.TestLooper;
 
 import com.android.server.uwb.discovery.Transport;
@@ -51,6 +53,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.List;
 
 public class ResponderSecureChannelTest {
     private static final ObjectIdentifier PROVISIONED_ADF_OID =
@@ -105,8 +108,7 @@ public class ResponderSecureChannelTest {
                         mock(UwbCapability.class), mock(ObjectIdentifier.class))
                         .build();
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannelWithResponse())
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
         // select command trigger
         CommandApdu selectCommand = CommandApdu.builder(0x00, 0xA4, 0x04, 0x00).build();
 
@@ -125,8 +127,7 @@ public class ResponderSecureChannelTest {
                         mock(UwbCapability.class), PROVISIONED_ADF_OID)
                         .build();
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannelWithResponse())
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
         // select command trigger
         CommandApdu selectCommand = CommandApdu.builder(0x00, 0xA4, 0x04, 0x00).build();
 
@@ -137,9 +138,8 @@ public class ResponderSecureChannelTest {
         SelectAdfCommand selectAdfCommand = SelectAdfCommand.build(PROVISIONED_ADF_OID);
         byte[] responseData = DataTypeConversionUtil.hexStringToByteArray(
                 "711280018081029000E109800100810100820101"); // ADF SELECTED notification
-        when(mSecureElementChannel.transmit(any(FiRaCommand.class)))
-                .thenReturn(ResponseApdu.fromDataAndStatusWord(
-                        responseData, StatusWord.SW_NO_ERROR.toInt()));
+        mockTransmit(FiRaCommand.class, ResponseApdu.fromDataAndStatusWord(
+                responseData, StatusWord.SW_NO_ERROR.toInt()));
         mResponderSecureChannel.processRemoteCommandOrResponse(
                 selectAdfCommand.getCommandApdu().getEncoded());
 
@@ -154,8 +154,7 @@ public class ResponderSecureChannelTest {
                         mock(UwbCapability.class), PROVISIONED_ADF_OID)
                         .build();
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannelWithResponse())
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
         // select command trigger
         CommandApdu selectCommand = CommandApdu.builder(0x00, 0xA4, 0x04, 0x00).build();
 
@@ -166,9 +165,8 @@ public class ResponderSecureChannelTest {
         SelectAdfCommand selectAdfCommand = SelectAdfCommand.build(PROVISIONED_ADF_OID);
         byte[] responseData = DataTypeConversionUtil.hexStringToByteArray(
                 "711280018081029000E109800100810100820102"); // ADF SELECTED notification
-        when(mSecureElementChannel.transmit(any(FiRaCommand.class)))
-                .thenReturn(ResponseApdu.fromDataAndStatusWord(
-                        responseData, StatusWord.SW_NO_ERROR.toInt()));
+        mockTransmit(FiRaCommand.class, ResponseApdu.fromDataAndStatusWord(
+                responseData, StatusWord.SW_NO_ERROR.toInt()));
         mResponderSecureChannel.processRemoteCommandOrResponse(
                 selectAdfCommand.getCommandApdu().getEncoded());
 
@@ -181,8 +179,7 @@ public class ResponderSecureChannelTest {
     @Test
     public void openChannelFail() throws IOException {
         doInit(mock(RunningProfileSessionInfo.class));
-        when(mSecureElementChannel.openChannelWithResponse())
-                .thenReturn(ResponseApdu.SW_FILE_NOT_FOUND_APDU);
+        mockOpenChannel(ResponseApdu.SW_FILE_NOT_FOUND_APDU);
         // select command trigger
         CommandApdu selectCommand = CommandApdu.builder(0x00, 0xA4, 0x04, 0x00).build();
 
@@ -199,8 +196,7 @@ public class ResponderSecureChannelTest {
     @Test
     public void openChannelWithException() throws IOException {
         doInit(mock(RunningProfileSessionInfo.class));
-        when(mSecureElementChannel.openChannelWithResponse())
-                .thenThrow(new IOException());
+        mockOpenChannelFailure();
         // select command trigger
         CommandApdu selectCommand = CommandApdu.builder(0x00, 0xA4, 0x04, 0x00).build();
 
@@ -225,10 +221,8 @@ public class ResponderSecureChannelTest {
                         .setControleeInfo(mockControleeInfo)
                         .build();
         doInit(runningProfileSessionInfo);
-        when(mSecureElementChannel.openChannelWithResponse())
-                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
-        when(mSecureElementChannel.transmit(any(SwapInAdfCommand.class)))
-                .thenReturn(ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
+        mockOpenChannel(ResponseApdu.SW_SUCCESS_APDU);
+        mockTransmit(SwapInAdfCommand.class, ResponseApdu.SW_CONDITIONS_NOT_SATISFIED_APDU);
         // select command trigger
         CommandApdu selectCommand = CommandApdu.builder(0x00, 0xA4, 0x04, 0x00).build();
 
@@ -249,4 +243,28 @@ public class ResponderSecureChannelTest {
         mResponderSecureChannel.tunnelToRemoteDevice(new byte[0], mock(
                 FiRaSecureChannel.ExternalRequestCallback.class));
     }
+
+    private void mockOpenChannel(ResponseApdu responseApdu) {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(1);
+            callback.onResponses(List.of(responseApdu));
+            return null;
+        }).when(mSecureElementChannel).openChannel(any(Handler.class), any());
+    }
+
+    private void mockOpenChannelFailure() {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(1);
+            callback.onFailure(new IOException());
+            return null;
+        }).when(mSecureElementChannel).openChannel(any(Handler.class), any());
+    }
+
+    private <T extends FiRaCommand> void mockTransmit(Class<T> type, ResponseApdu responseApdu) {
+        doAnswer(invocation -> {
+            SecureElementChannel.TransmitCallback callback = invocation.getArgument(2);
+            callback.onResponses(List.of(responseApdu));
+            return null;
+        }).when(mSecureElementChannel).transmit(any(type), any(Handler.class), any());
+    }
 }
@@ -22,10 +22,16 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.os.Handler;
+import android.os.test.TestLooper;
+
 import com.android.server.uwb.secure.iso7816.CommandApdu;
 import com.android.server.uwb.secure.iso7816.ResponseApdu;
 import com.android.server.uwb.secure.iso7816.StatusWord;
@@ -35,23 +41,30 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.util.List;
 
 public class SecureElementChannelTest {
     @Mock private OmapiConnection mMockOmapiConnection;
     @Mock private OmapiConnection.InitCompletionCallback mInitCompletionCallback;
     @Mock private CommandApdu mMockCommandApdu;
     @Mock private ResponseApdu mMockResponseApdu;
+    @Mock private CommandApdu mMockCommandApdu2;
+    @Mock private SecureElementChannel.TransmitCallback mTransmitCallback;
 
     @Captor
     private ArgumentCaptor<OmapiConnection.InitCompletionCallback>
             mInitCompletionCallbackCaptor;
 
-    private SecureElementChannel mSecureElementChannel;
+    @Captor
+    private ArgumentCaptor<List<ResponseApdu>> mResponsesCaptor;
 
+    private SecureElementChannel mSecureElementChannel;
+    private final TestLooper mTestLooper = new TestLooper();
 
     @Before
     public void setUp() {
@@ -305,6 +318,183 @@ public class SecureElementChannelTest {
         assertThat(mSecureElementChannel.isOpened()).isFalse();
     }
 
+    @Test
+    public void transmitList_allSucceed_returnsAllResponses() throws Exception {
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(any())).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mSecureElementChannel.openChannel();
+
+        List<ResponseApdu> responses =
+                mSecureElementChannel.transmit(List.of(mMockCommandApdu, mMockCommandApdu2));
+
+        verify(mMockOmapiConnection).transmit(eq(mMockCommandApdu));
+        verify(mMockOmapiConnection).transmit(eq(mMockCommandApdu2));
+        assertThat(responses)
+                .containsExactly(ResponseApdu.SW_SUCCESS_APDU, ResponseApdu.SW_SUCCESS_APDU);
+    }
+
+    @Test
+    public void transmitList_firstFails_stopsAtFailure() throws Exception {
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(any())).thenReturn(ResponseApdu.SW_UNKNOWN_APDU);
+        mSecureElementChannel.openChannel();
+
+        List<ResponseApdu> responses =
+                mSecureElementChannel.transmit(List.of(mMockCommandApdu, mMockCommandApdu2));
+
+        verify(mMockOmapiConnection, never()).transmit(eq(mMockCommandApdu2));
+        assertThat(responses).containsExactly(ResponseApdu.SW_UNKNOWN_APDU);
+    }
+
+    @Test
+    public void transmitWithHandler_allSucceed_callsBackWithResponses() throws Exception {
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(any())).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        mSecureElementChannel.openChannel();
+
+        mSecureElementChannel.transmit(
+                List.of(mMockCommandApdu, mMockCommandApdu2),
+                new Handler(mTestLooper.getLooper()),
+                mTransmitCallback);
+
+        verify(mTransmitCallback).onResponses(mResponsesCaptor.capture());
+        assertThat(mResponsesCaptor.getValue())
+                .containsExactly(ResponseApdu.SW_SUCCESS_APDU, ResponseApdu.SW_SUCCESS_APDU);
+    }
+
+    @Test
+    public void transmitWithHandler_swTemporarilyUnavailable_retryPostedToHandler()
+            throws Exception {
+        init();
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(eq(mMockCommandApdu)))
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_CONDITIONS_NOT_SATISFIED))
+                .thenReturn(mMockResponseApdu);
+        mSecureElementChannel.openChannel();
+
+        mSecureElementChannel.transmit(
+                List.of(mMockCommandApdu),
+                new Handler(mTestLooper.getLooper()),
+                mTransmitCallback);
+
+        // The calling thread isn't blocked, the retry waits for its turn on the handler.
+        verify(mMockOmapiConnection).transmit(eq(mMockCommandApdu));
+        verify(mTransmitCallback, never()).onResponses(any());
+        mTestLooper.dispatchAll();
+
+        verify(mMockOmapiConnection, times(2)).transmit(eq(mMockCommandApdu));
+        verify(mTransmitCallback).onResponses(mResponsesCaptor.capture());
+        assertThat(mResponsesCaptor.getValue()).containsExactly(mMockResponseApdu);
+    }
+
+    @Test
+    public void transmitWithHandler_whileBackingOff_startsAfterPendingTransmission()
+            throws Exception {
+        init();
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(eq(mMockCommandApdu)))
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_CONDITIONS_NOT_SATISFIED))
+                .thenReturn(mMockResponseApdu);
+        when(mMockOmapiConnection.transmit(eq(mMockCommandApdu2)))
+                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        SecureElementChannel.TransmitCallback transmitCallback2 =
+                mock(SecureElementChannel.TransmitCallback.class);
+        Handler handler = new Handler(mTestLooper.getLooper());
+        mSecureElementChannel.openChannel();
+
+        mSecureElementChannel.transmit(List.of(mMockCommandApdu), handler, mTransmitCallback);
+        mSecureElementChannel.transmit(List.of(mMockCommandApdu2), handler, transmitCallback2);
+
+        // The second command waits for the retry of the first one.
+        verify(mMockOmapiConnection, never()).transmit(eq(mMockCommandApdu2));
+        mTestLooper.dispatchAll();
+
+        InOrder inOrder = inOrder(mMockOmapiConnection, mTransmitCallback, transmitCallback2);
+        inOrder.verify(mMockOmapiConnection, times(2)).transmit(eq(mMockCommandApdu));
+        inOrder.verify(mTransmitCallback).onResponses(List.of(mMockResponseApdu));
+        inOrder.verify(mMockOmapiConnection).transmit(eq(mMockCommandApdu2));
+        inOrder.verify(transmitCallback2).onResponses(List.of(ResponseApdu.SW_SUCCESS_APDU));
+    }
+
+    @Test
+    public void transmitWithHandler_retriesExhausted_callsBackWithFailure() throws Exception {
+        init();
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(any()))
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_CONDITIONS_NOT_SATISFIED));
+        mSecureElementChannel.openChannel();
+
+        mSecureElementChannel.transmit(
+                List.of(mMockCommandApdu, mMockCommandApdu2),
+                new Handler(mTestLooper.getLooper()),
+                mTransmitCallback);
+        mTestLooper.dispatchAll();
+
+        verify(mMockOmapiConnection, times(3)).transmit(eq(mMockCommandApdu));
+        verify(mMockOmapiConnection, never()).transmit(eq(mMockCommandApdu2));
+        verify(mTransmitCallback).onResponses(mResponsesCaptor.capture());
+        assertThat(mResponsesCaptor.getValue()).containsExactly(
+                ResponseApdu.fromStatusWord(StatusWord.SW_CONDITIONS_NOT_SATISFIED));
+    }
+
+    @Test
+    public void transmitWithHandler_exception_callsBackOnFailure() throws Exception {
+        IOException exception = new IOException();
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+        when(mMockOmapiConnection.transmit(any())).thenThrow(exception);
+        mSecureElementChannel.openChannel();
+
+        mSecureElementChannel.transmit(
+                List.of(mMockCommandApdu),
+                new Handler(mTestLooper.getLooper()),
+                mTransmitCallback);
+
+        verify(mTransmitCallback).onFailure(exception);
+        verify(mTransmitCallback, never()).onResponses(any());
+    }
+
+    @Test
+    public void transmitWithHandler_unopened_callsBackWithFailureResponse() {
+        mSecureElementChannel.transmit(
+                List.of(mMockCommandApdu),
+                new Handler(mTestLooper.getLooper()),
+                mTransmitCallback);
+
+        verify(mTransmitCallback).onResponses(mResponsesCaptor.capture());
+        assertThat(mResponsesCaptor.getValue()).containsExactly(
+                ResponseApdu.fromStatusWord(StatusWord.SW_CONDITIONS_NOT_SATISFIED));
+    }
+
+    @Test
+    public void openChannelWithHandler_success_callsBackAndOpens() throws Exception {
+        when(mMockOmapiConnection.openChannel()).thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+
+        mSecureElementChannel.openChannel(new Handler(mTestLooper.getLooper()), mTransmitCallback);
+
+        verify(mTransmitCallback).onResponses(List.of(ResponseApdu.SW_SUCCESS_APDU));
+        assertThat(mSecureElementChannel.isOpened()).isTrue();
+    }
+
+    @Test
+    public void openChannelWithHandler_swTemporarilyUnavailable_retryPostedToHandler()
+            throws Exception {
+        init();
+        when(mMockOmapiConnection.openChannel())
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_NO_SPECIFIC_DIAGNOSTIC))
+                .thenReturn(ResponseApdu.SW_SUCCESS_APDU);
+
+        mSecureElementChannel.openChannel(new Handler(mTestLooper.getLooper()), mTransmitCallback);
+
+        verify(mMockOmapiConnection).openChannel();
+        verify(mTransmitCallback, never()).onResponses(any());
+        assertThat(mSecureElementChannel.isOpened()).isFalse();
+        mTestLooper.dispatchAll();
+
+        verify(mMockOmapiConnection, times(2)).openChannel();
+        verify(mTransmitCallback).onResponses(List.of(ResponseApdu.SW_SUCCESS_APDU));
+        assertThat(mSecureElementChannel.isOpened()).isTrue();
+    }
+
     private void init() {
         mSecureElementChannel =
                 new SecureElementChannel(
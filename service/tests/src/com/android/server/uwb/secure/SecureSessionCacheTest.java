@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.secure;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.server.uwb.secure.csml.ControleeInfo;
+import com.android.server.uwb.util.ObjectIdentifier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class SecureSessionCacheTest {
+    private static final int MAX_ENTRIES = 2;
+    private static final long TIME_TO_LIVE_MILLIS = 1000;
+    private static final String PEER_1 = "00:11:22:33:44:55";
+    private static final String PEER_2 = "00:11:22:33:44:66";
+    private static final String PEER_3 = "00:11:22:33:44:77";
+    private static final ObjectIdentifier ADF_OID_1 =
+            ObjectIdentifier.fromBytes(new byte[] {(byte) 1});
+    private static final ObjectIdentifier ADF_OID_2 =
+            ObjectIdentifier.fromBytes(new byte[] {(byte) 2});
+
+    private final ControleeInfo mControleeInfo = new ControleeInfo(Optional.empty());
+    private long mNowMillis = 0;
+    private SecureSessionCache mSecureSessionCache;
+
+    @Before
+    public void setUp() {
+        mSecureSessionCache =
+                new SecureSessionCache(MAX_ENTRIES, TIME_TO_LIVE_MILLIS, () -> mNowMillis);
+    }
+
+    @Test
+    public void getControleeInfo_cached() {
+        mSecureSessionCache.putControleeInfo(PEER_1, ADF_OID_1, mControleeInfo);
+
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_1).get())
+                .isSameInstanceAs(mControleeInfo);
+    }
+
+    @Test
+    public void getControleeInfo_keyedByPeerAndAdfOid() {
+        mSecureSessionCache.putControleeInfo(PEER_1, ADF_OID_1, mControleeInfo);
+
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_2, ADF_OID_1).isPresent())
+                .isFalse();
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_2).isPresent())
+                .isFalse();
+        assertThat(mSecureSessionCache.getControleeInfo(
+                PEER_1, ObjectIdentifier.fromBytes(new byte[] {(byte) 1})).isPresent())
+                .isTrue();
+    }
+
+    @Test
+    public void getControleeInfo_expired() {
+        mSecureSessionCache.putControleeInfo(PEER_1, ADF_OID_1, mControleeInfo);
+
+        mNowMillis = TIME_TO_LIVE_MILLIS - 1;
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_1).isPresent())
+                .isTrue();
+        mNowMillis = TIME_TO_LIVE_MILLIS;
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_1).isPresent())
+                .isFalse();
+        assertThat(mSecureSessionCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void putControleeInfo_leastRecentlyUsedEvicted() {
+        mSecureSessionCache.putControleeInfo(PEER_1, ADF_OID_1, mControleeInfo);
+        mSecureSessionCache.putControleeInfo(PEER_2, ADF_OID_1, mControleeInfo);
+        mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_1);
+
+        mSecureSessionCache.putControleeInfo(PEER_3, ADF_OID_1, mControleeInfo);
+
+        assertThat(mSecureSessionCache.size()).isEqualTo(MAX_ENTRIES);
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_1).isPresent())
+                .isTrue();
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_2, ADF_OID_1).isPresent())
+                .isFalse();
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_3, ADF_OID_1).isPresent())
+                .isTrue();
+    }
+
+    @Test
+    public void remove() {
+        mSecureSessionCache.putControleeInfo(PEER_1, ADF_OID_1, mControleeInfo);
+        mSecureSessionCache.putControleeInfo(PEER_2, ADF_OID_1, mControleeInfo);
+
+        mSecureSessionCache.remove(PEER_1, ADF_OID_1);
+
+        assertThat(mSecureSessionCache.getControleeInfo(PEER_1, ADF_OID_1).isPresent())
+                .isFalse();
+        assertThat(mSecureSessionCache.size()).isEqualTo(1);
+
+        mSecureSessionCache.clear();
+
+        assertThat(mSecureSessionCache.size()).isEqualTo(0);
+    }
+}
@@ -17,7 +17,11 @@
 package com.android.server.uwb.secure.provisioning;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -67,8 +71,9 @@ public class ScriptRunnerTest {
     private ProvisioningManager.ProvisioningCallback mProvisioningCallback;
 
     @Before
-    public void setup() {
+    public void setup() throws IOException {
         MockitoAnnotations.initMocks(this);
+        doCallRealMethod().when(mSecureElementChannel).transmit(anyList());
         mUnderTest = new ScriptRunner(mSecureElementChannel);
     }
 
@@ -221,4 +226,44 @@ public class ScriptRunnerTest {
 
         mUnderTest.run(scriptContent, SERVICE_INSTANCE_ID, mProvisioningCallback);
     }
+
+    @Test
+    public void notAllowedCmdAfterAllowedCmd_nothingTransmitted() throws IOException {
+        successSetup();
+        ImmutableList<byte[]> cmdList = ImmutableList.of(
+                CREATE_ADF_CMD.getEncoded(), NOT_ALLOWED_CMD.getEncoded());
+        ScriptParser.ScriptContent scriptContent = new ScriptParser.ScriptContent(1, 1,
+                cmdList, Optional.of(ADF_OID));
+
+        try {
+            mUnderTest.run(scriptContent, SERVICE_INSTANCE_ID, mProvisioningCallback);
+        } catch (ProvisioningException e) {
+            // expected
+        }
+
+        verify(mSecureElementChannel, never()).transmit(any(CommandApdu.class));
+    }
+
+    @Test
+    public void failedProvisioningOnSecondCmd_firstCmdReported() throws IOException {
+        when(mSecureElementChannel.openChannel()).thenReturn(true);
+        when(mSecureElementChannel.transmit(any(CommandApdu.class)))
+                .thenReturn(ResponseApdu.SW_SUCCESS_APDU)
+                .thenReturn(ResponseApdu.fromStatusWord(StatusWord.SW_COMMAND_NOT_ALLOWED));
+        ImmutableList<byte[]> cmdList = ImmutableList.of(
+                CREATE_ADF_CMD.getEncoded(), DELETE_ADF_CMD.getEncoded(),
+                CREATE_ADF_CMD.getEncoded());
+        ScriptParser.ScriptContent scriptContent = new ScriptParser.ScriptContent(1, 1,
+                cmdList, Optional.of(ADF_OID));
+
+        try {
+            mUnderTest.run(scriptContent, SERVICE_INSTANCE_ID, mProvisioningCallback);
+        } catch (ProvisioningException e) {
+            // expected
+        }
+
+        verify(mSecureElementChannel, times(2)).transmit(any(CommandApdu.class));
+        verify(mProvisioningCallback).onAdfCreated(eq(SERVICE_INSTANCE_ID), eq(ADF_OID));
+        verify(mProvisioningCallback, never()).onAdfDeleted(any(), any());
+    }
 }
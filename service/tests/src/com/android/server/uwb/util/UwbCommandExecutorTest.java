@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Unit tests for {@link UwbCommandExecutor}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UwbCommandExecutorTest {
+    private static final int TIMEOUT_MS = 1000;
+
+    private UwbCommandExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = new UwbCommandExecutor("UwbCommandExecutorTest");
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testExecute_returnsResult() throws Exception {
+        assertThat(mExecutor.execute(new FutureTask<>(() -> 1), TIMEOUT_MS)).isEqualTo(1);
+        assertThat(mExecutor.execute(new FutureTask<>(() -> 2), TIMEOUT_MS)).isEqualTo(2);
+
+        assertThat(mExecutor.getTaskCount()).isEqualTo(2);
+        assertThat(mExecutor.getTimeoutCount()).isEqualTo(0);
+        assertThat(mExecutor.getQueueDepth()).isEqualTo(0);
+        assertThat(mExecutor.getMaxQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExecute_runsCommandsInOrderOnSingleWorker() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FutureTask<String> blockingTask = new FutureTask<>(() -> {
+            started.countDown();
+            release.await();
+            return Thread.currentThread().getName();
+        });
+        Thread caller = new Thread(() -> {
+            try {
+                mExecutor.execute(blockingTask, TIMEOUT_MS);
+            } catch (Exception e) {
+                // Checked through blockingTask.
+            }
+        });
+        caller.start();
+        assertThat(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+        FutureTask<String> queuedTask = new FutureTask<>(() -> Thread.currentThread().getName());
+        Thread queuedCaller = new Thread(() -> {
+            try {
+                mExecutor.execute(queuedTask, TIMEOUT_MS);
+            } catch (Exception e) {
+                // Checked through queuedTask.
+            }
+        });
+        queuedCaller.start();
+        // The second command waits behind the first one instead of running in parallel.
+        assertThrows(TimeoutException.class, () -> queuedTask.get(50, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertThat(queuedTask.get(TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                .isEqualTo(blockingTask.get());
+        caller.join();
+        queuedCaller.join();
+        assertThat(mExecutor.getMaxQueueDepth()).isEqualTo(2);
+        assertThat(mExecutor.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExecute_timeoutCancelsTaskAndReplacesWorker() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Ignores the interrupt, like a worker blocked in the native stack.
+        FutureTask<Integer> stuckTask = new FutureTask<>(() -> {
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Keep waiting.
+                }
+            }
+            return 1;
+        });
+
+        assertThrows(TimeoutException.class, () -> mExecutor.execute(stuckTask, 10));
+
+        assertThat(stuckTask.isCancelled()).isTrue();
+        assertThat(mExecutor.getTimeoutCount()).isEqualTo(1);
+        assertThat(mExecutor.getWorkerReplacementCount()).isEqualTo(1);
+        assertThat(mExecutor.getQueueDepth()).isEqualTo(1);
+        // The executor remains usable while the replaced worker is stuck.
+        assertThat(mExecutor.execute(new FutureTask<>(() -> 2), TIMEOUT_MS)).isEqualTo(2);
+
+        release.countDown();
+    }
+
+    @Test
+    public void testExecute_timeoutWhileQueuedKeepsWorker() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FutureTask<Integer> blockingTask = new FutureTask<>(() -> {
+            started.countDown();
+            release.await();
+            return 1;
+        });
+        Thread caller = new Thread(() -> {
+            try {
+                mExecutor.execute(blockingTask, TIMEOUT_MS);
+            } catch (Exception e) {
+                // Checked through blockingTask.
+            }
+        });
+        caller.start();
+        assertThat(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+        FutureTask<Integer> queuedTask = new FutureTask<>(() -> 2);
+        assertThrows(TimeoutException.class, () -> mExecutor.execute(queuedTask, 10));
+
+        assertThat(queuedTask.isCancelled()).isTrue();
+        assertThat(mExecutor.getWorkerReplacementCount()).isEqualTo(0);
+        release.countDown();
+        assertThat(blockingTask.get(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isEqualTo(1);
+        caller.join();
+    }
+
+    @Test
+    public void testShutdownNow_cancelsQueuedCommandsAndRejectsNewOnes() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        FutureTask<Integer> blockingTask = new FutureTask<>(() -> {
+            started.countDown();
+            new CountDownLatch(1).await();
+            return 1;
+        });
+        FutureTask<Integer> queuedTask = new FutureTask<>(() -> 2);
+        Thread caller = new Thread(() -> {
+            try {
+                mExecutor.execute(blockingTask, TIMEOUT_MS);
+            } catch (Exception e) {
+                // Checked through blockingTask.
+            }
+        });
+        Thread queuedCaller = new Thread(() -> {
+            try {
+                mExecutor.execute(queuedTask, TIMEOUT_MS);
+            } catch (Exception e) {
+                // Checked through queuedTask.
+            }
+        });
+        caller.start();
+        assertThat(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+        queuedCaller.start();
+        while (mExecutor.getQueueDepth() < 2) {
+            Thread.sleep(1);
+        }
+
+        mExecutor.shutdownNow();
+
+        assertThat(queuedTask.isCancelled()).isTrue();
+        assertThrows(ExecutionException.class,
+                () -> mExecutor.execute(new FutureTask<>(() -> 3), TIMEOUT_MS));
+        caller.join();
+        queuedCaller.join();
+        assertThat(mExecutor.getQueueDepth()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.uwb.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link UwbSessionCommandPipeline}.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UwbSessionCommandPipelineTest {
+    private static final int TIMEOUT_MS = 1000;
+
+    private UwbSessionCommandPipeline mPipeline;
+
+    @Before
+    public void setUp() {
+        mPipeline = new UwbSessionCommandPipeline("UwbSessionCommandPipelineTest");
+    }
+
+    @Test
+    public void testSubmit_sameKeyRunsInOrder() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstCommandLatch = new CountDownLatch(1);
+
+        mPipeline.submit("session1", () -> {
+            awaitUninterruptibly(firstCommandLatch);
+            order.add(1);
+        });
+        mPipeline.submit("session1", () -> order.add(2));
+        CompletableFuture<Void> last = mPipeline.submit("session1", () -> order.add(3));
+
+        // Nothing runs ahead of the blocked command.
+        assertThat(order).isEmpty();
+        firstCommandLatch.countDown();
+        last.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(order).containsExactly(1, 2, 3).inOrder();
+        assertThat(mPipeline.getCommandCount()).isEqualTo(3);
+        assertThat(mPipeline.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSubmit_differentKeysRunConcurrently() throws Exception {
+        CountDownLatch session1Latch = new CountDownLatch(1);
+
+        CompletableFuture<Void> session1 =
+                mPipeline.submit("session1", () -> awaitUninterruptibly(session1Latch));
+        // Completes while the command of session1 is still blocked.
+        mPipeline.submit("session2", () -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(session1.isDone()).isFalse();
+        assertThat(mPipeline.getPendingCount()).isEqualTo(1);
+        session1Latch.countDown();
+        session1.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertThat(mPipeline.getMaxPendingCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSubmit_blockedPipelinesDoNotDelayOthers() throws Exception {
+        CountDownLatch blockedLatch = new CountDownLatch(1);
+        List<CompletableFuture<Void>> blocked = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            blocked.add(mPipeline.submit("session" + i,
+                    () -> awaitUninterruptibly(blockedLatch)));
+        }
+
+        // Runs on its own thread while the other sessions are blocked.
+        mPipeline.submit("sessionOther", () -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        blockedLatch.countDown();
+        for (CompletableFuture<Void> future : blocked) {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void testSubmit_pendingLimitReached_waitsForPendingCommand() throws Exception {
+        mPipeline = new UwbSessionCommandPipeline("UwbSessionCommandPipelineTest",
+                Executors.newCachedThreadPool(), 2 /* pendingLimit */);
+        CountDownLatch blockedLatch = new CountDownLatch(1);
+        mPipeline.submit("session1", () -> awaitUninterruptibly(blockedLatch));
+        mPipeline.submit("session2", () -> awaitUninterruptibly(blockedLatch));
+
+        CompletableFuture<Void> submitted = CompletableFuture.runAsync(
+                () -> mPipeline.submit("session3", () -> { }));
+        Thread.sleep(100);
+        assertThat(submitted.isDone()).isFalse();
+
+        blockedLatch.countDown();
+        submitted.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertThat(mPipeline.getThrottledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSubmit_severalKeys_orderedWithEachPipeline() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch session1Latch = new CountDownLatch(1);
+
+        mPipeline.submit("session1", () -> {
+            awaitUninterruptibly(session1Latch);
+            order.add("session1");
+        });
+        mPipeline.submit("session2", () -> order.add("session2"))
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        mPipeline.submit(List.of("session1", "session2"), () -> order.add("group"));
+        CompletableFuture<Void> last = mPipeline.submit("session2", () -> order.add("last"));
+
+        // The group command waits for session1, and the next command of session2 for it.
+        Thread.sleep(100);
+        assertThat(order).containsExactly("session2");
+        session1Latch.countDown();
+        last.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(order).containsExactly("session2", "session1", "group", "last").inOrder();
+    }
+
+    @Test
+    public void testSubmit_failureDoesNotStallPipeline() throws Exception {
+        mPipeline.submit("session1", () -> {
+            throw new IllegalStateException();
+        });
+        CountDownLatch latch = new CountDownLatch(1);
+        mPipeline.submit("session1", latch::countDown).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(latch.getCount()).isEqualTo(0);
+        assertThat(mPipeline.getFailureCount()).isEqualTo(1);
+        assertThat(mPipeline.getCommandCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSubmit_drainedPipelineIsRemoved() throws Exception {
+        mPipeline.submit("session1", () -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        mPipeline.submit("session2", () -> { }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(mPipeline.getActivePipelineCount()).isEqualTo(0);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -18,6 +18,7 @@ use crate::notification_manager_android::NotificationManagerAndroidBuilder;
 
 use std::collections::HashMap;
 use std::ops::Deref;
+use std::sync::atomic::{AtomicUsize, Ordering};
 use std::sync::{Arc, RwLock, RwLockReadGuard};
 
 use jni::objects::{GlobalRef, JObject, JString};
@@ -43,6 +44,7 @@ lazy_static! {
 /// Destruction does NOT wait until the spawned threads are closed.
 pub(crate) struct Dispatcher {
     pub manager_map: HashMap<String, UciManagerSync<UciManagerImpl>>,
+    range_data_batch_limit: Arc<AtomicUsize>,
     _runtime: Runtime,
 }
 impl Dispatcher {
@@ -59,6 +61,7 @@ impl Dispatcher {
             .build()
             .map_err(|_| Error::ForeignFunctionInterface)?;
         let mut manager_map = HashMap::<String, UciManagerSync<UciManagerImpl>>::new();
+        let range_data_batch_limit = Arc::new(AtomicUsize::new(0));
         let mut log_file_factory = PcapngUciLoggerFactoryBuilder::new()
             .log_path("/data/misc/apexdata/com.android.uwb/log".into())
             .filename_prefix("uwb_uci".to_owned())
@@ -74,6 +77,7 @@ impl Dispatcher {
                     vm,
                     class_loader_obj: class_loader_obj.clone(),
                     callback_obj: callback_obj.clone(),
+                    range_data_batch_limit: range_data_batch_limit.clone(),
                 },
                 logger,
                 UciLoggerMode::Filtered,
@@ -81,7 +85,13 @@ impl Dispatcher {
             )?;
             manager_map.insert(chip_id.as_ref().to_string(), manager);
         }
-        Ok(Self { manager_map, _runtime: runtime })
+        Ok(Self { manager_map, range_data_batch_limit, _runtime: runtime })
+    }
+
+    /// Sets the maximum number of range data notifications delivered per upcall, for all chips.
+    /// Zero delivers each notification on its own.
+    pub fn set_range_data_batch_limit(&self, limit: usize) {
+        self.range_data_batch_limit.store(limit, Ordering::Relaxed);
     }
 
     /// Sets log mode for all chips.
@@ -21,13 +21,15 @@ use crate::jclass_name::{
 };
 
 use std::collections::HashMap;
-use std::sync::Arc;
+use std::sync::atomic::{AtomicBool, AtomicUsize, Ordering};
+use std::sync::{Arc, Condvar, Mutex, MutexGuard};
+use std::time::{Duration, Instant};
 
 use jni::errors::Error as JNIError;
 use jni::objects::{GlobalRef, JClass, JMethodID, JObject, JValue};
 use jni::signature::TypeSignature;
 use jni::sys::jvalue;
-use jni::{AttachGuard, JavaVM};
+use jni::{AttachGuard, JNIEnv, JavaVM};
 use log::{debug, error};
 use uwb_core::error::{Error as UwbError, Result as UwbResult};
 use uwb_core::params::UwbAddress;
@@ -54,6 +56,9 @@ const MAX_RADAR_VENDOR_DATA_LEN: i32 = 256;
 // Maximum allowed number of Java Object to be allocated inside with_local_frame
 const MAX_JAVA_OBJECTS_CAPACITY: i32 = 50;
 
+// Range data notifications are not held back for longer than this while a batch fills up.
+const MAX_RANGE_DATA_BATCH_DELAY: Duration = Duration::from_millis(20);
+
 enum MacAddress {
     Short(u16),
     Extended(u64),
@@ -250,6 +255,297 @@ impl From<ShortAddressDlTdoaRangingMeasurement> for DlTdoaRangingMeasurement {
     }
 }
 
+/// Packs RANGE_DATA_NTFs into a single buffer, so that several of them (possibly for different
+/// sessions) are delivered to Java with one upcall instead of one object graph each.
+///
+/// The layout must match the one read by com.android.server.uwb.data.UwbRangingDataBatch. All
+/// values are little-endian and unsigned. Each record is:
+///   u32 record_len (bytes following this field), u32 sequence_number, u32 session_id,
+///   u8 rcr_indicator, u32 current_ranging_interval_ms, u8 ranging_measurement_type,
+///   u8 mac_address_indicator, u16 measurement_count, u16 raw_ntf_len, raw_ntf,
+///   measurement_count measurements.
+/// Each measurement starts with its 2 or 8 byte MAC address, followed by:
+///   TwoWay: u8 status, u8 nlos, u16 distance, u16 aoa_azimuth, u8 aoa_azimuth_fom,
+///     u16 aoa_elevation, u8 aoa_elevation_fom, u16 aoa_destination_azimuth,
+///     u8 aoa_destination_azimuth_fom, u16 aoa_destination_elevation,
+///     u8 aoa_destination_elevation_fom, u8 slot_index, u8 rssi.
+///   OwrAoa: u8 status, u8 nlos, u8 frame_sequence_number, u16 block_index, u16 aoa_azimuth,
+///     u8 aoa_azimuth_fom, u16 aoa_elevation, u8 aoa_elevation_fom.
+///   DlTdoa: u8 status, u8 message_type, u16 message_control, u16 block_index, u8 round_index,
+///     u8 nlos, u16 aoa_azimuth, u8 aoa_azimuth_fom, u16 aoa_elevation, u8 aoa_elevation_fom,
+///     u8 rssi, u64 tx_timestamp, u64 rx_timestamp, u16 anchor_cfo, u16 cfo,
+///     u32 initiator_reply_time, u32 responder_reply_time, u16 initiator_responder_tof,
+///     u8 dt_anchor_location_len, dt_anchor_location, u8 ranging_rounds_len, ranging_rounds.
+#[derive(Default)]
+struct RangeDataBatch {
+    buffer: Vec<u8>,
+    count: usize,
+    first_pending_at: Option<Instant>,
+}
+
+impl RangeDataBatch {
+    fn len(&self) -> usize {
+        self.count
+    }
+
+    fn is_empty(&self) -> bool {
+        self.count == 0
+    }
+
+    /// Returns true if the oldest pending notification has been held back for longer than
+    /// `max_delay`.
+    fn is_overdue(&self, max_delay: Duration) -> bool {
+        self.first_pending_at.map_or(false, |t| t.elapsed() >= max_delay)
+    }
+
+    /// Drops the pending notifications, keeping the buffer capacity for the next batch.
+    fn clear(&mut self) {
+        self.buffer.clear();
+        self.count = 0;
+        self.first_pending_at = None;
+    }
+
+    fn push(&mut self, range_data: SessionRangeData) -> UwbResult<()> {
+        let start = self.buffer.len();
+        if let Err(e) = self.put_range_data(range_data) {
+            self.buffer.truncate(start);
+            return Err(e);
+        }
+        let record_len: u32 =
+            (self.buffer.len() - start - 4).try_into().map_err(|_| UwbError::BadParameters)?;
+        self.buffer[start..start + 4].copy_from_slice(&record_len.to_le_bytes());
+        if self.count == 0 {
+            self.first_pending_at = Some(Instant::now());
+        }
+        self.count += 1;
+        Ok(())
+    }
+
+    fn put_range_data(&mut self, range_data: SessionRangeData) -> UwbResult<()> {
+        let (mac_indicator, measurement_count) = match &range_data.ranging_measurements {
+            RangingMeasurements::ShortAddressTwoWay(v) => {
+                (MacAddressIndicator::ShortAddress, v.len())
+            }
+            RangingMeasurements::ExtendedAddressTwoWay(v) => {
+                (MacAddressIndicator::ExtendedAddress, v.len())
+            }
+            RangingMeasurements::ShortAddressOwrAoa(_) => (MacAddressIndicator::ShortAddress, 1),
+            RangingMeasurements::ExtendedAddressOwrAoa(_) => {
+                (MacAddressIndicator::ExtendedAddress, 1)
+            }
+            RangingMeasurements::ShortAddressDltdoa(v) => {
+                (MacAddressIndicator::ShortAddress, v.len())
+            }
+            RangingMeasurements::ExtendedAddressDltdoa(v) => {
+                (MacAddressIndicator::ExtendedAddress, v.len())
+            }
+        };
+        let measurement_count: u16 =
+            measurement_count.try_into().map_err(|_| UwbError::BadParameters)?;
+        let raw_ntf_len: u16 =
+            range_data.raw_ranging_data.len().try_into().map_err(|_| UwbError::BadParameters)?;
+
+        // The record length is filled in by push().
+        self.buffer.extend_from_slice(&[0; 4]);
+        self.buffer.extend_from_slice(&(range_data.sequence_number as u32).to_le_bytes());
+        // session_token below has already been mapped to session_id by uci layer.
+        self.buffer.extend_from_slice(&(range_data.session_token as u32).to_le_bytes());
+        self.buffer.push(range_data.rcr_indicator as u8);
+        self.buffer
+            .extend_from_slice(&(range_data.current_ranging_interval_ms as u32).to_le_bytes());
+        self.buffer.push(range_data.ranging_measurement_type as u8);
+        self.buffer.push(mac_indicator as u8);
+        self.buffer.extend_from_slice(&measurement_count.to_le_bytes());
+        self.buffer.extend_from_slice(&raw_ntf_len.to_le_bytes());
+        self.buffer.extend_from_slice(&range_data.raw_ranging_data);
+
+        match range_data.ranging_measurements {
+            RangingMeasurements::ShortAddressTwoWay(v) => {
+                v.into_iter().for_each(|m| self.put_two_way_measurement(m.into()))
+            }
+            RangingMeasurements::ExtendedAddressTwoWay(v) => {
+                v.into_iter().for_each(|m| self.put_two_way_measurement(m.into()))
+            }
+            RangingMeasurements::ShortAddressOwrAoa(m) => self.put_owr_aoa_measurement(m.into()),
+            RangingMeasurements::ExtendedAddressOwrAoa(m) => self.put_owr_aoa_measurement(m.into()),
+            RangingMeasurements::ShortAddressDltdoa(v) => {
+                for m in v {
+                    self.put_dl_tdoa_measurement(m.into())?;
+                }
+            }
+            RangingMeasurements::ExtendedAddressDltdoa(v) => {
+                for m in v {
+                    self.put_dl_tdoa_measurement(m.into())?;
+                }
+            }
+        }
+        Ok(())
+    }
+
+    fn put_mac_address(&mut self, mac_address: MacAddress) {
+        // Same byte order as MacAddress::into_ne_bytes() on the (little-endian) Android targets.
+        match mac_address {
+            MacAddress::Short(val) => self.buffer.extend_from_slice(&val.to_le_bytes()),
+            MacAddress::Extended(val) => self.buffer.extend_from_slice(&val.to_le_bytes()),
+        }
+    }
+
+    fn put_two_way_measurement(&mut self, measurement: TwoWayRangingMeasurement) {
+        self.put_mac_address(measurement.mac_address);
+        self.buffer.push(i32::from(measurement.status) as u8);
+        self.buffer.push(measurement.nlos);
+        self.buffer.extend_from_slice(&measurement.distance.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.aoa_azimuth.to_le_bytes());
+        self.buffer.push(measurement.aoa_azimuth_fom);
+        self.buffer.extend_from_slice(&measurement.aoa_elevation.to_le_bytes());
+        self.buffer.push(measurement.aoa_elevation_fom);
+        self.buffer.extend_from_slice(&measurement.aoa_destination_azimuth.to_le_bytes());
+        self.buffer.push(measurement.aoa_destination_azimuth_fom);
+        self.buffer.extend_from_slice(&measurement.aoa_destination_elevation.to_le_bytes());
+        self.buffer.push(measurement.aoa_destination_elevation_fom);
+        self.buffer.push(measurement.slot_index);
+        self.buffer.push(measurement.rssi);
+    }
+
+    fn put_owr_aoa_measurement(&mut self, measurement: OwrAoaRangingMeasurement) {
+        self.put_mac_address(measurement.mac_address);
+        self.buffer.push(i32::from(measurement.status) as u8);
+        self.buffer.push(measurement.nlos);
+        self.buffer.push(measurement.frame_sequence_number);
+        self.buffer.extend_from_slice(&measurement.block_index.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.aoa_azimuth.to_le_bytes());
+        self.buffer.push(measurement.aoa_azimuth_fom);
+        self.buffer.extend_from_slice(&measurement.aoa_elevation.to_le_bytes());
+        self.buffer.push(measurement.aoa_elevation_fom);
+    }
+
+    fn put_dl_tdoa_measurement(&mut self, measurement: DlTdoaRangingMeasurement) -> UwbResult<()> {
+        let dt_anchor_location_len: u8 =
+            measurement.dt_anchor_location.len().try_into().map_err(|_| UwbError::BadParameters)?;
+        let ranging_rounds_len: u8 =
+            measurement.ranging_rounds.len().try_into().map_err(|_| UwbError::BadParameters)?;
+        self.put_mac_address(measurement.mac_address);
+        self.buffer.push(measurement.status);
+        self.buffer.push(measurement.message_type);
+        self.buffer.extend_from_slice(&measurement.message_control.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.block_index.to_le_bytes());
+        self.buffer.push(measurement.round_index);
+        self.buffer.push(measurement.nlos);
+        self.buffer.extend_from_slice(&measurement.aoa_azimuth.to_le_bytes());
+        self.buffer.push(measurement.aoa_azimuth_fom);
+        self.buffer.extend_from_slice(&measurement.aoa_elevation.to_le_bytes());
+        self.buffer.push(measurement.aoa_elevation_fom);
+        self.buffer.push(measurement.rssi);
+        self.buffer.extend_from_slice(&measurement.tx_timestamp.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.rx_timestamp.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.anchor_cfo.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.cfo.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.initiator_reply_time.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.responder_reply_time.to_le_bytes());
+        self.buffer.extend_from_slice(&measurement.initiator_responder_tof.to_le_bytes());
+        self.buffer.push(dt_anchor_location_len);
+        self.buffer.extend_from_slice(&measurement.dt_anchor_location);
+        self.buffer.push(ranging_rounds_len);
+        self.buffer.extend_from_slice(&measurement.ranging_rounds);
+        Ok(())
+    }
+}
+
+/// Range data batch shared between the notification thread, which fills it, and the thread
+/// delivering it once it is overdue, so that a batch never waits for a later notification.
+#[derive(Default)]
+struct SharedRangeDataBatch {
+    batch: Mutex<RangeDataBatch>,
+    // Holds the batch being delivered, so that the notification thread can fill the next one
+    // during the upcall. Locked while `batch` is held, so batches are delivered in order.
+    delivering: Mutex<RangeDataBatch>,
+    // Signalled when the first notification of a batch is pushed, and on close.
+    batch_started: Condvar,
+    closed: AtomicBool,
+}
+
+impl SharedRangeDataBatch {
+    fn lock(&self) -> MutexGuard<'_, RangeDataBatch> {
+        // The batch is cleared after every delivery attempt, so it is still usable if a
+        // delivery panicked.
+        self.batch.lock().unwrap_or_else(|e| e.into_inner())
+    }
+
+    /// Moves the pending notifications out of `batch`, which is released, and returns them to
+    /// be delivered while the lock of the returned batch is held. Waits for the delivery in
+    /// progress, if any, so that an empty result still orders a later notification after it.
+    fn take<'a>(
+        &'a self,
+        mut batch: MutexGuard<'a, RangeDataBatch>,
+    ) -> MutexGuard<'a, RangeDataBatch> {
+        let mut delivering = self.delivering.lock().unwrap_or_else(|e| e.into_inner());
+        // Swapping keeps the capacity of both buffers for the next batches.
+        delivering.clear();
+        std::mem::swap(&mut *batch, &mut *delivering);
+        delivering
+    }
+
+    /// Stops `run_flusher`.
+    fn close(&self) {
+        self.closed.store(true, Ordering::Relaxed);
+        let _batch = self.lock();
+        self.batch_started.notify_all();
+    }
+
+    /// Calls `deliver`, which must clear the batch, whenever the oldest pending notification has
+    /// been held back for `max_delay`, until `close` is called. The batch is taken out before
+    /// the delivery, so that the notification thread is only blocked if it has to deliver too.
+    fn run_flusher<F: FnMut(&mut RangeDataBatch)>(&self, max_delay: Duration, mut deliver: F) {
+        let mut batch = self.lock();
+        while !self.closed.load(Ordering::Relaxed) {
+            batch = match batch.first_pending_at {
+                None => self.batch_started.wait(batch).unwrap_or_else(|e| e.into_inner()),
+                Some(first_pending_at) => {
+                    let elapsed = first_pending_at.elapsed();
+                    if elapsed >= max_delay {
+                        deliver(&mut self.take(batch));
+                        self.lock()
+                    } else {
+                        self.batch_started
+                            .wait_timeout(batch, max_delay - elapsed)
+                            .unwrap_or_else(|e| e.into_inner())
+                            .0
+                    }
+                }
+            };
+        }
+    }
+}
+
+/// Delivers the range data notifications held in `batch` through a single upcall, and clears
+/// it even if the upcall fails.
+fn deliver_range_data_batch<'a>(
+    env: JNIEnv<'a>,
+    callback_obj: &'a GlobalRef,
+    batch: &mut RangeDataBatch,
+) -> UwbResult<()> {
+    let result = env.with_local_frame(MAX_JAVA_OBJECTS_CAPACITY, || {
+        let count: i32 = batch.len().try_into().map_err(|_| JNIError::InvalidCtorReturn)?;
+        // The direct buffer is only read by Java during the upcall below.
+        let buffer_jobject: JObject = env.new_direct_byte_buffer(&mut batch.buffer)?.into();
+        env.call_method(
+            callback_obj.as_obj(),
+            "onRangeDataNotificationsReceived",
+            "(Ljava/nio/ByteBuffer;I)V",
+            &[JValue::Object(buffer_jobject), JValue::Int(count)],
+        )?;
+        Ok(JObject::null())
+    });
+    batch.clear();
+    result.map(|_| ()).map_err(|e| {
+        if let Err(e) = env.exception_clear() {
+            error!("UCI JNI: failed to clear exception: {:?}", e);
+        }
+        error!("UCI JNI: failed to deliver range data batch: {:?}", e);
+        UwbError::ForeignFunctionInterface
+    })
+}
+
 pub(crate) struct NotificationManagerAndroid {
     pub chip_id: String,
     // 'static annotation is needed as env is 'sent' by tokio::task::spawn_local.
@@ -264,6 +560,18 @@ pub(crate) struct NotificationManagerAndroid {
     pub jmethod_id_map: HashMap<String, JMethodID>,
     // jclass are cached for faster callback
     pub jclass_map: HashMap<String, GlobalRef>,
+    /// Maximum number of range data notifications delivered per upcall, set from Java. Zero
+    /// delivers each notification as its own UwbRangingData object instead.
+    pub range_data_batch_limit: Arc<AtomicUsize>,
+    range_data_batch: Arc<SharedRangeDataBatch>,
+    vm: &'static Arc<JavaVM>,
+    range_data_flusher_started: bool,
+}
+
+impl Drop for NotificationManagerAndroid {
+    fn drop(&mut self) {
+        self.range_data_batch.close();
+    }
 }
 
 // TODO(b/246678053): Need to add callbacks for Data Packet Rx, and Data Packet Tx events (like
@@ -991,11 +1299,70 @@ impl NotificationManagerAndroid {
             ],
         )
     }
+
+    /// Delivers the range data notifications held back in the batch, if any. Called before any
+    /// other notification so that it cannot overtake them. A failure is only logged, the
+    /// notification being handled is delivered regardless.
+    fn flush_range_data_batch(&self) {
+        let mut batch = self.range_data_batch.take(self.range_data_batch.lock());
+        if !batch.is_empty() {
+            let _ = deliver_range_data_batch(*self.env, &self.callback_obj, &mut batch);
+        }
+    }
+
+    /// Starts the thread delivering the batch once it is overdue, if the chip goes quiet before
+    /// it is complete.
+    fn start_range_data_flusher(&mut self) {
+        self.range_data_flusher_started = true;
+        let vm = self.vm;
+        let callback_obj = self.callback_obj.clone();
+        let range_data_batch = self.range_data_batch.clone();
+        let name = format!("UwbRangeDataFlusher-{}", self.chip_id);
+        if let Err(e) = std::thread::Builder::new().name(name).spawn(move || {
+            let env = match vm.attach_current_thread_as_daemon() {
+                Ok(env) => env,
+                Err(e) => {
+                    error!("UCI JNI: failed to attach range data flusher: {:?}", e);
+                    return;
+                }
+            };
+            range_data_batch.run_flusher(MAX_RANGE_DATA_BATCH_DELAY, |batch| {
+                let _ = deliver_range_data_batch(env, &callback_obj, batch);
+            });
+        }) {
+            error!("UCI JNI: failed to start range data flusher: {:?}", e);
+        }
+    }
+
+    fn on_batched_range_data_notification(
+        &mut self,
+        range_data: SessionRangeData,
+        batch_limit: usize,
+    ) -> UwbResult<()> {
+        if !self.range_data_flusher_started {
+            self.start_range_data_flusher();
+        }
+        let env = *self.env;
+        let mut batch = self.range_data_batch.lock();
+        batch.push(range_data).map_err(|e| {
+            error!("UCI JNI: failed to pack range data notification: {:?}", e);
+            e
+        })?;
+        if batch.len() >= batch_limit || batch.is_overdue(MAX_RANGE_DATA_BATCH_DELAY) {
+            let mut batch = self.range_data_batch.take(batch);
+            deliver_range_data_batch(env, &self.callback_obj, &mut batch)?;
+        } else if batch.len() == 1 {
+            // Lets the flusher track the deadline of the new batch.
+            self.range_data_batch.batch_started.notify_one();
+        }
+        Ok(())
+    }
 }
 
 impl NotificationManager for NotificationManagerAndroid {
     fn on_core_notification(&mut self, core_notification: CoreNotification) -> UwbResult<()> {
         debug!("UCI JNI: core notification callback.");
+        self.flush_range_data_batch();
         let env = *self.env;
         env.with_local_frame(MAX_JAVA_OBJECTS_CAPACITY, || {
             let env_chip_id_jobject = *env.new_string(&self.chip_id).map_err(|e| {
@@ -1032,6 +1399,14 @@ impl NotificationManager for NotificationManagerAndroid {
         session_notification: SessionNotification,
     ) -> UwbResult<()> {
         debug!("UCI JNI: session notification callback.");
+        let batch_limit = self.range_data_batch_limit.load(Ordering::Relaxed);
+        let session_notification = match session_notification {
+            SessionNotification::SessionInfo(range_data) if batch_limit > 0 => {
+                return self.on_batched_range_data_notification(range_data, batch_limit);
+            }
+            session_notification => session_notification,
+        };
+        self.flush_range_data_batch();
         let env = *self.env;
         env.with_local_frame(MAX_JAVA_OBJECTS_CAPACITY, || {
             match session_notification {
@@ -1106,6 +1481,7 @@ impl NotificationManager for NotificationManagerAndroid {
         vendor_notification: uwb_core::params::RawUciMessage,
     ) -> UwbResult<()> {
         debug!("UCI JNI: vendor notification callback.");
+        self.flush_range_data_batch();
         let env = *self.env;
         env.with_local_frame(MAX_JAVA_OBJECTS_CAPACITY, || {
             let payload_jbytearray =
@@ -1143,6 +1519,7 @@ impl NotificationManager for NotificationManagerAndroid {
         data_rcv_notification: DataRcvNotification,
     ) -> UwbResult<()> {
         debug!("UCI JNI: Data Rcv notification callback.");
+        self.flush_range_data_batch();
         let env = *self.env;
         env.with_local_frame(MAX_JAVA_OBJECTS_CAPACITY, || {
             let source_address_jbytearray = match &data_rcv_notification.source_address {
@@ -1177,6 +1554,7 @@ impl NotificationManager for NotificationManagerAndroid {
         radar_data_rcv_notification: RadarDataRcvNotification,
     ) -> UwbResult<()> {
         debug!("UCI JNI: Radar Data Rcv notification callback.");
+        self.flush_range_data_batch();
         let env = *self.env;
         env.with_local_frame(MAX_JAVA_OBJECTS_CAPACITY, || {
             let radar_sweep_data_jclass = NotificationManagerAndroid::find_local_class(
@@ -1321,6 +1699,7 @@ pub(crate) struct NotificationManagerAndroidBuilder {
     pub vm: &'static Arc<JavaVM>,
     pub class_loader_obj: GlobalRef,
     pub callback_obj: GlobalRef,
+    pub range_data_batch_limit: Arc<AtomicUsize>,
 }
 
 impl NotificationManagerBuilder for NotificationManagerAndroidBuilder {
@@ -1335,9 +1714,169 @@ impl NotificationManagerBuilder for NotificationManagerAndroidBuilder {
                 callback_obj: self.callback_obj,
                 jmethod_id_map: HashMap::new(),
                 jclass_map: HashMap::new(),
+                range_data_batch_limit: self.range_data_batch_limit,
+                range_data_batch: Arc::new(SharedRangeDataBatch::default()),
+                vm: self.vm,
+                range_data_flusher_started: false,
             })
         } else {
             None
         }
     }
 }
+
+#[cfg(test)]
+mod tests {
+    use super::*;
+
+    #[test]
+    fn test_range_data_batch_two_way_measurement() {
+        let mut batch = RangeDataBatch::default();
+        batch.put_two_way_measurement(TwoWayRangingMeasurement {
+            mac_address: MacAddress::Short(0x0102),
+            status: StatusCode::UciStatusOk,
+            nlos: 1,
+            distance: 0x0304,
+            aoa_azimuth: 0x0506,
+            aoa_azimuth_fom: 7,
+            aoa_elevation: 0x0809,
+            aoa_elevation_fom: 10,
+            aoa_destination_azimuth: 0x0b0c,
+            aoa_destination_azimuth_fom: 13,
+            aoa_destination_elevation: 0x0e0f,
+            aoa_destination_elevation_fom: 16,
+            slot_index: 17,
+            rssi: 18,
+        });
+        assert_eq!(
+            batch.buffer,
+            vec![
+                0x02, 0x01, 0, 1, 0x04, 0x03, 0x06, 0x05, 7, 0x09, 0x08, 10, 0x0c, 0x0b, 13, 0x0f,
+                0x0e, 16, 17, 18
+            ]
+        );
+    }
+
+    fn dl_tdoa_measurement(dt_anchor_location: Vec<u8>) -> DlTdoaRangingMeasurement {
+        DlTdoaRangingMeasurement {
+            mac_address: MacAddress::Extended(0x0102030405060708),
+            status: 0,
+            message_type: 1,
+            message_control: 0x0203,
+            block_index: 0x0405,
+            round_index: 6,
+            nlos: 0,
+            aoa_azimuth: 0x0708,
+            aoa_azimuth_fom: 9,
+            aoa_elevation: 0x0a0b,
+            aoa_elevation_fom: 12,
+            rssi: 13,
+            tx_timestamp: 14,
+            rx_timestamp: 15,
+            anchor_cfo: 0x1011,
+            cfo: 0x1213,
+            initiator_reply_time: 20,
+            responder_reply_time: 21,
+            initiator_responder_tof: 0x1617,
+            dt_anchor_location,
+            ranging_rounds: vec![4],
+        }
+    }
+
+    #[test]
+    fn test_range_data_batch_dl_tdoa_measurement() {
+        let mut batch = RangeDataBatch::default();
+        batch.put_dl_tdoa_measurement(dl_tdoa_measurement(vec![1, 2, 3])).unwrap();
+        // MAC address, fixed size fields, then both length-prefixed arrays.
+        assert_eq!(batch.buffer.len(), 8 + 45 + (1 + 3) + (1 + 1));
+        assert_eq!(batch.buffer[..8], [8, 7, 6, 5, 4, 3, 2, 1]);
+        assert_eq!(batch.buffer[batch.buffer.len() - 6..], [3, 1, 2, 3, 1, 4]);
+
+        // The anchor location length does not fit in its u8 prefix.
+        assert!(batch.put_dl_tdoa_measurement(dl_tdoa_measurement(vec![0; 256])).is_err());
+    }
+
+    #[test]
+    fn test_range_data_batch_clear() {
+        let mut batch = RangeDataBatch::default();
+        assert!(batch.is_empty());
+        assert!(!batch.is_overdue(Duration::ZERO));
+
+        batch.buffer.extend_from_slice(&[1, 2, 3]);
+        batch.count = 1;
+        batch.first_pending_at = Some(Instant::now());
+        assert!(batch.is_overdue(Duration::ZERO));
+        assert!(!batch.is_overdue(Duration::from_secs(3600)));
+
+        batch.clear();
+        assert!(batch.is_empty());
+        assert!(batch.buffer.is_empty());
+        assert!(!batch.is_overdue(Duration::ZERO));
+    }
+
+    #[test]
+    fn test_shared_range_data_batch_flushes_overdue_batch() {
+        let shared = Arc::new(SharedRangeDataBatch::default());
+        let (tx, rx) = std::sync::mpsc::channel();
+        let flusher = {
+            let shared = shared.clone();
+            std::thread::spawn(move || {
+                shared.run_flusher(Duration::from_millis(20), |batch| {
+                    tx.send(batch.len()).unwrap();
+                    batch.clear();
+                })
+            })
+        };
+
+        {
+            let mut batch = shared.lock();
+            batch.buffer.extend_from_slice(&[1, 2, 3]);
+            batch.count = 1;
+            batch.first_pending_at = Some(Instant::now());
+            shared.batch_started.notify_one();
+        }
+
+        // The single pending notification is delivered without any later notification.
+        assert_eq!(rx.recv_timeout(Duration::from_secs(5)), Ok(1));
+        assert!(shared.lock().is_empty());
+
+        shared.close();
+        flusher.join().unwrap();
+    }
+
+    #[test]
+    fn test_shared_range_data_batch_filled_during_delivery() {
+        let shared = Arc::new(SharedRangeDataBatch::default());
+        let (delivered_tx, delivered_rx) = std::sync::mpsc::channel();
+        let (release_tx, release_rx) = std::sync::mpsc::channel();
+        let flusher = {
+            let shared = shared.clone();
+            std::thread::spawn(move || {
+                shared.run_flusher(Duration::ZERO, |batch| {
+                    delivered_tx.send(batch.len()).unwrap();
+                    release_rx.recv().unwrap();
+                    batch.clear();
+                })
+            })
+        };
+        let push = |count| {
+            let mut batch = shared.lock();
+            batch.buffer.extend_from_slice(&[1, 2, 3]);
+            batch.count = count;
+            batch.first_pending_at = Some(Instant::now());
+            shared.batch_started.notify_one();
+        };
+
+        push(1);
+        assert_eq!(delivered_rx.recv_timeout(Duration::from_secs(5)), Ok(1));
+
+        // The upcall is still in progress, the next batch is filled meanwhile.
+        push(2);
+        release_tx.send(()).unwrap();
+        assert_eq!(delivered_rx.recv_timeout(Duration::from_secs(5)), Ok(2));
+        release_tx.send(()).unwrap();
+
+        shared.close();
+        flusher.join().unwrap();
+    }
+}
@@ -332,6 +332,25 @@ fn native_get_session_state(
     uci_manager.session_get_state(session_id as u32)
 }
 
+/// Returns `len` as a buffer length, checking that it fits in an array of `array_len` bytes.
+fn checked_config_len(len: jint, array_len: jint) -> Result<usize> {
+    if len < 0 || len > array_len {
+        return Err(Error::BadParameters);
+    }
+    usize::try_from(len).map_err(|_| Error::BadParameters)
+}
+
+/// Copies only the first `len` bytes of a config byte array. The Java side may encode the TLVs
+/// into a reused buffer that is larger than the TLVs it holds.
+fn get_config_byte_array(env: JNIEnv, byte_array: jbyteArray, len: jint) -> Result<Vec<u8>> {
+    let array_len =
+        env.get_array_length(byte_array).map_err(|_| Error::ForeignFunctionInterface)?;
+    let mut buf = vec![0 as jbyte; checked_config_len(len, array_len)?];
+    env.get_byte_array_region(byte_array, 0, &mut buf)
+        .map_err(|_| Error::ForeignFunctionInterface)?;
+    Ok(buf.into_iter().map(|b| b as u8).collect())
+}
+
 fn parse_app_config_tlv_vec(no_of_params: i32, mut byte_array: &[u8]) -> Result<Vec<AppConfigTlv>> {
     let mut parsed_tlvs_len = 0;
     let received_tlvs_len = byte_array.len();
@@ -437,7 +456,7 @@ pub extern "system" fn Java_com_android_server_uwb_jni_NativeUwbManager_nativeSe
     obj: JObject,
     session_id: jint,
     no_of_params: jint,
-    _app_config_param_len: jint, // TODO(ningyuan): Obsolete parameter
+    app_config_param_len: jint,
     app_config_params: jbyteArray,
     chip_id: JString,
 ) -> jbyteArray {
@@ -448,6 +467,7 @@ pub extern "system" fn Java_com_android_server_uwb_jni_NativeUwbManager_nativeSe
             obj,
             session_id,
             no_of_params,
+            app_config_param_len,
             app_config_params,
             chip_id,
         ),
@@ -468,12 +488,12 @@ fn native_set_app_configurations(
     obj: JObject,
     session_id: jint,
     no_of_params: jint,
+    app_config_param_len: jint,
     app_config_params: jbyteArray,
     chip_id: JString,
 ) -> Result<SetAppConfigResponse> {
     let uci_manager = Dispatcher::get_uci_manager(env, obj, chip_id)?;
-    let config_byte_array =
-        env.convert_byte_array(app_config_params).map_err(|_| Error::ForeignFunctionInterface)?;
+    let config_byte_array = get_config_byte_array(env, app_config_params, app_config_param_len)?;
     let tlvs = parse_app_config_tlv_vec(no_of_params, &config_byte_array)?;
     uci_manager.session_set_app_config(session_id as u32, tlvs)
 }
@@ -485,7 +505,7 @@ pub extern "system" fn Java_com_android_server_uwb_jni_NativeUwbManager_nativeSe
     obj: JObject,
     session_id: jint,
     no_of_params: jint,
-    _radar_config_param_len: jint,
+    radar_config_param_len: jint,
     radar_config_params: jbyteArray,
     chip_id: JString,
 ) -> jbyteArray {
@@ -496,6 +516,7 @@ pub extern "system" fn Java_com_android_server_uwb_jni_NativeUwbManager_nativeSe
             obj,
             session_id,
             no_of_params,
+            radar_config_param_len,
             radar_config_params,
             chip_id,
         ),
@@ -516,12 +537,13 @@ fn native_set_radar_app_configurations(
     obj: JObject,
     session_id: jint,
     no_of_params: jint,
+    radar_config_param_len: jint,
     radar_config_params: jbyteArray,
     chip_id: JString,
 ) -> Result<AndroidRadarConfigResponse> {
     let uci_manager = Dispatcher::get_uci_manager(env, obj, chip_id)?;
     let config_byte_array =
-        env.convert_byte_array(radar_config_params).map_err(|_| Error::ForeignFunctionInterface)?;
+        get_config_byte_array(env, radar_config_params, radar_config_param_len)?;
     let tlvs = parse_radar_config_tlv_vec(no_of_params, &config_byte_array)?;
     uci_manager.android_set_radar_config(session_id as u32, tlvs)
 }
@@ -918,6 +940,28 @@ fn native_set_log_mode(env: JNIEnv, obj: JObject, log_mode_jstring: JString) ->
     dispatcher.set_logger_mode(logger_mode)
 }
 
+/// Sets the maximum number of range data notifications delivered to Java per upcall. Zero
+/// delivers each notification as its own UwbRangingData object.
+#[no_mangle]
+pub extern "system" fn Java_com_android_server_uwb_jni_NativeUwbManager_nativeSetRangeDataNtfBatchSize(
+    env: JNIEnv,
+    obj: JObject,
+    batch_size: jint,
+) -> jboolean {
+    debug!("{}: enter", function_name!());
+    boolean_result_helper(
+        native_set_range_data_ntf_batch_size(env, obj, batch_size),
+        function_name!(),
+    )
+}
+
+fn native_set_range_data_ntf_batch_size(env: JNIEnv, obj: JObject, batch_size: jint) -> Result<()> {
+    let dispatcher = Dispatcher::get_dispatcher(env, obj)?;
+    let batch_size = usize::try_from(batch_size).map_err(|_| Error::BadParameters)?;
+    dispatcher.set_range_data_batch_limit(batch_size);
+    Ok(())
+}
+
 // # Safety
 //
 // For this to be safe, the validity of msg should be checked before calling.
@@ -1493,4 +1537,20 @@ mod tests {
         let tlvs = parse_app_config_tlv_vec(2, &app_config_byte_array).unwrap();
         assert!(uci_manager_sync.session_set_app_config(42, tlvs).is_ok());
     }
+
+    /// Checks that only the valid prefix of a reused config buffer is parsed.
+    #[test]
+    fn test_checked_config_len() {
+        let app_config_byte_array: Vec<u8> = vec![
+            0, 1, 1, // DeviceType: controller
+            1, 1, 1, // RangingRoundUsage: DS_TWR
+            0, 0, 0, 0, // Unused space in the buffer
+        ];
+        let array_len = app_config_byte_array.len() as jint;
+        let len = checked_config_len(6, array_len).unwrap();
+        assert_eq!(parse_app_config_tlv_vec(2, &app_config_byte_array[..len]).unwrap().len(), 2);
+        assert!(parse_app_config_tlv_vec(2, &app_config_byte_array).is_err());
+        assert!(checked_config_len(11, array_len).is_err());
+        assert!(checked_config_len(-1, array_len).is_err());
+    }
 }